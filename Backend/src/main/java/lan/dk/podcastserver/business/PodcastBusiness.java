@@ -5,6 +5,7 @@ import javaslang.control.Try;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Podcast;
 import lan.dk.podcastserver.exception.PodcastNotFoundException;
+import lan.dk.podcastserver.manager.ItemDownloadManager;
 import lan.dk.podcastserver.repository.PodcastRepository;
 import lan.dk.podcastserver.service.JdomService;
 import lan.dk.podcastserver.service.MimeTypeService;
@@ -33,6 +34,7 @@ public class PodcastBusiness {
     final TagBusiness tagBusiness;
     final CoverBusiness coverBusiness;
     final MimeTypeService mimeTypeService;
+    final ItemDownloadManager itemDownloadManager;
 
     //** Delegate du Repository **//
     public List<Podcast> findAll() {
@@ -48,15 +50,24 @@ public class PodcastBusiness {
     }
 
     public void delete(UUID id) {
+        Option.of(podcastRepository.findOne(id)).forEach(this::removeItemsFromDownloadManager);
         podcastRepository.delete(id);
         //TODO : Delete the folder with java.nio.PATH and java.nio.FILES
     }
 
     public void delete(Podcast entity) {
+        removeItemsFromDownloadManager(entity);
         podcastRepository.delete(entity);
         //TODO : Delete the folder with java.nio.PATH and java.nio.FILES
     }
 
+    /**
+     * The items are deleted with the podcast by the cascade, they leave the queues of the download manager before
+     */
+    private void removeItemsFromDownloadManager(Podcast podcast) {
+        podcast.getItems().forEach(itemDownloadManager::removeItemFromQueueAndDownload);
+    }
+
     public Set<Podcast> findByUrlIsNotNull() {
         return podcastRepository.findByUrlIsNotNull();
     }
@@ -85,6 +96,7 @@ public class PodcastBusiness {
                 .setType(patchPodcast.getType())
                 .setDescription(patchPodcast.getDescription())
                 .setHasToBeDeleted(patchPodcast.getHasToBeDeleted())
+                .setAudioOnly(patchPodcast.getAudioOnly())
                 .setTags(tagBusiness.getTagListByName(patchPodcast.getTags()))
                 .setCover(
                     coverBusiness.findOne(patchPodcast.getCover().getId())
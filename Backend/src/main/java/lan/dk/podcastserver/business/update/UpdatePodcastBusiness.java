@@ -10,10 +10,13 @@ import lan.dk.podcastserver.entity.Podcast;
 import lan.dk.podcastserver.entity.Status;
 import lan.dk.podcastserver.manager.worker.selector.UpdaterSelector;
 import lan.dk.podcastserver.manager.worker.updater.Updater;
+import lan.dk.podcastserver.repository.DownloadJournalRepository;
 import lan.dk.podcastserver.repository.ItemRepository;
+import lan.dk.podcastserver.service.UpdateCycleCache;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -33,6 +36,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.stream.StreamSupport;
 
+import static java.util.Objects.nonNull;
 import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static java.util.stream.Collectors.toSet;
 
@@ -52,6 +56,8 @@ public class UpdatePodcastBusiness  {
     private final ItemRepository itemRepository;
     private final UpdaterSelector updaterSelector;
     private final SimpMessagingTemplate template;
+    private final UpdateCycleCache updateCycleCache;
+    private final DownloadJournalRepository downloadJournalRepository;
 
     private final ThreadPoolTaskExecutor updateExecutor;
     private final ThreadPoolTaskExecutor manualExecutor;
@@ -60,7 +66,7 @@ public class UpdatePodcastBusiness  {
     private AtomicBoolean isUpdating = new AtomicBoolean(false);
 
     @Autowired
-    public UpdatePodcastBusiness(PodcastBusiness podcastBusiness, ItemRepository itemRepository, UpdaterSelector updaterSelector, SimpMessagingTemplate template, PodcastServerParameters podcastServerParameters, @Qualifier("UpdateExecutor") ThreadPoolTaskExecutor updateExecutor, @Qualifier("ManualUpdater") ThreadPoolTaskExecutor manualExecutor, @Qualifier("Validator") Validator validator, CoverBusiness coverBusiness) {
+    public UpdatePodcastBusiness(PodcastBusiness podcastBusiness, ItemRepository itemRepository, UpdaterSelector updaterSelector, SimpMessagingTemplate template, PodcastServerParameters podcastServerParameters, @Qualifier("UpdateExecutor") ThreadPoolTaskExecutor updateExecutor, @Qualifier("ManualUpdater") ThreadPoolTaskExecutor manualExecutor, @Qualifier("Validator") Validator validator, CoverBusiness coverBusiness, UpdateCycleCache updateCycleCache, DownloadJournalRepository downloadJournalRepository) {
         this.podcastBusiness = podcastBusiness;
         this.itemRepository = itemRepository;
         this.updaterSelector = updaterSelector;
@@ -70,6 +76,8 @@ public class UpdatePodcastBusiness  {
         this.manualExecutor = manualExecutor;
         this.validator = validator;
         this.coverBusiness = coverBusiness;
+        this.updateCycleCache = updateCycleCache;
+        this.downloadJournalRepository = downloadJournalRepository;
     }
 
     @Transactional
@@ -99,11 +107,28 @@ public class UpdatePodcastBusiness  {
         log.info("Update launch");
         log.info("About to update {} podcast(s)", podcasts.size());
 
+        updateCycleCache.open();
+        try {
+            fetchAndAttachItems(podcasts, selectedExecutor);
+        } finally {
+            updateCycleCache.close();
+        }
+
+        log.info("Fin du traitement des {} podcasts", podcasts.size());
+
+        changeAndCommunicateUpdate(Boolean.FALSE);
+    }
+
+    private void fetchAndAttachItems(Set<Podcast> podcasts, Executor selectedExecutor) {
+        // The items are loaded before the update, the updaters only read them from their own thread
+        podcasts.forEach(podcast -> Hibernate.initialize(podcast.getItems()));
+        podcasts.forEach(podcast -> updateCycleCache.register(podcast.getUrl()));
+
         // @formatter:off
         podcasts
                 // Launch every update
                 .stream()
-                    .map(podcast -> supplyAsync(() -> updaterSelector.of(podcast.getUrl()).update(podcast), selectedExecutor))
+                    .map(podcast -> supplyAsync(() -> updateCycleCache.update(podcast.getUrl(), () -> updaterSelector.of(podcast.getUrl()).update(podcast)), selectedExecutor))
                 .collect(toSet()) // Terminal operation forcing evaluation of each element upper in the stream
                 // Get result of each update
                 .stream()
@@ -114,10 +139,6 @@ public class UpdatePodcastBusiness  {
                     .flatMap(Collection::stream)
                 .forEach(coverBusiness::download);
         // @formatter:on
-
-        log.info("Fin du traitement des {} podcasts", podcasts.size());
-
-        changeAndCommunicateUpdate(Boolean.FALSE);
     }
 
     private void changeAndCommunicateUpdate(Boolean isUpdating) {
@@ -191,13 +212,22 @@ public class UpdatePodcastBusiness  {
         return updateExecutor.getActiveCount() + manualExecutor.getActiveCount();
     }
 
+    /**
+     * The downloads stopped by the shutdown are reset, except the paused ones with a journal, which stay paused and
+     * continue from it when they are restarted
+     */
     @PostConstruct
     public void resetItemWithIncorrectState() {
         log.info("Reset des Started et Paused");
 
         StreamSupport
                 .stream(itemRepository.findByStatus(Status.STARTED, Status.PAUSED).spliterator(), false)
+                .filter(item -> !isResumable(item))
                 .map(item -> item.setStatus(Status.NOT_DOWNLOADED))
                 .forEach(itemRepository::save);
     }
+
+    private Boolean isResumable(Item item) {
+        return Status.PAUSED == item.getStatus() && nonNull(item.getId()) && downloadJournalRepository.exists(item.getId());
+    }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package lan.dk.podcastserver.config;
 
 import lan.dk.podcastserver.service.properties.Api;
 import lan.dk.podcastserver.service.properties.Backup;
+import lan.dk.podcastserver.service.properties.Bandwidth;
 import lan.dk.podcastserver.service.properties.ExternalTools;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import org.apache.tika.Tika;
@@ -16,6 +17,7 @@ import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalTime;
 
 import static lan.dk.podcastserver.service.MimeTypeService.TikaProbeContentType;
 
@@ -24,7 +26,7 @@ import static lan.dk.podcastserver.service.MimeTypeService.TikaProbeContentType;
  */
 @EnableCaching
 @Configuration
-@EnableConfigurationProperties({PodcastServerParameters.class, Api.class, Backup.class, ExternalTools.class})
+@EnableConfigurationProperties({PodcastServerParameters.class, Api.class, Backup.class, Bandwidth.class, ExternalTools.class})
 @ComponentScan(basePackages = { "lan.dk.podcastserver.utils", "lan.dk.podcastserver.service", "lan.dk.podcastserver.business"})
 public class BeanConfigScan {
 
@@ -48,4 +50,16 @@ public class BeanConfigScan {
             }
         };
     }
+
+    @Bean
+    @ConfigurationPropertiesBinding
+    Converter<String, LocalTime> localTimeConverter() {
+        return new Converter<String, LocalTime>(){
+
+            @Override
+            public LocalTime convert(String source) {
+                return LocalTime.parse(source);
+            }
+        };
+    }
 }
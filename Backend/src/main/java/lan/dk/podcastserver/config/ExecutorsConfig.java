@@ -43,8 +43,35 @@ public class ExecutorsConfig {
     public ThreadPoolTaskExecutor downloadExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(podcastServerParameters.getConcurrentDownload());
+        executor.setAllowCoreThreadTimeOut(true);
         executor.setThreadNamePrefix("Downloader-");
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Transfers of the segments of the segmented and HLS downloads, shared by all the downloads
+     */
+    @Bean(name = "SegmentExecutor")
+    public ThreadPoolTaskExecutor segmentExecutor() {
+        Integer size = podcastServerParameters.getMaxConcurrentDownload() * Math.max(1, podcastServerParameters.getMaxSegmentByDownload());
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(size);
+        executor.setMaxPoolSize(size);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("Segment-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean(name = "PostProcessingExecutor")
+    public ThreadPoolTaskExecutor postProcessingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Runtime.getRuntime().availableProcessors());
+        executor.setMaxPoolSize(Runtime.getRuntime().availableProcessors());
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("Post-Processing-");
+        executor.initialize();
+        return executor;
+    }
 }
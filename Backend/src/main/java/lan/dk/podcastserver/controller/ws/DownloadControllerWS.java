@@ -2,6 +2,7 @@ package lan.dk.podcastserver.controller.ws;
 
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.manager.ItemDownloadManager;
+import lan.dk.podcastserver.utils.facade.WaitingQueueSnapshot;
 import lombok.RequiredArgsConstructor;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.simp.annotation.SubscribeMapping;
@@ -19,8 +20,8 @@ public class DownloadControllerWS {
     final ItemDownloadManager IDM;
 
     @SubscribeMapping("/waiting")
-    public Collection<Item> waitingList() {
-        return IDM.getWaitingQueue().toJavaList();
+    public WaitingQueueSnapshot waitingList() {
+        return IDM.getWaitingQueueSnapshot();
     }
     
     @SubscribeMapping("/download")
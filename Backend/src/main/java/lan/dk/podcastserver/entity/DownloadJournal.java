@@ -0,0 +1,58 @@
+package lan.dk.podcastserver.entity;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+import static java.util.Objects.isNull;
+
+/**
+ * State of a download in progress, kept across restarts to resume it where it was.
+ * Identified by the id of the {@link Item} being downloaded.
+ */
+@Entity
+@Builder
+@Getter @Setter
+@Accessors(chain = true)
+@NoArgsConstructor @AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class DownloadJournal {
+
+    @Id
+    @Column(columnDefinition = "UUID")
+    private UUID id;
+
+    @Column(length = 65535)
+    private String url;
+
+    @Column(length = 65535)
+    private String target;
+
+    private Long bytesWritten;
+    private String eTag;
+    private String lastModified;
+    private ZonedDateTime updateDate;
+
+    public Path getTargetPath() {
+        return Paths.get(target);
+    }
+
+    /**
+     * The partial file can only be continued if the remote resource is still the same,
+     * checked with its url and the validators (ETag, Last-Modified) returned by the server
+     */
+    public Boolean isSameResource(String url, String eTag, String lastModified) {
+        return Objects.equals(this.url, url) && isSameValidator(this.eTag, eTag) && isSameValidator(this.lastModified, lastModified);
+    }
+
+    private static Boolean isSameValidator(String previous, String current) {
+        return isNull(previous) || isNull(current) || previous.equals(current);
+    }
+}
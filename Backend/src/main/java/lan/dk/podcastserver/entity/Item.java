@@ -34,7 +34,7 @@ import static java.util.Objects.nonNull;
 @Slf4j
 @Builder
 @Getter @Setter
-@Table(name = "item", uniqueConstraints = @UniqueConstraint(columnNames={"podcast_id", "url"}))
+@Table(name = "item", uniqueConstraints = @UniqueConstraint(columnNames={"podcast_id", "url"}), indexes = @Index(name = "item_digest", columnList = "digest"))
 @Accessors(chain = true)
 @JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class, property = "id")
 @NoArgsConstructor @AllArgsConstructor(access = AccessLevel.PRIVATE)
@@ -85,6 +85,9 @@ public class Item {
     @JsonView(ItemDetailsView.class)
     private String fileName;
 
+    @JsonIgnore
+    private String digest;
+
     /* Value for the Download */
     @Enumerated(EnumType.STRING)
     @JsonView(ItemSearchListView.class)
@@ -94,7 +97,6 @@ public class Item {
     @JsonView(ItemDetailsView.class)
     private Integer progression = 0;
 
-    @Transient
     private Integer numberOfTry = 0;
 
     @JsonView(ItemDetailsView.class)
@@ -117,8 +119,12 @@ public class Item {
         return this;
     }
 
+    public Integer getNumberOfTry() {
+        return isNull(numberOfTry) ? 0 : numberOfTry;
+    }
+
     public Item addATry() {
-        this.numberOfTry++;
+        this.numberOfTry = getNumberOfTry() + 1;
         return this;
     }
 
@@ -198,6 +204,7 @@ public class Item {
         deleteFile();
         status = Status.DELETED;
         fileName = null;
+        digest = null;
         return this;
     }
 
@@ -245,6 +252,8 @@ public class Item {
         setStatus(Status.NOT_DOWNLOADED);
         downloadDate = null;
         fileName = null;
+        digest = null;
+        numberOfTry = 0;
         return this;
     }
 
@@ -19,6 +19,8 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 
+import static java.util.Objects.nonNull;
+
 @Entity
 @Builder
 @Getter @Setter
@@ -65,6 +67,9 @@ public class Podcast implements Serializable {
     @JsonView(PodcastDetailsView.class)
     private Boolean hasToBeDeleted;
 
+    @JsonView(PodcastDetailsView.class)
+    private Boolean audioOnly;
+
     @JsonView(PodcastDetailsView.class)
     @ManyToMany(cascade = {CascadeType.PERSIST, CascadeType.MERGE}, fetch = FetchType.EAGER) @Fetch(FetchMode.SUBSELECT)
     @JoinTable(name = "PODCAST_TAGS", joinColumns = @JoinColumn(name = "PODCASTS_ID"), inverseJoinColumns = @JoinColumn(name = "TAGS_ID"))
@@ -110,7 +115,7 @@ public class Podcast implements Serializable {
     }
 
     public Boolean contains(Item item) {
-        return items.contains(item);
+        return nonNull(items) && items.contains(item);
     }
 
     public Podcast add(Item item) {
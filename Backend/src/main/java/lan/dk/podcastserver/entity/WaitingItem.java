@@ -0,0 +1,27 @@
+package lan.dk.podcastserver.entity;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import javax.persistence.*;
+import java.util.UUID;
+
+/**
+ * Membership and position of an {@link Item} in the waiting queue of the download manager.
+ * Positions are sparse, so an item can be moved between two others by updating only its own row.
+ */
+@Entity
+@Builder
+@Getter @Setter
+@Accessors(chain = true)
+@NoArgsConstructor @AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Table(name = "waiting_item", indexes = @Index(name = "waiting_item_position", columnList = "queue_position"))
+public class WaitingItem {
+
+    @Id
+    @Column(columnDefinition = "UUID")
+    private UUID id;
+
+    @Column(name = "queue_position", nullable = false)
+    private Double position;
+}
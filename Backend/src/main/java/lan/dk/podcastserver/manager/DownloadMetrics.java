@@ -0,0 +1,148 @@
+package lan.dk.podcastserver.manager;
+
+import javaslang.Tuple;
+import javaslang.Tuple2;
+import javaslang.collection.List;
+import lan.dk.podcastserver.manager.worker.downloader.Downloader;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Throughput, time to first byte, completion time and retries of the downloads, by type of downloader and origin host.
+ *
+ * Exposed by the actuator in the {@code metrics} endpoint, under {@code download.<type>.<host>.*}. The histograms are
+ * computed on the last {@link Histogram#WINDOW} downloads of each type and host.
+ */
+@Component
+public class DownloadMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "download.";
+
+    private final ConcurrentMap<Tuple2<String, String>, Stats> stats = new ConcurrentHashMap<>();
+    private final AtomicLong failures = new AtomicLong();
+
+    public void retry(Downloader downloader, String host) {
+        failures.incrementAndGet();
+        statsOf(downloader, host).retries.incrementAndGet();
+    }
+
+    /**
+     * End of a download, {@code failed} if it has been stopped by an error and not by the user
+     */
+    public void finished(Downloader downloader, String host, Boolean stopped, Boolean failed) {
+        Stats s = statsOf(downloader, host);
+        long now = System.currentTimeMillis();
+        Long start = downloader.getStartTime();
+        Long firstByte = downloader.getFirstByteTime();
+
+        (stopped ? s.stopped : s.completed).incrementAndGet();
+        if (failed) {
+            s.failed.incrementAndGet();
+            failures.incrementAndGet();
+        }
+
+        if (isNull(start)) return;
+        s.completionTime.record(now - start);
+
+        if (isNull(firstByte)) return;
+        s.timeToFirstByte.record(firstByte - start);
+        if (!stopped && now > firstByte) {
+            s.throughput.record(downloader.getDownloadedBytes() * 1000 / (now - firstByte));
+        }
+    }
+
+    /**
+     * Number of downloads stopped by an error or retried since the start of the application, all types and hosts together
+     */
+    public long getNumberOfFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return List.ofAll(stats.entrySet())
+                .flatMap(e -> e.getValue().toMetrics(PREFIX + e.getKey()._1() + "." + e.getKey()._2() + "."))
+                .toJavaList();
+    }
+
+    private Stats statsOf(Downloader downloader, String host) {
+        return stats.computeIfAbsent(Tuple.of(typeOf(downloader), keyOf(host)), k -> new Stats());
+    }
+
+    static String typeOf(Downloader downloader) {
+        return ClassUtils.getUserClass(downloader).getSimpleName();
+    }
+
+    private static String keyOf(String host) {
+        return isNull(host) || host.isEmpty() ? "unknown" : host.replace('.', '_');
+    }
+
+    private static class Stats {
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong stopped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final Histogram throughput = new Histogram();
+        private final Histogram timeToFirstByte = new Histogram();
+        private final Histogram completionTime = new Histogram();
+
+        private List<Metric<?>> toMetrics(String prefix) {
+            return List.<Metric<?>>of(
+                    new Metric<>(prefix + "completed", completed.get()),
+                    new Metric<>(prefix + "stopped", stopped.get()),
+                    new Metric<>(prefix + "failed", failed.get()),
+                    new Metric<>(prefix + "retries", retries.get())
+            )
+                    .appendAll(throughput.toMetrics(prefix + "bytes-per-second."))
+                    .appendAll(timeToFirstByte.toMetrics(prefix + "time-to-first-byte."))
+                    .appendAll(completionTime.toMetrics(prefix + "completion-time."));
+        }
+    }
+
+    /**
+     * Distribution of the last {@link #WINDOW} recorded values
+     */
+    static class Histogram {
+        static final Integer WINDOW = 256;
+
+        private final long[] values = new long[WINDOW];
+        private long count = 0;
+
+        synchronized void record(Long value) {
+            values[(int) (count++ % WINDOW)] = value;
+        }
+
+        synchronized long[] snapshot() {
+            long[] snapshot = Arrays.copyOf(values, (int) Math.min(count, WINDOW));
+            Arrays.sort(snapshot);
+            return snapshot;
+        }
+
+        List<Metric<?>> toMetrics(String prefix) {
+            long[] snapshot = snapshot();
+            if (snapshot.length == 0) return List.empty();
+
+            return List.<Metric<?>>of(
+                    new Metric<>(prefix + "count", snapshot.length),
+                    new Metric<>(prefix + "mean", Arrays.stream(snapshot).average().orElse(0)),
+                    new Metric<>(prefix + "p50", percentile(snapshot, 0.5)),
+                    new Metric<>(prefix + "p95", percentile(snapshot, 0.95)),
+                    new Metric<>(prefix + "max", snapshot[snapshot.length - 1])
+            );
+        }
+
+        private static long percentile(long[] sorted, double quantile) {
+            return sorted[(int) Math.ceil(quantile * sorted.length) - 1];
+        }
+    }
+}
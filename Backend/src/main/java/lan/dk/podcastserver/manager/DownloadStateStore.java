@@ -0,0 +1,131 @@
+package lan.dk.podcastserver.manager;
+
+import javaslang.Tuple;
+import javaslang.collection.HashSet;
+import javaslang.collection.List;
+import javaslang.collection.Map;
+import javaslang.collection.Set;
+import javaslang.control.Option;
+import javaslang.control.Try;
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.entity.Status;
+import lan.dk.podcastserver.repository.ItemRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Write-behind store of the state of the items in download.
+ *
+ * The downloaders record here each change of status, only the last state of an item is kept in memory and all the
+ * pending states are written in one batch at a fixed delay, or right away when a download reaches a final status.
+ * Only the caches whose content depends on the fields which have really changed are evicted after the write.
+ * The {@link ItemDownloadManager} depends on this store, so it is shut down first and the states of the downloads it
+ * pauses are part of the last flush.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DownloadStateStore {
+
+    static final String SEARCH_CACHE = "search";
+    static final String STATS_CACHE = "stats";
+
+    private final ItemRepository itemRepository;
+    private final CacheManager cacheManager;
+
+    private final ConcurrentMap<UUID, Item> pendingStates = new ConcurrentHashMap<>();
+
+    public void save(Item item) {
+        pendingStates.put(item.getId(), item);
+
+        if (Status.FINISH == item.getStatus() || Status.STOPPED == item.getStatus()) {
+            flush();
+        }
+    }
+
+    /**
+     * The item has a state which is not written in the database yet
+     */
+    public Boolean hasPendingState(Item item) {
+        return nonNull(item.getId()) && pendingStates.containsKey(item.getId());
+    }
+
+    /**
+     * File of another downloaded item with the same digest and length
+     */
+    public Option<Path> findFileWithSameContent(Item item) {
+        return List.ofAll(itemRepository.findAllDownloadedWithContent(item.getDigest(), item.getLength()))
+                .filter(i -> !Objects.equals(i.getId(), item.getId()))
+                .map(Item::getLocalPath)
+                .find(Files::exists);
+    }
+
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${podcastserver.download-state-flush-delay:5000}")
+    public synchronized void flush() {
+        Map<UUID, Item> states = List.ofAll(pendingStates.keySet())
+                .flatMap(id -> Option.of(pendingStates.remove(id)))
+                .toMap(i -> Tuple.of(i.getId(), i));
+
+        if (states.isEmpty()) {
+            return;
+        }
+
+        Try.of(() -> write(states))
+                .onSuccess(caches -> caches.forEach(this::evict))
+                .onFailure(e -> log.error("Error during write of the state of {} items, will be retried", states.size(), e))
+                .onFailure(e -> states.values().forEach(item -> pendingStates.putIfAbsent(item.getId(), item)));
+    }
+
+    private Set<String> write(Map<UUID, Item> states) {
+        List<Item> items = List.ofAll(itemRepository.findAll(states.keySet().toJavaList()));
+
+        Set<String> caches = items.foldLeft(HashSet.<String>empty(), (c, item) -> c.addAll(applyState(item, states.get(item.getId()).get())));
+
+        itemRepository.save(items.toJavaList());
+        log.debug("State of {} items written", items.size());
+
+        return caches;
+    }
+
+    private Set<String> applyState(Item item, Item state) {
+        Set<String> caches = HashSet.empty();
+
+        if (item.getStatus() != state.getStatus()) {
+            caches = caches.add(SEARCH_CACHE);
+        }
+
+        if (!Objects.equals(item.getDownloadDate(), state.getDownloadDate())) {
+            caches = caches.add(STATS_CACHE);
+        }
+
+        item
+            .setStatus(state.getStatus())
+            .setFileName(state.getFileName())
+            .setDigest(state.getDigest())
+            .setLength(state.getLength())
+            .setMimeType(state.getMimeType())
+            .setNumberOfTry(state.getNumberOfTry())
+            .setDownloadDate(state.getDownloadDate());
+
+        return caches;
+    }
+
+    private void evict(String name) {
+        Option.of(cacheManager.getCache(name)).forEach(Cache::clear);
+    }
+}
@@ -0,0 +1,70 @@
+package lan.dk.podcastserver.manager;
+
+import lan.dk.podcastserver.manager.worker.downloader.Downloader;
+import lombok.Builder;
+import lombok.Value;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Actuator endpoint listing the live transfers, available under {@code /system/downloads}
+ */
+@Component
+public class DownloadsEndpoint extends AbstractEndpoint<List<DownloadsEndpoint.Transfer>> {
+
+    private final ItemDownloadManager IDM;
+
+    public DownloadsEndpoint(ItemDownloadManager IDM) {
+        super("downloads");
+        this.IDM = IDM;
+    }
+
+    @Override
+    public List<Transfer> invoke() {
+        long now = System.currentTimeMillis();
+
+        return IDM.getDownloadingQueue()
+                .values()
+                .map(d -> transferOf(d, now))
+                .toJavaList();
+    }
+
+    private static Transfer transferOf(Downloader downloader, long now) {
+        Long start = downloader.getStartTime();
+        Long firstByte = downloader.getFirstByteTime();
+        Long bytes = downloader.getDownloadedBytes();
+
+        return Transfer.builder()
+                .id(downloader.getItem().getId())
+                .title(downloader.getItem().getTitle())
+                .type(DownloadMetrics.typeOf(downloader))
+                .host(ItemDownloadManager.hostOf(downloader.getItem()))
+                .status(String.valueOf(downloader.getItem().getStatus()))
+                .progression(downloader.getItem().getProgression())
+                .bytes(bytes)
+                .elapsed(isNull(start) ? null : now - start)
+                .timeToFirstByte(isNull(start) || isNull(firstByte) ? null : firstByte - start)
+                .bytesPerSecond(isNull(firstByte) || now <= firstByte ? 0L : bytes * 1000 / (now - firstByte))
+                .build();
+    }
+
+    @Value
+    @Builder
+    public static class Transfer {
+        private final UUID id;
+        private final String title;
+        private final String type;
+        private final String host;
+        private final String status;
+        private final Integer progression;
+        private final Long bytes;
+        private final Long elapsed;
+        private final Long timeToFirstByte;
+        private final Long bytesPerSecond;
+    }
+}
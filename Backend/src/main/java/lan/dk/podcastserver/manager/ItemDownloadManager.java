@@ -1,60 +1,130 @@
 package lan.dk.podcastserver.manager;
 
-import com.google.common.collect.Queues;
 import javaslang.Tuple2;
 import javaslang.collection.HashMap;
-import javaslang.collection.HashSet;
 import javaslang.collection.List;
 import javaslang.collection.Map;
 import javaslang.collection.Queue;
 import javaslang.control.Option;
+import javaslang.control.Try;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Status;
 import lan.dk.podcastserver.manager.worker.downloader.Downloader;
 import lan.dk.podcastserver.manager.worker.selector.DownloaderSelector;
 import lan.dk.podcastserver.repository.ItemRepository;
+import lan.dk.podcastserver.repository.WaitingItemRepository;
+import lan.dk.podcastserver.service.BandwidthService;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import lan.dk.podcastserver.utils.facade.WaitingQueueDelta;
+import lan.dk.podcastserver.utils.facade.WaitingQueueDelta.Operation;
+import lan.dk.podcastserver.utils.facade.WaitingQueueSnapshot;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.transaction.Transactional;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.locks.ReentrantLock;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 import static java.util.concurrent.CompletableFuture.runAsync;
 import static lan.dk.podcastserver.manager.worker.selector.DownloaderSelector.NO_OP_DOWNLOADER;
 
+/**
+ * State of the waiting and downloading queues is owned by a single dispatcher thread.
+ * Every mutation is posted as a command to this thread, so callers (controllers, downloaders, schedulers) never
+ * touch the queues concurrently. The callers don't wait for their commands, except the few acting on the result right
+ * after. Commands posted from the dispatcher thread itself are run inline.
+ * The repository calls of the commands run on the dispatcher thread, each one in its own transaction.
+ */
 @Slf4j
 @Service
-@Transactional
+@DependsOn("downloadStateStore") /* The states saved by the pause of the downloads at shutdown are flushed after it */
 public class ItemDownloadManager {
 
     private static final String WS_TOPIC_WAITING_LIST = "/topic/waiting";
+    private static final String DISPATCHER_THREAD_NAME = "Download-Manager";
+    private static final String PREFETCHER_THREAD_NAME = "Url-Prefetcher";
+    private static final Integer PREFETCHER_THREADS = 2;
 
     private final SimpMessagingTemplate template;
     private final ItemRepository itemRepository;
+    private final WaitingItemRepository waitingItemRepository;
     private final PodcastServerParameters podcastServerParameters;
     private final DownloaderSelector downloaderSelector;
     private final ThreadPoolTaskExecutor downloadExecutor;
-    private final ReentrantLock mainLock = new ReentrantLock();
-
-    private @Getter Queue<Item> waitingQueue = Queue.empty();
-    private @Getter Map<Item, Downloader> downloadingQueue = HashMap.empty();
+    private final DownloadMetrics downloadMetrics;
+    private final BandwidthService bandwidthService;
+    private final DownloadStateStore downloadStateStore;
+    private final Integer maxDownloadByHost;
+    private final Integer numberOfUrlToPrefetch;
+    private final RetryPolicy retryPolicy;
+
+    private final ScheduledExecutorService dispatcher;
+    private volatile Thread dispatcherThread;
+    private final AtomicLong numberOfCommands = new AtomicLong();
+    private final ExecutorService prefetcher;
+    private final Set<Item> prefetched = ConcurrentHashMap.newKeySet();
+    private ScheduledFuture<?> wakeUp;
+    private Long wakeUpTime = 0L;
+
+    private volatile @Getter Queue<Item> waitingQueue = Queue.empty();
+    private volatile @Getter Map<Item, Downloader> downloadingQueue = HashMap.empty();
+    private volatile @Getter WaitingQueueSnapshot waitingQueueSnapshot = WaitingQueueSnapshot.EMPTY;
+    /* Operations applied on the waiting queue since the last version sent to the clients, owned by the dispatcher */
+    private Queue<Operation> pendingOperations = Queue.empty();
+    /* Items of the downloading queue waiting for their retry, with the time of the retry. They don't take a slot */
+    private volatile Map<Item, Long> retries = HashMap.empty();
+    /* Items of the downloading queue whose files are processed (merge, remux...) after their download. They don't take a slot either */
+    private volatile List<Item> postProcessing = List.empty();
 
     @Autowired
-    public ItemDownloadManager(SimpMessagingTemplate template, ItemRepository itemRepository, PodcastServerParameters podcastServerParameters, DownloaderSelector downloaderSelector, @Qualifier("DownloadExecutor") ThreadPoolTaskExecutor downloadExecutor) {
+    public ItemDownloadManager(SimpMessagingTemplate template, ItemRepository itemRepository, WaitingItemRepository waitingItemRepository, PodcastServerParameters podcastServerParameters, DownloaderSelector downloaderSelector, @Qualifier("DownloadExecutor") ThreadPoolTaskExecutor downloadExecutor, DownloadMetrics downloadMetrics, BandwidthService bandwidthService, DownloadStateStore downloadStateStore) {
         this.template = template;
         this.itemRepository = itemRepository;
+        this.waitingItemRepository = waitingItemRepository;
         this.podcastServerParameters = podcastServerParameters;
         this.downloaderSelector = downloaderSelector;
         this.downloadExecutor = downloadExecutor;
+        this.downloadMetrics = downloadMetrics;
+        this.bandwidthService = bandwidthService;
+        this.downloadStateStore = downloadStateStore;
+        this.maxDownloadByHost = podcastServerParameters.getMaxDownloadByHost();
+        this.numberOfUrlToPrefetch = podcastServerParameters.getNumberOfUrlToPrefetch();
+        this.retryPolicy = new RetryPolicy(podcastServerParameters);
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, DISPATCHER_THREAD_NAME);
+            thread.setDaemon(true);
+            dispatcherThread = thread;
+            return thread;
+        });
+        this.prefetcher = Executors.newFixedThreadPool(PREFETCHER_THREADS, r -> {
+            Thread thread = new Thread(r, PREFETCHER_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
 
         Item.rootFolder = podcastServerParameters.getRootfolder();
     }
@@ -65,73 +135,296 @@ public class ItemDownloadManager {
     }
 
     public void setLimitParallelDownload(Integer limitParallelDownload) {
-        downloadExecutor.setCorePoolSize(limitParallelDownload);
-        manageDownload();
+        dispatch(() -> {
+            downloadExecutor.setCorePoolSize(limitParallelDownload);
+            manageDownload();
+        });
     }
 
     public int getNumberOfCurrentDownload() {
         return downloadingQueue.size();
     }
 
+    /**
+     * Number of commands handled by the dispatcher since the start of the application
+     */
+    public long getNumberOfCommands() {
+        return numberOfCommands.get();
+    }
+
+    /* DISPATCHER */
+    private void dispatch(Runnable command) {
+        numberOfCommands.incrementAndGet();
+
+        if (Thread.currentThread() == dispatcherThread) {
+            command.run();
+            return;
+        }
+
+        dispatcher.execute(() -> Try.run(command::run).onFailure(e -> log.error("Error during a command of the download manager", e)));
+    }
+
+    /**
+     * Post the command and wait for its end, for the callers which act on its result right after
+     */
+    private void dispatchAndWait(Runnable command) {
+        numberOfCommands.incrementAndGet();
+        waitFor(command);
+    }
+
+    /**
+     * Wait for the end of the commands posted before this call
+     */
+    void awaitCommands() {
+        waitFor(() -> {});
+    }
+
+    private void waitFor(Runnable command) {
+        if (Thread.currentThread() == dispatcherThread) {
+            command.run();
+            return;
+        }
+
+        try {
+            dispatcher.submit(command).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the download manager", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Reload the waiting queue saved before the last shutdown, in the same order
+     */
+    @PostConstruct
+    public void restoreWaitingQueue() {
+        List<Item> items = List.ofAll(waitingItemRepository.findAllItemsInOrder());
+        dispatch(() -> {
+            enqueue(items.filter(item -> !waitingQueue.contains(item)));
+            convertAndSendWaitingQueue();
+        });
+    }
+
+    /**
+     * Pause every running download before the application stops, so their progression is saved and can be resumed
+     */
+    @PreDestroy
+    public void shutdown() {
+        Try.run(() -> {
+            pauseAllDownload();
+            awaitCommands();
+        }).onFailure(e -> log.error("Error during pause of downloads before shutdown", e));
+        dispatcher.shutdown();
+        prefetcher.shutdownNow();
+    }
+
     /* METHODS */
     private void manageDownload() {
-        final ReentrantLock manageDownloadLock = this.mainLock;
+        while (activeDownloads().size() < downloadExecutor.getCorePoolSize()) {
+            Option<Item> retry = nextItemToRetry();
+            if (retry.isDefined()) {
+                retries = retries.remove(retry.get());
+                launchWithNewWorkerFrom(retry.get());
+                continue;
+            }
 
-        manageDownloadLock.lock();
-        try {
-            while (downloadingQueue.size() < downloadExecutor.getCorePoolSize() && !waitingQueue.isEmpty()) {
-                Tuple2<Item, Queue<Item>> dequeue = waitingQueue.dequeue();
-                Item currentItem = dequeue._1();
-                this.waitingQueue = dequeue._2();
-                if (!isStartedOrFinished(currentItem)) {
-                    getDownloaderByTypeAndRun(currentItem);
-                }
+            if (waitingQueue.isEmpty()) break;
+
+            Option<Item> nextItem = nextItemToDownload();
+            if (nextItem.isEmpty()) break;
+
+            Item currentItem = nextItem.get();
+            dequeue(currentItem);
+            waitingItemRepository.remove(currentItem.getId());
+            if (!isStartedOrFinished(currentItem)) {
+                getDownloaderByTypeAndRun(currentItem);
             }
-        } finally {
-            manageDownloadLock.unlock();
         }
 
+        this.scheduleNextWakeUp();
+        this.prefetchUrlOfNextItems();
         this.convertAndSendWaitingQueue();
     }
 
+    /**
+     * The retry of the item is delayed by the {@link RetryPolicy}, its slot is given to another item in the meantime
+     */
+    private void retryLater(Item item) {
+        long delay = retryPolicy.delayOf(item);
+        if (delay <= 0 && isHostAvailable(hostOf(item), activeDownloads())) {
+            launchWithNewWorkerFrom(item);
+            return;
+        }
+
+        log.info("Retry of {} in {} ms", item.getTitle(), delay);
+        retries = retries.put(item, System.currentTimeMillis() + delay);
+        manageDownload();
+    }
+
+    private Option<Item> nextItemToRetry() {
+        long now = System.currentTimeMillis();
+        List<Item> downloading = activeDownloads();
+
+        return retries
+                .toList()
+                .filter(t -> t._2() <= now)
+                .sorted(Comparator.comparing((Tuple2<Item, Long> t) -> t._2()))
+                .map(Tuple2::_1)
+                .filter(item -> Status.PAUSED != item.getStatus())
+                .find(item -> isHostAvailable(hostOf(item), downloading));
+    }
+
+    private List<Item> activeDownloads() {
+        return List.ofAll(downloadingQueue.keySet()).filter(item -> !retries.containsKey(item) && !postProcessing.contains(item));
+    }
+
+    /**
+     * Run the dispatcher again at the next retry or at the end of the break of a host, if items are waiting for it
+     */
+    private void scheduleNextWakeUp() {
+        long now = System.currentTimeMillis();
+        Option<Long> next = retries
+                .toList()
+                .map(t -> Math.max(t._2(), retryPolicy.closingTimeOf(hostOf(t._1()))))
+                .appendAll(waitingQueue.map(item -> retryPolicy.closingTimeOf(hostOf(item))))
+                .filter(time -> time > now)
+                .min();
+
+        if (next.isEmpty() || (nonNull(wakeUp) && !wakeUp.isDone() && wakeUpTime <= next.get())) return;
+
+        if (nonNull(wakeUp)) wakeUp.cancel(false);
+        wakeUpTime = next.get();
+        wakeUp = dispatcher.schedule(this::manageDownload, next.get() - now, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Resolve in the background the media url of the items at the head of the waiting queue, once per stay in the queue,
+     * so their download starts without scraping their page. The downloaders share the resolved urls through the
+     * {@link lan.dk.podcastserver.service.ResolvedUrlCache}, until the expiry of their tokens.
+     */
+    private void prefetchUrlOfNextItems() {
+        if (isNull(numberOfUrlToPrefetch) || numberOfUrlToPrefetch <= 0) return;
+
+        prefetched.retainAll(waitingQueue.toJavaList());
+        waitingQueue
+                .take(numberOfUrlToPrefetch)
+                .filter(prefetched::add)
+                .forEach(item -> prefetcher.execute(() -> prefetchUrlOf(item)));
+    }
+
+    private void prefetchUrlOf(Item item) {
+        Try.run(() -> downloaderSelector.of(item.getUrl()).setItem(item).getItemUrl(item))
+                .onFailure(e -> log.warn("Error during prefetch of the url of {}", item.getTitle(), e));
+    }
+
+    /**
+     * Start the items kept in the waiting queue by the bandwidth schedule, once a period without limit has begun
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void launchDeferredDownload() {
+        dispatch(this::manageDownload);
+    }
+
+    /**
+     * Select the next item of the waiting queue to download.
+     * Items too big for the current bandwidth limit wait for a period without limit.
+     * Items from a host which has already reached {@link #maxDownloadByHost} are skipped, and among the others
+     * the one with the least podcast and host already downloading wins, the position in the queue deciding ties.
+     */
+    private Option<Item> nextItemToDownload() {
+        List<Item> downloading = activeDownloads();
+
+        return waitingQueue
+                .zipWithIndex()
+                .filter(t -> !bandwidthService.shouldDefer(t._1()))
+                .filter(t -> isHostAvailable(hostOf(t._1()), downloading))
+                .minBy(Comparator
+                        .<Tuple2<Item, Long>>comparingInt(t -> downloading.count(i -> Objects.equals(podcastIdOf(i), podcastIdOf(t._1()))))
+                        .thenComparingInt(t -> downloading.count(i -> Objects.equals(hostOf(i), hostOf(t._1()))))
+                        .thenComparing(Tuple2::_2)
+                )
+                .map(Tuple2::_1);
+    }
+
+    private Boolean isHostAvailable(String host, List<Item> downloading) {
+        if (retryPolicy.isOpen(host) || (retryPolicy.isHalfOpen(host) && downloading.exists(i -> Objects.equals(hostOf(i), host))))
+            return false;
+
+        return isNull(maxDownloadByHost) || maxDownloadByHost <= 0 || downloading.count(i -> Objects.equals(hostOf(i), host)) < maxDownloadByHost;
+    }
+
+    static String hostOf(Item item) {
+        return Try.of(() -> new URI(item.getUrl()).getHost())
+                .filter(Objects::nonNull)
+                .getOrElse(StringUtils.EMPTY);
+    }
+
+    private static UUID podcastIdOf(Item item) {
+        return isNull(item.getPodcast()) ? null : item.getPodcast().getId();
+    }
+
     private boolean isStartedOrFinished(Item currentItem) {
         return Status.STARTED == currentItem.getStatus() || Status.FINISH == currentItem.getStatus();
     }
 
-    private void initDownload() {
-        waitingQueue = waitingQueue.enqueueAll(
-                HashSet.ofAll(itemRepository.findAllToDownload(podcastServerParameters.limitDownloadDate()))
-                    .filter(item -> !waitingQueue.contains(item))
-        );
+    /**
+     * The status read in the database can be behind the one of the downloads, so the items already in download or with
+     * a state not written yet are not queued again
+     */
+    private void initDownload(Set<Item> itemsToDownload) {
+        List<Item> newItems = List.ofAll(itemsToDownload)
+                .filter(item -> !waitingQueue.contains(item))
+                .filter(item -> !isInDownloadingQueue(item))
+                .filter(item -> !downloadStateStore.hasPendingState(item))
+                .sorted(Comparator.comparing(Item::getPubDate, Comparator.nullsLast(Comparator.reverseOrder())));
+
+        enqueue(newItems);
+        if (!newItems.isEmpty())
+            waitingItemRepository.enqueue(newItems.map(Item::getId).toJavaList());
     }
 
     public void launchDownload() {
-        this.initDownload();
-        this.manageDownload();
+        Set<Item> itemsToDownload = itemRepository.findAllToDownload(podcastServerParameters.limitDownloadDate());
+
+        dispatch(() -> {
+            this.initDownload(itemsToDownload);
+            this.manageDownload();
+        });
     }
 
     // Change status of all downloads :
     public void stopAllDownload() {
-        downloadingQueue.values().forEach(Downloader::stopDownload);
+        dispatch(() -> downloadingQueue.values().forEach(Downloader::stopDownload));
     }
 
     public void pauseAllDownload() {
-        downloadingQueue.values().forEach(Downloader::pauseDownload);
+        dispatch(() -> downloadingQueue.values().filter(this::canBePaused).forEach(Downloader::pauseDownload));
     }
 
     public void restartAllDownload() {
-        List.ofAll(downloadingQueue.values())
+        dispatch(() -> List.ofAll(downloadingQueue.values())
                 .filter(downloader -> Status.PAUSED == downloader.getItem().getStatus())
-                .forEach(downloader -> runAsync(() -> getDownloaderByTypeAndRun(downloader.getItem())));
+                .forEach(downloader -> getDownloaderByTypeAndRun(downloader.getItem()))
+        );
     }
 
     // Change State of id identified download
     public void stopDownload(UUID id) {
-        getDownloaderOfItemWithId(id).forEach(Downloader::stopDownload);
+        dispatch(() -> getDownloaderOfItemWithId(id).forEach(Downloader::stopDownload));
     }
 
     public void pauseDownload(UUID id) {
-        getDownloaderOfItemWithId(id).forEach(Downloader::pauseDownload);
+        dispatch(() -> getDownloaderOfItemWithId(id).filter(this::canBePaused).forEach(Downloader::pauseDownload));
+    }
+
+    /**
+     * The processing of the files of an item by ffmpeg can't be paused, it ends on its own
+     */
+    private Boolean canBePaused(Downloader downloader) {
+        return !postProcessing.contains(downloader.getItem());
     }
 
     private Option<Downloader> getDownloaderOfItemWithId(UUID id) {
@@ -141,57 +434,113 @@ public class ItemDownloadManager {
     }
 
     public void restartDownload(UUID id) {
-        getDownloaderOfItemWithId(id)
-                .map(Downloader::getItem)
-                .forEach(this::getDownloaderByTypeAndRun);
+        dispatch(() -> {
+            Option<Item> item = getDownloaderOfItemWithId(id).map(Downloader::getItem);
+
+            if (item.isDefined()) getDownloaderByTypeAndRun(item.get());
+            else pausedBeforeRestart(id).forEach(this::addItemToQueue);
+        });
+    }
+
+    /**
+     * The items paused before the last shutdown keep their status without downloader, they are queued again
+     * when restarted and continue from their journal
+     */
+    private Option<Item> pausedBeforeRestart(UUID id) {
+        return Option.of(itemRepository.findOne(id))
+                .filter(item -> Status.PAUSED == item.getStatus());
     }
 
     public void toggleDownload(UUID id) {
-        Item item = getDownloaderOfItemWithId(id)
-                .map(Downloader::getItem)
-                .getOrElse(Item.DEFAULT_ITEM);
-
-        if (Status.PAUSED == item.getStatus()) {
-            log.debug("restart du download");
-            restartDownload(id);
-        } else if (Status.STARTED == item.getStatus()) {
-            log.debug("pause du download");
-            pauseDownload(id);
-        }
+        dispatch(() -> {
+            Item item = getDownloaderOfItemWithId(id)
+                    .map(Downloader::getItem)
+                    .orElse(() -> pausedBeforeRestart(id))
+                    .getOrElse(Item.DEFAULT_ITEM);
+
+            if (Status.PAUSED == item.getStatus()) {
+                log.debug("restart du download");
+                restartDownload(id);
+            } else if (Status.STARTED == item.getStatus()) {
+                log.debug("pause du download");
+                pauseDownload(id);
+            }
+        });
     }
 
     public void addItemToQueue(UUID id) {
-        this.addItemToQueue(itemRepository.findOne(id));
+        Option.of(itemRepository.findOne(id))
+                .map(item -> item.setNumberOfTry(0))
+                .forEach(this::addItemToQueue);
     }
 
     void addItemToQueue(Item item) {
+        dispatch(() -> {
+            if (waitingQueue.contains(item) || isInDownloadingQueue(item))
+                return;
 
-        if (waitingQueue.contains(item) || isInDownloadingQueue(item))
-            return;
-
-        waitingQueue = waitingQueue.enqueue(item);
-        manageDownload();
+            enqueue(List.of(item));
+            waitingItemRepository.enqueue(Collections.singletonList(item.getId()));
+            manageDownload();
+        });
     }
 
     @Transactional
     public void removeItemFromQueue(UUID id, Boolean stopItem) {
         Item item = itemRepository.findOne(id);
-        this.removeItemFromQueue(item);
+        dispatch(() -> this.removeItemFromQueue(item));
 
         if (stopItem)
             itemRepository.save(item.setStatus(Status.STOPPED));
 
-        this.convertAndSendWaitingQueue();
+        dispatch(this::convertAndSendWaitingQueue);
     }
 
     private void removeItemFromQueue(Item item) {
+        dequeue(item);
+        waitingItemRepository.remove(item.getId());
+    }
+
+    /* Each change of the waiting queue is recorded as an operation, sent to the clients with the next version */
+    private void enqueue(List<Item> items) {
+        items.forEach(item -> {
+            pendingOperations = pendingOperations.enqueue(Operation.insert(item, waitingQueue.size()));
+            waitingQueue = waitingQueue.enqueue(item);
+        });
+    }
+
+    private void dequeue(Item item) {
+        if (!waitingQueue.contains(item)) return;
+
         waitingQueue = waitingQueue.remove(item);
+        pendingOperations = pendingOperations.enqueue(Operation.remove(item));
     }
 
     /* Helpers */
     public void removeACurrentDownload(Item item) {
-        downloadingQueue = downloadingQueue.remove(item);
-        manageDownload();
+        Boolean stopped = Status.STOPPED == item.getStatus();
+        dispatch(() -> {
+            downloadingQueue.get(item).forEach(d -> downloadMetrics.finished(d, hostOf(item), stopped, stopped && d.isFailed()));
+            downloadingQueue = downloadingQueue.remove(item);
+            retries = retries.remove(item);
+            postProcessing = postProcessing.remove(item);
+            if (!stopped) retryPolicy.success(hostOf(item));
+            manageDownload();
+        });
+    }
+
+    /**
+     * The download of the item is over and its files are processed on the post-processing executor. The item keeps its
+     * place in the downloading queue until the end of the processing, so it is still listed and can be stopped, but its
+     * slot goes to the next item
+     */
+    public void startPostProcessing(Item item) {
+        dispatch(() -> {
+            if (!isInDownloadingQueue(item) || postProcessing.contains(item)) return;
+
+            postProcessing = postProcessing.append(item);
+            manageDownload();
+        });
     }
 
     public Item getItemInDownloadingQueue(UUID id) {
@@ -204,8 +553,9 @@ public class ItemDownloadManager {
     private void getDownloaderByTypeAndRun(Item item) {
         if (isInDownloadingQueue(item)) { // case when the worker stay in the downloading queue
             log.debug("Start Item : " + item.getTitle());
+            retries = retries.remove(item);
             Downloader downloader = downloadingQueue.get(item).getOrElse(NO_OP_DOWNLOADER);
-            downloader.restartDownload();
+            runAsync(downloader::restartDownload);
         } else { // Case when the worker totally end when paused, need to launch as new
             launchWithNewWorkerFrom(item);
         }
@@ -222,24 +572,50 @@ public class ItemDownloadManager {
     }
 
     public void resetDownload(Item item) {
-        if (isInDownloadingQueue(item) && canBeReset(item)) {
-            item.addATry();
-            launchWithNewWorkerFrom(item);
-        }
+        dispatch(() -> {
+            if (isInDownloadingQueue(item) && canBeReset(item)) {
+                downloadingQueue.get(item).forEach(d -> downloadMetrics.retry(d, hostOf(item)));
+                item.addATry();
+                retryPolicy.failure(hostOf(item));
+                postProcessing = postProcessing.remove(item);
+                retryLater(item);
+            }
+        });
     }
 
+    /**
+     * Called before the deletion of the item, its row of the waiting queue is removed even if the queue in memory
+     * doesn't contain it anymore, so no row is left without item. The caller waits for it, the item is deleted right after
+     */
     public void removeItemFromQueueAndDownload(Item itemToRemove) {
-        //* If the download is started or paused : *//
-        if (isInDownloadingQueue(itemToRemove)) {
-            stopDownload(itemToRemove.getId());
-        } else if (waitingQueue.contains(itemToRemove)) {
-            removeItemFromQueue(itemToRemove);
-        }
-        this.convertAndSendWaitingQueue();
+        dispatchAndWait(() -> {
+            //* If the download is started or paused : *//
+            if (isInDownloadingQueue(itemToRemove)) {
+                stopDownload(itemToRemove.getId());
+            } else {
+                removeItemFromQueue(itemToRemove);
+            }
+            this.convertAndSendWaitingQueue();
+        });
     }
 
+    /**
+     * Send to the clients the operations applied on the waiting queue since the last version sent, nothing if the queue
+     * is back to this version (an item added and launched by the same command for example).
+     * Each version has its own sequence number, so a client can detect a lost message and ask for a new snapshot.
+     */
     private void convertAndSendWaitingQueue() {
-        this.template.convertAndSend(WS_TOPIC_WAITING_LIST, Queues.newConcurrentLinkedQueue(this.waitingQueue));
+        if (pendingOperations.isEmpty()) return;
+
+        java.util.List<Item> items = waitingQueue.toJavaList();
+        java.util.List<Operation> operations = pendingOperations.toJavaList();
+        pendingOperations = Queue.empty();
+
+        if (items.equals(waitingQueueSnapshot.getItems())) return;
+
+        WaitingQueueDelta delta = new WaitingQueueDelta(waitingQueueSnapshot.getSequence() + 1, operations);
+        waitingQueueSnapshot = new WaitingQueueSnapshot(delta.getSequence(), items);
+        this.template.convertAndSend(WS_TOPIC_WAITING_LIST, delta);
     }
 
     public boolean canBeReset(Item item) {
@@ -255,22 +631,41 @@ public class ItemDownloadManager {
     }
 
     public void moveItemInQueue(UUID itemId, Integer position) {
-        List<Item> copyWL = List.ofAll(waitingQueue);
+        if (!waitingQueue.exists(item -> item.getId().equals(itemId)))
+            throw new RuntimeException("Moving element in waiting list not authorized : Element wasn't in the list");
+
+        dispatch(() -> {
+            List<Item> copyWL = List.ofAll(waitingQueue);
+
+            Option<Item> found = copyWL.find(item -> item.getId().equals(itemId));
+            /* The item can have been launched or removed since the call */
+            if (found.isEmpty()) return;
 
-        Item itemToMove = copyWL
-            .find(item -> item.getId().equals(itemId))
-            .getOrElseThrow(() -> new RuntimeException("Moving element in waiting list not authorized : Element wasn't in the list"));
+            Item itemToMove = found.get();
 
-        List<Item> reorderList = copyWL
-                .removeFirst(item -> item.getId().equals(itemId))
-                .insert(position, itemToMove);
+            List<Item> reorderList = copyWL
+                    .removeFirst(item -> item.getId().equals(itemId))
+                    .insert(position, itemToMove);
 
-        waitingQueue = Queue.ofAll(reorderList);
+            waitingQueue = Queue.ofAll(reorderList);
+            pendingOperations = pendingOperations.enqueue(Operation.move(itemToMove, position));
+            waitingItemRepository.move(
+                    itemId,
+                    position > 0 ? reorderList.get(position - 1).getId() : null,
+                    position + 1 < reorderList.size() ? reorderList.get(position + 1).getId() : null,
+                    reorderList.map(Item::getId).toJavaList()
+            );
 
-        convertAndSendWaitingQueue();
+            convertAndSendWaitingQueue();
+        });
     }
 
     public void clearWaitingQueue() {
-        waitingQueue = Queue.empty();
+        dispatch(() -> {
+            pendingOperations = pendingOperations.enqueueAll(waitingQueue.map(Operation::remove));
+            waitingQueue = Queue.empty();
+            waitingItemRepository.deleteAllInBatch();
+            convertAndSendWaitingQueue();
+        });
     }
 }
@@ -0,0 +1,97 @@
+package lan.dk.podcastserver.manager;
+
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Delays of the retries of the downloads and circuit breakers of their hosts.
+ *
+ * The delay before a retry doubles with each try of the item, between half and all of it is taken at random, so the items
+ * failed at the same time are not retried at the same time. After {@code hostFailureThreshold} failures in a row on a
+ * host its breaker opens, and the items of the host are parked for {@code hostBreakDelay} ms. Then the breaker is half
+ * open, one download of the host is allowed: its success closes the breaker, its failure opens it again.
+ *
+ * Only used from the dispatcher thread of the {@link ItemDownloadManager}, so it isn't synchronized.
+ */
+@Slf4j
+class RetryPolicy {
+
+    private static final Integer MAX_SHIFT = 30;
+
+    private final Long retryDelay;
+    private final Long maxRetryDelay;
+    private final Integer hostFailureThreshold;
+    private final Long hostBreakDelay;
+    private final Map<String, Breaker> breakers = new HashMap<>();
+
+    RetryPolicy(PodcastServerParameters podcastServerParameters) {
+        this.retryDelay = valueOf(podcastServerParameters.getRetryDelay());
+        this.maxRetryDelay = valueOf(podcastServerParameters.getMaxRetryDelay());
+        this.hostFailureThreshold = podcastServerParameters.getHostFailureThreshold();
+        this.hostBreakDelay = valueOf(podcastServerParameters.getHostBreakDelay());
+    }
+
+    /**
+     * @return the delay in ms before the next try of the item
+     */
+    Long delayOf(Item item) {
+        if (retryDelay <= 0) return 0L;
+
+        int shift = Math.max(0, Math.min(MAX_SHIFT, item.getNumberOfTry() - 1));
+        long delay = maxRetryDelay > 0 ? Math.min(maxRetryDelay, retryDelay << shift) : retryDelay << shift;
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    void failure(String host) {
+        if (isNull(hostFailureThreshold) || hostFailureThreshold <= 0) return;
+
+        Breaker breaker = breakers.computeIfAbsent(host, h -> new Breaker());
+        breaker.failures++;
+        if (breaker.failures >= hostFailureThreshold) {
+            log.warn("{} failures in a row on {}, its downloads are parked for {} ms", breaker.failures, host, hostBreakDelay);
+            breaker.openUntil = System.currentTimeMillis() + hostBreakDelay;
+        }
+    }
+
+    void success(String host) {
+        breakers.remove(host);
+    }
+
+    Boolean isOpen(String host) {
+        return closingTimeOf(host) > System.currentTimeMillis();
+    }
+
+    /**
+     * The breaker has been opened and its delay is over, only one download of the host should run until it succeeds
+     */
+    Boolean isHalfOpen(String host) {
+        Breaker breaker = breakers.get(host);
+        return nonNull(breaker) && breaker.openUntil > 0 && breaker.openUntil <= System.currentTimeMillis();
+    }
+
+    /**
+     * @return the time, in ms since epoch, the breaker of the host stops parking its items, 0 if it has never been opened
+     */
+    Long closingTimeOf(String host) {
+        Breaker breaker = breakers.get(host);
+        return isNull(breaker) ? 0L : breaker.openUntil;
+    }
+
+    private static Long valueOf(Long value) {
+        return isNull(value) ? 0L : value;
+    }
+
+    private static class Breaker {
+        private int failures = 0;
+        private long openUntil = 0L;
+    }
+}
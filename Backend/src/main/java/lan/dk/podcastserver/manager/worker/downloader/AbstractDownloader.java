@@ -3,9 +3,9 @@ package lan.dk.podcastserver.manager.worker.downloader;
 import javaslang.control.Try;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Status;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.manager.ItemDownloadManager;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.service.BandwidthService;
 import lan.dk.podcastserver.service.MimeTypeService;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.Getter;
@@ -24,6 +24,7 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
 import java.time.ZonedDateTime;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -35,20 +36,27 @@ import static java.util.Objects.nonNull;
 public abstract class AbstractDownloader implements Runnable, Downloader {
 
     static final String WS_TOPIC_DOWNLOAD = "/topic/download";
+    private static final Long DIGEST_STEP = 1024L * 1024;
 
     @Getter @Setter @Accessors(chain = true) protected Item item;
     @Setter @Accessors(chain = true) protected ItemDownloadManager itemDownloadManager;
 
-    protected final ItemRepository itemRepository;
-    protected final PodcastRepository podcastRepository;
+    protected final DownloadStateStore downloadStateStore;
     protected final PodcastServerParameters podcastServerParameters;
     protected final SimpMessagingTemplate template;
     protected final MimeTypeService mimeTypeService;
+    protected final BandwidthService bandwidthService;
 
     String temporaryExtension;
     protected Path target;
+    Long expectedLength = null;
     private PathMatcher hasTempExtensionMatcher;
     AtomicBoolean stopDownloading = new AtomicBoolean(false);
+    @Getter volatile Long downloadedBytes = 0L;
+    @Getter volatile Long startTime = null;
+    @Getter volatile Long firstByteTime = null;
+    volatile Boolean failed = false;
+    private volatile ContentDigest written = new ContentDigest();
 
     @Override
     public void run() {
@@ -58,20 +66,23 @@ public abstract class AbstractDownloader implements Runnable, Downloader {
 
     @Override
     public void startDownload() {
-        item.setStatus(Status.STARTED);
+        if (isNull(startTime)) startTime = System.currentTimeMillis();
+        item.setStatus(Status.STARTED).setDigest(null);
+        written = new ContentDigest();
         stopDownloading.set(false);
-        saveSyncWithPodcast();
+        failed = false;
+        saveState();
         convertAndSaveBroadcast();
         Try.of(this::download)
             .onFailure(e -> log.error("Error during download", e))
-            .onFailure(e -> this.stopDownload());
+            .onFailure(e -> this.failDownload());
     }
 
     @Override
     public void pauseDownload() {
         item.setStatus(Status.PAUSED);
         stopDownloading.set(true);
-        saveSyncWithPodcast();
+        saveState();
         convertAndSaveBroadcast();
     }
 
@@ -79,15 +90,35 @@ public abstract class AbstractDownloader implements Runnable, Downloader {
     public void stopDownload() {
         item.setStatus(Status.STOPPED);
         stopDownloading.set(true);
-        saveSyncWithPodcast();
+        saveState();
         itemDownloadManager.removeACurrentDownload(item);
         if (nonNull(target)) Try.run(() -> Files.deleteIfExists(target));
         convertAndSaveBroadcast();
     }
 
+    /**
+     * Stop of the download because of an error, unlike a stop asked by the user it counts as a failure in the metrics
+     */
+    public void failDownload() {
+        failed = true;
+        invalidateResolvedUrls();
+        stopDownload();
+    }
+
+    @Override
+    public Boolean isFailed() {
+        return failed;
+    }
+
     @Override
     @Transactional
     public void finishDownload() {
+        if (isTruncated()) {
+            log.warn("Download of {} ended before its {} bytes", item.getTitle(), expectedLength);
+            retryOrStop();
+            return;
+        }
+
         itemDownloadManager.removeACurrentDownload(item);
 
         if (isNull(target)) {
@@ -111,15 +142,68 @@ public abstract class AbstractDownloader implements Runnable, Downloader {
                 .setMimeType(mimeTypeService.probeContentType(target));
         });
 
+        if (nonNull(item.getDigest())) {
+            Try.run(this::replaceBySameContent)
+                .onFailure(e -> log.error("Error during search of a file with the same content as {}", target, e));
+        }
+
         item.setFileName(FilenameUtils.getName(target.getFileName().toString()));
         item.setDownloadDate(ZonedDateTime.now());
 
-        saveSyncWithPodcast();
+        saveState();
         convertAndSaveBroadcast();
     }
 
     public void resetDownload() {
-        stopDownload();
+        failDownload();
+    }
+
+    /**
+     * An item which has already left the downloading queue can't be reset by the manager anymore, it is stopped instead
+     * of staying STARTED forever
+     */
+    void retryOrStop() {
+        if (itemDownloadManager.isInDownloadingQueue(item) && itemDownloadManager.canBeReset(item)) {
+            log.info("Reset of download {}", item.getTitle());
+            invalidateResolvedUrls();
+            itemDownloadManager.resetDownload(item);
+            return;
+        }
+        failDownload();
+    }
+
+    /**
+     * The item can be stopped while its files are processed, the file produced is then deleted instead of finished
+     */
+    Boolean isStoppedDuringPostProcessing(Path output) {
+        if (!stopDownloading.get()) return false;
+
+        Try.run(() -> Files.deleteIfExists(output));
+        return true;
+    }
+
+    private Boolean isTruncated() {
+        return nonNull(target) && nonNull(expectedLength) && expectedLength > 0
+                && Try.of(() -> Files.size(target)).map(size -> size < expectedLength).getOrElse(Boolean.TRUE);
+    }
+
+    /**
+     * The same content is already stored for another item, the new file is replaced by a hardlink to it
+     */
+    private void replaceBySameContent() {
+        downloadStateStore.findFileWithSameContent(item)
+                .filter(same -> !Try.of(() -> Files.isSameFile(same, target)).getOrElse(Boolean.TRUE))
+                .forEach(same -> {
+                    Path link = target.resolveSibling(target.getFileName() + ".link");
+                    Try.run(() -> {
+                        Files.deleteIfExists(link);
+                        Files.createLink(link, same);
+                        Files.move(link, target, StandardCopyOption.REPLACE_EXISTING);
+                        log.info("{} has the same content as {}, replaced by a link", target, same);
+                    })
+                        .onFailure(e -> log.error("Error during link of {} to {}", target, same, e))
+                        .onFailure(e -> Try.run(() -> Files.deleteIfExists(link)));
+                });
     }
 
     @Transactional
@@ -142,7 +226,7 @@ public abstract class AbstractDownloader implements Runnable, Downloader {
             return Files.createTempFile(finalFile.getParent(), FilenameUtils.getBaseName(fileName) + "-", "." + FilenameUtils.getExtension(fileName) + temporaryExtension);
         } catch (IOException e) {
             log.error("Error during creation of target file", e);
-            stopDownload();
+            failDownload();
             return null;
         }
     }
@@ -152,13 +236,79 @@ public abstract class AbstractDownloader implements Runnable, Downloader {
         return  podcastServerParameters.getRootfolder().resolve(item.getPodcast().getTitle()).resolve(fileName);
     }
 
-    @Transactional
-    protected void saveSyncWithPodcast() {
-        Try.run(() -> {
-            item.setPodcast(podcastRepository.findOne(item.getPodcast().getId()));
-            itemRepository.save(item);
-        })
-            .onFailure(e -> log.error("Error during save and Sync of the item {}", item, e));
+    /**
+     * Record the number of bytes downloaded, and wait for the bandwidth of the new bytes when a limit applies
+     */
+    void updateDownloadedBytes(Long bytes) {
+        long received;
+        synchronized (this) {
+            received = bytes - downloadedBytes;
+            recordDownloadedBytes(bytes);
+        }
+        if (received > 0) bandwidthService.acquire(received);
+    }
+
+    /**
+     * Record the number of bytes written by an external process, which can't wait for the bandwidth by itself
+     * @return the time in milliseconds the process has to be held to respect the current rate
+     */
+    long reserveDownloadedBytes(Long bytes) {
+        long received;
+        synchronized (this) {
+            received = bytes - downloadedBytes;
+            recordDownloadedBytes(bytes);
+        }
+        return received > 0 ? bandwidthService.reserve(received) : 0L;
+    }
+
+    /**
+     * Add to the digest of a file written by a library the bytes written since the last call, by blocks of at least
+     * {@link #DIGEST_STEP} bytes, so they are read back while they are still in the page cache
+     */
+    void digestWritten(Path file, Long count) {
+        if (isNull(file) || count - written.getPosition() < DIGEST_STEP) return;
+        Try.run(() -> written.catchUp(file, count))
+            .onFailure(e -> log.debug("Error during digest of {}", file, e));
+    }
+
+    /**
+     * Add the last bytes written to the digest of the file, which becomes the one of the item
+     */
+    void completeDigest(Path file, Long length) {
+        if (isNull(file)) return;
+        Try.of(() -> { written.catchUp(file, length); return written.hex(); })
+            .onSuccess(item::setDigest)
+            .onFailure(e -> log.warn("Digest of {} not computed", file, e));
+    }
+
+    void recordDownloadedBytes(Long bytes) {
+        if (isNull(firstByteTime) && bytes > 0) firstByteTime = System.currentTimeMillis();
+        downloadedBytes = bytes;
+    }
+
+    /**
+     * Only the audio of the items of the podcast is kept
+     */
+    protected Boolean isAudioOnly() {
+        return nonNull(item) && nonNull(item.getPodcast()) && Boolean.TRUE.equals(item.getPodcast().getAudioOnly());
+    }
+
+    /**
+     * Key of the media url of the item in the resolved url cache, the audio only mode may resolve another url
+     */
+    protected String resolvedUrlKey(Item item) {
+        return item.getUrl() + (isAudioOnly() ? "#audio" : "");
+    }
+
+    /**
+     * Forget the urls resolved for the item after a failure, they may have expired or been revoked, so the next try
+     * resolves them again
+     */
+    protected void invalidateResolvedUrls() {}
+
+    protected void saveState() {
+        Try.run(() -> downloadStateStore.save(item))
+            .onFailure(e -> log.error("Error during save of the state of the item {}", item, e));
     }
 
     @Transactional
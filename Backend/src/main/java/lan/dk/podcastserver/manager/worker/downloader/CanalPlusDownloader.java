@@ -1,14 +1,15 @@
 package lan.dk.podcastserver.manager.worker.downloader;
 
 import lan.dk.podcastserver.entity.Item;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.service.*;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Scope;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import java.nio.file.Path;
@@ -23,8 +24,8 @@ import static java.util.Objects.nonNull;
 @Component("CanalPlusDownloader")
 public class CanalPlusDownloader extends M3U8Downloader {
 
-    public CanalPlusDownloader(ItemRepository itemRepository, PodcastRepository podcastRepository, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, UrlService urlService, M3U8Service m3U8Service, FfmpegService ffmpegService, ProcessService processService) {
-        super(itemRepository, podcastRepository, podcastServerParameters, template, mimeTypeService, urlService, m3U8Service, ffmpegService, processService);
+    public CanalPlusDownloader(DownloadStateStore downloadStateStore, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, BandwidthService bandwidthService, UrlService urlService, M3U8Service m3U8Service, FfmpegService ffmpegService, ProcessSupervisor processSupervisor, @Qualifier("PostProcessingExecutor") ThreadPoolTaskExecutor postProcessingExecutor, @Qualifier("SegmentExecutor") ThreadPoolTaskExecutor segmentExecutor) {
+        super(downloadStateStore, podcastServerParameters, template, mimeTypeService, bandwidthService, urlService, m3U8Service, ffmpegService, processSupervisor, postProcessingExecutor, segmentExecutor);
     }
 
     @Override
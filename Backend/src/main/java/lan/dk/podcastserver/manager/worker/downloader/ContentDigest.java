@@ -0,0 +1,87 @@
+package lan.dk.podcastserver.manager.worker.downloader;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * SHA-256 digest of a file built during its download, in the order of the file. The bytes are given by the writer
+ * itself, or, when a library or several workers write the file, caught up from the file up to the length written
+ * without hole, right after they have been written. A downloaded file is never read again once the download is over.
+ */
+public class ContentDigest {
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final Integer BUFFER_SIZE = 64 * 1024;
+
+    private final MessageDigest digest = newDigest();
+    private Long position = 0L;
+
+    /**
+     * Add the next bytes of the file, the buffer itself is not consumed
+     */
+    public synchronized void update(ByteBuffer bytes) {
+        position += bytes.remaining();
+        digest.update(bytes.duplicate());
+    }
+
+    /**
+     * Add the bytes of the file from the last position digested up to length
+     */
+    synchronized void catchUp(FileChannel channel, Long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (position < length) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, length - position));
+            int count = channel.read(buffer, position);
+            if (count < 0) throw new IOException("File shorter than the " + length + " bytes to digest");
+            buffer.flip();
+            digest.update(buffer);
+            position += count;
+        }
+    }
+
+    public synchronized void catchUp(Path file, Long length) throws IOException {
+        if (position >= length) return;
+
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            catchUp(channel, length);
+        }
+    }
+
+    synchronized Long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the digest of all the bytes added, to be called once the whole file has been given
+     */
+    public synchronized String hex() {
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     * Digest of a whole file, for the files written by ffmpeg. Their bytes depend on the version and the options of
+     * ffmpeg, not only on their inputs, so they are read once after their creation.
+     */
+    static String of(Path file) throws IOException {
+        ContentDigest digest = new ContentDigest();
+        digest.catchUp(file, Files.size(file));
+        return digest.hex();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -2,15 +2,16 @@ package lan.dk.podcastserver.manager.worker.downloader;
 
 import javaslang.control.Try;
 import lan.dk.podcastserver.entity.Item;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.service.*;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.validator.constraints.NotEmpty;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Scope;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import static java.util.Objects.nonNull;
@@ -23,10 +24,13 @@ import static java.util.Objects.nonNull;
 @Component("DailyMotionCloudDownloader")
 public class DailyMotionCloudDownloader extends M3U8Downloader {
 
+    private final ResolvedUrlCache resolvedUrlCache;
+
     String redirectionUrl = null;
 
-    public DailyMotionCloudDownloader(ItemRepository itemRepository, PodcastRepository podcastRepository, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, UrlService urlService, M3U8Service m3U8Service, FfmpegService ffmpegService, ProcessService processService) {
-        super(itemRepository, podcastRepository, podcastServerParameters, template, mimeTypeService, urlService, m3U8Service, ffmpegService, processService);
+    public DailyMotionCloudDownloader(DownloadStateStore downloadStateStore, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, BandwidthService bandwidthService, UrlService urlService, M3U8Service m3U8Service, FfmpegService ffmpegService, ProcessSupervisor processSupervisor, @Qualifier("PostProcessingExecutor") ThreadPoolTaskExecutor postProcessingExecutor, @Qualifier("SegmentExecutor") ThreadPoolTaskExecutor segmentExecutor, ResolvedUrlCache resolvedUrlCache) {
+        super(downloadStateStore, podcastServerParameters, template, mimeTypeService, bandwidthService, urlService, m3U8Service, ffmpegService, processSupervisor, postProcessingExecutor, segmentExecutor);
+        this.resolvedUrlCache = resolvedUrlCache;
     }
 
     @Override
@@ -34,15 +38,25 @@ public class DailyMotionCloudDownloader extends M3U8Downloader {
         if (nonNull(redirectionUrl))
             return redirectionUrl;
 
+        redirectionUrl = resolvedUrlCache.resolve(resolvedUrlKey(item), () -> findBestQualityUrl(item));
+
+        return redirectionUrl;
+    }
+
+    private String findBestQualityUrl(Item item) {
         String url = urlService.getRealURL(item.getUrl());
 
-        redirectionUrl = Try.of(() -> urlService.asStream(url))
+        return Try.of(() -> urlService.asStream(url))
                 .toOption()
-                .flatMap(m3U8Service::findBestQuality)
+                .flatMap(is -> m3U8Service.findBestQuality(is, isAudioOnly()))
                 .map(u -> urlService.addDomainIfRelative(url, u))
                 .getOrElse(StringUtils.EMPTY);
+    }
 
-        return redirectionUrl;
+    @Override
+    protected void invalidateResolvedUrls() {
+        resolvedUrlCache.invalidate(resolvedUrlKey(item));
+        urlService.invalidateRealURL(item.getUrl());
     }
 
     @Override
@@ -6,16 +6,17 @@ import com.mashape.unirest.http.HttpResponse;
 import javaslang.control.Option;
 import javaslang.control.Try;
 import lan.dk.podcastserver.entity.Item;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.service.*;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Scope;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import java.util.Objects;
@@ -33,10 +34,12 @@ public class DailymotionDownloader extends M3U8Downloader {
     String url = null;
 
     private final JsonService jsonService;
+    private final ResolvedUrlCache resolvedUrlCache;
 
-    public DailymotionDownloader(ItemRepository itemRepository, PodcastRepository podcastRepository, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, UrlService urlService, M3U8Service m3U8Service, FfmpegService ffmpegService, ProcessService processService, JsonService jsonService) {
-        super(itemRepository, podcastRepository, podcastServerParameters, template, mimeTypeService, urlService, m3U8Service, ffmpegService, processService);
+    public DailymotionDownloader(DownloadStateStore downloadStateStore, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, BandwidthService bandwidthService, UrlService urlService, M3U8Service m3U8Service, FfmpegService ffmpegService, ProcessSupervisor processSupervisor, @Qualifier("PostProcessingExecutor") ThreadPoolTaskExecutor postProcessingExecutor, @Qualifier("SegmentExecutor") ThreadPoolTaskExecutor segmentExecutor, JsonService jsonService, ResolvedUrlCache resolvedUrlCache) {
+        super(downloadStateStore, podcastServerParameters, template, mimeTypeService, bandwidthService, urlService, m3U8Service, ffmpegService, processSupervisor, postProcessingExecutor, segmentExecutor);
         this.jsonService = jsonService;
+        this.resolvedUrlCache = resolvedUrlCache;
     }
 
     public String getItemUrl(Item item) {
@@ -49,7 +52,13 @@ public class DailymotionDownloader extends M3U8Downloader {
             return url;
         }
 
-        url = Try.of(() -> urlService
+        url = resolvedUrlCache.resolve(resolvedUrlKey(item), () -> findStreamUrl(item));
+
+        return url;
+    }
+
+    private String findStreamUrl(Item item) {
+        return Try.of(() -> urlService
                 .get(item.getUrl())
                 .asString()
         )
@@ -61,8 +70,6 @@ public class DailymotionDownloader extends M3U8Downloader {
                 .map(m3U8Service::getM3U8UrlFormMultiStreamFile)
                 .map(this::removeHash)
                 .getOrElse(() -> null);
-
-        return url;
     }
 
     private String removeHash(String s) {
@@ -82,6 +89,11 @@ public class DailymotionDownloader extends M3U8Downloader {
         @JsonProperty("stream_chromecast_url") @Getter @Setter String url;
     }
 
+    @Override
+    protected void invalidateResolvedUrls() {
+        resolvedUrlCache.invalidate(resolvedUrlKey(item));
+    }
+
     @Override
     public Integer compatibility(String url) {
         return url.contains("dailymotion.com/video") ? 1 : Integer.MAX_VALUE;
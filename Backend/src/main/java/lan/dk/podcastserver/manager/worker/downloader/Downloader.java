@@ -11,6 +11,10 @@ public interface Downloader extends Runnable{
     Downloader setItemDownloadManager(ItemDownloadManager itemDownloadManager);
 
     Item getItem();
+    default Long getDownloadedBytes() { return 0L; }
+    default Long getStartTime() { return null; }
+    default Long getFirstByteTime() { return null; }
+    default Boolean isFailed() { return false; }
     String getItemUrl(Item item);
 
     void startDownload();
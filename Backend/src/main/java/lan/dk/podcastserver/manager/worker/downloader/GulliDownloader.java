@@ -5,11 +5,14 @@ import com.jayway.jsonpath.TypeRef;
 import javaslang.collection.List;
 import javaslang.control.Option;
 import lan.dk.podcastserver.entity.Item;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.manager.DownloadStateStore;
+import lan.dk.podcastserver.repository.DownloadJournalRepository;
+import lan.dk.podcastserver.service.AsyncHttpService;
 import lan.dk.podcastserver.service.HtmlService;
 import lan.dk.podcastserver.service.JsonService;
+import lan.dk.podcastserver.service.BandwidthService;
 import lan.dk.podcastserver.service.MimeTypeService;
+import lan.dk.podcastserver.service.ResolvedUrlCache;
 import lan.dk.podcastserver.service.UrlService;
 import lan.dk.podcastserver.service.factory.WGetFactory;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
@@ -18,8 +21,10 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.jsoup.nodes.Element;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Scope;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import java.util.regex.Matcher;
@@ -41,13 +46,15 @@ public class GulliDownloader extends HTTPDownloader {
 
     private final HtmlService htmlService;
     private final JsonService jsonService;
+    private final ResolvedUrlCache resolvedUrlCache;
 
     private String url = null;
 
-    public GulliDownloader(ItemRepository itemRepository, PodcastRepository podcastRepository, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, UrlService urlService, WGetFactory wGetFactory, HtmlService htmlService, JsonService jsonService) {
-        super(itemRepository, podcastRepository, podcastServerParameters, template, mimeTypeService, urlService, wGetFactory);
+    public GulliDownloader(DownloadStateStore downloadStateStore, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, BandwidthService bandwidthService, UrlService urlService, WGetFactory wGetFactory, DownloadJournalRepository downloadJournalRepository, AsyncHttpService asyncHttpService, @Qualifier("SegmentExecutor") ThreadPoolTaskExecutor segmentExecutor, @Qualifier("DownloadExecutor") ThreadPoolTaskExecutor downloadExecutor, HtmlService htmlService, JsonService jsonService, ResolvedUrlCache resolvedUrlCache) {
+        super(downloadStateStore, podcastServerParameters, template, mimeTypeService, bandwidthService, urlService, wGetFactory, downloadJournalRepository, asyncHttpService, segmentExecutor, downloadExecutor);
         this.htmlService = htmlService;
         this.jsonService = jsonService;
+        this.resolvedUrlCache = resolvedUrlCache;
     }
 
     @Override
@@ -58,13 +65,17 @@ public class GulliDownloader extends HTTPDownloader {
         if (nonNull(url))
             return url;
 
-        url = htmlService.get(item.getUrl())
+        url = resolvedUrlCache.resolve(resolvedUrlKey(item), () -> findStreamUrl(item));
+
+        return url;
+    }
+
+    private String findStreamUrl(Item item) {
+        return htmlService.get(item.getUrl())
                 .map(d -> d.select("script"))
                 .flatMap(scripts -> List.ofAll(scripts).find(e -> e.html().contains("playlist")))
                 .flatMap(this::getPlaylistFromGulliScript)
                 .getOrElse(StringUtils.EMPTY);
-
-        return url;
     }
 
     private Option<String> getPlaylistFromGulliScript(Element element) {
@@ -97,6 +108,12 @@ public class GulliDownloader extends HTTPDownloader {
 
     }
 
+    @Override
+    protected void invalidateResolvedUrls() {
+        super.invalidateResolvedUrls();
+        resolvedUrlCache.invalidate(resolvedUrlKey(item));
+    }
+
     @Override
     public Integer compatibility(String url) {
         return url.contains("replay.gulli.fr") ? 1 : Integer.MAX_VALUE;
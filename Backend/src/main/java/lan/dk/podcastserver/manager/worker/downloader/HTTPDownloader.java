@@ -4,21 +4,31 @@ import com.github.axet.wget.WGet;
 import com.github.axet.wget.info.DownloadInfo;
 import com.github.axet.wget.info.ex.DownloadInterruptedError;
 import com.github.axet.wget.info.ex.DownloadMultipartError;
+import com.mashape.unirest.http.HttpResponse;
+import javaslang.control.Option;
+import javaslang.control.Try;
+import lan.dk.podcastserver.entity.DownloadJournal;
 import lan.dk.podcastserver.entity.Item;
-import lan.dk.podcastserver.manager.ItemDownloadManager;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.entity.Status;
+import lan.dk.podcastserver.manager.DownloadStateStore;
+import lan.dk.podcastserver.repository.DownloadJournalRepository;
 import lan.dk.podcastserver.service.*;
 import lan.dk.podcastserver.service.factory.WGetFactory;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Scope;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
@@ -28,17 +38,31 @@ import static java.util.Objects.nonNull;
 @Component("HTTPDownloader")
 public class HTTPDownloader extends AbstractDownloader {
 
+    static final String ETAG = "ETag";
+    static final String LAST_MODIFIED = "Last-Modified";
+
     final UrlService urlService;
     private final WGetFactory wGetFactory;
+    private final DownloadJournalRepository downloadJournalRepository;
+    private final AsyncHttpService asyncHttpService;
+    private final ThreadPoolTaskExecutor segmentExecutor;
+    private final ThreadPoolTaskExecutor downloadExecutor;
 
     DownloadInfo info = null;
+    private String sourceUrl = null;
+    private volatile CompletableFuture<AsyncHttpService.DownloadedFile> transfer = null;
+    private volatile Boolean segmented = false;
 
     private final HTTPWatcher itemSynchronisation = new HTTPWatcher(this);
 
-    public HTTPDownloader(ItemRepository itemRepository, PodcastRepository podcastRepository, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, UrlService urlService, WGetFactory wGetFactory) {
-        super(itemRepository, podcastRepository, podcastServerParameters, template, mimeTypeService);
+    public HTTPDownloader(DownloadStateStore downloadStateStore, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, BandwidthService bandwidthService, UrlService urlService, WGetFactory wGetFactory, DownloadJournalRepository downloadJournalRepository, AsyncHttpService asyncHttpService, @Qualifier("SegmentExecutor") ThreadPoolTaskExecutor segmentExecutor, @Qualifier("DownloadExecutor") ThreadPoolTaskExecutor downloadExecutor) {
+        super(downloadStateStore, podcastServerParameters, template, mimeTypeService, bandwidthService);
         this.urlService = urlService;
         this.wGetFactory = wGetFactory;
+        this.downloadJournalRepository = downloadJournalRepository;
+        this.asyncHttpService = asyncHttpService;
+        this.segmentExecutor = segmentExecutor;
+        this.downloadExecutor = downloadExecutor;
     }
 
     @Override
@@ -46,11 +70,21 @@ public class HTTPDownloader extends AbstractDownloader {
         log.debug("Download");
 
         try {
-            info = wGetFactory.newDownloadInfo(urlService.getRealURL(getItemUrl(item)));
+            sourceUrl = getItemUrl(item);
+            String url = urlService.getRealURL(sourceUrl);
+            info = wGetFactory.newDownloadInfo(url);
             info.extract(stopDownloading, itemSynchronisation);
-            target = getTargetFile(item);
-            WGet w = wGetFactory.newWGet(info, target.toFile());
-            w.download(stopDownloading, itemSynchronisation);
+            target = resumeOrCreateTarget(url);
+            expectedLength = info.getLength();
+
+            if (isSegmentable(info)) {
+                segmentedDownload(url, info.getLength());
+            } else if (Boolean.TRUE.equals(podcastServerParameters.getAsyncDownload())) {
+                asyncDownload(url, info.getLength());
+            } else {
+                WGet w = wGetFactory.newWGet(info, target.toFile());
+                w.download(stopDownloading, itemSynchronisation);
+            }
         } catch (DownloadMultipartError e) {
             e.getInfo().getParts()
                 .stream()
@@ -58,16 +92,186 @@ public class HTTPDownloader extends AbstractDownloader {
                 .filter(Objects::nonNull)
                 .forEach(Throwable::printStackTrace);
 
-            stopDownload();
+            failDownload();
         } catch (DownloadInterruptedError e) {
             log.debug("Arrêt du téléchargement");
         } catch (IOException e) {
             log.debug("Exception during download", e);
-            stopDownload();
+            failDownload();
         }
         return item;
     }
 
+    private Boolean isSegmentable(DownloadInfo info) {
+        Integer maxSegment = podcastServerParameters.getMaxSegmentByDownload();
+        return Boolean.TRUE.equals(info.getRange())
+                && nonNull(info.getLength()) && info.getLength() > 2 * SegmentedDownload.CHUNK_SIZE
+                && nonNull(maxSegment) && maxSegment > 1;
+    }
+
+    private void segmentedDownload(String url, Long length) throws IOException {
+        segmented = true;
+        SegmentedDownload download = SegmentedDownload.builder()
+                .url(url)
+                .target(target)
+                .length(length)
+                .offset(checkpointOf(target))
+                .maxSegments(podcastServerParameters.getMaxSegmentByDownload())
+                .userAgent(UrlService.USER_AGENT_DESKTOP)
+                .timeout(podcastServerParameters.getDownloadTimeout())
+                .executor(segmentExecutor)
+                .stopDownloading(stopDownloading)
+                .onProgression(count -> {
+                    updateDownloadedBytes(count);
+                    updateProgression(count, length);
+                })
+                .onCheckpoint(this::saveCheckpoint)
+            .build();
+        download.download();
+
+        if (!stopDownloading.get()) {
+            item.setDigest(download.getDigest());
+            log.debug(FilenameUtils.getName(String.valueOf(getItemUrl(item))) + " - Téléchargement terminé");
+            finishDownload();
+        }
+    }
+
+    /**
+     * The file of a segmented download keeps its preallocated size if the application has been killed during the
+     * transfer, only the length without hole recorded in the journal can be trusted
+     */
+    private Long checkpointOf(Path file) {
+        Long size = sizeOf(file);
+        return findJournal()
+                .map(DownloadJournal::getBytesWritten)
+                .filter(Objects::nonNull)
+                .map(bytes -> Math.min(bytes, size))
+                .getOrElse(0L);
+    }
+
+    private void saveCheckpoint(Long bytes) {
+        findJournal().forEach(j -> downloadJournalRepository.save(j.setBytesWritten(bytes).setUpdateDate(ZonedDateTime.now())));
+    }
+
+    /**
+     * Start the transfer on the non-blocking client and return right away, the end of the download is handled by the
+     * callback, so the thread of the download executor is released during the transfer. The callback saves the item and
+     * notifies the manager, it runs back on the download executor to keep this work off the IO threads of the client.
+     */
+    private void asyncDownload(String url, Long length) {
+        transfer = asyncHttpService.download(url, target, sizeOf(target), count -> {
+            recordDownloadedBytes(count);
+            updateProgression(count, length);
+        });
+        transfer.whenCompleteAsync((file, e) -> {
+            if (stopDownloading.get()) return;
+
+            if (nonNull(e)) {
+                log.error("Error during download of {}", url, e);
+                retryOrStop();
+                return;
+            }
+
+            item.setDigest(file.getDigest());
+            log.debug(FilenameUtils.getName(String.valueOf(getItemUrl(item))) + " - Téléchargement terminé");
+            finishDownload();
+        }, downloadExecutor);
+    }
+
+    private void cancelTransfer() {
+        stopDownloading.set(true);
+        Option.of(transfer).forEach(t -> t.cancel(true));
+    }
+
+    private synchronized void updateProgression(Long count, Long length) {
+        if (isNull(length) || length <= 0L) return;
+
+        int progression = (int) (count*100 / (float) length);
+        if (item.getProgression() < progression) {
+            item.setProgression(progression);
+            log.debug("Progression de {} : {}%", item.getTitle(), progression);
+        }
+    }
+
+    /**
+     * Reuse the partial file of a previous run if the server still serves the same resource and accepts range requests,
+     * the download then continues from the size of this file. Otherwise, a new target is created.
+     */
+    private Path resumeOrCreateTarget(String url) {
+        HttpResponse<String> head = Try.of(() -> urlService.head(url).asString()).getOrElse(() -> null);
+        String eTag = UrlService.headerOf(head, ETAG).getOrElse(() -> null);
+        String lastModified = UrlService.headerOf(head, LAST_MODIFIED).getOrElse(() -> null);
+
+        Option<DownloadJournal> previous = findJournal();
+        Boolean canBeResumed = previous
+                .filter(j -> j.isSameResource(url, eTag, lastModified))
+                .filter(j -> Boolean.TRUE.equals(info.getRange()))
+                .exists(j -> Files.exists(j.getTargetPath()));
+
+        if (isNull(target) && canBeResumed) {
+            log.info("Resume download of {} at {}", item.getTitle(), previous.get().getTarget());
+            target = previous.get().getTargetPath();
+        } else if (!canBeResumed) {
+            previous.forEach(j -> Try.run(() -> Files.deleteIfExists(j.getTargetPath())));
+        }
+
+        Path file = getTargetFile(item);
+        if (nonNull(file) && nonNull(item.getId())) {
+            downloadJournalRepository.save(DownloadJournal.builder()
+                    .id(item.getId())
+                    .url(url)
+                    .target(file.toString())
+                    .bytesWritten(canBeResumed ? previous.get().getBytesWritten() : sizeOf(file))
+                    .eTag(eTag)
+                    .lastModified(lastModified)
+                    .updateDate(ZonedDateTime.now())
+                    .build()
+            );
+        }
+        return file;
+    }
+
+    private Option<DownloadJournal> findJournal() {
+        return Option.of(item.getId()).flatMap(id -> Option.of(downloadJournalRepository.findOne(id)));
+    }
+
+    private static Long sizeOf(Path file) {
+        return Try.of(() -> Files.size(file)).getOrElse(0L);
+    }
+
+    @Override
+    public void pauseDownload() {
+        super.pauseDownload();
+        cancelTransfer();
+        /* A segmented download records its own checkpoints, its file may not be truncated yet */
+        if (segmented) return;
+        findJournal()
+                .filter(j -> nonNull(target))
+                .forEach(j -> downloadJournalRepository.save(j.setBytesWritten(sizeOf(target)).setUpdateDate(ZonedDateTime.now())));
+    }
+
+    @Override
+    public void stopDownload() {
+        cancelTransfer();
+        super.stopDownload();
+        deleteJournal();
+    }
+
+    @Override
+    public void finishDownload() {
+        super.finishDownload();
+        if (Status.FINISH == item.getStatus()) deleteJournal();
+    }
+
+    @Override
+    protected void invalidateResolvedUrls() {
+        Option.of(sourceUrl).forEach(urlService::invalidateRealURL);
+    }
+
+    private void deleteJournal() {
+        findJournal().forEach(downloadJournalRepository::delete);
+    }
+
     @Override
     public Integer compatibility(String url) {
         return url.startsWith("http") ? Integer.MAX_VALUE-1 : Integer.MAX_VALUE;
@@ -86,7 +290,6 @@ public class HTTPDownloader extends AbstractDownloader {
         public void run() {
 
             DownloadInfo info = httpDownloader.info;
-            ItemDownloadManager itemDownloadManager = httpDownloader.itemDownloadManager;
             Item item = httpDownloader.item;
 
             switch (info.getState()) {
@@ -95,12 +298,12 @@ public class HTTPDownloader extends AbstractDownloader {
                     log.debug(FilenameUtils.getName(String.valueOf(httpDownloader.getItemUrl(item))) + " " + info.getState());
                     break;
                 case ERROR:
-                    httpDownloader.stopDownload();
+                    httpDownloader.failDownload();
                     break;
                 case DONE:
                     log.debug(FilenameUtils.getName(String.valueOf(httpDownloader.getItemUrl(item))) + " - Téléchargement terminé");
+                    httpDownloader.completeDigest(httpDownloader.target, info.getCount());
                     httpDownloader.finishDownload();
-                    itemDownloadManager.removeACurrentDownload(item);
                     break;
                 case RETRYING:
                     log.debug(FilenameUtils.getName(String.valueOf(httpDownloader.getItemUrl(item))) + " " + info.getState() + " " + info.getDelay());
@@ -109,10 +312,11 @@ public class HTTPDownloader extends AbstractDownloader {
                     if (isNull(info.getLength()) || (nonNull(info.getLength()) && info.getLength() == 0L)) break;
 
                     int progression = (int) (info.getCount()*100 / (float) info.getLength());
+                    httpDownloader.updateDownloadedBytes(info.getCount());
+                    httpDownloader.digestWritten(httpDownloader.target, info.getCount());
                     if (item.getProgression() < progression) {
                         item.setProgression(progression);
                         log.debug("Progression de {} : {}%", item.getTitle(), progression);
-                        httpDownloader.convertAndSaveBroadcast();
                     }
                     break;
                 case STOP:
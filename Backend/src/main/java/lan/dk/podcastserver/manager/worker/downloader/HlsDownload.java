@@ -0,0 +1,194 @@
+package lan.dk.podcastserver.manager.worker.downloader;
+
+import javaslang.collection.Array;
+import javaslang.collection.List;
+import javaslang.control.Try;
+import lan.dk.podcastserver.service.M3U8Service;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.isNull;
+
+/**
+ * Download of the segments of a HLS media playlist, fetched in parallel and appended in order to the target file.
+ *
+ * At most {@link #maxSegments} segments are in flight, each one is kept in memory until all the previous ones have been
+ * written. The JDK keeps the connections alive between the segments, so the same connections are reused by the workers.
+ * The number of segments written is saved in a file next to the target, so an interrupted download is resumed from the
+ * first segment not written. The digest of the file is computed from the segments as they are appended.
+ * The segments are fetched on an executor shared by all the downloads, each connection with a connect and read
+ * {@link #timeout}.
+ */
+@Slf4j
+class HlsDownload {
+
+    static final String PROGRESS_EXTENSION = ".segments";
+    private static final Integer BUFFER_SIZE = 64 * 1024;
+    private static final Integer MAX_RETRY = 3;
+    private static final String USER_AGENT = "User-Agent";
+    private static final Integer DEFAULT_TIMEOUT = 30_000;
+
+    private final M3U8Service.MediaPlaylist playlist;
+    private final Path target;
+    private final Path progress;
+    private final Integer maxSegments;
+    private final String userAgent;
+    private final Integer timeout;
+    private final Executor executor;
+    private final AtomicBoolean stopDownloading;
+    private final BiConsumer<Long, Double> onProgression;
+    private final ContentDigest digest = new ContentDigest();
+    private String completeDigest = null;
+
+    @Builder
+    private HlsDownload(M3U8Service.MediaPlaylist playlist, Path target, Integer maxSegments, String userAgent, Integer timeout, Executor executor, AtomicBoolean stopDownloading, BiConsumer<Long, Double> onProgression) {
+        this.playlist = playlist;
+        this.target = target;
+        this.progress = progressFileOf(target);
+        this.maxSegments = Math.max(1, maxSegments);
+        this.userAgent = userAgent;
+        this.timeout = isNull(timeout) ? DEFAULT_TIMEOUT : timeout;
+        this.executor = executor;
+        this.stopDownloading = stopDownloading;
+        this.onProgression = onProgression;
+    }
+
+    /**
+     * @return true if all the segments have been written in the target
+     */
+    Boolean download() throws IOException {
+        Array<M3U8Service.Segment> segments = playlist.getSegments().toArray();
+        Queue<Future<byte[]>> inFlight = new LinkedList<>();
+
+        try (FileChannel channel = FileChannel.open(target, CREATE, READ, WRITE)) {
+            int written = resume(channel);
+            int next = written;
+            double duration = segments.take(written).map(M3U8Service.Segment::getDuration).sum().doubleValue();
+
+            while (written < segments.length() && !stopDownloading.get()) {
+                while (inFlight.size() < maxSegments && next < segments.length()) {
+                    String url = segments.get(next++).getUrl();
+                    FutureTask<byte[]> segment = new FutureTask<>(() -> fetch(url));
+                    executor.execute(segment);
+                    inFlight.add(segment);
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(waitFor(inFlight.poll()));
+                digest.update(buffer);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+
+                duration += segments.get(written++).getDuration();
+                saveProgress(written, channel.position());
+                onProgression.accept(channel.position(), duration);
+            }
+
+            if (written < segments.length()) return false;
+
+            completeDigest = digest.hex();
+            return true;
+        } finally {
+            /* The executor is shared, only the segments of this download are cancelled */
+            inFlight.forEach(f -> f.cancel(true));
+        }
+    }
+
+    /**
+     * @return the SHA-256 digest of the file, null if all the segments have not been written
+     */
+    String getDigest() {
+        return completeDigest;
+    }
+
+    /**
+     * Position the channel after the segments written by a previous download
+     * @return the number of segments already written
+     */
+    private int resume(FileChannel channel) throws IOException {
+        List<Long> saved = Try.of(() -> List.ofAll(Files.readAllLines(progress)).map(Long::valueOf)).getOrElse(List.empty());
+        if (saved.length() != 2 || saved.get(1) > channel.size()) {
+            channel.truncate(0);
+            return 0;
+        }
+
+        log.debug("Resume of {} after {} segments", target.getFileName(), saved.get(0));
+        channel.truncate(saved.get(1));
+        channel.position(saved.get(1));
+        digest.catchUp(channel, saved.get(1));
+        return saved.get(0).intValue();
+    }
+
+    private void saveProgress(int segments, long position) throws IOException {
+        Files.write(progress, List.of(String.valueOf(segments), String.valueOf(position)));
+    }
+
+    private byte[] waitFor(Future<byte[]> segment) throws IOException {
+        try {
+            return segment.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopDownloading.set(true);
+            throw new IOException("HLS download interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error during download of a segment of " + target.getFileName(), e.getCause());
+        }
+    }
+
+    private byte[] fetch(String url) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transfer(url);
+            } catch (IOException e) {
+                if (attempt >= MAX_RETRY || stopDownloading.get()) throw e;
+                log.debug("Retry of segment {} after error : {}", url, e.getMessage());
+            }
+        }
+    }
+
+    private byte[] transfer(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setRequestProperty(USER_AGENT, userAgent);
+
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException("Unexpected status " + status + " for segment " + url);
+        }
+
+        /* The stream is read until its end and closed without disconnection, so the connection goes back to the pool */
+        try (InputStream is = connection.getInputStream(); ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(BUFFER_SIZE, connection.getContentLength()))) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                if (stopDownloading.get()) throw new IOException("Download of segment " + url + " interrupted");
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    static Path progressFileOf(Path target) {
+        return target.resolveSibling(target.getFileName() + PROGRESS_EXTENSION);
+    }
+}
@@ -1,21 +1,25 @@
 package lan.dk.podcastserver.manager.worker.downloader;
 
+import javaslang.control.Option;
 import javaslang.control.Try;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Status;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.service.*;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.extern.slf4j.Slf4j;
 import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import net.bramp.ffmpeg.builder.FFmpegOutputBuilder;
 import net.bramp.ffmpeg.progress.ProgressListener;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Scope;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Objects;
 
@@ -26,19 +30,25 @@ import static java.util.Objects.nonNull;
 @Component("M3U8Downloader")
 public class M3U8Downloader extends AbstractDownloader {
 
+    private static final String SEGMENTS_EXTENSION = ".ts";
+
     protected final UrlService urlService;
     protected final M3U8Service m3U8Service;
     protected final FfmpegService ffmpegService;
-    private final ProcessService processService;
+    private final ProcessSupervisor processSupervisor;
+    private final ThreadPoolTaskExecutor postProcessingExecutor;
+    private final ThreadPoolTaskExecutor segmentExecutor;
 
     private Process process;
 
-    public M3U8Downloader(ItemRepository itemRepository, PodcastRepository podcastRepository, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, UrlService urlService, M3U8Service m3U8Service, FfmpegService ffmpegService, ProcessService processService) {
-        super(itemRepository, podcastRepository, podcastServerParameters, template, mimeTypeService);
+    public M3U8Downloader(DownloadStateStore downloadStateStore, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, BandwidthService bandwidthService, UrlService urlService, M3U8Service m3U8Service, FfmpegService ffmpegService, ProcessSupervisor processSupervisor, @Qualifier("PostProcessingExecutor") ThreadPoolTaskExecutor postProcessingExecutor, @Qualifier("SegmentExecutor") ThreadPoolTaskExecutor segmentExecutor) {
+        super(downloadStateStore, podcastServerParameters, template, mimeTypeService, bandwidthService);
         this.urlService = urlService;
         this.m3U8Service = m3U8Service;
         this.ffmpegService = ffmpegService;
-        this.processService = processService;
+        this.processSupervisor = processSupervisor;
+        this.postProcessingExecutor = postProcessingExecutor;
+        this.segmentExecutor = segmentExecutor;
     }
 
     @Override
@@ -47,41 +57,113 @@ public class M3U8Downloader extends AbstractDownloader {
 
         target = getTargetFile(item);
 
+        Option<M3U8Service.MediaPlaylist> playlist = Boolean.TRUE.equals(podcastServerParameters.getNativeHlsDownload())
+                ? m3U8Service.findMediaPlaylist(getItemUrl(item), isAudioOnly())
+                : Option.none();
+
+        if (playlist.isDefined()) {
+            downloadSegments(playlist.get());
+        } else {
+            downloadWithFfmpeg();
+        }
+
+        return item;
+    }
+
+    private void downloadSegments(M3U8Service.MediaPlaylist playlist) {
+        Path segments = segmentsFileOf(target);
+        Double duration = playlist.getDuration();
+
+        HlsDownload download = HlsDownload.builder()
+                .playlist(playlist)
+                .target(segments)
+                .maxSegments(podcastServerParameters.getMaxSegmentByDownload())
+                .userAgent(withUserAgent())
+                .timeout(podcastServerParameters.getDownloadTimeout())
+                .executor(segmentExecutor)
+                .stopDownloading(stopDownloading)
+                .onProgression((bytes, seconds) -> updateProgression(duration > 0 ? (int) (seconds / duration * 100) : 0, bytes))
+            .build();
+
+        Boolean complete = Try.of(download::download)
+            .onFailure(e -> log.error("Error during download of the segments of {}", item.getTitle(), e))
+            .getOrElse(Boolean.FALSE);
+
+        if (item.getStatus() != Status.STARTED) return;
+
+        if (!complete) {
+            retryOrStop();
+            return;
+        }
+
+        /* The segments are on disk, the download slot goes to the next item while they are remuxed */
+        itemDownloadManager.startPostProcessing(item);
+        postProcessingExecutor.execute(() -> remux(segments));
+    }
+
+    private void remux(Path segments) {
+        Try<Void> remux = Try.run(() -> processSupervisor.withSlot(item, () -> {
+            if (isAudioOnly()) ffmpegService.extractAudio(segments, target);
+            else ffmpegService.remux(segments, target);
+            return null;
+        }));
+
+        if (isStoppedDuringPostProcessing(target)) return;
+
+        remux
+            .onSuccess(v -> item.setDigest(Try.of(() -> ContentDigest.of(target)).getOrElse(() -> null)))
+            .onSuccess(v -> deleteSegments())
+            .onSuccess(v -> finishDownload())
+            .onFailure(e -> log.error("Error during remux of the segments of {}", item.getTitle(), e))
+            .onFailure(e -> Try.run(() -> Files.deleteIfExists(target)))
+            .onFailure(e -> retryOrStop());
+    }
+
+    private void downloadWithFfmpeg() {
         Double duration = ffmpegService.getDurationOf(getItemUrl(item), withUserAgent());
 
-        FFmpegBuilder command = new FFmpegBuilder()
+        FFmpegOutputBuilder output = new FFmpegBuilder()
                 .setUserAgent(withUserAgent())
                 .addInput(getItemUrl(item))
                 .addOutput(target.toAbsolutePath().toString())
                     .setFormat("mp4")
                     .setAudioBitStreamFilter(FfmpegService.AUDIO_BITSTREAM_FILTER_AAC_ADTSTOASC)
                     .setVideoCodec(FfmpegService.CODEC_COPY)
-                    .setAudioCodec(FfmpegService.CODEC_COPY)
-                .done();
+                    .setAudioCodec(FfmpegService.CODEC_COPY);
 
+        if (isAudioOnly())
+            output.disableVideo();
+
+        FFmpegBuilder command = output.done();
 
         process = ffmpegService.download(getItemUrl(item), command, handleProgression(duration));
 
-        processService.waitFor(process);
+        processSupervisor.register(item, process, ProcessSupervisor.Events.NONE).join();
 
         if (item.getStatus() == Status.STARTED)
             finishDownload();
-
-        return item;
     }
 
     protected String withUserAgent() {
         return UrlService.USER_AGENT_DESKTOP;
     }
 
+    /**
+     * ffmpeg doesn't wait for the reader of its progression, it is held by the supervisor for the bandwidth of its bytes
+     */
     private ProgressListener handleProgression(Double duration) {
-        return p -> broadcastProgression(((Float) (Long.valueOf(p.out_time_ms).floatValue() / duration.floatValue() * 100)).intValue());
+        return p -> {
+            item.setProgression(((Float) (Long.valueOf(p.out_time_ms).floatValue() / duration.floatValue() * 100)).intValue());
+            long wait = reserveDownloadedBytes(p.total_size);
+            if (wait > 0) processSupervisor.hold(item, wait);
+            log.debug("Progression : {}", item.getProgression());
+        };
     }
 
-    private void broadcastProgression(int cpt) {
+    private void updateProgression(int cpt, long bytes) {
         item.setProgression(cpt);
+        updateDownloadedBytes(bytes);
         log.debug("Progression : {}", item.getProgression());
-        convertAndSaveBroadcast();
     }
 
     @Override
@@ -96,43 +178,60 @@ public class M3U8Downloader extends AbstractDownloader {
 
         Item m3u8Item = Item.builder()
                 .podcast(item.getPodcast())
-                .url(FilenameUtils.getBaseName(StringUtils.substringBeforeLast(getItemUrl(item), "?")).concat(".mp4"))
+                .url(FilenameUtils.getBaseName(StringUtils.substringBeforeLast(getItemUrl(item), "?")).concat(isAudioOnly() ? ".m4a" : ".mp4"))
             .build();
 
         return super.getTargetFile(m3u8Item);
     }
 
+    private static Path segmentsFileOf(Path target) {
+        return target.resolveSibling(target.getFileName() + SEGMENTS_EXTENSION);
+    }
+
+    private void deleteSegments() {
+        Path segments = segmentsFileOf(target);
+        Try.run(() -> Files.deleteIfExists(segments));
+        Try.run(() -> Files.deleteIfExists(HlsDownload.progressFileOf(segments)));
+    }
+
     @Override
     public void pauseDownload() {
-        ProcessBuilder pauseProcess = processService.newProcessBuilder("kill", "-STOP", "" + processService.pidOf(process));
-        processService
-                .start(pauseProcess)
-                .andThenTry(super::pauseDownload)
-                .onFailure(e -> {
-                    log.error("Error during pause of process :", e);
-                    this.stopDownload();
-                });
+        if (!processSupervisor.isSupervised(item)) {
+            super.pauseDownload();
+            return;
+        }
+
+        if (!processSupervisor.pause(item)) {
+            log.error("Error during pause of process of {}", item.getTitle());
+            this.failDownload();
+            return;
+        }
+
+        super.pauseDownload();
     }
 
     @Override
     public void restartDownload() {
-        ProcessBuilder restart = new ProcessBuilder("kill", "-SIGCONT", "" + processService.pidOf(process));
-
-        processService.start(restart)
-            .andThenTry(() -> {
-                item.setStatus(Status.STARTED);
-                saveSyncWithPodcast();
-                convertAndSaveBroadcast();
-            })
-            .onFailure(e -> {
-                log.error("Error during restart of process :", e);
-                this.stopDownload();
-            });
+        if (!processSupervisor.isSupervised(item)) {
+            startDownload();
+            return;
+        }
+
+        if (!processSupervisor.resume(item)) {
+            log.error("Error during restart of process of {}", item.getTitle());
+            this.failDownload();
+            return;
+        }
+
+        item.setStatus(Status.STARTED);
+        saveState();
+        convertAndSaveBroadcast();
     }
 
     @Override
     public void stopDownload() {
         Try.run(() -> process.destroy());
+        if (nonNull(target)) deleteSegments();
         super.stopDownload();
     }
 
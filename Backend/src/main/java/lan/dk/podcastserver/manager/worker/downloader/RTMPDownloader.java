@@ -3,10 +3,11 @@ package lan.dk.podcastserver.manager.worker.downloader;
 import javaslang.control.Try;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Status;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.manager.DownloadStateStore;
+import lan.dk.podcastserver.service.BandwidthService;
 import lan.dk.podcastserver.service.MimeTypeService;
 import lan.dk.podcastserver.service.ProcessService;
+import lan.dk.podcastserver.service.ProcessSupervisor;
 import lan.dk.podcastserver.service.properties.ExternalTools;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.RequiredArgsConstructor;
@@ -16,6 +17,7 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,14 +29,15 @@ import static java.util.Objects.nonNull;
 public class RTMPDownloader extends AbstractDownloader {
 
     private final ProcessService processService;
+    private final ProcessSupervisor processSupervisor;
     private final ExternalTools externalTools;
 
-    int pid = 0;
     Process p = null;
 
-    public RTMPDownloader(ItemRepository itemRepository, PodcastRepository podcastRepository, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, ProcessService processService, ExternalTools externalTools) {
-        super(itemRepository, podcastRepository, podcastServerParameters, template, mimeTypeService);
+    public RTMPDownloader(DownloadStateStore downloadStateStore, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, BandwidthService bandwidthService, ProcessService processService, ProcessSupervisor processSupervisor, ExternalTools externalTools) {
+        super(downloadStateStore, podcastServerParameters, template, mimeTypeService, bandwidthService);
         this.processService = processService;
+        this.processSupervisor = processSupervisor;
         this.externalTools = externalTools;
     }
 
@@ -52,22 +55,18 @@ public class RTMPDownloader extends AbstractDownloader {
                     .redirectErrorStream(true)
                     .start();
 
-            pid = processService.pidOf(p);
-
-            new RTMPWatcher(this).run();
-
-            p.waitFor();
-            pid = 0;
-        } catch (IOException | InterruptedException e) {
-            log.error("IOException | InterruptedException :", e);
-            stopDownload();
+            /* rtmpdump only copies the stream, it is held by the bandwidth and doesn't take a slot of the supervisor */
+            processSupervisor.register(item, p, new RTMPWatcher(this)).join();
+        } catch (IOException e) {
+            log.error("IOException :", e);
+            failDownload();
         }
         return item;
     }
 
     @Override
     public void startDownload() {
-        if (pid != 0 && nonNull(p)) { //Relancement du process UNIX
+        if (nonNull(p) && p.isAlive()) { //Relancement du process UNIX
             log.debug("Stop previous process");
             p.destroy();
         }
@@ -76,13 +75,26 @@ public class RTMPDownloader extends AbstractDownloader {
 
     @Override
     public void pauseDownload() {
-        ProcessBuilder stopProcess = processService.newProcessBuilder("kill", "-STOP", "" + pid);
-        Try.of(stopProcess::start)
-            .andThen(super::pauseDownload)
-            .onFailure(e -> {
-                log.error("IOException :", e);
-                this.stopDownload();
-            });
+        if (!processSupervisor.pause(item)) {
+            log.error("Error during pause of process of {}", item.getTitle());
+            this.failDownload();
+            return;
+        }
+
+        super.pauseDownload();
+    }
+
+    @Override
+    public void restartDownload() {
+        if (!processSupervisor.resume(item)) {
+            log.info("Process of {} can't be resumed, download restarted", item.getTitle());
+            startDownload();
+            return;
+        }
+
+        item.setStatus(Status.STARTED);
+        saveState();
+        convertAndSaveBroadcast();
     }
 
     @Override
@@ -100,47 +112,47 @@ public class RTMPDownloader extends AbstractDownloader {
 
     @Slf4j
     @RequiredArgsConstructor
-    static class RTMPWatcher implements Runnable {
+    static class RTMPWatcher implements ProcessSupervisor.Events {
 
         static final String DOWNLOAD_COMPLETE = "download complete";
         static final Pattern RTMPDUMP_PROGRESSION_PATTERN_EXTRACTOR = Pattern.compile("[^\\(]*\\(([0-9]*).*%\\)");
         final RTMPDownloader rtmpDownloader;
+        private Process process;
 
-        private BufferedReader getBufferedReader(InputStream is) {
-            return new BufferedReader(new InputStreamReader(is));
+        @Override
+        public void onStart(Process process) {
+            this.process = process;
         }
 
         @Override
-        public void run() {
-            Process p = rtmpDownloader.p;
+        public Boolean consumeOutput() {
+            return Boolean.TRUE;
+        }
+
+        @Override
+        public void onOutput(String line) {
             Item item = rtmpDownloader.item;
-            Integer pid = rtmpDownloader.pid;
-
-            BufferedReader br = getBufferedReader(p.getInputStream());
-            String line;
-            log.debug("Reading output of RTMPDump");
-            try {
-                while ((line = br.readLine()) != null) {
-                    log.debug(line);
-                    Matcher m = RTMPDUMP_PROGRESSION_PATTERN_EXTRACTOR.matcher(line);
-                    if (progressionHasChange(item, m)) {
-                        item.setProgression(Integer.parseInt(m.group(1)));
-                        rtmpDownloader.convertAndSaveBroadcast();
-                    } else if (isDownloadComplete(line)) {
-                        log.info("End of download");
-                        rtmpDownloader.finishDownload();
-                        break;
-                    }
-                    if (pid == 0) {
-                        break;
-                    }
-                }
-            } catch (IOException e) {
-                log.error("IOException :", e);
+
+            log.debug(line);
+            Matcher m = RTMPDUMP_PROGRESSION_PATTERN_EXTRACTOR.matcher(line);
+            if (progressionHasChange(item, m)) {
+                item.setProgression(Integer.parseInt(m.group(1)));
+                /* rtmpdump doesn't wait for the reader of its output, it is held by the supervisor for the bandwidth */
+                long wait = rtmpDownloader.reserveDownloadedBytes(Try.of(() -> Files.size(rtmpDownloader.target)).getOrElse(0L));
+                if (wait > 0) rtmpDownloader.processSupervisor.hold(item, wait);
+            } else if (isDownloadComplete(line) && Status.FINISH != item.getStatus()) {
+                log.info("End of download");
+                rtmpDownloader.finishDownload();
             }
-            if (Status.FINISH != item.getStatus() && !rtmpDownloader.stopDownloading.get()) {
-                log.debug("Unexpected ending, reset of downloader");
-                rtmpDownloader.resetDownload();
+        }
+
+        @Override
+        public void onExit(Integer exitCode) {
+            if (process != rtmpDownloader.p) return;
+
+            if (Status.FINISH != rtmpDownloader.item.getStatus() && !rtmpDownloader.stopDownloading.get()) {
+                log.debug("Unexpected ending, retry of downloader");
+                rtmpDownloader.retryOrStop();
             }
         }
 
@@ -0,0 +1,258 @@
+package lan.dk.podcastserver.manager.worker.downloader;
+
+import javaslang.collection.List;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Download of a file in several ranges fetched in parallel, each one written at its own position in a preallocated file.
+ * The file is split in chunks ({@link #CHUNK_SIZE} by default), and the number of parallel connections grows or shrinks,
+ * up to {@link #maxSegments}, depending on the throughput observed after each chunk.
+ *
+ * When interrupted, the file is truncated to the part downloaded without hole. This truncation never happens if the
+ * application is killed during the transfer, so the length without hole is also reported through {@link #onCheckpoint}
+ * after each chunk, and a download must be resumed from the last length reported, not from the size of the file.
+ *
+ * The digest of the file follows the length without hole, the bytes of each chunk are added as soon as the chunks
+ * before it are complete, while the next ones are still downloading.
+ *
+ * The chunks are fetched on an executor shared by all the downloads, and each connection has a connect and read
+ * {@link #timeout}, so a stalled server fails the chunk instead of holding the download.
+ */
+@Slf4j
+class SegmentedDownload {
+
+    static final Long CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final Integer BUFFER_SIZE = 64 * 1024;
+    private static final Integer MAX_RETRY = 3;
+    private static final Long MIN_MEASURE_WINDOW_MS = 1000L;
+    private static final Double THROUGHPUT_VARIATION = 0.1;
+    private static final Integer HTTP_PARTIAL_CONTENT = 206;
+    private static final Integer DEFAULT_TIMEOUT = 30_000;
+    private static final String USER_AGENT = "User-Agent";
+
+    private final String url;
+    private final Path target;
+    private final Long length;
+    private final Long offset;
+    private final Integer maxSegments;
+    private final Long chunkSize;
+    private final String userAgent;
+    private final Integer timeout;
+    private final Executor executor;
+    private final AtomicBoolean stopDownloading;
+    private final LongConsumer onProgression;
+    private final LongConsumer onCheckpoint;
+
+    private final List<Chunk> chunks;
+    private final AtomicLong downloaded;
+    private final ContentDigest digest = new ContentDigest();
+    private String completeDigest = null;
+
+    @Builder
+    private SegmentedDownload(String url, Path target, Long length, Long offset, Integer maxSegments, Long chunkSize, String userAgent, Integer timeout, Executor executor, AtomicBoolean stopDownloading, LongConsumer onProgression, LongConsumer onCheckpoint) {
+        this.url = url;
+        this.target = target;
+        this.length = length;
+        this.offset = offset;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.chunkSize = isNull(chunkSize) ? CHUNK_SIZE : chunkSize;
+        this.userAgent = userAgent;
+        this.timeout = isNull(timeout) ? DEFAULT_TIMEOUT : timeout;
+        this.executor = executor;
+        this.stopDownloading = stopDownloading;
+        this.onProgression = onProgression;
+        this.onCheckpoint = isNull(onCheckpoint) ? c -> {} : onCheckpoint;
+        this.downloaded = new AtomicLong(offset);
+        this.chunks = List.rangeBy(offset, length, this.chunkSize)
+                .map(start -> new Chunk(start, Math.min(start + this.chunkSize, length) - 1));
+    }
+
+    void download() throws IOException {
+        CompletionService<Chunk> completion = new ExecutorCompletionService<>(executor);
+        java.util.List<Future<Chunk>> submitted = new ArrayList<>();
+        ConcurrentLinkedQueue<Chunk> pending = new ConcurrentLinkedQueue<>(chunks.toJavaList());
+
+        try (FileChannel channel = FileChannel.open(target, CREATE, READ, WRITE)) {
+            preallocate(channel);
+            digest.catchUp(channel, offset);
+
+            int segments = 1, running = 0;
+            double previousThroughput = 0D;
+            long windowStart = System.currentTimeMillis(), windowBytes = downloaded.get();
+
+            try {
+                while (running < segments && !pending.isEmpty()) {
+                    Chunk chunk = pending.poll();
+                    submitted.add(completion.submit(() -> fetch(channel, chunk)));
+                    running++;
+                }
+
+                while (running > 0) {
+                    waitFor(completion);
+                    running--;
+                    onCheckpoint.accept(contiguousLength());
+                    digest.catchUp(channel, contiguousLength());
+
+                    long elapsed = System.currentTimeMillis() - windowStart;
+                    if (elapsed >= MIN_MEASURE_WINDOW_MS) {
+                        double throughput = (downloaded.get() - windowBytes) * 1000D / elapsed;
+                        segments = adapt(segments, previousThroughput, throughput);
+                        previousThroughput = throughput;
+                        windowStart = System.currentTimeMillis();
+                        windowBytes = downloaded.get();
+                    }
+
+                    while (running < segments && !pending.isEmpty() && !stopDownloading.get()) {
+                        Chunk chunk = pending.poll();
+                        submitted.add(completion.submit(() -> fetch(channel, chunk)));
+                        running++;
+                    }
+                }
+
+                if (isComplete()) completeDigest = digest.hex();
+            } finally {
+                if (!isComplete()) {
+                    log.debug("Segmented download of {} interrupted, file truncated at {} bytes", url, contiguousLength());
+                    channel.truncate(contiguousLength());
+                    onCheckpoint.accept(contiguousLength());
+                }
+            }
+        } finally {
+            /* The executor is shared, only the chunks of this download are cancelled */
+            submitted.forEach(f -> f.cancel(true));
+        }
+    }
+
+    /**
+     * @return the SHA-256 digest of the file, null if the download is not complete
+     */
+    String getDigest() {
+        return completeDigest;
+    }
+
+    private int adapt(int segments, double previous, double current) {
+        if (current > previous * (1 + THROUGHPUT_VARIATION) && segments < maxSegments) {
+            log.debug("Throughput of {} up to {} B/s, increase to {} segments", url, (long) current, segments + 1);
+            return segments + 1;
+        }
+
+        if (current < previous * (1 - THROUGHPUT_VARIATION) && segments > 1) {
+            log.debug("Throughput of {} down to {} B/s, decrease to {} segments", url, (long) current, segments - 1);
+            return segments - 1;
+        }
+
+        return segments;
+    }
+
+    private void waitFor(CompletionService<Chunk> completion) throws IOException {
+        try {
+            completion.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopDownloading.set(true);
+            throw new IOException("Segmented download interrupted", e);
+        } catch (ExecutionException e) {
+            stopDownloading.set(true);
+            throw new IOException("Error during download of a segment of " + url, e.getCause());
+        }
+    }
+
+    private void preallocate(FileChannel channel) throws IOException {
+        if (channel.size() < length) {
+            channel.write(ByteBuffer.allocate(1), length - 1);
+        }
+    }
+
+    private Chunk fetch(FileChannel channel, Chunk chunk) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transfer(channel, chunk);
+                return chunk;
+            } catch (IOException e) {
+                if (attempt >= MAX_RETRY || stopDownloading.get()) throw e;
+                log.debug("Retry of range {}-{} of {} after error : {}", chunk.position, chunk.end, url, e.getMessage());
+            }
+        }
+    }
+
+    private void transfer(FileChannel channel, Chunk chunk) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        if (nonNull(userAgent)) connection.setRequestProperty(USER_AGENT, userAgent);
+        connection.setRequestProperty("Range", "bytes=" + chunk.position + "-" + chunk.end);
+
+        try {
+            if (connection.getResponseCode() != HTTP_PARTIAL_CONTENT) {
+                throw new IOException("Range request not honored by server, status " + connection.getResponseCode());
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            try (InputStream is = connection.getInputStream(); ReadableByteChannel in = Channels.newChannel(is)) {
+                int read;
+                while (!stopDownloading.get() && chunk.position <= chunk.end && (read = in.read(buffer)) != -1) {
+                    buffer.flip();
+                    if (buffer.remaining() > chunk.end - chunk.position + 1) {
+                        buffer.limit((int) (chunk.end - chunk.position + 1));
+                        read = buffer.remaining();
+                    }
+                    while (buffer.hasRemaining()) {
+                        chunk.position += channel.write(buffer, chunk.position);
+                    }
+                    buffer.clear();
+                    onProgression.accept(downloaded.addAndGet(read));
+                }
+            }
+
+            if (!stopDownloading.get() && chunk.position <= chunk.end) {
+                throw new IOException("Premature end of range " + chunk.position + "-" + chunk.end);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private Boolean isComplete() {
+        return chunks.forAll(Chunk::isDone);
+    }
+
+    private Long contiguousLength() {
+        return chunks.find(c -> !c.isDone()).map(c -> c.position).getOrElse(length);
+    }
+
+    private static class Chunk {
+        private final Long end;
+        private volatile Long position;
+
+        Chunk(Long start, Long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        Boolean isDone() {
+            return position > end;
+        }
+    }
+}
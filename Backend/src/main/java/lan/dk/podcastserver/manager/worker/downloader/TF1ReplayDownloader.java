@@ -4,8 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.mashape.unirest.http.HttpResponse;
 import javaslang.control.Try;
 import lan.dk.podcastserver.entity.Item;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.service.*;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.Getter;
@@ -13,8 +12,10 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.validator.constraints.NotEmpty;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Scope;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import static java.util.Objects.nonNull;
@@ -45,14 +46,16 @@ public class TF1ReplayDownloader extends M3U8Downloader {
     private final HtmlService htmlService;
     private final JsonService jsonService;
     private final SignatureService signatureService;
+    private final ResolvedUrlCache resolvedUrlCache;
 
     String url = null;
 
-    public TF1ReplayDownloader(ItemRepository itemRepository, PodcastRepository podcastRepository, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, UrlService urlService, M3U8Service m3U8Service, FfmpegService ffmpegService, ProcessService processService, HtmlService htmlService, JsonService jsonService, SignatureService signatureService) {
-        super(itemRepository, podcastRepository, podcastServerParameters, template, mimeTypeService, urlService, m3U8Service, ffmpegService, processService);
+    public TF1ReplayDownloader(DownloadStateStore downloadStateStore, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, BandwidthService bandwidthService, UrlService urlService, M3U8Service m3U8Service, FfmpegService ffmpegService, ProcessSupervisor processSupervisor, @Qualifier("PostProcessingExecutor") ThreadPoolTaskExecutor postProcessingExecutor, @Qualifier("SegmentExecutor") ThreadPoolTaskExecutor segmentExecutor, HtmlService htmlService, JsonService jsonService, SignatureService signatureService, ResolvedUrlCache resolvedUrlCache) {
+        super(downloadStateStore, podcastServerParameters, template, mimeTypeService, bandwidthService, urlService, m3U8Service, ffmpegService, processSupervisor, postProcessingExecutor, segmentExecutor);
         this.htmlService = htmlService;
         this.jsonService = jsonService;
         this.signatureService = signatureService;
+        this.resolvedUrlCache = resolvedUrlCache;
     }
 
     @Override
@@ -64,16 +67,20 @@ public class TF1ReplayDownloader extends M3U8Downloader {
         if (nonNull(url))
             return url;
 
-        url = htmlService.get(item.getUrl())
+        url = resolvedUrlCache.resolve(resolvedUrlKey(item), () -> findStreamUrl(item));
+
+        return url;
+    }
+
+    private String findStreamUrl(Item item) {
+        return htmlService.get(item.getUrl())
                 .map(d -> d.select("#zonePlayer").first())
                 .map(d -> d.attr("data-src"))
                 .map(src -> src.substring(src.length() - 8))
                 .map(this::normalizeId)
                 .map(this::getM3U8url)
                 .map(this::getHighestQualityUrl)
-                .getOrElseThrow(() -> new RuntimeException("Id not found for url " + url));
-
-        return url;
+                .getOrElseThrow(() -> new RuntimeException("Id not found for url " + item.getUrl()));
     }
 
     private String normalizeId(String id) {
@@ -125,7 +132,7 @@ public class TF1ReplayDownloader extends M3U8Downloader {
                     .header(USER_AGENT, UrlService.USER_AGENT_MOBILE)
                 .asString())
                     .map(HttpResponse::getRawBody)
-                    .flatMap(is -> m3U8Service.findBestQuality(is).toTry())
+                    .flatMap(is -> m3U8Service.findBestQuality(is, isAudioOnly()).toTry())
                     .map(u -> urlService.addDomainIfRelative(realUrl, u))
                 .getOrElseThrow((e) -> new RuntimeException("Url not found for TF1 item with m3u8 url " + url, e));
     }
@@ -140,6 +147,11 @@ public class TF1ReplayDownloader extends M3U8Downloader {
         @Getter @Setter private String message;
     }
 
+    @Override
+    protected void invalidateResolvedUrls() {
+        resolvedUrlCache.invalidate(resolvedUrlKey(item));
+    }
+
     @Override
     public Integer compatibility(@NotEmpty String url) {
         return url.contains("www.tf1.fr") ? 1 : Integer.MAX_VALUE;
@@ -10,22 +10,29 @@ import com.github.axet.wget.info.ex.DownloadError;
 import com.github.axet.wget.info.ex.DownloadIOCodeError;
 import com.github.axet.wget.info.ex.DownloadInterruptedError;
 import com.github.axet.wget.info.ex.DownloadMultipartError;
+import javaslang.collection.Array;
+import javaslang.control.Option;
 import javaslang.control.Try;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Status;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.manager.DownloadStateStore;
+import lan.dk.podcastserver.service.AsyncHttpService;
+import lan.dk.podcastserver.service.BandwidthService;
 import lan.dk.podcastserver.service.FfmpegService;
 import lan.dk.podcastserver.service.MimeTypeService;
+import lan.dk.podcastserver.service.ProcessSupervisor;
 import lan.dk.podcastserver.service.factory.WGetFactory;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Scope;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -34,7 +41,10 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.lang.String.format;
 import static java.lang.String.valueOf;
@@ -52,6 +62,7 @@ import static java.util.Objects.nonNull;
 public class YoutubeDownloader extends AbstractDownloader {
 
     private static final String DEFAULT_EXTENSION_MP4 = "mp4";
+    private static final String DEFAULT_EXTENSION_M4A = "m4a";
     private static final String ERROR_NO_CONTENT_TYPE = "Content Type %s not found for video %s at url %s";
     VGet v = null;
 
@@ -59,11 +70,19 @@ public class YoutubeDownloader extends AbstractDownloader {
 
     private final WGetFactory wGetFactory;
     private final FfmpegService ffmpegService;
+    private final AsyncHttpService asyncHttpService;
+    private final ThreadPoolTaskExecutor postProcessingExecutor;
+    private final ProcessSupervisor processSupervisor;
 
-    public YoutubeDownloader(ItemRepository itemRepository, PodcastRepository podcastRepository, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, WGetFactory wGetFactory, FfmpegService ffmpegService) {
-        super(itemRepository, podcastRepository, podcastServerParameters, template, mimeTypeService);
+    private volatile Array<CompletableFuture<AsyncHttpService.DownloadedFile>> transfers = Array.empty();
+
+    public YoutubeDownloader(DownloadStateStore downloadStateStore, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, BandwidthService bandwidthService, WGetFactory wGetFactory, FfmpegService ffmpegService, AsyncHttpService asyncHttpService, @Qualifier("PostProcessingExecutor") ThreadPoolTaskExecutor postProcessingExecutor, ProcessSupervisor processSupervisor) {
+        super(downloadStateStore, podcastServerParameters, template, mimeTypeService, bandwidthService);
         this.wGetFactory = wGetFactory;
         this.ffmpegService = ffmpegService;
+        this.asyncHttpService = asyncHttpService;
+        this.postProcessingExecutor = postProcessingExecutor;
+        this.processSupervisor = processSupervisor;
     }
 
     @Override
@@ -80,7 +99,15 @@ public class YoutubeDownloader extends AbstractDownloader {
                 .getInfo()
                 .forEach(vi -> vi.targetFile = generatePartFile(getTargetFile(item, v.getVideo().getTitle()), vi).toFile());
 
-            v.download(parser, stopDownloading, watcher);
+            if (isAudioOnly()) {
+                keepOnlyAudioStream();
+            }
+
+            if (hasOnlyOneStream()) {
+                v.download(parser, stopDownloading, watcher);
+            } else {
+                downloadStreams();
+            }
         } catch (DownloadMultipartError e) {
             e.getInfo()
                 .getParts()
@@ -89,7 +116,7 @@ public class YoutubeDownloader extends AbstractDownloader {
                 .filter(Objects::nonNull)
                 .forEach(Throwable::printStackTrace);
 
-            stopDownload();
+            failDownload();
         } catch (DownloadInterruptedError e) {
             log.debug("Arrêt du téléchargement par l'interface");
         } catch (StringIndexOutOfBoundsException | MalformedURLException | NullPointerException | DownloadError e) {
@@ -99,12 +126,85 @@ public class YoutubeDownloader extends AbstractDownloader {
                 itemDownloadManager.resetDownload(item);
                 return null;
             }
-            stopDownload();
+            failDownload();
         }
         log.debug("Download ended");
         return item;  //To change body of implemented methods use File | Settings | File Templates.
     }
 
+    /**
+     * The audio and video streams of a DASH video are transferred at the same time by the non-blocking client, each one
+     * on its own connection and from the size of its part file. The progression is the sum of the bytes of the streams.
+     */
+    private void downloadStreams() {
+        Array<VideoFileInfo> streams = Array.ofAll(v.getVideo().getInfo());
+        Map<File, Long> counts = new ConcurrentHashMap<>();
+        Long length = streams.exists(vi -> isNull(vi.getLength()))
+                ? null
+                : streams.map(URLInfo::getLength).sum().longValue();
+
+        transfers = streams.map(vi -> asyncHttpService.download(String.valueOf(vi.getSource()), vi.targetFile.toPath(), sizeOf(vi.targetFile.toPath()), count -> {
+            counts.put(vi.targetFile, count);
+            updateStreamsProgression(counts.values().stream().mapToLong(Long::longValue).sum(), length);
+        }));
+
+        CompletableFuture
+                .allOf(transfers.toJavaList().toArray(new CompletableFuture[0]))
+                .whenCompleteAsync((r, e) -> Try.run(() -> onStreamsTransferred(e))
+                        .onFailure(t -> log.error("Error at the end of the download of the streams of {}", item.getTitle(), t))
+                        .onFailure(t -> failDownload()), postProcessingExecutor);
+    }
+
+    /**
+     * Called on the post processing executor, the IO threads of the client only complete the transfers
+     */
+    private void onStreamsTransferred(Throwable e) {
+        if (stopDownloading.get()) return;
+
+        if (nonNull(e)) {
+            log.error("Error during download of the streams of {}", item.getTitle(), e);
+            cancelTransfers();
+            retryOrStop();
+            return;
+        }
+
+        if (item.getStatus() == Status.STARTED)
+            finishDownload();
+    }
+
+    private synchronized void updateStreamsProgression(Long count, Long length) {
+        recordDownloadedBytes(count);
+        if (isNull(length) || length <= 0L) return;
+
+        int progression = (int) (count * 100 / (float) length);
+        if (item.getProgression() < progression) {
+            item.setProgression(progression);
+            log.debug("{} - {}%", item.getTitle(), item.getProgression());
+        }
+    }
+
+    private void cancelTransfers() {
+        transfers.forEach(t -> t.cancel(true));
+    }
+
+    private static Long sizeOf(Path file) {
+        return Try.of(() -> Files.size(file)).getOrElse(0L);
+    }
+
+    /**
+     * The video stream is not downloaded if the video has a separate audio stream
+     */
+    private void keepOnlyAudioStream() {
+        List<VideoFileInfo> streams = v.getVideo().getInfo();
+        if (streams.stream().anyMatch(YoutubeDownloader::isAudio)) {
+            streams.removeIf(vi -> !isAudio(vi));
+        }
+    }
+
+    private static Boolean isAudio(VideoFileInfo vi) {
+        return nonNull(vi.getContentType()) && vi.getContentType().startsWith("audio");
+    }
+
     private Path generatePartFile(Path targetFile, VideoFileInfo vi) {
         return targetFile.resolveSibling(targetFile.getFileName() + v.getContentExt(vi));
     }
@@ -130,21 +230,34 @@ public class YoutubeDownloader extends AbstractDownloader {
 
     @Override
     public void pauseDownload() {
+        if (!transfers.isEmpty()) {
+            super.pauseDownload();
+            cancelTransfers();
+            return;
+        }
+
         item.setStatus(Status.PAUSED);
-        saveSyncWithPodcast();
+        saveState();
         convertAndSaveBroadcast();
     }
 
     @Override
     public void restartDownload() {
+        if (!transfers.isEmpty()) {
+            startDownload();
+            return;
+        }
+
         item.setStatus(Status.STARTED);
-        saveSyncWithPodcast();
+        saveState();
         convertAndSaveBroadcast();
         synchronized (watcher) { watcher.notifyAll(); }
     }
 
     @Override
     public void stopDownload() {
+        stopDownloading.set(true);
+        cancelTransfers();
         if (item.getStatus() == Status.PAUSED) {
             synchronized (watcher) { watcher.notify(); }
         }
@@ -161,28 +274,71 @@ public class YoutubeDownloader extends AbstractDownloader {
 
     @Override
     public void finishDownload() {
+        Path fileWithExtension;
 
         try {
-            Path fileWithExtension = target.resolveSibling(getDefinitiveFileName());
+            fileWithExtension = target.resolveSibling(getDefinitiveFileName());
             Files.deleteIfExists(target);
 
-            if (hasOnlyOneStream()) {
+            if (hasOnlyOneStream() && (!isAudioOnly() || isAudio(v.getVideo().getInfo().get(0)))) {
                 target = Files.move(v.getVideo().getInfo().get(0).targetFile.toPath(), fileWithExtension, StandardCopyOption.REPLACE_EXISTING);
-            } else {
-                Path audioFile = getStream("audio");
-                Path video = getStream("video");
-
-                target = ffmpegService.mergeAudioAndVideo(video, audioFile, fileWithExtension);
-
-                Files.deleteIfExists(video);
-                Files.deleteIfExists(audioFile);
+                super.finishDownload();
+                return;
             }
         } catch (IOException e) {
             log.error("Error during specific move", e);
             throw new RuntimeException("Error during specific move", e);
         }
 
-        super.finishDownload();
+        /* The streams are on disk, the download slot goes to the next item while they are processed */
+        if (hasOnlyOneStream()) {
+            Path video = v.getVideo().getInfo().get(0).targetFile.toPath();
+            itemDownloadManager.startPostProcessing(item);
+            postProcessingExecutor.execute(() -> extractAudio(video, fileWithExtension));
+            return;
+        }
+
+        Path audioFile = getStream("audio");
+        Path video = getStream("video");
+
+        itemDownloadManager.startPostProcessing(item);
+        postProcessingExecutor.execute(() -> merge(video, audioFile, fileWithExtension));
+    }
+
+    private void extractAudio(Path video, Path fileWithExtension) {
+        Try<Void> extraction = Try.run(() -> processSupervisor.withSlot(item, () -> {
+            ffmpegService.extractAudio(video, fileWithExtension);
+            return null;
+        }));
+        if (isStoppedDuringPostProcessing(fileWithExtension)) return;
+
+        extraction
+            .onSuccess(r -> {
+                target = fileWithExtension;
+                item.setDigest(Try.of(() -> ContentDigest.of(fileWithExtension)).getOrElse(() -> null));
+                Try.run(() -> Files.deleteIfExists(video));
+                super.finishDownload();
+            })
+            .onFailure(e -> log.error("Error during extraction of the audio of {}", item.getTitle(), e))
+            .onFailure(e -> Try.run(() -> Files.deleteIfExists(fileWithExtension)))
+            .onFailure(e -> retryOrStop());
+    }
+
+    private void merge(Path video, Path audioFile, Path fileWithExtension) {
+        Try<Path> merge = Try.of(() -> processSupervisor.withSlot(item, () -> ffmpegService.mergeAudioAndVideo(video, audioFile, fileWithExtension)));
+        if (isStoppedDuringPostProcessing(fileWithExtension)) return;
+
+        merge
+            .onSuccess(merged -> {
+                target = merged;
+                item.setDigest(Try.of(() -> ContentDigest.of(merged)).getOrElse(() -> null));
+                Try.run(() -> Files.deleteIfExists(video));
+                Try.run(() -> Files.deleteIfExists(audioFile));
+                super.finishDownload();
+            })
+            .onFailure(e -> log.error("Error during merge of audio and video of {}", item.getTitle(), e))
+            .onFailure(e -> Try.run(() -> Files.deleteIfExists(fileWithExtension)))
+            .onFailure(e -> retryOrStop());
     }
 
     private boolean hasOnlyOneStream() {
@@ -203,14 +359,26 @@ public class YoutubeDownloader extends AbstractDownloader {
     }
 
     private String getDefinitiveFileName() {
-        String videoExt = v.getVideo().getInfo().stream()
+        String extension = isAudioOnly() ? getAudioExtension() : getVideoExtension();
+        return target.getFileName().toString().replace(temporaryExtension, "." + extension);
+    }
+
+    private String getVideoExtension() {
+        return v.getVideo().getInfo().stream()
                 .map(VideoFileInfo::getContentType)
                 .filter(c -> c.contains("video"))
                 .map(c -> StringUtils.substringAfter(c, "/"))
                 .findFirst()
                 .orElse(DEFAULT_EXTENSION_MP4);
+    }
 
-        return target.getFileName().toString().replace(temporaryExtension, "." + videoExt);
+    private String getAudioExtension() {
+        return v.getVideo().getInfo().stream()
+                .filter(YoutubeDownloader::isAudio)
+                .map(vi -> StringUtils.substringAfter(vi.getContentType(), "/"))
+                .filter(ext -> !DEFAULT_EXTENSION_MP4.equals(ext))
+                .findFirst()
+                .orElse(DEFAULT_EXTENSION_M4A);
     }
 
     @Slf4j
@@ -240,7 +408,7 @@ public class YoutubeDownloader extends AbstractDownloader {
                     log.debug(FilenameUtils.getName(valueOf(item.getUrl())) + " " + info.getState());
                     break;
                 case ERROR:
-                    youtubeDownloader.stopDownload();
+                    youtubeDownloader.failDownload();
                     break;
                 case DONE:
                     downloadInfo
@@ -248,8 +416,10 @@ public class YoutubeDownloader extends AbstractDownloader {
                             .map(vi -> vi.targetFile)
                             .filter(Objects::nonNull)
                             .forEach(f -> log.debug("{} - Téléchargement terminé", FilenameUtils.getName(f.getAbsolutePath())));
-                    if (item.getStatus() == Status.STARTED)
+                    if (item.getStatus() == Status.STARTED) {
+                        singleStream(downloadInfo).forEach(vi -> youtubeDownloader.completeDigest(vi.targetFile.toPath(), vi.getCount()));
                         youtubeDownloader.finishDownload();
+                    }
                     break;
                 case RETRYING:
                     log.debug(info.getState() + " " + info.getDelay());
@@ -261,7 +431,7 @@ public class YoutubeDownloader extends AbstractDownloader {
                     }
 
                     if (launchDateDownload.isBefore(now().minusHours(MAX_WAITING_MINUTE))) {
-                        youtubeDownloader.stopDownload();
+                        youtubeDownloader.failDownload();
                     }
                     break;
                 case DOWNLOADING:
@@ -286,11 +456,19 @@ public class YoutubeDownloader extends AbstractDownloader {
 
             Long count = downloadInfo.stream().mapToLong(DownloadInfo::getCount).sum();
             int currentState = (int) (count * 100 / (float) globalSize );
+            youtubeDownloader.updateDownloadedBytes(count);
+            singleStream(downloadInfo).forEach(vi -> youtubeDownloader.digestWritten(vi.targetFile.toPath(), vi.getCount()));
             if (item.getProgression() < currentState) {
                 item.setProgression(currentState);
                 log.debug("{} - {}%", item.getTitle(), item.getProgression());
-                youtubeDownloader.convertAndSaveBroadcast();
             }
         }
+
+        /**
+         * Only a video with a single stream is downloaded by VGet, its file is written in order and digested on the way
+         */
+        private static Option<VideoFileInfo> singleStream(List<VideoFileInfo> downloadInfo) {
+            return Option.of(downloadInfo).filter(l -> l.size() == 1).map(l -> l.get(0)).filter(vi -> nonNull(vi.targetFile));
+        }
     }
 }
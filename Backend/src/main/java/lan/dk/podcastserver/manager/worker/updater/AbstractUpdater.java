@@ -37,6 +37,13 @@ public abstract class AbstractUpdater implements Updater {
                 .getOrElse(NO_MODIFICATION_TUPLE);
     }
 
+    /**
+     * Signature of the ordered identifiers of the episodes, so a change of the page around them is not seen as a new episode
+     */
+    String signatureOfIds(Iterable<String> ids) {
+        return signatureService.generateMD5Signature(String.join("\n", ids));
+    }
+
     @RequiredArgsConstructor
     public static class Type {
 
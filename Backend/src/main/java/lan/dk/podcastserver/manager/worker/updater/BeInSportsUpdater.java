@@ -28,6 +28,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static java.util.Objects.isNull;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 /**
@@ -81,8 +82,12 @@ public class BeInSportsUpdater extends AbstractUpdater {
     }
 
 
+    private String pageUrlOf(Element article) {
+        return article.select("a").first().attr("data-url");
+    }
+
     private Item getItem(Element article) {
-        String urlItemBeInSport = String.format(BE_IN_SPORTS_DOMAIN, article.select("a").first().attr("data-url"));
+        String urlItemBeInSport = String.format(BE_IN_SPORTS_DOMAIN, pageUrlOf(article));
         Option<Document> document = htmlService.get(urlItemBeInSport);
 
         return document
@@ -137,11 +142,11 @@ public class BeInSportsUpdater extends AbstractUpdater {
 
     @Override
     public String signatureOf(Podcast podcast) {
-        /* cluster_video */
         return htmlService
                 .get(podcast.getUrl())
-                .map(p -> p.select(".cluster_video").html())
-                .map(signatureService::generateMD5Signature)
+                .map(p -> p.select("article"))
+                .map(articles -> articles.stream().map(this::pageUrlOf).collect(toList()))
+                .map(this::signatureOfIds)
                 .getOrElse(StringUtils.EMPTY);
     }
 
@@ -16,10 +16,12 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 @Slf4j
@@ -66,7 +68,8 @@ public class CanalPlusUpdater extends AbstractUpdater {
     }
 
     public String signatureOf(Podcast podcast) {
-        return signatureService.generateSignatureFromURL(getRealUrl(podcast));
+        List<String> ids = getVideoIdsFromFrontTools(getRealUrl(podcast));
+        return ids.isEmpty() ? StringUtils.EMPTY : signatureOfIds(ids);
     }
 
     private String getPodcastURLOfFrontTools(String url) {
@@ -90,11 +93,17 @@ public class CanalPlusUpdater extends AbstractUpdater {
             .getOrElse(new Elements());
     }
 
-    private Set<Item> getSetItemToPodcastFromFrontTools(String urlFrontTools) {
+    private List<String> getVideoIdsFromFrontTools(String urlFrontTools) {
         return getHTMLListingEpisodeFromFrontTools(urlFrontTools)
                 .stream()
                 .filter(e -> !e.hasClass("blankMS"))
                 .map(e -> e.select("li._thumbs").first().id().replace("video_", ""))
+                .collect(toList());
+    }
+
+    private Set<Item> getSetItemToPodcastFromFrontTools(String urlFrontTools) {
+        return getVideoIdsFromFrontTools(urlFrontTools)
+                .stream()
                 .map(Integer::valueOf)
                 .map(this::getItemFromVideoId)
                 .collect(toSet());
@@ -94,9 +94,9 @@ public class GulliUpdater extends AbstractUpdater {
     @Override
     public String signatureOf(Podcast podcast) {
         return htmlService.get(podcast.getUrl())
-                .map(d -> d.select("div.all-videos ul").first())
-                .map(Element::html)
-                .map(signatureService::generateMD5Signature)
+                .map(d -> d.select("div.all-videos ul li.col-md-3"))
+                .map(elements -> List.ofAll(elements).flatMap(e -> Option.of(e.select("a").first())).map(a -> a.attr("href")))
+                .map(this::signatureOfIds)
                 .getOrElse(StringUtils.EMPTY);
     }
 
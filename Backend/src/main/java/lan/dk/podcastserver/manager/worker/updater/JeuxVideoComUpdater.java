@@ -18,8 +18,10 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Set;
 
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 /**
@@ -50,12 +52,19 @@ public class JeuxVideoComUpdater extends AbstractUpdater {
     }
 
     private Set<Item> htmlToItems(Elements elements) {
-        return elements
+        return videoPageUrlsOf(elements)
                 .stream()
-                .map(element -> generateItemFromPage(element.select("a").first().attr("href")))
+                .map(this::generateItemFromPage)
                 .collect(toSet());
     }
 
+    private List<String> videoPageUrlsOf(Elements elements) {
+        return elements
+                .stream()
+                .map(element -> element.select("a").first().attr("href"))
+                .collect(toList());
+    }
+
     private Item generateItemFromPage(String videoPageUrl) {
         return htmlService
                 .get(JEUXVIDEOCOM_HOST.concat(videoPageUrl))
@@ -78,8 +87,9 @@ public class JeuxVideoComUpdater extends AbstractUpdater {
     public String signatureOf(Podcast podcast) {
         return htmlService
                 .get(podcast.getUrl())
-                .map(p -> p.select("article").html())
-                .map(signatureService::generateMD5Signature)
+                .map(p -> p.select("article"))
+                .map(this::videoPageUrlsOf)
+                .map(this::signatureOfIds)
                 .getOrElse("");
     }
 
@@ -74,25 +74,34 @@ public class PluzzUpdater extends AbstractUpdater {
     }
 
     private Item getCurrentPlayedItem(Document page) {
+        return getCurrentPlayedId(page)
+                .map(this::getPluzzItemById)
+                .getOrElse(Item.DEFAULT_ITEM);
+    }
+
+    private Option<String> getCurrentPlayedId(Document page) {
         String urlContainingId = page.select("meta[name=og:image]").attr("content");
         Matcher m = ID_PLUZZ_MAIN_PAGE_PATTERN.matcher(urlContainingId);
         if (!m.find()) {
-            return Item.DEFAULT_ITEM;
+            return Option.none();
         }
-        return getPluzzItemById(m.group(1));
+        return Option.of(m.group(1));
     }
 
     @Override
     public String signatureOf(Podcast podcast) {
-        Option<Document> page = htmlService.get(podcast.getUrl());
-
-        return page
-            .map(p -> p.select(JSOUP_ITEM_SELECTOR))
-            .map(l -> (l.size() == 0) ? page.get().html() : l.html())
-            .map(signatureService::generateMD5Signature)
+        return htmlService.get(podcast.getUrl())
+            .map(p -> getCurrentPlayedId(p).toList().appendAll(getPluzzIds(p.select(JSOUP_ITEM_SELECTOR).select("a.row"))))
+            .map(this::signatureOfIds)
             .getOrElse(StringUtils.EMPTY);
     }
 
+    private javaslang.collection.List<String> getPluzzIds(Elements elements) {
+        return javaslang.collection.List.ofAll(elements)
+                .map(element -> getPluzzId(element.attr("href")))
+                .filter(StringUtils::isNotEmpty);
+    }
+
     private Item getPluzzItemByUrl(String url) {
         String pluzzId = getPluzzId(url);
 
@@ -17,12 +17,11 @@ import org.springframework.stereotype.Component;
 import javax.validation.Validator;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
-import static java.util.stream.Collectors.toSet;
 
 @Slf4j
 @Component("RSSUpdater")
@@ -41,37 +40,51 @@ public class RSSUpdater extends AbstractUpdater {
     }
 
 
+    /**
+     * The feed is read item by item, the items already in the podcast are not extracted, and the reading stops on the
+     * second item in a row already in the podcast and older than the previous one, the rest of a feed sorted from the
+     * newest to the oldest item being already known.
+     */
     public Set<Item> getItems(Podcast podcast) {
         log.debug("Traitement des Items");
-        return jdomService
-                .parse(podcast.getUrl())
-                .map(p -> p.getRootElement().getChild("channel").getChildren("item"))
-                .map(this::elementsToItems)
-                .getOrElse(Sets.newHashSet());
+        Set<Item> items = Sets.newHashSet();
+        AtomicReference<Item> previousKnownItem = new AtomicReference<>();
+
+        Boolean isParsed = jdomService.parseEach(podcast.getUrl(), "item", element -> {
+            if (!hasEnclosure(element)) return Boolean.TRUE;
+
+            Item item = Item.builder().url(urlOf(element)).pubDate(getPubDate(element)).build();
+            if (!podcast.contains(item)) {
+                previousKnownItem.set(null);
+                items.add(extractItem(element, item));
+                return Boolean.TRUE;
+            }
+
+            items.add(item);
+            return !isOlder(item, previousKnownItem.getAndSet(item));
+        });
+
+        return isParsed ? items : Sets.newHashSet();
     }
 
-    private Set<Item> elementsToItems(List<Element> elements) {
-        return elements
-                .stream()
-                    .filter(this::hasEnclosure)
-                    .map(this::extractItem)
-                .collect(toSet());
+    private static Boolean isOlder(Item item, Item previous) {
+        return nonNull(previous) && nonNull(previous.getPubDate()) && nonNull(item.getPubDate()) && !item.getPubDate().isAfter(previous.getPubDate());
     }
 
     private Boolean hasEnclosure(Element item) {
         return item.getChild("enclosure") != null || item.getChild("origEnclosureLink", FEED_BURNER) != null;
     }
 
-    private Item extractItem(Element item) {
+    private Item extractItem(Element item, Item identity) {
         // Gestion des cas pour l'url :
         return Item.builder()
                     .title(item.getChildText("title"))
-                    .pubDate(getPubDate(item))
+                    .pubDate(identity.getPubDate())
                     .description(item.getChildText("description"))
                     .mimeType(item.getChild("enclosure").getAttributeValue("type"))
                     .length(lengthOf(item))
                     .cover(coverOf(item))
-                    .url(urlOf(item))
+                    .url(identity.getUrl())
                 .build();
     }
 
@@ -112,7 +112,6 @@ public class TF1ReplayUpdater extends AbstractUpdater {
         // Url origine : http://www.tf1.fr/tf1/19h-live/videos
         // Url replay : http://www.tf1.fr/ajax/tf1/19h-live/videos?filter=replay
         return getHtmlFromStandardOrReplay(podcast.getUrl())
-            .map(Elements::html)
             .map(signatureService::generateMD5Signature)
             .getOrElse(StringUtils.EMPTY);
     }
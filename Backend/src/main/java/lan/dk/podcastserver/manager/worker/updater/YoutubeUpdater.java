@@ -13,13 +13,13 @@ import lan.dk.podcastserver.service.HtmlService;
 import lan.dk.podcastserver.service.JdomService;
 import lan.dk.podcastserver.service.JsonService;
 import lan.dk.podcastserver.service.SignatureService;
+import lan.dk.podcastserver.service.UpdateCycleCache;
 import lan.dk.podcastserver.service.properties.Api;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.Namespace;
 import org.springframework.stereotype.Component;
@@ -43,6 +43,7 @@ public class YoutubeUpdater extends AbstractUpdater {
 
     private static final Namespace MEDIA_NAMESPACE = Namespace.getNamespace("media", "http://search.yahoo.com/mrss/");
     private static final Integer MAX_PAGE = 10;
+    private static final String FEED_ENTRIES = "youtube-entries";
 
     private static final String CHANNEL_RSS_BASE = "https://www.youtube.com/feeds/videos.xml?channel_id=%s";
     private static final String PLAYLIST_RSS_BASE = "https://www.youtube.com/feeds/videos.xml?playlist_id=%s";
@@ -54,13 +55,15 @@ public class YoutubeUpdater extends AbstractUpdater {
     private final JsonService jsonService;
     private final HtmlService htmlService;
     private final Api api;
+    private final UpdateCycleCache updateCycleCache;
 
-    public YoutubeUpdater(PodcastServerParameters podcastServerParameters, SignatureService signatureService, Validator validator, JdomService jdomService, JsonService jsonService, HtmlService htmlService, Api api) {
+    public YoutubeUpdater(PodcastServerParameters podcastServerParameters, SignatureService signatureService, Validator validator, JdomService jdomService, JsonService jsonService, HtmlService htmlService, Api api, UpdateCycleCache updateCycleCache) {
         super(podcastServerParameters, signatureService, validator);
         this.jdomService = jdomService;
         this.jsonService = jsonService;
         this.htmlService = htmlService;
         this.api = api;
+        this.updateCycleCache = updateCycleCache;
     }
 
 
@@ -133,32 +136,31 @@ public class YoutubeUpdater extends AbstractUpdater {
     private Set<Item> getItemsByRss(Podcast podcast) {
         log.info("Youtube Update by RSS");
 
-        Option<Element> element = xmlOf(podcast.getUrl()).map(Document::getRootElement);
-
-        return element
-            .map(d -> d.getChildren("entry", d.getNamespace()))
-            .map(entry -> this.xmlToItems(entry, element.map(Element::getNamespace).getOrElse(Namespace.NO_NAMESPACE)))
-            .getOrElse(Sets.newHashSet());
-    }
-
-    private Set<Item> xmlToItems(List<Element> entry, Namespace defaultNamespace) {
-        return entry
-                .stream()
-                .map(elem -> generateItemFromElement(elem, defaultNamespace))
-                .collect(toSet());
+        return entriesOf(podcast)
+                .map(entries -> entries.stream().map(entry -> generateItemFromElement(entry, entry.getNamespace())).collect(toSet()))
+                .getOrElse(Sets::newHashSet);
     }
 
     @Override
     public String signatureOf(Podcast podcast) {
-        Option<Element> element = xmlOf(podcast.getUrl()).map(Document::getRootElement);
-
-        return element
-                .map(d -> d.getChildren("entry", d.getNamespace()))
-                .map(entries -> entries.stream().map(elem -> elem.getChildText("id", element.map(Element::getNamespace).getOrElse(Namespace.NO_NAMESPACE))).collect(joining()))
+        return entriesOf(podcast)
+                .map(entries -> entries.stream().map(entry -> StringUtils.defaultString(entry.getChildText("id", entry.getNamespace()))).collect(joining()))
                 .map(signatureService::generateMD5Signature)
                 .getOrElse(StringUtils.EMPTY);
     }
 
+    /**
+     * The feed only has the last entries of the channel, they are kept during the update cycle, so the signature and
+     * the items of the podcast come from a single fetch of the feed
+     */
+    private Option<List<Element>> entriesOf(Podcast podcast) {
+        String url = feedUrlOf(podcast.getUrl());
+        return updateCycleCache.get(FEED_ENTRIES, url, () -> {
+            List<Element> entries = Lists.newArrayList();
+            return jdomService.parseEach(url, "entry", entries::add) ? Option.of(entries) : Option.none();
+        });
+    }
+
     private Item generateItemFromElement(Element entry, Namespace defaultNamespace) {
         Element mediaGroup = entry.getChild("group", MEDIA_NAMESPACE);
         return new Item()
@@ -184,8 +186,8 @@ public class YoutubeUpdater extends AbstractUpdater {
         return String.format(URL_PAGE_BASE, idVideo);
     }
 
-    private Option<Document> xmlOf(String url) {
-        return jdomService.parse(isPlaylist(url) ? String.format(PLAYLIST_RSS_BASE, playlistIdOf(url)) : String.format(CHANNEL_RSS_BASE, channelIdOf(url)));
+    private String feedUrlOf(String url) {
+        return isPlaylist(url) ? String.format(PLAYLIST_RSS_BASE, playlistIdOf(url)) : String.format(CHANNEL_RSS_BASE, channelIdOf(url));
     }
 
     private String playlistIdOf(String url) {
@@ -0,0 +1,10 @@
+package lan.dk.podcastserver.repository;
+
+import lan.dk.podcastserver.entity.DownloadJournal;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface DownloadJournalRepository extends JpaRepository<DownloadJournal, UUID> {}
@@ -67,4 +67,9 @@ public interface ItemRepository extends JpaRepository<Item, UUID>, ItemRepositor
         return Sets.newHashSet(findAll(hasStatus(status)));
     }
 
+    @Transactional(readOnly = true, isolation = Isolation.READ_COMMITTED)
+    default Set<Item> findAllDownloadedWithContent(String digest, Long length) {
+        return Sets.newHashSet(findAll(hasContent(digest, length).and(isDownloaded(Boolean.TRUE))));
+    }
+
 }
@@ -0,0 +1,86 @@
+package lan.dk.podcastserver.repository;
+
+import javaslang.control.Option;
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.entity.WaitingItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static java.util.Objects.isNull;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Persisted order of the waiting queue
+ */
+@Repository
+public interface WaitingItemRepository extends JpaRepository<WaitingItem, UUID> {
+
+    Double GAP = 1024D;
+
+    @Query("select i from Item i, WaitingItem w where i.id = w.id order by w.position asc")
+    List<Item> findAllItemsInOrder();
+
+    WaitingItem findFirstByOrderByPositionDesc();
+
+    @Transactional
+    default void enqueue(List<UUID> ids) {
+        Double last = Option.of(findFirstByOrderByPositionDesc()).map(WaitingItem::getPosition).getOrElse(0D);
+
+        save(IntStream.range(0, ids.size())
+                .mapToObj(i -> WaitingItem.builder().id(ids.get(i)).position(last + GAP * (i + 1)).build())
+                .collect(toList())
+        );
+    }
+
+    @Transactional
+    default void remove(UUID id) {
+        if (exists(id)) delete(id);
+    }
+
+    /**
+     * Place the item between its new neighbours, only its own row is updated unless the gap between them is exhausted,
+     * in that case the whole queue is renumbered following the given order.
+     */
+    @Transactional
+    default void move(UUID id, UUID previous, UUID next, List<UUID> order) {
+        Double before = isNull(previous) ? null : positionOf(previous);
+        Double after = isNull(next) ? null : positionOf(next);
+
+        Double position;
+        if (isNull(before) && isNull(after)) position = GAP;
+        else if (isNull(before)) position = after - GAP;
+        else if (isNull(after)) position = before + GAP;
+        else position = (before + after) / 2;
+
+        if (position.equals(before) || position.equals(after)) {
+            renumber(order);
+            return;
+        }
+
+        save(WaitingItem.builder().id(id).position(position).build());
+    }
+
+    /**
+     * The rows of the queue are updated in place, the rows already loaded by the transaction (the neighbours of a move)
+     * stay in sync with the table. Only the rows of items no longer in the queue are deleted.
+     */
+    @Transactional
+    default void renumber(List<UUID> order) {
+        deleteInBatch(findAll().stream().filter(w -> !order.contains(w.getId())).collect(toList()));
+
+        save(IntStream.range(0, order.size())
+                .mapToObj(i -> WaitingItem.builder().id(order.get(i)).position(GAP * (i + 1)).build())
+                .collect(toList())
+        );
+    }
+
+    default Double positionOf(UUID id) {
+        return Option.of(findOne(id)).map(WaitingItem::getPosition).getOrElse(() -> null);
+    }
+}
@@ -46,6 +46,10 @@ public class ItemDSL {
     public static BooleanExpression hasBeenDownloadedAfter(ZonedDateTime dateTime) { return Q_ITEM.downloadDate.gt(dateTime); }
     public static BooleanExpression hasBeenCreatedAfter(ZonedDateTime dateTime) { return Q_ITEM.creationDate.gt(dateTime); }
 
+    public static BooleanExpression hasContent(String digest, Long length) {
+        return Q_ITEM.digest.eq(digest).and(Q_ITEM.length.eq(length));
+    }
+
     public static BooleanExpression isOfType(String type) {
         return Q_ITEM.podcast.type.eq(type);
     }
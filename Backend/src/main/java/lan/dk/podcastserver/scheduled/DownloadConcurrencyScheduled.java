@@ -0,0 +1,99 @@
+package lan.dk.podcastserver.scheduled;
+
+import javaslang.Tuple;
+import javaslang.collection.HashMap;
+import javaslang.collection.Map;
+import lan.dk.podcastserver.manager.DownloadMetrics;
+import lan.dk.podcastserver.manager.ItemDownloadManager;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Additive increase / multiplicative decrease of the number of concurrent downloads.
+ *
+ * At each tick, the total throughput of the downloads is measured. While the waiting queue has items for every free slot,
+ * one slot is added as long as the throughput keeps growing. The last slot added is removed if it didn't bring at least
+ * {@link #MIN_GAIN} of throughput, and the number of slots is halved when downloads fail. After a decrease, the number
+ * of slots is kept for {@link #HOLD_TICKS} ticks. The result always stays between the min and max concurrent download.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DownloadConcurrencyScheduled {
+
+    static final Double MIN_GAIN = 0.05;
+    static final Integer HOLD_TICKS = 6;
+
+    final ItemDownloadManager IDM;
+    final DownloadMetrics downloadMetrics;
+    final PodcastServerParameters podcastServerParameters;
+
+    private Map<UUID, Long> lastBytes = HashMap.empty();
+    private long lastTick = 0L;
+    private long lastFailures = 0L;
+
+    private int previousLimit = 0;
+    private long previousThroughput = 0L;
+    private int hold = 0;
+
+    @Scheduled(fixedRateString = "${podcastserver.concurrency-adjustment-rate:10000}")
+    public void adjustConcurrency() {
+        if (!Boolean.TRUE.equals(podcastServerParameters.getAdaptiveConcurrentDownload())) return;
+
+        long now = System.currentTimeMillis();
+        long failures = downloadMetrics.getNumberOfFailures();
+        Map<UUID, Long> bytes = IDM.getDownloadingQueue()
+                .values()
+                .toMap(d -> Tuple.of(d.getItem().getId(), d.getDownloadedBytes()));
+
+        if (lastTick > 0 && now > lastTick) {
+            long transferred = bytes
+                    .map(t -> Math.max(0L, t._2() - lastBytes.get(t._1()).getOrElse(t._2())))
+                    .sum().longValue();
+            adjust(transferred * 1000 / (now - lastTick), failures - lastFailures);
+        }
+
+        lastTick = now;
+        lastBytes = bytes;
+        lastFailures = failures;
+    }
+
+    void adjust(long throughput, long newFailures) {
+        int limit = IDM.getLimitParallelDownload();
+        int next;
+
+        if (newFailures > 0) {
+            next = limit / 2;
+            hold = HOLD_TICKS;
+        } else if (limit > previousLimit && previousLimit > 0 && throughput < previousThroughput * (1 + MIN_GAIN)) {
+            next = limit - 1;
+            hold = HOLD_TICKS;
+        } else if (hold > 0) {
+            next = limit;
+            hold--;
+        } else if (isSaturated(limit)) {
+            next = limit + 1;
+        } else {
+            next = limit;
+        }
+
+        next = Math.max(podcastServerParameters.getMinConcurrentDownload(), Math.min(podcastServerParameters.getMaxConcurrentDownload(), next));
+
+        previousLimit = limit;
+        previousThroughput = throughput;
+
+        if (next != limit) {
+            log.info("Concurrent downloads from {} to {}, throughput of {} B/s and {} failures", limit, next, throughput, newFailures);
+            IDM.setLimitParallelDownload(next);
+        }
+    }
+
+    private Boolean isSaturated(int limit) {
+        return IDM.getNumberOfCurrentDownload() >= limit && !IDM.getWaitingQueue().isEmpty();
+    }
+}
@@ -0,0 +1,85 @@
+package lan.dk.podcastserver.scheduled;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import javaslang.Tuple;
+import javaslang.collection.HashMap;
+import javaslang.collection.List;
+import javaslang.collection.Map;
+import lan.dk.podcastserver.manager.ItemDownloadManager;
+import lan.dk.podcastserver.manager.worker.downloader.Downloader;
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Broadcast, at a fixed rate, the progression of all the current downloads in one message.
+ * Only the downloads which have changed since the last tick are sent, with their speed computed between the two ticks.
+ */
+@Component
+@RequiredArgsConstructor
+public class DownloadProgressionScheduled {
+
+    static final String WS_TOPIC_PROGRESSION = "/topic/download/progression";
+
+    final ItemDownloadManager IDM;
+    final SimpMessagingTemplate template;
+
+    private Map<UUID, Progression> lastProgressions = HashMap.empty();
+
+    @Scheduled(fixedRateString = "${podcastserver.download-progression-rate:500}")
+    public void broadcastProgression() {
+        long now = System.currentTimeMillis();
+
+        Map<UUID, Progression> progressions = IDM.getDownloadingQueue()
+                .values()
+                .toMap(d -> Tuple.of(d.getItem().getId(), progressionOf(d, now)));
+
+        List<Progression> changed = progressions.values()
+                .filter(p -> lastProgressions.get(p.getId()).map(p::hasChangedFrom).getOrElse(true))
+                .toList();
+
+        lastProgressions = progressions;
+
+        if (changed.nonEmpty()) {
+            template.convertAndSend(WS_TOPIC_PROGRESSION, changed.toJavaList());
+        }
+    }
+
+    private Progression progressionOf(Downloader downloader, long now) {
+        UUID id = downloader.getItem().getId();
+        Long bytes = downloader.getDownloadedBytes();
+
+        Long speed = lastProgressions.get(id)
+                .filter(p -> now > p.getTimestamp())
+                .map(p -> Math.max(0L, (bytes - p.getBytes()) * 1000 / (now - p.getTimestamp())))
+                .getOrElse(0L);
+
+        return Progression.builder()
+                .id(id)
+                .progression(downloader.getItem().getProgression())
+                .bytes(bytes)
+                .speed(speed)
+                .timestamp(now)
+                .build();
+    }
+
+    @Value
+    @Builder
+    static class Progression {
+        private final UUID id;
+        private final Integer progression;
+        private final Long bytes;
+        private final Long speed;
+        @JsonIgnore private final Long timestamp;
+
+        Boolean hasChangedFrom(Progression previous) {
+            return !Objects.equals(progression, previous.progression) || !Objects.equals(bytes, previous.bytes);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package lan.dk.podcastserver.service;
+
+import lan.dk.podcastserver.manager.worker.downloader.ContentDigest;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.nonNull;
+
+/**
+ * Non-blocking transfer of files over HTTP.
+ *
+ * All the transfers share a small and fixed number of IO threads, the bytes are written to the target file as they are
+ * received, so a download doesn't hold any thread while it is waiting for the network. When the bandwidth is limited,
+ * a transfer stops reading from its connection until it gets new tokens. The SHA-256 digest of the file is computed
+ * from the bytes as they are written, only the part already on disk is read again when a transfer is resumed, by the
+ * caller and before the request is sent, so the IO threads never read the disk.
+ */
+@Slf4j
+@Service
+public class AsyncHttpService {
+
+    private static final Integer IO_THREADS = 2;
+    private static final Integer MAX_CONNECTIONS = 200;
+    private static final Integer MAX_CONNECTIONS_BY_HOST = 20;
+    private static final Integer BUFFER_SIZE = 64 * 1024;
+    private static final Integer HTTP_OK = 200;
+    private static final Integer HTTP_PARTIAL_CONTENT = 206;
+
+    private final CloseableHttpAsyncClient client;
+    private final BandwidthService bandwidthService;
+    private final ScheduledExecutorService resumer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Async-Http-Resumer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AsyncHttpService(BandwidthService bandwidthService, PodcastServerParameters podcastServerParameters) {
+        this.bandwidthService = bandwidthService;
+        Integer timeout = podcastServerParameters.getDownloadTimeout();
+        client = HttpAsyncClients.custom()
+                .setDefaultIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(IO_THREADS).build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(timeout)
+                        .setSocketTimeout(timeout)
+                        .setConnectionRequestTimeout(timeout)
+                        .build())
+                .setMaxConnTotal(MAX_CONNECTIONS)
+                .setMaxConnPerRoute(MAX_CONNECTIONS_BY_HOST)
+                .setUserAgent(UrlService.USER_AGENT_DESKTOP)
+                .build();
+        client.start();
+    }
+
+    /**
+     * Download the resource into the target file, from the position {@code offset} if the server accepts range requests.
+     * The returned future gives the size and the digest of the file at the end of the transfer, cancelling it interrupts
+     * the transfer. The bytes already in the file are digested on the thread of the caller before the request is sent.
+     */
+    public CompletableFuture<DownloadedFile> download(String url, Path target, Long offset, LongConsumer onProgression) {
+        CompletableFuture<DownloadedFile> result = new CompletableFuture<>();
+        ContentDigest digest = new ContentDigest();
+        try {
+            digest.catchUp(target, offset);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        HttpGet request = new HttpGet(url);
+        if (offset > 0) {
+            request.setHeader("Range", "bytes=" + offset + "-");
+        }
+
+        Future<DownloadedFile> transfer = client.execute(HttpAsyncMethods.create(request), new FileConsumer(target, offset, digest, onProgression, this::throttle), new FutureCallback<DownloadedFile>() {
+            @Override public void completed(DownloadedFile file) { result.complete(file); }
+            @Override public void failed(Exception e) { result.completeExceptionally(e); }
+            @Override public void cancelled() { result.cancel(false); }
+        });
+        result.whenComplete((file, e) -> { if (result.isCancelled()) transfer.cancel(true); });
+
+        return result;
+    }
+
+    /**
+     * Stop reading from the connection for the time needed by the bandwidth limit, without blocking the IO thread
+     */
+    private void throttle(IOControl ioControl, Integer bytes) {
+        long wait = bandwidthService.reserve(bytes);
+        if (wait <= 0) return;
+
+        ioControl.suspendInput();
+        resumer.schedule(ioControl::requestInput, wait, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        resumer.shutdownNow();
+        client.close();
+    }
+
+    @Value
+    public static class DownloadedFile {
+        private final Long length;
+        private final String digest;
+    }
+
+    static class FileConsumer extends AsyncByteConsumer<DownloadedFile> {
+
+        private final Path target;
+        private final Long offset;
+        private final LongConsumer onProgression;
+        private final BiConsumer<IOControl, Integer> throttle;
+
+        private ContentDigest digest;
+        private FileChannel channel;
+        private Long position;
+
+        FileConsumer(Path target, Long offset, ContentDigest digest, LongConsumer onProgression, BiConsumer<IOControl, Integer> throttle) {
+            super(BUFFER_SIZE);
+            this.target = target;
+            this.offset = offset;
+            this.digest = digest;
+            this.onProgression = onProgression;
+            this.throttle = throttle;
+        }
+
+        @Override
+        protected void onResponseReceived(HttpResponse response) throws HttpException, IOException {
+            int status = response.getStatusLine().getStatusCode();
+            if (status != HTTP_OK && status != HTTP_PARTIAL_CONTENT) {
+                throw new HttpException("Unexpected status " + status + " for " + target.getFileName());
+            }
+
+            channel = FileChannel.open(target, CREATE, READ, WRITE);
+            if (status == HTTP_PARTIAL_CONTENT) {
+                position = offset;
+            } else {
+                log.debug("Range not served for {}, download from the beginning", target.getFileName());
+                channel.truncate(0);
+                digest = new ContentDigest();
+                position = 0L;
+            }
+            channel.position(position);
+        }
+
+        @Override
+        protected void onByteReceived(ByteBuffer buf, IOControl ioControl) throws IOException {
+            int received = buf.remaining();
+            digest.update(buf);
+            while (buf.hasRemaining()) {
+                position += channel.write(buf);
+            }
+            onProgression.accept(position);
+            throttle.accept(ioControl, received);
+        }
+
+        @Override
+        protected DownloadedFile buildResult(HttpContext context) throws Exception {
+            channel.force(false);
+            return new DownloadedFile(position, digest.hex());
+        }
+
+        @Override
+        protected void releaseResources() {
+            if (nonNull(channel)) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.error("Error during close of {}", target, e);
+                }
+            }
+        }
+    }
+}
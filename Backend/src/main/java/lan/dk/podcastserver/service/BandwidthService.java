@@ -0,0 +1,87 @@
+package lan.dk.podcastserver.service;
+
+import javaslang.collection.List;
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.service.properties.Bandwidth;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Token bucket shared by all the downloads, refilled at the rate of the bandwidth schedule for the current time.
+ *
+ * The bucket holds at most one second of transfer. A download takes tokens for the bytes it has received and waits
+ * when the bucket is empty, so the total throughput of the downloads stays close to the rate.
+ */
+@Service
+@RequiredArgsConstructor
+public class BandwidthService {
+
+    private static final double NANOS_BY_SECOND = 1_000_000_000D;
+
+    private final Bandwidth bandwidth;
+
+    private double tokens = 0D;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * Rate in bytes per second for the given time, 0 means no limit
+     */
+    public Long rateAt(LocalDateTime dateTime) {
+        return List.ofAll(bandwidth.getSchedule())
+                .find(p -> p.contains(dateTime))
+                .map(Bandwidth.Period::getRate)
+                .getOrElse(bandwidth::getDefaultRate);
+    }
+
+    public Long currentRate() {
+        return rateAt(LocalDateTime.now());
+    }
+
+    /**
+     * Take the tokens for {@code bytes} without waiting
+     * @return the time in milliseconds the caller should wait before transferring more
+     */
+    public synchronized long reserve(long bytes) {
+        long rate = currentRate();
+        long now = System.nanoTime();
+
+        if (rate <= 0) {
+            tokens = 0D;
+            lastRefill = now;
+            return 0L;
+        }
+
+        tokens = Math.min(rate, tokens + (now - lastRefill) * rate / NANOS_BY_SECOND) - bytes;
+        lastRefill = now;
+
+        return tokens >= 0 ? 0L : (long) Math.ceil(-tokens * 1000 / rate);
+    }
+
+    /**
+     * Take the tokens for {@code bytes}, waiting as long as needed to respect the current rate
+     */
+    public void acquire(long bytes) {
+        long wait = reserve(bytes);
+        if (wait <= 0) return;
+
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Big items are kept in the waiting queue while a limit applies
+     */
+    public Boolean shouldDefer(Item item) {
+        Long threshold = bandwidth.getDeferLargerThan();
+        return nonNull(threshold) && threshold > 0
+                && nonNull(item.getLength()) && item.getLength() > threshold
+                && currentRate() > 0;
+    }
+}
@@ -1,6 +1,7 @@
 package lan.dk.podcastserver.service;
 
 import com.google.common.collect.Lists;
+import javaslang.collection.List;
 import javaslang.control.Try;
 import lan.dk.podcastserver.utils.custom.ffmpeg.CustomRunProcessFunc;
 import lan.dk.podcastserver.utils.custom.ffmpeg.ProcessListener;
@@ -9,6 +10,7 @@ import lombok.extern.slf4j.Slf4j;
 import net.bramp.ffmpeg.FFmpegExecutor;
 import net.bramp.ffmpeg.FFprobe;
 import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import net.bramp.ffmpeg.builder.FFmpegOutputBuilder;
 import net.bramp.ffmpeg.progress.ProgressListener;
 import org.apache.commons.io.FilenameUtils;
 import org.springframework.stereotype.Component;
@@ -36,6 +38,11 @@ public class FfmpegService {
     public static final String AUDIO_BITSTREAM_FILTER_AAC_ADTSTOASC = "aac_adtstoasc";
     public static final String CODEC_COPY = "copy";
     private static final String FORMAT_CONCAT = "concat";
+    private static final String CODEC_AAC = "aac";
+    private static final String CODEC_VORBIS = "libvorbis";
+    private static final String WEBM_EXTENSION = "webm";
+    private static final List<String> MP4_EXTENSIONS = List.of("mp4", "m4a", "aac");
+    private static final List<String> ADTS_EXTENSIONS = List.of("aac", "ts");
 
     private final CustomRunProcessFunc runProcessFunc;
     private final FFmpegExecutor ffmpegExecutor;
@@ -73,38 +80,75 @@ public class FfmpegService {
             if (nonNull(listOfFiles)) Try.of(() -> Files.deleteIfExists(finalListOfFiles)); }
     }
 
-    /* Merge Audio and Video Files */
+    /* Merge Audio and Video Files, in one pass : the audio is copied if the container of the video accepts it */
     public Path mergeAudioAndVideo(Path videoFile, Path audioFile, Path dest) {
-        Path convertedAudio = convert(audioFile, audioFile.resolveSibling(changeExtension(audioFile, "aac")));
-
         Path tmpFile = generateTempFileFor(dest, videoFile);
+        String audioCodec = audioCodecFor(audioFile, dest);
 
-        FFmpegBuilder builder = new FFmpegBuilder()
-                .setInput(convertedAudio.toAbsolutePath().toString())
+        FFmpegOutputBuilder output = new FFmpegBuilder()
+                .setInput(audioFile.toAbsolutePath().toString())
                 .addInput(videoFile.toAbsolutePath().toString())
                 .addOutput(tmpFile.toAbsolutePath().toString())
-                .setAudioBitStreamFilter(AUDIO_BITSTREAM_FILTER_AAC_ADTSTOASC)
-                .setAudioCodec(CODEC_COPY)
-                .setVideoCodec(CODEC_COPY)
-                .done();
+                .setAudioCodec(audioCodec)
+                .setVideoCodec(CODEC_COPY);
 
-        ffmpegExecutor.createJob(builder).run();
+        if (CODEC_COPY.equals(audioCodec) && ADTS_EXTENSIONS.contains(extensionOf(audioFile)))
+            output.setAudioBitStreamFilter(AUDIO_BITSTREAM_FILTER_AAC_ADTSTOASC);
+
+        ffmpegExecutor.createJob(output.done()).run();
 
-        Try.of(() -> Files.deleteIfExists(convertedAudio));
         Try.of(() -> Files.move(tmpFile, dest, StandardCopyOption.REPLACE_EXISTING));
 
         return dest;
     }
 
-    private Path convert(Path source, Path dest) {
-        FFmpegBuilder converter = new FFmpegBuilder()
+    /* Keep only the audio of a file in a m4a file, copied if it is already in AAC */
+    public void extractAudio(Path source, Path dest) {
+        Try.run(() -> Files.deleteIfExists(dest));
+        String sourceExtension = extensionOf(source);
+        Boolean isAac = ADTS_EXTENSIONS.contains(sourceExtension) || MP4_EXTENSIONS.contains(sourceExtension);
+
+        FFmpegOutputBuilder output = new FFmpegBuilder()
+                .setInput(source.toAbsolutePath().toString())
+                .addOutput(dest.toAbsolutePath().toString())
+                    .setFormat("mp4")
+                    .disableVideo()
+                    .setAudioCodec(isAac ? CODEC_COPY : CODEC_AAC);
+
+        if (ADTS_EXTENSIONS.contains(sourceExtension))
+            output.setAudioBitStreamFilter(AUDIO_BITSTREAM_FILTER_AAC_ADTSTOASC);
+
+        ffmpegExecutor.createJob(output.done()).run();
+    }
+
+    private static String audioCodecFor(Path audioFile, Path dest) {
+        String audioExtension = extensionOf(audioFile);
+        String destExtension = extensionOf(dest);
+
+        if (audioExtension.equals(destExtension) || (MP4_EXTENSIONS.contains(audioExtension) && MP4_EXTENSIONS.contains(destExtension)))
+            return CODEC_COPY;
+
+        return WEBM_EXTENSION.equals(destExtension) ? CODEC_VORBIS : CODEC_AAC;
+    }
+
+    private static String extensionOf(Path file) {
+        return FilenameUtils.getExtension(file.getFileName().toString()).toLowerCase();
+    }
+
+    /* Copy the streams of a MPEG-TS file in a mp4 file, without encoding */
+    public void remux(Path source, Path dest) {
+        Try.run(() -> Files.deleteIfExists(dest));
+
+        FFmpegBuilder builder = new FFmpegBuilder()
                 .setInput(source.toAbsolutePath().toString())
                 .addOutput(dest.toAbsolutePath().toString())
-                .disableVideo()
+                    .setFormat("mp4")
+                    .setAudioBitStreamFilter(AUDIO_BITSTREAM_FILTER_AAC_ADTSTOASC)
+                    .setAudioCodec(CODEC_COPY)
+                    .setVideoCodec(CODEC_COPY)
                 .done();
 
-        ffmpegExecutor.createJob(converter).run();
-        return dest;
+        ffmpegExecutor.createJob(builder).run();
     }
 
     private Path generateTempFileFor(Path dest, Path video) {
@@ -113,11 +157,6 @@ public class FfmpegService {
                 .getOrElseThrow(e -> new RuntimeException(e));
     }
 
-    private Path changeExtension(Path audioFile, String ext) {
-        String newName = FilenameUtils.getBaseName(audioFile.getFileName().toString()).concat(".").concat(ext);
-        return audioFile.resolveSibling(newName);
-    }
-
     /* Get duration of a File */
     public double getDurationOf(String url, String userAgent) {
         return Try.of(() -> ffprobe.probe(url, userAgent).getFormat().duration)
@@ -23,8 +23,13 @@ import java.util.stream.Collector;
 public class HtmlService {
 
     private final UrlService urlService;
+    private final UpdateCycleCache updateCycleCache;
 
     public Option<Document> get(String url) {
+        return updateCycleCache.get(UpdateCycleCache.HTML, url, () -> fetch(url));
+    }
+
+    private Option<Document> fetch(String url) {
         return Try.of(() -> urlService.get(url)
                     .header(UrlService.USER_AGENT_KEY, UrlService.USER_AGENT_DESKTOP)
                 .asBinary())
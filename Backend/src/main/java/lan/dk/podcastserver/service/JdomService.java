@@ -10,6 +10,7 @@ import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.Namespace;
@@ -19,11 +20,17 @@ import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
 import org.springframework.stereotype.Service;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.time.format.DateTimeFormatter;
 import java.util.Comparator;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static java.util.Objects.nonNull;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
@@ -65,16 +72,95 @@ public class JdomService {
     // URL Format
     private static final String LINK_PODCAST_FORMAT = "%s/api/podcast/%s/rss";
     private static final String LINK_WATCHLIST_FORMAT = "%s/api/watchlists/%s/rss";
+    private static final XMLInputFactory XML_INPUT_FACTORY = xmlInputFactory();
     private static final Comparator<Item> PUB_DATE_COMPARATOR = (one, another) -> one.getPubDate().isAfter(another.getPubDate()) ? -1 : 1;
 
     final PodcastServerParameters podcastServerParameters;
     final MimeTypeService mimeTypeService;
     final UrlService urlService;
+    final UpdateCycleCache updateCycleCache;
 
     public Option<Document> parse(String url) {
-        return Try.of(() -> new SAXBuilder().build(urlService.asStream(url)))
+        return updateCycleCache.get(UpdateCycleCache.XML, url, () ->
+                Try.of(() -> saxBuilder().build(updateCycleCache.body(url, () -> urlService.asStream(url))))
+                    .onFailure(e -> log.error("Error during parsing of {}", url, e))
+                    .toOption()
+        );
+    }
+
+    /**
+     * Pull parsing of the document at the url: each element with this local name is built alone and given to the
+     * visitor, which returns false to stop the parsing. The rest of the document is never kept in memory.
+     *
+     * @return false if the document can't be read
+     */
+    public Boolean parseEach(String url, String name, Predicate<Element> visitor) {
+        return Try.of(() -> updateCycleCache.stream(url, () -> urlService.asStream(url)))
+                .mapTry(stream -> { try (InputStream is = stream) { return readEach(is, name, visitor); } })
                 .onFailure(e -> log.error("Error during parsing of {}", url, e))
-                .toOption();
+                .getOrElse(Boolean.FALSE);
+    }
+
+    public static Boolean readEach(InputStream stream, String name, Predicate<Element> visitor) throws XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(stream);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && name.equals(reader.getLocalName()) && !visitor.test(elementOf(reader))) {
+                    break;
+                }
+            }
+            return Boolean.TRUE;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Builds the element the reader is on, which is left on its end tag
+     */
+    private static Element elementOf(XMLStreamReader reader) throws XMLStreamException {
+        Element element = new Element(reader.getLocalName(), namespaceOf(reader.getPrefix(), reader.getNamespaceURI()));
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            Namespace namespace = isEmpty(reader.getAttributePrefix(i)) ? Namespace.NO_NAMESPACE : namespaceOf(reader.getAttributePrefix(i), reader.getAttributeNamespace(i));
+            element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i), namespace);
+        }
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    element.addContent(elementOf(reader));
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    element.addContent(reader.getText());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    return element;
+            }
+        }
+        return element;
+    }
+
+    private static Namespace namespaceOf(String prefix, String uri) {
+        return Namespace.getNamespace(StringUtils.defaultString(prefix), StringUtils.defaultString(uri));
+    }
+
+    private static SAXBuilder saxBuilder() {
+        SAXBuilder builder = new SAXBuilder();
+        builder.setFeature("http://xml.org/sax/features/external-general-entities", false);
+        builder.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        builder.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        return builder;
+    }
+
+    private static XMLInputFactory xmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        /* The feeds come from remote servers, their DTD and external entities are never resolved */
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
     }
 
     public String podcastToXMLGeneric(Podcast podcast, String domainName, Boolean limit) throws IOException {
@@ -13,6 +13,7 @@ import org.springframework.stereotype.Service;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 
 import static java.util.stream.Collectors.joining;
 
@@ -24,11 +25,13 @@ import static java.util.stream.Collectors.joining;
 public class JsonService {
 
     private final UrlService urlService;
+    private final UpdateCycleCache updateCycleCache;
     private final ParseContext parserContext;
 
     @Autowired
-    public JsonService(UrlService urlService, ObjectMapper mapper) {
+    public JsonService(UrlService urlService, UpdateCycleCache updateCycleCache, ObjectMapper mapper) {
         this.urlService = urlService;
+        this.updateCycleCache = updateCycleCache;
         this.parserContext = JsonPath.using(Configuration.builder().mappingProvider(new JacksonMappingProvider(mapper)).build());
     }
 
@@ -37,7 +40,11 @@ public class JsonService {
     }
 
     public Option<DocumentContext> parseUrl(String url) {
-        try (BufferedReader bufferedReader = urlService.asReader(url)) {
+        return updateCycleCache.get(UpdateCycleCache.JSON, url, () -> fetch(url));
+    }
+
+    private Option<DocumentContext> fetch(String url) {
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(updateCycleCache.body(url, () -> urlService.asStream(url))))) {
             return Option.of(parse(bufferedReader.lines().collect(joining())));
         } catch (IOException e) {
             log.error("Error during fetching of each items of {}", url, e);
@@ -1,7 +1,11 @@
 package lan.dk.podcastserver.service;
 
+import javaslang.Tuple2;
+import javaslang.collection.List;
 import javaslang.control.Option;
+import javaslang.control.Try;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
@@ -9,6 +13,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.stream.Collectors;
 
 import static java.util.Objects.isNull;
 
@@ -19,14 +25,37 @@ import static java.util.Objects.isNull;
 @RequiredArgsConstructor
 public class M3U8Service {
 
+    private static final String EXTM3U = "#EXTM3U";
+    private static final String EXT_X_STREAM_INF = "#EXT-X-STREAM-INF:";
+    private static final String EXTINF = "#EXTINF:";
+    private static final String EXT_X_ENDLIST = "#EXT-X-ENDLIST";
+    private static final String EXT_X_KEY = "#EXT-X-KEY:";
+    private static final String EXT_X_MEDIA = "#EXT-X-MEDIA:";
+    private static final String BANDWIDTH = "BANDWIDTH=";
+    private static final String CODECS = "CODECS=";
+    private static final String TYPE_AUDIO = "TYPE=AUDIO";
+    private static final String URI = "URI=\"";
+    private static final List<String> VIDEO_CODECS = List.of("avc1", "avc3", "hvc1", "hev1");
+    private static final List<String> UNSUPPORTED_TAGS = List.of("#EXT-X-BYTERANGE", "#EXT-X-MAP", "#EXT-X-DISCONTINUITY");
+    private static final Integer MAX_DEPTH = 2;
+
     private final UrlService urlService;
 
     public Option<String> findBestQuality(InputStream is) {
+        return findBestQuality(is, Boolean.FALSE);
+    }
+
+    /**
+     * With {@code audioOnly}, the last variant with only audio is selected, if the playlist has one
+     */
+    public Option<String> findBestQuality(InputStream is, Boolean audioOnly) {
         try (BufferedReader buffer = new BufferedReader(new InputStreamReader(is))) {
-            return Option.ofOptional(buffer
-                    .lines()
-                    .filter(l -> l.contains("audio") && l.contains("video"))
-                    .reduce((u, v) -> v));
+            List<String> variants = List.ofAll(buffer.lines().filter(l -> l.contains("audio")).collect(Collectors.toList()));
+            Option<String> audio = variants.filter(l -> !l.startsWith("#") && !l.contains("video")).lastOption();
+
+            return audioOnly && audio.isDefined()
+                    ? audio
+                    : variants.filter(l -> l.contains("video")).lastOption();
         } catch (IOException | RuntimeException ignored) {
             /* RuntimeException added because buffer.lines only throw UncheckedIOException */
             return Option.none();
@@ -51,4 +80,112 @@ public class M3U8Service {
         }
     }
 
+    /**
+     * Segments of the playlist, the variant with the highest bandwidth is followed if the url is a master playlist.
+     * Nothing is returned for the playlists which can't be downloaded segment by segment : live, encrypted or with
+     * byte ranges, init sections, discontinuities or audio in separate renditions.
+     */
+    public Option<MediaPlaylist> findMediaPlaylist(String url) {
+        return findMediaPlaylist(url, Boolean.FALSE);
+    }
+
+    /**
+     * With {@code audioOnly}, the audio rendition or the best variant with only audio is followed if the master playlist
+     * has one. Otherwise, the best variant is followed and its audio has to be extracted from the segments.
+     */
+    public Option<MediaPlaylist> findMediaPlaylist(String url, Boolean audioOnly) {
+        return findMediaPlaylist(url, audioOnly, 0);
+    }
+
+    private Option<MediaPlaylist> findMediaPlaylist(String url, Boolean audioOnly, Integer depth) {
+        if (isNull(url) || depth > MAX_DEPTH) return Option.none();
+
+        List<String> lines = Try.of(() -> readLines(url)).getOrElse(List.empty());
+        if (lines.isEmpty() || !lines.head().startsWith(EXTM3U)) return Option.none();
+
+        if (lines.exists(l -> l.startsWith(EXT_X_STREAM_INF))) {
+            return variantOf(url, lines, audioOnly).flatMap(variant -> findMediaPlaylist(variant, audioOnly, depth + 1));
+        }
+
+        if (!lines.contains(EXT_X_ENDLIST) || lines.exists(M3U8Service::isUnsupported)) return Option.none();
+
+        return Option.of(new MediaPlaylist(segmentsOf(url, lines)))
+                .filter(p -> !p.getSegments().isEmpty());
+    }
+
+    private List<String> readLines(String url) throws IOException {
+        try (BufferedReader in = urlService.asReader(url)) {
+            return List.ofAll(in.lines().map(String::trim).filter(StringUtils::isNotEmpty).collect(Collectors.toList()));
+        }
+    }
+
+    private static Option<String> variantOf(String url, List<String> lines, Boolean audioOnly) {
+        List<String> audioRenditions = lines.filter(l -> l.startsWith(EXT_X_MEDIA) && l.contains(TYPE_AUDIO) && l.contains(URI));
+        List<Tuple2<String, String>> variants = lines
+                .zip(lines.tail().append(""))
+                .filter(t -> t._1().startsWith(EXT_X_STREAM_INF) && !t._2().startsWith("#"));
+
+        if (!audioOnly) {
+            /* The segments of the variants don't have the audio, it would have to be merged from the renditions */
+            return audioRenditions.isEmpty() ? bestVariantOf(url, variants) : Option.none();
+        }
+
+        if (!audioRenditions.isEmpty()) {
+            String rendition = audioRenditions.find(l -> l.contains("DEFAULT=YES")).getOrElse(audioRenditions.head());
+            return resolve(url, StringUtils.substringBetween(rendition, URI, "\""));
+        }
+
+        List<Tuple2<String, String>> audioVariants = variants.filter(t -> t._1().contains(CODECS) && !VIDEO_CODECS.exists(t._1()::contains));
+        return bestVariantOf(url, audioVariants.isEmpty() ? variants : audioVariants);
+    }
+
+    private static Option<String> bestVariantOf(String url, List<Tuple2<String, String>> variants) {
+        return variants
+                .maxBy(t -> bandwidthOf(t._1()))
+                .flatMap(t -> resolve(url, t._2()));
+    }
+
+    private static Long bandwidthOf(String streamInf) {
+        return Try.of(() -> Long.valueOf(StringUtils.substringBefore(StringUtils.substringAfter(streamInf, BANDWIDTH), ",")))
+                .getOrElse(0L);
+    }
+
+    private static List<Segment> segmentsOf(String url, List<String> lines) {
+        return lines
+                .zip(lines.tail().append(""))
+                .filter(t -> t._1().startsWith(EXTINF) && !t._2().startsWith("#"))
+                .flatMap(t -> resolve(url, t._2()).map(u -> new Segment(u, durationOf(t._1()))));
+    }
+
+    private static Double durationOf(String extInf) {
+        return Try.of(() -> Double.valueOf(StringUtils.substringBefore(StringUtils.substringAfter(extInf, EXTINF), ",")))
+                .getOrElse(0D);
+    }
+
+    private static Boolean isUnsupported(String line) {
+        return UNSUPPORTED_TAGS.exists(line::startsWith)
+                || (line.startsWith(EXT_X_KEY) && !line.contains("METHOD=NONE"));
+    }
+
+    private static Option<String> resolve(String base, String url) {
+        return Try.of(() -> new URL(new URL(base), url).toString()).toOption();
+    }
+
+    @Value
+    public static class MediaPlaylist {
+        private final List<Segment> segments;
+
+        /**
+         * Duration in seconds, sum of the duration of the segments
+         */
+        public Double getDuration() {
+            return segments.map(Segment::getDuration).sum().doubleValue();
+        }
+    }
+
+    @Value
+    public static class Segment {
+        private final String url;
+        private final Double duration;
+    }
 }
@@ -1,6 +1,11 @@
 package lan.dk.podcastserver.service;
 
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import javaslang.control.Option;
 import javaslang.control.Try;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -11,6 +16,8 @@ import org.springframework.stereotype.Service;
 @Service
 public class ProcessService {
 
+    private static final Option<LibC> LIBC = loadLibC();
+
     public ProcessBuilder newProcessBuilder(String... command) { return new ProcessBuilder(command); }
 
     public Try<Process> start(ProcessBuilder processBuilder) {
@@ -29,4 +36,43 @@ public class ProcessService {
     public Try<Integer> waitFor(Process process) {
         return Try.of(process::waitFor);
     }
+
+    /**
+     * Send the signal to the process directly through the C library, without forking a {@code kill} process
+     */
+    public Boolean signal(int pid, Signal signal) {
+        if (pid <= 0) return Boolean.FALSE;
+
+        return LIBC
+                .map(libC -> libC.kill(pid, signal.number()) == 0)
+                .getOrElse(Boolean.FALSE);
+    }
+
+    private static Option<LibC> loadLibC() {
+        if (Platform.isWindows()) return Option.none();
+
+        try {
+            return Option.of((LibC) Native.loadLibrary("c", LibC.class));
+        } catch (LinkageError e) {
+            log.error("C library not available, signals can't be sent to the processes", e);
+            return Option.none();
+        }
+    }
+
+    interface LibC extends Library {
+        int kill(int pid, int signal);
+    }
+
+    @RequiredArgsConstructor
+    public enum Signal {
+        STOP(19, 17),
+        CONT(18, 19);
+
+        private final int linux;
+        private final int bsd;
+
+        int number() {
+            return Platform.isLinux() ? linux : bsd;
+        }
+    }
 }
@@ -0,0 +1,208 @@
+package lan.dk.podcastserver.service;
+
+import javaslang.control.Option;
+import javaslang.control.Try;
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Registry of the external processes, like ffmpeg or rtmpdump, launched by the downloads.
+ *
+ * Each process is registered with its item. One thread of a shared pool waits for the end of the process and, when
+ * asked, reads its output line by line, so the start, output and exit events are delivered without polling. The
+ * processes are paused and resumed with signals. The CPU-heavy work, like a remux or a merge by ffmpeg, takes one of a
+ * limited number of slots while it runs. A download by ffmpeg or rtmpdump only copies a stream from the network, it
+ * doesn't take a slot.
+ *
+ * A process can't wait for the bandwidth by itself, so it is held (stopped, then continued by a timer) for the time
+ * the bandwidth needs to catch up with the bytes it has written.
+ */
+@Slf4j
+@Service
+public class ProcessSupervisor {
+
+    private final ProcessService processService;
+    private final Semaphore slots;
+    private final Set<Item> slotHolders = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<Item, Supervised> processes = new ConcurrentHashMap<>();
+    private final ExecutorService watchers = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Process-Supervisor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final ScheduledExecutorService holds = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Process-Bandwidth");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ProcessSupervisor(ProcessService processService, PodcastServerParameters podcastServerParameters) {
+        this.processService = processService;
+        this.slots = new Semaphore(Math.max(1, podcastServerParameters.getMaxConcurrentProcess()), true);
+    }
+
+    /**
+     * Wait for a free slot before the start of a process for the item, the slot is released at the end of the process
+     */
+    public void acquireSlot(Item item) throws InterruptedException {
+        if (slotHolders.contains(item)) return;
+
+        slots.acquire();
+        if (!slotHolders.add(item)) slots.release();
+    }
+
+    public void releaseSlot(Item item) {
+        if (slotHolders.remove(item)) slots.release();
+    }
+
+    /**
+     * Run a CPU-heavy task for the item once a slot is free, the slot is released at the end of the task
+     */
+    public <T> T withSlot(Item item, Callable<T> task) throws Exception {
+        acquireSlot(item);
+        try {
+            return task.call();
+        } finally {
+            releaseSlot(item);
+        }
+    }
+
+    /**
+     * Supervise the process of the item until its end
+     * @return a future completed with the exit code of the process
+     */
+    public CompletableFuture<Integer> register(Item item, Process process, Events events) {
+        Supervised supervised = new Supervised(processService.pidOf(process));
+        CompletableFuture<Integer> exit = new CompletableFuture<>();
+
+        processes.put(item, supervised);
+        events.onStart(process);
+
+        watchers.execute(() -> {
+            if (events.consumeOutput()) {
+                Try.run(() -> readOutput(process, events))
+                    .onFailure(e -> log.error("Error during read of the output of process of {}", item.getTitle(), e));
+            }
+
+            Integer code = waitFor(process);
+            processes.remove(item, supervised);
+            releaseSlot(item);
+
+            Try.run(() -> events.onExit(code))
+                .onFailure(e -> log.error("Error during end of process of {}", item.getTitle(), e));
+            exit.complete(code);
+        });
+
+        return exit;
+    }
+
+    public Boolean isSupervised(Item item) {
+        return processes.containsKey(item);
+    }
+
+    public Boolean pause(Item item) {
+        return signal(item, ProcessService.Signal.STOP, Boolean.TRUE);
+    }
+
+    public Boolean resume(Item item) {
+        return signal(item, ProcessService.Signal.CONT, Boolean.FALSE);
+    }
+
+    private Boolean signal(Item item, ProcessService.Signal signal, Boolean paused) {
+        return Option.of(processes.get(item))
+                .map(s -> {
+                    synchronized (s) {
+                        s.paused = paused;
+                        return processService.signal(s.pid, signal);
+                    }
+                })
+                .getOrElse(Boolean.FALSE);
+    }
+
+    /**
+     * Stop the process of the item for {@code millis}. A process paused in the meantime stays stopped at the end of the
+     * hold, and a process already held or paused is left as is.
+     */
+    public Boolean hold(Item item, Long millis) {
+        Supervised supervised = processes.get(item);
+        if (isNull(supervised)) return Boolean.FALSE;
+
+        synchronized (supervised) {
+            if (supervised.paused || supervised.held) return Boolean.TRUE;
+            if (!processService.signal(supervised.pid, ProcessService.Signal.STOP)) return Boolean.FALSE;
+            supervised.held = true;
+        }
+
+        holds.schedule(() -> release(supervised), millis, TimeUnit.MILLISECONDS);
+        return Boolean.TRUE;
+    }
+
+    private void release(Supervised supervised) {
+        synchronized (supervised) {
+            supervised.held = false;
+            if (!supervised.paused && processes.containsValue(supervised))
+                processService.signal(supervised.pid, ProcessService.Signal.CONT);
+        }
+    }
+
+    private static void readOutput(Process process, Events events) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                events.onOutput(line);
+            }
+        }
+    }
+
+    private static Integer waitFor(Process process) {
+        try {
+            return process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        watchers.shutdownNow();
+        holds.shutdownNow();
+    }
+
+    @RequiredArgsConstructor
+    private static class Supervised {
+        private final int pid;
+        private Boolean paused = Boolean.FALSE;
+        private Boolean held = Boolean.FALSE;
+    }
+
+    /**
+     * Events of a supervised process, delivered on the thread of the supervisor
+     */
+    public interface Events {
+        Events NONE = new Events() {};
+
+        default void onStart(Process process) {}
+        default void onOutput(String line) {}
+        default void onExit(Integer exitCode) {}
+        default Boolean consumeOutput() { return Boolean.FALSE; }
+    }
+}
@@ -0,0 +1,114 @@
+package lan.dk.podcastserver.service;
+
+import javaslang.control.Option;
+import javaslang.control.Try;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Cache of the media urls resolved by scraping or by following redirections.
+ *
+ * A resolved url is kept for {@link PodcastServerParameters#getResolvedUrlTtl()} minutes, or until one minute before
+ * the expiry found in its query, for the signed urls like {@code ...?e=1476800000} or {@code ...?hdnts=exp=1476800000~acl=...}.
+ * When the same key is resolved by two threads at the same time, the second one waits for the result of the first one.
+ */
+@Slf4j
+@Service
+public class ResolvedUrlCache {
+
+    private static final Pattern EXPIRY_EXTRACTOR = Pattern.compile("(?:[?&~;]|^)(?:e|exp|expire|expires|expiry)=(\\d{10}|\\d{13})(?=$|[&~;#])", Pattern.CASE_INSENSITIVE);
+    private static final Long EXPIRY_MARGIN = TimeUnit.MINUTES.toMillis(1);
+    private static final Integer SECONDS_LENGTH = 10;
+
+    private final PodcastServerParameters podcastServerParameters;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<String>> resolutions = new ConcurrentHashMap<>();
+
+    public ResolvedUrlCache(PodcastServerParameters podcastServerParameters) {
+        this.podcastServerParameters = podcastServerParameters;
+    }
+
+    /**
+     * @return the url cached for the key, or the one given by the resolver, cached if not empty
+     */
+    public String resolve(String key, Supplier<String> resolver) {
+        Entry entry = entries.get(key);
+        if (nonNull(entry) && !entry.isExpired()) {
+            return entry.url;
+        }
+
+        CompletableFuture<String> resolution = new CompletableFuture<>();
+        CompletableFuture<String> inProgress = resolutions.putIfAbsent(key, resolution);
+        if (nonNull(inProgress)) {
+            return Try.of(inProgress::join).getOrElse(resolver);
+        }
+
+        try {
+            String url = resolver.get();
+            store(key, url);
+            resolution.complete(url);
+            return url;
+        } catch (RuntimeException e) {
+            resolution.completeExceptionally(e);
+            throw e;
+        } finally {
+            resolutions.remove(key, resolution);
+        }
+    }
+
+    public void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    private void store(String key, String url) {
+        if (StringUtils.isEmpty(url)) return;
+
+        long now = System.currentTimeMillis();
+        long expiration = Math.min(
+                now + TimeUnit.MINUTES.toMillis(podcastServerParameters.getResolvedUrlTtl()),
+                expiryOf(url).map(e -> e - EXPIRY_MARGIN).getOrElse(Long.MAX_VALUE)
+        );
+
+        entries.values().removeIf(Entry::isExpired);
+        if (expiration <= now) {
+            log.debug("Url resolved for {} expires too soon to be cached", key);
+            return;
+        }
+
+        entries.put(key, new Entry(url, expiration));
+    }
+
+    /**
+     * @return the expiry, in milliseconds since epoch, of the token found in the query of the url
+     */
+    static Option<Long> expiryOf(String url) {
+        Matcher matcher = EXPIRY_EXTRACTOR.matcher(StringUtils.substringAfter(url, "?"));
+        if (!matcher.find()) return Option.none();
+
+        String value = matcher.group(1);
+        return Option.of(value.length() == SECONDS_LENGTH ? TimeUnit.SECONDS.toMillis(Long.valueOf(value)) : Long.valueOf(value));
+    }
+
+    @RequiredArgsConstructor
+    private static class Entry {
+        private final String url;
+        private final Long expiration;
+
+        Boolean isExpired() {
+            return expiration <= System.currentTimeMillis();
+        }
+    }
+}
@@ -1,15 +1,30 @@
 package lan.dk.podcastserver.service;
 
+import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.exceptions.UnirestException;
+import com.mashape.unirest.request.GetRequest;
+import javaslang.control.Option;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.jsoup.nodes.*;
+import org.jsoup.select.Elements;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import static java.util.stream.Collectors.joining;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 
 /**
  * Created by kevin on 24/01/15 for Podcast Server
@@ -19,18 +34,128 @@ import static java.util.stream.Collectors.joining;
 @RequiredArgsConstructor
 public class SignatureService {
 
+    static final String ETAG = "ETag";
+    static final String LAST_MODIFIED = "Last-Modified";
+    static final String IF_NONE_MATCH = "If-None-Match";
+    static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String SIGNATURE = "signature";
+    private static final Integer BUFFER_SIZE = 8192;
+    private static final byte SEPARATOR = 0;
+    private static final byte END_OF_ELEMENT = 1;
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(DigestUtils::getMd5Digest);
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
     final UrlService urlService;
+    final UpdateCycleCache updateCycleCache;
+    private final ConcurrentMap<String, Validators> validators = new ConcurrentHashMap<>();
 
+    /**
+     * The ETag and Last-Modified of the last response of the url are sent back, so a server answering 304 Not Modified
+     * gives the previous signature without any body to read. Otherwise the body is hashed as it is read and not kept,
+     * the feed is only fetched again for its items when its signature has changed.
+     */
     public String generateSignatureFromURL(String urlAsString) {
-        try(BufferedReader in = urlService.asReader(urlAsString)) {
-            return generateMD5Signature(in.lines().collect(joining()));
-        } catch (IOException e) {
-            log.error("Error during signature of podcast at url {}", urlAsString, e);
+        return updateCycleCache.get(SIGNATURE, urlAsString, () -> fetchSignature(urlAsString));
+    }
+
+    private String fetchSignature(String url) {
+        Option<Validators> known = Option.of(validators.get(url));
+        try {
+            HttpResponse<InputStream> response = conditionalGet(url, known);
+            if (response.getStatus() == HttpURLConnection.HTTP_NOT_MODIFIED && known.isDefined()) {
+                log.debug("{} not modified since its last signature", url);
+                return known.get().signature;
+            }
+
+            try(InputStream in = response.getBody()) {
+                String signature = md5Of(in);
+                keepValidators(url, response, signature);
+                return signature;
+            }
+        } catch (IOException | UnirestException e) {
+            log.error("Error during signature of podcast at url {}", url, e);
         }
         return StringUtils.EMPTY;
     }
-    
+
+    private HttpResponse<InputStream> conditionalGet(String url, Option<Validators> known) throws UnirestException {
+        GetRequest request = urlService.get(url);
+        if (known.isEmpty()) return request.asBinary();
+
+        Validators v = known.get();
+        if (nonNull(v.eTag)) request = request.header(IF_NONE_MATCH, v.eTag);
+        if (nonNull(v.lastModified)) request = request.header(IF_MODIFIED_SINCE, v.lastModified);
+        return request.asBinary();
+    }
+
+    private void keepValidators(String url, HttpResponse<InputStream> response, String signature) {
+        String eTag = UrlService.headerOf(response, ETAG).getOrElse(() -> null);
+        String lastModified = UrlService.headerOf(response, LAST_MODIFIED).getOrElse(() -> null);
+
+        if (response.getStatus() != HttpURLConnection.HTTP_OK || (isNull(eTag) && isNull(lastModified))) {
+            validators.remove(url);
+            return;
+        }
+
+        validators.put(url, new Validators(eTag, lastModified, signature));
+    }
+
     public String generateMD5Signature(String html){
         return DigestUtils.md5Hex(html);
     }
+
+    /**
+     * Signature of the tags, attributes and texts of the fragments, computed by walking them, without serializing them
+     */
+    public String generateMD5Signature(Elements elements) {
+        MessageDigest digest = resetDigest();
+        NodeTraversor traversor = new NodeTraversor(new NodeVisitor() {
+            @Override
+            public void head(Node node, int depth) {
+                if (node instanceof Element) {
+                    Element element = (Element) node;
+                    update(digest, element.tagName());
+                    element.attributes().forEach(a -> { update(digest, a.getKey()); update(digest, a.getValue()); });
+                } else if (node instanceof TextNode) {
+                    update(digest, ((TextNode) node).getWholeText());
+                } else if (node instanceof DataNode) {
+                    update(digest, ((DataNode) node).getWholeData());
+                }
+            }
+
+            @Override
+            public void tail(Node node, int depth) {
+                if (node instanceof Element) digest.update(END_OF_ELEMENT);
+            }
+        });
+        elements.forEach(traversor::traverse);
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private String md5Of(InputStream stream) throws IOException {
+        MessageDigest digest = resetDigest();
+        byte[] buffer = BUFFER.get();
+        for (int read = stream.read(buffer); read != -1; read = stream.read(buffer)) {
+            digest.update(buffer, 0, read);
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private static MessageDigest resetDigest() {
+        MessageDigest digest = MD5.get();
+        digest.reset();
+        return digest;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update(SEPARATOR);
+    }
+
+    @RequiredArgsConstructor
+    private static class Validators {
+        private final String eTag;
+        private final String lastModified;
+        private final String signature;
+    }
 }
@@ -0,0 +1,158 @@
+package lan.dk.podcastserver.service;
+
+import javaslang.Lazy;
+import javaslang.Tuple;
+import javaslang.Tuple2;
+import javaslang.control.Option;
+import javaslang.control.Try;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Responses fetched during an update cycle, so a response used by several steps of the update of a podcast, or by the
+ * podcasts sharing an url, is fetched only once.
+ *
+ * An entry is identified by its url and by its form (raw body, xml, json or html document), so each form is fetched
+ * and parsed at most once per cycle. The entries used by the update of a podcast are released at its end, unless the
+ * update of another podcast of the cycle uses them or has their url, so only the responses still needed are kept in
+ * memory. The full and manual updates can overlap, the other entries are cleared when the last cycle is closed.
+ * Outside of a cycle, nothing is cached.
+ */
+@Slf4j
+@Service
+public class UpdateCycleCache {
+
+    public static final String BODY = "body";
+    public static final String XML = "xml";
+    public static final String JSON = "json";
+    public static final String HTML = "html";
+
+    private final AtomicInteger cycles = new AtomicInteger();
+    private final ConcurrentMap<Tuple2<String, String>, Entry> entries = new ConcurrentHashMap<>();
+    /* Number of updates of the cycle not finished yet, by url of podcast */
+    private final ConcurrentMap<String, AtomicInteger> updates = new ConcurrentHashMap<>();
+    private final ThreadLocal<String> currentUpdate = new ThreadLocal<>();
+
+    public void open() {
+        cycles.incrementAndGet();
+    }
+
+    public void close() {
+        if (cycles.decrementAndGet() <= 0) {
+            cycles.set(0);
+            log.debug("End of update cycle, {} response(s) released", entries.size());
+            entries.clear();
+            updates.clear();
+        }
+    }
+
+    public Boolean isOpen() {
+        return cycles.get() > 0;
+    }
+
+    /**
+     * Announce the update of the podcast at this url, before the start of the updates of the cycle
+     */
+    public void register(String url) {
+        if (!isOpen() || isNull(url)) return;
+
+        updates.computeIfAbsent(url, u -> new AtomicInteger()).incrementAndGet();
+    }
+
+    /**
+     * Run the update of the podcast at this url, the entries it uses are released at its end
+     */
+    public <T> T update(String url, Supplier<T> update) {
+        if (!isOpen() || isNull(url)) return update.get();
+
+        currentUpdate.set(url);
+        try {
+            return update.get();
+        } finally {
+            currentUpdate.remove();
+            release(url);
+        }
+    }
+
+    private void release(String url) {
+        AtomicInteger remaining = updates.get(url);
+        if (nonNull(remaining) && remaining.decrementAndGet() > 0) return;
+
+        updates.remove(url);
+        entries.forEach((key, entry) -> {
+            entry.users.remove(url);
+            if (entry.users.isEmpty() && !updates.containsKey(key._2())) entries.remove(key, entry);
+        });
+    }
+
+    /**
+     * @return the value computed for the url in this form during the cycle, or the one given by the supplier
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String form, String url, Supplier<T> supplier) {
+        if (!isOpen()) return supplier.get();
+
+        Entry entry = entries.computeIfAbsent(Tuple.of(form, url), k -> new Entry(Lazy.of(supplier)));
+        Option.of(currentUpdate.get()).forEach(entry.users::add);
+        return (T) entry.value.get();
+    }
+
+    /**
+     * @return the body of the url, read from the stream given by the fetcher at most once during the cycle
+     */
+    public InputStream body(String url, Try.CheckedSupplier<InputStream> fetcher) throws IOException {
+        if (!isOpen()) return Try.of(fetcher).getOrElseThrow(UpdateCycleCache::asIOException);
+
+        Try<byte[]> body = get(BODY, url, () -> Try.of(fetcher).mapTry(UpdateCycleCache::readAndClose));
+        return body
+                .<InputStream>map(ByteArrayInputStream::new)
+                .getOrElseThrow(UpdateCycleCache::asIOException);
+    }
+
+    /**
+     * A value of the cycle, with the urls of the podcasts whose update uses it
+     */
+    @RequiredArgsConstructor
+    private static class Entry {
+        private final Lazy<?> value;
+        private final Set<String> users = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * @return the body of the url if it has already been read during the cycle, otherwise the stream given by the
+     * fetcher, which is not kept: a reader consuming it element by element never holds the whole body in memory
+     */
+    @SuppressWarnings("unchecked")
+    public InputStream stream(String url, Try.CheckedSupplier<InputStream> fetcher) throws IOException {
+        Option<byte[]> read = isOpen()
+                ? Option.of(entries.get(Tuple.of(BODY, url))).flatMap(entry -> ((Try<byte[]>) entry.value.get()).toOption())
+                : Option.none();
+        if (read.isDefined()) return new ByteArrayInputStream(read.get());
+
+        return Try.of(fetcher).getOrElseThrow(UpdateCycleCache::asIOException);
+    }
+
+    private static byte[] readAndClose(InputStream stream) throws IOException {
+        try (InputStream is = stream) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    private static IOException asIOException(Throwable e) {
+        return e instanceof IOException ? (IOException) e : new IOException(e);
+    }
+}
@@ -5,6 +5,7 @@ import com.mashape.unirest.http.Unirest;
 import com.mashape.unirest.request.BaseRequest;
 import com.mashape.unirest.request.GetRequest;
 import com.mashape.unirest.request.HttpRequestWithBody;
+import javaslang.collection.List;
 import javaslang.control.Option;
 import javaslang.control.Try;
 import lombok.extern.slf4j.Slf4j;
@@ -34,17 +35,43 @@ public class UrlService {
     private static final Integer MAX_NUMBER_OF_REDIRECTION = 10;
     private static final Consumer<HttpURLConnection> NO_MODIFICATION = x -> {};
 
-    public UrlService() {System.setProperty("http.agent", USER_AGENT_DESKTOP);}
+    private final ResolvedUrlCache resolvedUrlCache;
+
+    public UrlService(ResolvedUrlCache resolvedUrlCache) {
+        this.resolvedUrlCache = resolvedUrlCache;
+        System.setProperty("http.agent", USER_AGENT_DESKTOP);
+    }
 
     /* Get, Post and Other standard request of UniREST */
     public GetRequest get(String url) { return Unirest.get(url); }
     public HttpRequestWithBody post(String url) {
         return Unirest.post(url);
     }
+    public GetRequest head(String url) { return Unirest.head(url); }
+
+    /**
+     * @return the first value of the header, whatever the case of its name
+     */
+    public static Option<String> headerOf(HttpResponse<?> response, String name) {
+        return Option.of(response)
+                .flatMap(r -> Option.of(r.getHeaders()))
+                .flatMap(h -> List.ofAll(h.entrySet()).find(e -> name.equalsIgnoreCase(e.getKey())))
+                .flatMap(e -> List.ofAll(e.getValue()).headOption());
+    }
 
     /* Real Url business */
+    /**
+     * Follow the redirections of the url, the last url of the chain is cached to skip the redirections next time.
+     * The chains followed with a modification of the connection are not cached, because they depend on it.
+     */
     public String getRealURL(String url) {
-        return getRealURL(url, NO_MODIFICATION, 0);
+        return resolvedUrlCache.resolve(url, () -> getRealURL(url, NO_MODIFICATION, 0));
+    }
+    /**
+     * Forget the cached end of the redirections of the url, after a failure of the download of its target
+     */
+    public void invalidateRealURL(String url) {
+        resolvedUrlCache.invalidate(url);
     }
     public String getRealURL(String url, Consumer<HttpURLConnection> connectionModifier) {
         return getRealURL(url, connectionModifier, 0);
@@ -0,0 +1,67 @@
+package lan.dk.podcastserver.service.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bandwidth shared by all the downloads, following a weekly schedule
+ */
+@Getter @Setter
+@Accessors(chain = true)
+@ConfigurationProperties("podcastserver.bandwidth")
+public class Bandwidth {
+
+    /**
+     * Rate in bytes per second when no period of the schedule applies, 0 means no limit
+     */
+    private Long defaultRate = 0L;
+    /**
+     * Items bigger than this size in bytes wait for a time without limit to be downloaded, 0 to disable
+     */
+    private Long deferLargerThan = 0L;
+    /**
+     * Periods of the week with their own rate, the first one matching applies
+     */
+    private List<Period> schedule = new ArrayList<>();
+
+    @Getter @Setter
+    @Accessors(chain = true)
+    public static class Period {
+        /**
+         * Days of the period, every day if empty
+         */
+        private List<DayOfWeek> days = new ArrayList<>();
+        private LocalTime from = LocalTime.MIN;
+        /**
+         * End of the period, excluded. A time before {@link #from} ends the day after, equal to it covers the whole day
+         */
+        private LocalTime to = LocalTime.MIN;
+        /**
+         * Rate in bytes per second, 0 means no limit
+         */
+        private Long rate = 0L;
+
+        public Boolean contains(LocalDateTime dateTime) {
+            LocalTime time = dateTime.toLocalTime();
+            DayOfWeek day = dateTime.getDayOfWeek();
+
+            if (!from.isBefore(to)) {
+                return (isOn(day) && !time.isBefore(from)) || (isOn(day.minus(1)) && time.isBefore(to));
+            }
+
+            return isOn(day) && !time.isBefore(from) && time.isBefore(to);
+        }
+
+        private Boolean isOn(DayOfWeek day) {
+            return days.isEmpty() || days.contains(day);
+        }
+    }
+}
@@ -40,10 +40,70 @@ public class PodcastServerParameters {
      * Number of concurrent download
      */
     Integer concurrentDownload = 3;
+    /**
+     * Adjust the number of concurrent download to the observed throughput, between min and max concurrent download
+     */
+    Boolean adaptiveConcurrentDownload = Boolean.FALSE;
+    /**
+     * Lowest number of concurrent download the adaptive adjustment can set
+     */
+    Integer minConcurrentDownload = 1;
+    /**
+     * Highest number of concurrent download the adaptive adjustment can set
+     */
+    Integer maxConcurrentDownload = 10;
+    /**
+     * Max number of concurrent download on the same host, 0 means no limit
+     */
+    Integer maxDownloadByHost = 0;
+    /**
+     * Max number of parallel connections used to download one large file, 1 to disable segmented download
+     */
+    Integer maxSegmentByDownload = 4;
+    /**
+     * Time in ms to wait for the connection to a server, then for each read, before a transfer of a download fails
+     */
+    Integer downloadTimeout = 30_000;
+    /**
+     * Transfer the HTTP files on the shared non-blocking client, without holding a download thread during the transfer
+     */
+    Boolean asyncDownload = Boolean.TRUE;
+    /**
+     * Download the segments of the HLS streams in parallel, ffmpeg is then only used to put them in a mp4 file
+     */
+    Boolean nativeHlsDownload = Boolean.TRUE;
+    /**
+     * Max number of post-processings by ffmpeg, like a remux or a merge, running at the same time
+     */
+    Integer maxConcurrentProcess = Runtime.getRuntime().availableProcessors();
+    /**
+     * Number of items at the head of the waiting queue whose media url is resolved before their download, 0 to disable
+     */
+    Integer numberOfUrlToPrefetch = 3;
+    /**
+     * Number of minutes a resolved media url is kept, less if its tokens expire before
+     */
+    Long resolvedUrlTtl = 30L;
     /**
      * Number of retry to download an item
      */
     Integer numberOfTry = 10;
+    /**
+     * Delay in ms before the first retry of a download, doubled at each new retry with a random part
+     */
+    Long retryDelay = 5000L;
+    /**
+     * Max delay in ms before the retry of a download
+     */
+    Long maxRetryDelay = 600_000L;
+    /**
+     * Number of failures in a row on a host before its downloads are parked, 0 to disable
+     */
+    Integer hostFailureThreshold = 5;
+    /**
+     * Time in ms the downloads of a host are parked after too many failures
+     */
+    Long hostBreakDelay = 120_000L;
     /**
      * Number of day to download
      */
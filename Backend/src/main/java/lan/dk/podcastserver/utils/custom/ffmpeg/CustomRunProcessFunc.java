@@ -17,18 +17,19 @@ public class CustomRunProcessFunc extends RunProcessFunction {
     public Process run(java.util.List<String> args) throws IOException {
         Process p = super.run(args);
 
-        this.listeners = listeners.remove(
-            listeners
-                    .find(pl -> args.contains(pl.url()))
-                    .map(pl -> pl.process(p))
-                    .getOrElse(ProcessListener.DEFAULT_PROCESS_LISTENER)
-        );
+        takeListenerOf(args).forEach(pl -> pl.process(p));
 
         return p;
     }
 
-    public CustomRunProcessFunc add(ProcessListener pl) {
+    public synchronized CustomRunProcessFunc add(ProcessListener pl) {
         this.listeners = listeners.append(pl);
         return this;
     }
+
+    private synchronized List<ProcessListener> takeListenerOf(java.util.List<String> args) {
+        List<ProcessListener> found = listeners.find(pl -> args.contains(pl.url())).toList();
+        this.listeners = listeners.removeAll(found);
+        return found;
+    }
 }
@@ -0,0 +1,52 @@
+package lan.dk.podcastserver.utils.facade;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lan.dk.podcastserver.entity.Item;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Changes of the waiting queue between two versions, identified by their sequence number.
+ * Applied in order on the version {@code sequence - 1}, the operations give the version {@code sequence}.
+ * They are the operations done by the download manager, recorded when they are applied on its queue.
+ */
+@Getter
+@AllArgsConstructor
+public class WaitingQueueDelta {
+
+    private final Long sequence;
+    private final List<Operation> operations;
+
+    @JsonIgnore
+    public Boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    public enum Type { INSERT, REMOVE, MOVE }
+
+    @Getter
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Operation {
+        private final Type type;
+        private final UUID id;
+        private final Integer position;
+        private final Item item;
+
+        public static Operation insert(Item item, Integer position) {
+            return new Operation(Type.INSERT, item.getId(), position, item);
+        }
+
+        public static Operation remove(Item item) {
+            return new Operation(Type.REMOVE, item.getId(), null, null);
+        }
+
+        public static Operation move(Item item, Integer position) {
+            return new Operation(Type.MOVE, item.getId(), position, null);
+        }
+    }
+}
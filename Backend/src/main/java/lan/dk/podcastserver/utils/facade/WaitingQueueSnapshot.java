@@ -0,0 +1,21 @@
+package lan.dk.podcastserver.utils.facade;
+
+import lan.dk.podcastserver.entity.Item;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Complete content of the waiting queue at the version {@code sequence}, sent once to a client before the deltas
+ */
+@Getter
+@AllArgsConstructor
+public class WaitingQueueSnapshot {
+
+    public static final WaitingQueueSnapshot EMPTY = new WaitingQueueSnapshot(0L, Collections.emptyList());
+
+    private final Long sequence;
+    private final List<Item> items;
+}
@@ -3,6 +3,7 @@ package lan.dk.podcastserver.business;
 import com.google.common.collect.Sets;
 import lan.dk.podcastserver.entity.*;
 import lan.dk.podcastserver.exception.PodcastNotFoundException;
+import lan.dk.podcastserver.manager.ItemDownloadManager;
 import lan.dk.podcastserver.repository.PodcastRepository;
 import lan.dk.podcastserver.service.JdomService;
 import lan.dk.podcastserver.service.MimeTypeService;
@@ -36,6 +37,7 @@ public class PodcastBusinessTest {
     @Mock TagBusiness tagBusiness;
     @Mock CoverBusiness coverBusiness;
     @Mock MimeTypeService mimeTypeService;
+    @Mock ItemDownloadManager itemDownloadManager;
     @InjectMocks PodcastBusiness podcastBusiness;
 
     @Test
@@ -109,6 +111,23 @@ public class PodcastBusinessTest {
        /* Then */ verify(podcastRepository, times(1)).delete(eq(podcast));
     }
 
+    @Test
+    public void should_remove_items_from_download_manager_before_deletion() {
+        /* Given */
+        Item item1 = Item.builder().id(UUID.randomUUID()).build();
+        Item item2 = Item.builder().id(UUID.randomUUID()).build();
+        Podcast podcast = Podcast.builder().id(UUID.randomUUID()).items(Sets.newHashSet(item1, item2)).build();
+        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
+
+        /* When */
+        podcastBusiness.delete(podcast.getId());
+
+        /* Then */
+        verify(itemDownloadManager, times(1)).removeItemFromQueueAndDownload(eq(item1));
+        verify(itemDownloadManager, times(1)).removeItemFromQueueAndDownload(eq(item2));
+        verify(podcastRepository, times(1)).delete(eq(podcast.getId()));
+    }
+
     @Test
     public void should_find_with_url_not_null() {
        /* Given */
@@ -264,6 +283,7 @@ public class PodcastBusinessTest {
         patchPodcast.setCover(Cover.builder().id(idCover).url("http://fake.url/image.png").build());
         patchPodcast.setDescription("Description");
         patchPodcast.setHasToBeDeleted(true);
+        patchPodcast.setAudioOnly(true);
         patchPodcast.setTags(tags);
 
         when(podcastRepository.findOne(eq(patchPodcast.getId()))).thenReturn(retrievePodcast);
@@ -284,6 +304,7 @@ public class PodcastBusinessTest {
                 .hasCover(patchPodcast.getCover())
                 .hasDescription(patchPodcast.getDescription())
                 .hasHasToBeDeleted(patchPodcast.getHasToBeDeleted())
+                .hasAudioOnly(patchPodcast.getAudioOnly())
                 .hasTags(tags.toArray(new Tag[tags.size()]));
 
         verify(podcastRepository, times(1)).findOne(eq(id));
@@ -11,7 +11,9 @@ import lan.dk.podcastserver.entity.Podcast;
 import lan.dk.podcastserver.entity.Status;
 import lan.dk.podcastserver.manager.worker.selector.UpdaterSelector;
 import lan.dk.podcastserver.manager.worker.updater.Updater;
+import lan.dk.podcastserver.repository.DownloadJournalRepository;
 import lan.dk.podcastserver.repository.ItemRepository;
+import lan.dk.podcastserver.service.UpdateCycleCache;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import org.assertj.core.api.Condition;
 import org.junit.Before;
@@ -58,6 +60,8 @@ public class UpdatePodcastBusinessTest {
     @Spy ThreadPoolTaskExecutor manualExecutor = new ThreadPoolTaskExecutor();
     @Mock Validator validator;
     @Mock CoverBusiness coverBusiness;
+    @Spy UpdateCycleCache updateCycleCache;
+    @Mock DownloadJournalRepository downloadJournalRepository;
     @InjectMocks UpdatePodcastBusiness updatePodcastBusiness;
 
     @Before
@@ -105,7 +109,25 @@ public class UpdatePodcastBusinessTest {
                     }
                 });
     }
-    
+
+    @Test
+    public void should_keep_paused_item_with_a_journal_across_a_restart() {
+        /* Given */
+        Item resumable = Item.builder().id(UUID.randomUUID()).status(Status.PAUSED).build();
+        Item started = Item.builder().id(UUID.randomUUID()).status(Status.STARTED).build();
+        when(itemRepository.findByStatus(anyVararg())).thenReturn(Sets.newHashSet(resumable, started));
+        when(downloadJournalRepository.exists(any(UUID.class))).thenReturn(true);
+
+        /* When */
+        updatePodcastBusiness.resetItemWithIncorrectState();
+
+        /* Then */
+        assertThat(resumable.getStatus()).isEqualTo(Status.PAUSED);
+        assertThat(started.getStatus()).isEqualTo(Status.NOT_DOWNLOADED);
+        verify(itemRepository, times(1)).save(eq(started));
+        verify(itemRepository, never()).save(eq(resumable));
+    }
+
     @Test
     public void should_check_status_of_update() {
         assertThat(updatePodcastBusiness.isUpdating()).isFalse();
@@ -151,6 +173,9 @@ public class UpdatePodcastBusinessTest {
 
         verify(podcastBusiness, times(podcasts.size())).save(any(Podcast.class));
         verify(validator, times(10)).validate(any(Item.class));
+        verify(updateCycleCache, times(1)).open();
+        verify(updateCycleCache, times(1)).close();
+        assertThat(updateCycleCache.isOpen()).isFalse();
     }
 
     @Test
@@ -218,7 +243,7 @@ public class UpdatePodcastBusinessTest {
     public void should_not_handle_too_long_update() {
         /* Given */
         ThreadPoolTaskExecutor manualExecutor = new ThreadPoolTaskExecutor();
-        updatePodcastBusiness = new UpdatePodcastBusiness(podcastBusiness, itemRepository, updaterSelector, template, podcastServerParameters, updateExecutor, manualExecutor, validator, coverBusiness);
+        updatePodcastBusiness = new UpdatePodcastBusiness(podcastBusiness, itemRepository, updaterSelector, template, podcastServerParameters, updateExecutor, manualExecutor, validator, coverBusiness, updateCycleCache, downloadJournalRepository);
         updatePodcastBusiness.setTimeOut(1, TimeUnit.SECONDS);
         manualExecutor.initialize();
 
@@ -253,7 +278,7 @@ public class UpdatePodcastBusinessTest {
         /* Given */
         ThreadPoolTaskExecutor updateExecutor = mock(ThreadPoolTaskExecutor.class);
         ThreadPoolTaskExecutor manualExecutor = mock(ThreadPoolTaskExecutor.class);
-        updatePodcastBusiness = new UpdatePodcastBusiness(podcastBusiness, itemRepository, updaterSelector, template, podcastServerParameters, updateExecutor, manualExecutor, validator, coverBusiness);
+        updatePodcastBusiness = new UpdatePodcastBusiness(podcastBusiness, itemRepository, updaterSelector, template, podcastServerParameters, updateExecutor, manualExecutor, validator, coverBusiness, updateCycleCache, downloadJournalRepository);
 
         /* When */
         Integer numberOfActiveThread = updatePodcastBusiness.getUpdaterActiveCount();
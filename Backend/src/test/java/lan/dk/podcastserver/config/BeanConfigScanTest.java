@@ -7,6 +7,7 @@ import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalTime;
 
 import static lan.dk.podcastserver.service.MimeTypeService.TikaProbeContentType;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -58,4 +59,16 @@ public class BeanConfigScanTest {
         /* Then */
         assertThat(convertedPath).isEqualTo(Paths.get(path));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void should_provide_a_converter_from_string_to_local_time() {
+        /* Given */
+        Converter<String, LocalTime> c = beanConfigScan.localTimeConverter();
+
+        /* When */
+        LocalTime convertedTime = c.convert("18:30");
+
+        /* Then */
+        assertThat(convertedTime).isEqualTo(LocalTime.of(18, 30));
+    }
+}
@@ -63,4 +63,15 @@ public class ExecutorsConfigTest {
         assertThat(executor.getThreadNamePrefix()).contains("Downloader");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void should_generate_post_processing_executor_with_one_thread_by_core() {
+        /* When */
+        ThreadPoolTaskExecutor executor = executorsConfig.postProcessingExecutor();
+
+        /* Then */
+        assertThat(executor.getCorePoolSize()).isEqualTo(Runtime.getRuntime().availableProcessors());
+        assertThat(executor.getMaxPoolSize()).isEqualTo(Runtime.getRuntime().availableProcessors());
+        assertThat(executor.getThreadNamePrefix()).contains("Post-Processing");
+    }
+
+}
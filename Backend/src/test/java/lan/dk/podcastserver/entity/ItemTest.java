@@ -174,10 +174,11 @@ public class ItemTest {
 
     @Test
     public void should_be_reset() {
-        /* Given */ ITEM.setStatus(Status.FINISH);
+        /* Given */ ITEM.setStatus(Status.FINISH).addATry();
         /* When  */ ITEM.reset();
         /* Then  */ assertThat(ITEM).hasFileName(null)
                 .hasDownloadDate(null)
+                .hasNumberOfTry(0)
                 .hasStatus(Status.NOT_DOWNLOADED);
     }
 
@@ -0,0 +1,110 @@
+package lan.dk.podcastserver.manager;
+
+import javaslang.collection.List;
+import lan.dk.podcastserver.manager.worker.downloader.Downloader;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DownloadMetricsTest {
+
+    private final DownloadMetrics downloadMetrics = new DownloadMetrics();
+
+    @Test
+    public void should_have_no_metric_at_start() {
+        assertThat(downloadMetrics.metrics()).isEmpty();
+    }
+
+    @Test
+    public void should_record_a_completed_download() {
+        /* Given */
+        long now = System.currentTimeMillis();
+        Downloader downloader = mock(Downloader.class);
+        when(downloader.getStartTime()).thenReturn(now - 10_000L);
+        when(downloader.getFirstByteTime()).thenReturn(now - 8_000L);
+        when(downloader.getDownloadedBytes()).thenReturn(8_000_000L);
+
+        /* When */
+        downloadMetrics.finished(downloader, "cdn.foo.com", false, false);
+
+        /* Then */
+        String prefix = "download." + DownloadMetrics.typeOf(downloader) + ".cdn_foo_com.";
+        assertThat(valueOf(prefix + "completed")).isEqualTo(1L);
+        assertThat(valueOf(prefix + "stopped")).isEqualTo(0L);
+        assertThat(valueOf(prefix + "time-to-first-byte.max")).isEqualTo(2_000L);
+        assertThat(valueOf(prefix + "completion-time.p50").longValue()).isGreaterThanOrEqualTo(10_000L);
+        assertThat(valueOf(prefix + "bytes-per-second.count")).isEqualTo(1);
+        assertThat(valueOf(prefix + "bytes-per-second.max").longValue()).isBetween(900_000L, 1_000_000L);
+    }
+
+    @Test
+    public void should_record_retries_and_stop_without_throughput() {
+        /* Given */
+        Downloader downloader = mock(Downloader.class);
+        when(downloader.getStartTime()).thenReturn(System.currentTimeMillis());
+
+        /* When */
+        downloadMetrics.retry(downloader, "");
+        downloadMetrics.finished(downloader, "", true, true);
+
+        /* Then */
+        String prefix = "download." + DownloadMetrics.typeOf(downloader) + ".unknown.";
+        assertThat(valueOf(prefix + "retries")).isEqualTo(1L);
+        assertThat(valueOf(prefix + "stopped")).isEqualTo(1L);
+        assertThat(valueOf(prefix + "failed")).isEqualTo(1L);
+        assertThat(names()).doesNotContain(prefix + "bytes-per-second.count", prefix + "time-to-first-byte.count");
+    }
+
+    @Test
+    public void should_not_count_a_stop_by_the_user_as_a_failure() {
+        /* Given */
+        Downloader downloader = mock(Downloader.class);
+
+        /* When */
+        downloadMetrics.finished(downloader, "", true, false);
+
+        /* Then */
+        String prefix = "download." + DownloadMetrics.typeOf(downloader) + ".unknown.";
+        assertThat(valueOf(prefix + "stopped")).isEqualTo(1L);
+        assertThat(valueOf(prefix + "failed")).isEqualTo(0L);
+    }
+
+    @Test
+    public void should_compute_percentiles_on_recorded_values() {
+        /* Given */
+        DownloadMetrics.Histogram histogram = new DownloadMetrics.Histogram();
+
+        /* When */
+        List.rangeClosed(1, 100).forEach(i -> histogram.record((long) i));
+
+        /* Then */
+        assertThat(List.ofAll(histogram.toMetrics("h.")).map(m -> m.getValue().doubleValue()))
+                .containsExactly(100D, 50.5D, 50D, 95D, 100D);
+    }
+
+    @Test
+    public void should_keep_only_last_values() {
+        /* Given */
+        DownloadMetrics.Histogram histogram = new DownloadMetrics.Histogram();
+
+        /* When */
+        List.rangeClosed(1, DownloadMetrics.Histogram.WINDOW + 10).forEach(i -> histogram.record((long) i));
+
+        /* Then */
+        assertThat(histogram.snapshot()).hasSize(DownloadMetrics.Histogram.WINDOW).doesNotContain(1L, 10L).contains(11L);
+    }
+
+    private Number valueOf(String name) {
+        return List.ofAll(downloadMetrics.metrics())
+                .find(m -> m.getName().equals(name))
+                .map(Metric::getValue)
+                .getOrElseThrow(() -> new AssertionError("No metric " + name));
+    }
+
+    private List<String> names() {
+        return List.ofAll(downloadMetrics.metrics()).map(Metric::getName);
+    }
+}
@@ -0,0 +1,174 @@
+package lan.dk.podcastserver.manager;
+
+import com.google.common.collect.Sets;
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.entity.Podcast;
+import lan.dk.podcastserver.entity.Status;
+import lan.dk.podcastserver.repository.ItemRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import static java.util.Collections.singletonList;
+import static lan.dk.podcastserver.manager.DownloadStateStore.SEARCH_CACHE;
+import static lan.dk.podcastserver.manager.DownloadStateStore.STATS_CACHE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DownloadStateStoreTest {
+
+    @Mock ItemRepository itemRepository;
+    @Mock CacheManager cacheManager;
+    @Mock Cache searchCache;
+    @Mock Cache statsCache;
+    @InjectMocks DownloadStateStore downloadStateStore;
+
+    private Item persisted;
+    private Item item;
+
+    @Before
+    public void beforeEach() {
+        UUID id = UUID.randomUUID();
+        persisted = Item.builder().id(id).status(Status.NOT_DOWNLOADED).build();
+        item = Item.builder().id(id).status(Status.NOT_DOWNLOADED).build();
+
+        when(cacheManager.getCache(SEARCH_CACHE)).thenReturn(searchCache);
+        when(cacheManager.getCache(STATS_CACHE)).thenReturn(statsCache);
+        when(itemRepository.findAll(anyListOf(UUID.class))).thenReturn(singletonList(persisted));
+    }
+
+    @Test
+    public void should_not_write_transient_state_before_flush() {
+        /* When */
+        downloadStateStore.save(item.setStatus(Status.STARTED));
+
+        /* Then */
+        verify(itemRepository, never()).save(anyListOf(Item.class));
+    }
+
+    @Test
+    public void should_write_only_last_state_in_one_batch() {
+        /* Given */
+        downloadStateStore.save(item.setStatus(Status.STARTED));
+        downloadStateStore.save(item.setStatus(Status.PAUSED));
+        downloadStateStore.save(item.setStatus(Status.STARTED));
+
+        /* When */
+        downloadStateStore.flush();
+
+        /* Then */
+        verify(itemRepository, times(1)).findAll(anyListOf(UUID.class));
+        verify(itemRepository, times(1)).save(anyListOf(Item.class));
+        assertThat(persisted.getStatus()).isEqualTo(Status.STARTED);
+        verify(searchCache, times(1)).clear();
+        verify(statsCache, never()).clear();
+    }
+
+    @Test
+    public void should_write_immediately_a_finished_download() {
+        /* When */
+        downloadStateStore.save(item
+                .setStatus(Status.FINISH)
+                .setFileName("file.mp4")
+                .setDownloadDate(ZonedDateTime.now())
+        );
+
+        /* Then */
+        verify(itemRepository, times(1)).save(anyListOf(Item.class));
+        assertThat(persisted.getStatus()).isEqualTo(Status.FINISH);
+        assertThat(persisted.getFileName()).isEqualTo("file.mp4");
+        verify(searchCache, times(1)).clear();
+        verify(statsCache, times(1)).clear();
+    }
+
+    @Test
+    public void should_not_evict_cache_if_nothing_changed() {
+        /* Given */
+        downloadStateStore.save(item);
+
+        /* When */
+        downloadStateStore.flush();
+
+        /* Then */
+        verify(itemRepository, times(1)).save(anyListOf(Item.class));
+        verify(searchCache, never()).clear();
+        verify(statsCache, never()).clear();
+    }
+
+    @Test
+    public void should_do_nothing_if_no_pending_state() {
+        /* When */
+        downloadStateStore.flush();
+
+        /* Then */
+        verify(itemRepository, never()).findAll(anyListOf(UUID.class));
+        verify(itemRepository, never()).save(anyListOf(Item.class));
+    }
+
+    @Test
+    public void should_write_the_number_of_try() {
+        /* Given */
+        downloadStateStore.save(item.setStatus(Status.STARTED).addATry().addATry());
+
+        /* When */
+        downloadStateStore.flush();
+
+        /* Then */
+        verify(itemRepository, times(1)).save(anyListOf(Item.class));
+        assertThat(persisted.getNumberOfTry()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_keep_state_if_write_fails() {
+        /* Given */
+        doThrow(RuntimeException.class).doReturn(singletonList(persisted)).when(itemRepository).save(anyListOf(Item.class));
+        downloadStateStore.save(item.setStatus(Status.PAUSED));
+
+        /* When */
+        downloadStateStore.flush();
+        downloadStateStore.flush();
+
+        /* Then */
+        verify(itemRepository, times(2)).save(anyListOf(Item.class));
+        assertThat(persisted.getStatus()).isEqualTo(Status.PAUSED);
+    }
+
+    @Test
+    public void should_find_file_of_another_item_with_same_content() throws IOException {
+        /* Given */
+        Item.rootFolder = Files.createTempDirectory("podcast-server");
+        Podcast podcast = Podcast.builder().title("Podcast").build();
+        Path file = Files.createFile(Files.createDirectory(Item.rootFolder.resolve("Podcast")).resolve("other.mp3"));
+        Item other = Item.builder().id(UUID.randomUUID()).podcast(podcast).fileName("other.mp3").build();
+        Item missing = Item.builder().id(UUID.randomUUID()).podcast(podcast).fileName("missing.mp3").build();
+        item.setDigest("a1b2c3").setLength(10L).setFileName("file.mp3").setPodcast(podcast);
+        when(itemRepository.findAllDownloadedWithContent("a1b2c3", 10L)).thenReturn(Sets.newHashSet(item, missing, other));
+
+        /* When */
+        Path same = downloadStateStore.findFileWithSameContent(item).getOrElse(() -> null);
+
+        /* Then */
+        assertThat(same).isEqualTo(file);
+    }
+
+    @Test
+    public void should_write_digest_of_a_finished_download() {
+        /* When */
+        downloadStateStore.save(item.setStatus(Status.FINISH).setDigest("a1b2c3"));
+
+        /* Then */
+        assertThat(persisted.getDigest()).isEqualTo("a1b2c3");
+    }
+}
@@ -0,0 +1,57 @@
+package lan.dk.podcastserver.manager;
+
+import javaslang.collection.HashMap;
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.entity.Status;
+import lan.dk.podcastserver.manager.worker.downloader.Downloader;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DownloadsEndpointTest {
+
+    @Mock ItemDownloadManager IDM;
+    @InjectMocks DownloadsEndpoint downloadsEndpoint;
+
+    @Test
+    public void should_be_exposed_as_downloads() {
+        assertThat(downloadsEndpoint.getId()).isEqualTo("downloads");
+    }
+
+    @Test
+    public void should_list_live_transfers() {
+        /* Given */
+        long now = System.currentTimeMillis();
+        Item item = Item.builder().id(UUID.randomUUID()).title("Foo").url("http://cdn.foo.com/file.mp3").status(Status.STARTED).progression(50).build();
+        Downloader downloader = mock(Downloader.class);
+        when(downloader.getItem()).thenReturn(item);
+        when(downloader.getStartTime()).thenReturn(now - 3_000L);
+        when(downloader.getFirstByteTime()).thenReturn(now - 2_000L);
+        when(downloader.getDownloadedBytes()).thenReturn(2_000_000L);
+        when(IDM.getDownloadingQueue()).thenReturn(HashMap.of(item, downloader));
+
+        /* When */
+        List<DownloadsEndpoint.Transfer> transfers = downloadsEndpoint.invoke();
+
+        /* Then */
+        assertThat(transfers).hasSize(1);
+        DownloadsEndpoint.Transfer transfer = transfers.get(0);
+        assertThat(transfer.getId()).isEqualTo(item.getId());
+        assertThat(transfer.getHost()).isEqualTo("cdn.foo.com");
+        assertThat(transfer.getStatus()).isEqualTo("STARTED");
+        assertThat(transfer.getProgression()).isEqualTo(50);
+        assertThat(transfer.getTimeToFirstByte()).isEqualTo(1_000L);
+        assertThat(transfer.getElapsed()).isGreaterThanOrEqualTo(3_000L);
+        assertThat(transfer.getBytesPerSecond()).isBetween(900_000L, 1_000_000L);
+    }
+}
@@ -3,13 +3,19 @@ package lan.dk.podcastserver.manager;
 import com.google.common.collect.Sets;
 import javaslang.Tuple;
 import javaslang.Tuple2;
+import javaslang.control.Option;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Status;
 import lan.dk.podcastserver.manager.worker.downloader.Downloader;
 import lan.dk.podcastserver.manager.worker.downloader.NoOpDownloader;
 import lan.dk.podcastserver.manager.worker.selector.DownloaderSelector;
 import lan.dk.podcastserver.repository.ItemRepository;
+import lan.dk.podcastserver.repository.WaitingItemRepository;
+import lan.dk.podcastserver.service.BandwidthService;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import lan.dk.podcastserver.utils.facade.WaitingQueueDelta;
+import lan.dk.podcastserver.utils.facade.WaitingQueueDelta.Operation;
+import lan.dk.podcastserver.utils.facade.WaitingQueueDelta.Type;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -24,13 +30,19 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.net.URISyntaxException;
 import java.time.ZonedDateTime;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 import static com.jayway.awaitility.Awaitility.await;
 import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
@@ -43,16 +55,20 @@ public class ItemDownloadManagerTest {
     private static final Integer NUMBER_OF_DOWNLOAD = 3;
 
     @Captor ArgumentCaptor<String> stringArgumentCaptor;
-    @Captor ArgumentCaptor<Queue<Item>> queueArgumentCaptor;
+    @Captor ArgumentCaptor<WaitingQueueDelta> deltaArgumentCaptor;
     @Captor ArgumentCaptor<String> itemUrlArgumentCaptor;
     @Captor ArgumentCaptor<Item> itemArgumentCaptor;
     @Captor ArgumentCaptor<UUID> integerArgumentCaptor;
 
     @Mock SimpMessagingTemplate template;
     @Mock ItemRepository itemRepository;
+    @Mock WaitingItemRepository waitingItemRepository;
     @Mock PodcastServerParameters podcastServerParameters;
     @Mock DownloaderSelector downloaderSelector;
     @Mock ThreadPoolTaskExecutor downloaderExecutor;
+    @Mock DownloadMetrics downloadMetrics;
+    @Mock BandwidthService bandwidthService;
+    @Mock DownloadStateStore downloadStateStore;
 
     @InjectMocks ItemDownloadManager itemDownloadManager;
 
@@ -77,9 +93,10 @@ public class ItemDownloadManagerTest {
         when(downloaderExecutor.getCorePoolSize()).thenReturn(NUMBER_OF_DOWNLOAD);
         /* When */
         itemDownloadManager.setLimitParallelDownload(NUMBER_OF_DOWNLOAD + 1);
+        itemDownloadManager.awaitCommands();
         /* Then */
-        verify(template, times(1)).convertAndSend(eq("/topic/waiting"), queueArgumentCaptor.capture());
-        assertThat(queueArgumentCaptor.getValue()).isNotNull().isEmpty();
+        verify(downloaderExecutor, times(1)).setCorePoolSize(NUMBER_OF_DOWNLOAD + 1);
+        verifyNoChangeSent();
     }
 
     @Test
@@ -88,10 +105,10 @@ public class ItemDownloadManagerTest {
         when(downloaderExecutor.getCorePoolSize()).thenReturn(NUMBER_OF_DOWNLOAD);
         /* When */
         itemDownloadManager.setLimitParallelDownload(NUMBER_OF_DOWNLOAD - 1);
+        itemDownloadManager.awaitCommands();
         /* Then */
-        verify(template, times(1)).convertAndSend(eq("/topic/waiting"), queueArgumentCaptor.capture());
-        assertThat(queueArgumentCaptor.getValue()).isNotNull().isEmpty();
-
+        verify(downloaderExecutor, times(1)).setCorePoolSize(NUMBER_OF_DOWNLOAD - 1);
+        verifyNoChangeSent();
     }
 
     @Test
@@ -115,11 +132,11 @@ public class ItemDownloadManagerTest {
         when(itemRepository.findAllToDownload(any())).thenReturn(Sets.newHashSet());
         /* When */
         itemDownloadManager.launchDownload();
+        itemDownloadManager.awaitCommands();
         /* Then */
         verify(podcastServerParameters, times(1)).limitDownloadDate();
         verify(itemRepository, times(1)).findAllToDownload(any());
-        verify(template, times(1)).convertAndSend(stringArgumentCaptor.capture(), queueArgumentCaptor.capture());
-        assertThat(stringArgumentCaptor.getValue()).isEqualTo("/topic/waiting");
+        verifyNoChangeSent();
     }
 
     @Test
@@ -139,6 +156,7 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.launchDownload();
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         verify(podcastServerParameters, times(1)).limitDownloadDate();
@@ -158,6 +176,7 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.launchDownload();
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         verify(podcastServerParameters, times(1)).limitDownloadDate();
@@ -177,6 +196,7 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.stopAllDownload();
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         verify(mockDownloader1._2(), times(1)).stopDownload();
@@ -207,6 +227,7 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.pauseAllDownload();
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         verify(entry1._2(), times(1)).pauseDownload();
@@ -227,6 +248,7 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.restartAllDownload();
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         await().atMost(5, TimeUnit.SECONDS).until(() -> {
@@ -239,17 +261,19 @@ public class ItemDownloadManagerTest {
     @Test
     public void should_add_item_to_queue() throws URISyntaxException {
         /* Given */
-        Item item = Item.builder().id(UUID.randomUUID()).status(Status.FINISH).build();
+        Item item = Item.builder().id(UUID.randomUUID()).status(Status.FINISH).numberOfTry(5).build();
         when(itemRepository.findOne(any(UUID.class))).thenReturn(item);
         when(downloaderExecutor.getCorePoolSize()).thenReturn(3);
 
         /* When */
         itemDownloadManager.addItemToQueue(item.getId());
+        itemDownloadManager.awaitCommands();
 
         /* Then */
-        verifyConvertAndSave(times(1));
+        verifyNoChangeSent();
         verify(itemRepository, times(1)).findOne(eq(item.getId()));
         assertThat(itemDownloadManager.getWaitingQueue()).isEmpty();
+        assertThat(item.getNumberOfTry()).isEqualTo(0);
     }
 
     @Test
@@ -260,6 +284,7 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.addItemToQueue(item);
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         verifyConvertAndSave(times(1));
@@ -272,17 +297,23 @@ public class ItemDownloadManagerTest {
         when(itemRepository.findOne(any(UUID.class))).thenReturn(item);
 
         /* When */ itemDownloadManager.removeItemFromQueue(item.getId(), true);
+        itemDownloadManager.awaitCommands();
         /* Then */
         verify(itemRepository, times(1)).findOne(integerArgumentCaptor.capture());
         assertThat(integerArgumentCaptor.getValue()).isEqualTo(item.getId());
         verify(itemRepository, times(1)).save(eq(item));
-        verifyConvertAndSave(times(1));
+        verifyNoChangeSent();
     }
 
     private void verifyConvertAndSave(VerificationMode mode) {
-        verify(template, mode).convertAndSend(stringArgumentCaptor.capture(), queueArgumentCaptor.capture());
+        verify(template, mode).convertAndSend(stringArgumentCaptor.capture(), deltaArgumentCaptor.capture());
         assertThat(stringArgumentCaptor.getValue()).isEqualTo("/topic/waiting");
-        assertThat(queueArgumentCaptor.getValue()).containsAll(itemDownloadManager.getWaitingQueue());
+        assertThat(deltaArgumentCaptor.getValue().getSequence()).isEqualTo(itemDownloadManager.getWaitingQueueSnapshot().getSequence());
+        assertThat(itemDownloadManager.getWaitingQueueSnapshot().getItems()).containsExactlyElementsOf(itemDownloadManager.getWaitingQueue());
+    }
+
+    private void verifyNoChangeSent() {
+        verify(template, never()).convertAndSend(eq("/topic/waiting"), any(Object.class));
     }
 
     @Test
@@ -311,6 +342,7 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.stopDownload(entry2._1().getId());
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         verify(entry1._2(), never()).stopDownload();
@@ -323,7 +355,6 @@ public class ItemDownloadManagerTest {
         verify(itemRepository, atLeast(1)).findAllToDownload(any());
         verify(podcastServerParameters, atLeast(1)).limitDownloadDate();
         verify(downloaderSelector, atLeast(1)).of(anyString());
-        verifyConvertAndSave(atLeast(1));
     }
 
     @Test
@@ -337,6 +368,7 @@ public class ItemDownloadManagerTest {
         itemDownloadManager.launchDownload();
 
         /* When */ itemDownloadManager.pauseDownload(entry2._1().getId());
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         verify(entry1._2(), never()).pauseDownload();
@@ -357,10 +389,11 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.restartDownload(entry2._1().getId());
+        itemDownloadManager.awaitCommands();
 
         /* Then */
+        await().atMost(5, TimeUnit.SECONDS).until(() -> verify(entry2._2(), times(1)).restartDownload());
         verify(entry1._2(), never()).restartDownload();
-        verify(entry2._2(), times(1)).restartDownload();
         verify(entry3._2(), never()).restartDownload();
         verifyPostLaunchDownload();
     }
@@ -378,6 +411,7 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.toggleDownload(entry2._1().getId());
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         verify(entry1._2(), never()).pauseDownload();
@@ -400,14 +434,72 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.toggleDownload(entry2._1().getId());
+        itemDownloadManager.awaitCommands();
 
         /* Then */
+        await().atMost(5, TimeUnit.SECONDS).until(() -> verify(entry2._2(), times(1)).restartDownload());
         verify(entry1._2(), never()).restartDownload();
-        verify(entry2._2(), times(1)).restartDownload();
         verify(entry3._2(), never()).restartDownload();
         verifyPostLaunchDownload();
     }
 
+    @Test
+    public void should_resume_a_download_paused_before_a_restart() {
+        /* Given */
+        Tuple2<Item, Downloader> entry = generateDownloaderAndRegisterIt(UUID.randomUUID());
+        entry._1().setStatus(Status.PAUSED);
+        when(itemRepository.findOne(eq(entry._1().getId()))).thenReturn(entry._1());
+        when(downloaderExecutor.getCorePoolSize()).thenReturn(3);
+
+        /* When */
+        itemDownloadManager.toggleDownload(entry._1().getId());
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        assertThat(itemDownloadManager.getDownloadingQueue().keySet()).containsOnly(entry._1());
+        assertThat(itemDownloadManager.getWaitingQueue()).isEmpty();
+        verify(downloaderExecutor, times(1)).execute(eq(entry._2()));
+        verify(entry._2(), never()).restartDownload();
+    }
+
+    @Test
+    public void should_not_resume_an_item_not_paused_before_a_restart() {
+        /* Given */
+        Item item = Item.builder().id(UUID.randomUUID()).status(Status.NOT_DOWNLOADED).build();
+        when(itemRepository.findOne(eq(item.getId()))).thenReturn(item);
+
+        /* When */
+        itemDownloadManager.restartDownload(item.getId());
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        assertThat(itemDownloadManager.getWaitingQueue()).isEmpty();
+        verifyZeroInteractions(downloaderSelector);
+    }
+
+    @Test
+    public void should_not_queue_again_items_in_download_or_with_a_pending_state() {
+        /* Given */
+        Tuple2<Item, Downloader> downloading = generateDownloaderAndRegisterIt(UUID.randomUUID());
+        Item pending = Item.builder().id(UUID.randomUUID()).url("http://now.where/pending").status(Status.NOT_DOWNLOADED).build();
+        when(downloaderExecutor.getCorePoolSize()).thenReturn(1);
+        when(downloadStateStore.hasPendingState(eq(pending))).thenReturn(true);
+        when(itemRepository.findAllToDownload(any()))
+                .thenReturn(Sets.newHashSet(downloading._1()))
+                .thenReturn(Sets.newHashSet(downloading._1(), pending));
+        itemDownloadManager.launchDownload();
+
+        /* When */
+        itemDownloadManager.launchDownload();
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        assertThat(itemDownloadManager.getWaitingQueue()).isEmpty();
+        assertThat(itemDownloadManager.getDownloadingQueue().keySet()).containsOnly(downloading._1());
+        verify(downloaderSelector, times(1)).of(eq(downloading._1().getUrl()));
+        verifyPostLaunchDownload();
+    }
+
     @Test
     public void should_remove_a_current_download() throws URISyntaxException {
         /* Given */
@@ -416,9 +508,10 @@ public class ItemDownloadManagerTest {
         itemDownloadManager.getDownloadingQueue().put(item, calledDownloader);
         /* When */
         itemDownloadManager.removeACurrentDownload(item);
+        itemDownloadManager.awaitCommands();
         /* Then */
         assertThat(itemDownloadManager.getDownloadingQueue()).hasSize(0);
-        verifyConvertAndSave(times(1));
+        verifyNoChangeSent();
     }
 
 
@@ -431,6 +524,7 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.moveItemInQueue(ITEM_2.getId(), 2);
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         assertThat(itemDownloadManager.getWaitingQueue())
@@ -439,16 +533,90 @@ public class ItemDownloadManagerTest {
         verifyConvertAndSave(times(4));
     }
 
+    @Test
+    public void should_send_a_movement_as_a_single_operation() {
+        /* Given */
+        itemDownloadManager.addItemToQueue(ITEM_1);
+        itemDownloadManager.addItemToQueue(ITEM_2);
+        itemDownloadManager.addItemToQueue(ITEM_3);
+
+        /* When */
+        itemDownloadManager.moveItemInQueue(ITEM_3.getId(), 0);
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        verifyConvertAndSave(times(4));
+        List<Operation> operations = deltaArgumentCaptor.getValue().getOperations();
+        assertThat(operations).hasSize(1);
+        assertThat(operations.get(0).getType()).isEqualTo(Type.MOVE);
+        assertThat(operations.get(0).getId()).isEqualTo(ITEM_3.getId());
+        assertThat(operations.get(0).getPosition()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_send_operations_giving_the_new_waiting_queue() {
+        /* Given */
+        Tuple2<Item, Downloader> entry1 = generateDownloaderAndRegisterIt(UUID.randomUUID());
+        Tuple2<Item, Downloader> entry2 = generateDownloaderAndRegisterIt(UUID.randomUUID());
+        Tuple2<Item, Downloader> entry3 = generateDownloaderAndRegisterIt(UUID.randomUUID());
+        when(downloaderExecutor.getCorePoolSize()).thenReturn(1);
+        when(itemRepository.findAllToDownload(any())).thenReturn(Sets.newHashSet(entry1._1(), entry2._1(), entry3._1()));
+        itemDownloadManager.launchDownload();
+        itemDownloadManager.awaitCommands();
+        List<Item> previous = itemDownloadManager.getWaitingQueueSnapshot().getItems();
+
+        /* When */
+        itemDownloadManager.removeItemFromQueueAndDownload(itemDownloadManager.getWaitingQueue().head());
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        verifyPostLaunchDownload();
+        verifyConvertAndSave(times(2));
+        assertThat(apply(previous, deltaArgumentCaptor.getValue().getOperations())).containsExactlyElementsOf(itemDownloadManager.getWaitingQueue());
+    }
+
+    @Test
+    public void should_not_send_items_added_and_launched_by_the_same_command() {
+        /* Given */
+        Tuple2<Item, Downloader> entry1 = generateDownloaderAndRegisterIt(UUID.randomUUID());
+        Tuple2<Item, Downloader> entry2 = generateDownloaderAndRegisterIt(UUID.randomUUID());
+        when(downloaderExecutor.getCorePoolSize()).thenReturn(2);
+        when(itemRepository.findAllToDownload(any())).thenReturn(Sets.newHashSet(entry1._1(), entry2._1()));
+
+        /* When */
+        itemDownloadManager.launchDownload();
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        assertThat(itemDownloadManager.getDownloadingQueue().keySet()).containsOnly(entry1._1(), entry2._1());
+        assertThat(itemDownloadManager.getWaitingQueueSnapshot().getSequence()).isEqualTo(0L);
+        verifyPostLaunchDownload();
+        verifyNoChangeSent();
+    }
+
+    private static List<Item> apply(List<Item> items, List<Operation> operations) {
+        List<Item> result = new ArrayList<>(items);
+        operations.forEach(op -> {
+            Option<Item> moved = javaslang.collection.List.ofAll(result).find(i -> i.getId().equals(op.getId()));
+            result.removeIf(i -> i.getId().equals(op.getId()));
+            if (op.getType() == Type.INSERT) result.add(op.getPosition(), op.getItem());
+            if (op.getType() == Type.MOVE) result.add(op.getPosition(), moved.get());
+        });
+        return result;
+    }
+
     @Test(expected = RuntimeException.class)
     public void should_do_nothing_on_non_present_item_movement() {
         /* Given */
         itemDownloadManager.addItemToQueue(ITEM_1);
         itemDownloadManager.addItemToQueue(ITEM_2);
         itemDownloadManager.addItemToQueue(ITEM_3);
+        itemDownloadManager.awaitCommands();
         verifyConvertAndSave(times(3));
 
         /* When */
         itemDownloadManager.moveItemInQueue(UUID.randomUUID(), 2);
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         assertThat(itemDownloadManager.getWaitingQueue()).containsSequence(ITEM_1, ITEM_2, ITEM_3);
@@ -465,14 +633,93 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.resetDownload(entry1._1());
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         assertThat(entry1._1().getNumberOfTry()).isEqualTo(1);
         verify(podcastServerParameters, times(1)).getNumberOfTry();
+        verify(downloadMetrics, times(1)).retry(same(entry1._2()), anyString());
         verify(downloaderSelector, times(2)).of(eq(entry1._1().getUrl()));
         verifyPostLaunchDownload();
     }
 
+    @Test
+    public void should_give_the_slot_of_an_item_waiting_for_its_retry_to_another_item() {
+        /* Given */
+        when(podcastServerParameters.getNumberOfTry()).thenReturn(3);
+        when(podcastServerParameters.getRetryDelay()).thenReturn(60_000L);
+        itemDownloadManager = new ItemDownloadManager(template, itemRepository, waitingItemRepository, podcastServerParameters, downloaderSelector, downloaderExecutor, downloadMetrics, bandwidthService, downloadStateStore);
+        Tuple2<Item, Downloader> entry1 = generateDownloaderAndRegisterIt(UUID.randomUUID());
+        Tuple2<Item, Downloader> entry2 = generateDownloaderAndRegisterIt(UUID.randomUUID());
+        when(downloaderExecutor.getCorePoolSize()).thenReturn(1);
+        when(itemRepository.findAllToDownload(any()))
+                .thenReturn(Sets.newHashSet(entry1._1()))
+                .thenReturn(Sets.newHashSet(entry2._1()));
+        itemDownloadManager.launchDownload();
+        itemDownloadManager.launchDownload();
+
+        /* When */
+        itemDownloadManager.resetDownload(entry1._1());
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        assertThat(entry1._1().getNumberOfTry()).isEqualTo(1);
+        assertThat(itemDownloadManager.getWaitingQueue()).isEmpty();
+        assertThat(itemDownloadManager.getDownloadingQueue().keySet()).containsOnly(entry1._1(), entry2._1());
+        verify(downloaderSelector, times(1)).of(eq(entry1._1().getUrl()));
+        verify(downloaderSelector, times(1)).of(eq(entry2._1().getUrl()));
+        verify(podcastServerParameters, times(1)).getNumberOfTry();
+        verify(downloadMetrics, times(1)).retry(same(entry1._2()), anyString());
+        verifyPostLaunchDownload();
+        verifyConvertAndSave(times(2));
+    }
+
+    @Test
+    public void should_give_the_slot_of_an_item_in_post_processing_to_another_item() {
+        /* Given */
+        Tuple2<Item, Downloader> entry1 = generateDownloaderAndRegisterIt(UUID.randomUUID());
+        Tuple2<Item, Downloader> entry2 = generateDownloaderAndRegisterIt(UUID.randomUUID());
+        when(downloaderExecutor.getCorePoolSize()).thenReturn(1);
+        when(itemRepository.findAllToDownload(any()))
+                .thenReturn(Sets.newHashSet(entry1._1()))
+                .thenReturn(Sets.newHashSet(entry2._1()));
+        itemDownloadManager.launchDownload();
+        itemDownloadManager.launchDownload();
+
+        /* When */
+        itemDownloadManager.startPostProcessing(entry1._1());
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        assertThat(itemDownloadManager.getWaitingQueue()).isEmpty();
+        assertThat(itemDownloadManager.getItemsInDownloadingQueue()).containsOnly(entry1._1(), entry2._1());
+        verify(downloaderSelector, times(1)).of(eq(entry1._1().getUrl()));
+        verify(downloaderSelector, times(1)).of(eq(entry2._1().getUrl()));
+        verifyPostLaunchDownload();
+        verifyConvertAndSave(times(2));
+    }
+
+    @Test
+    public void should_stop_but_not_pause_an_item_in_post_processing() {
+        /* Given */
+        Tuple2<Item, Downloader> entry1 = generateDownloaderAndRegisterIt(UUID.randomUUID());
+        when(downloaderExecutor.getCorePoolSize()).thenReturn(1);
+        when(itemRepository.findAllToDownload(any())).thenReturn(Sets.newHashSet(entry1._1()));
+        itemDownloadManager.launchDownload();
+        itemDownloadManager.startPostProcessing(entry1._1());
+
+        /* When */
+        itemDownloadManager.pauseDownload(entry1._1().getId());
+        itemDownloadManager.pauseAllDownload();
+        itemDownloadManager.stopDownload(entry1._1().getId());
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        verify(entry1._2(), never()).pauseDownload();
+        verify(entry1._2(), times(1)).stopDownload();
+        verifyPostLaunchDownload();
+    }
+
     @Test
     public void should_remove_from_both_queue() {
         /* Given */
@@ -489,11 +736,27 @@ public class ItemDownloadManagerTest {
         /* When */
         itemDownloadManager.removeItemFromQueueAndDownload(entry1._1());
         itemDownloadManager.removeItemFromQueueAndDownload(entry3._1());
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         assertThat(itemDownloadManager.getWaitingQueue()).hasSize(1);
         verify(entry1._2(), times(1)).stopDownload();
         verifyPostLaunchDownload();
+        verifyConvertAndSave(times(2));
+    }
+
+    @Test
+    public void should_remove_the_waiting_row_of_an_item_deleted_outside_of_the_queue() {
+        /* Given */
+        Item item = Item.builder().id(UUID.randomUUID()).status(Status.NOT_DOWNLOADED).build();
+
+        /* When */
+        itemDownloadManager.removeItemFromQueueAndDownload(item);
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        assertThat(itemDownloadManager.getWaitingQueue()).isEmpty();
+        verify(waitingItemRepository, times(1)).remove(eq(item.getId()));
     }
 
     @Test
@@ -505,7 +768,8 @@ public class ItemDownloadManagerTest {
         when(downloaderExecutor.getCorePoolSize()).thenReturn(3);
         when(itemRepository.findAllToDownload(any())).thenReturn(Sets.newHashSet(entry1._1(), entry2._1(), entry3._1()));
         itemDownloadManager.launchDownload();
-                
+        itemDownloadManager.awaitCommands();
+
         /* When */
         Boolean isIn = itemDownloadManager.isInDownloadingQueue(entry1._1());
         Boolean isNotIn = itemDownloadManager.isInDownloadingQueue(Item.DEFAULT_ITEM);
@@ -525,6 +789,7 @@ public class ItemDownloadManagerTest {
         when(downloaderExecutor.getCorePoolSize()).thenReturn(3);
         when(itemRepository.findAllToDownload(any())).thenReturn(Sets.newHashSet(entry1._1(), entry2._1(), entry3._1()));
         itemDownloadManager.launchDownload();
+        itemDownloadManager.awaitCommands();
 
         /* When */
         Set<Item> items = itemDownloadManager.getItemsInDownloadingQueue();
@@ -543,6 +808,7 @@ public class ItemDownloadManagerTest {
         when(downloaderExecutor.getCorePoolSize()).thenReturn(3);
         when(itemRepository.findAllToDownload(any())).thenReturn(Sets.newHashSet(entry1._1(), entry2._1(), entry3._1()));
         itemDownloadManager.launchDownload();
+        itemDownloadManager.awaitCommands();
 
         /* When */
         Item item = itemDownloadManager.getItemInDownloadingQueue(entry1._1().getId());
@@ -581,11 +847,14 @@ public class ItemDownloadManagerTest {
         /* When */
         itemDownloadManager.setLimitParallelDownload(5);
         runAsync(() -> itemDownloadManager.setLimitParallelDownload(10));
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         await().atMost(5, TimeUnit.SECONDS).until(() -> {
-            verify(template, atLeast(2)).convertAndSend(eq("/topic/waiting"), anyCollection());
+            verify(downloaderExecutor, times(1)).setCorePoolSize(5);
+            verify(downloaderExecutor, times(1)).setCorePoolSize(10);
         });
+        assertThat(itemDownloadManager.getNumberOfCommands()).isEqualTo(2);
     }
 
     @Test
@@ -600,15 +869,178 @@ public class ItemDownloadManagerTest {
 
         /* When */
         itemDownloadManager.clearWaitingQueue();
+        itemDownloadManager.awaitCommands();
 
         /* Then */
         assertThat(itemDownloadManager.getWaitingQueue()).hasSize(0);
         verifyPostLaunchDownload();
+        verifyConvertAndSave(times(2));
+    }
+
+    @Test
+    public void should_not_exceed_limit_of_download_by_host() {
+        /* Given */
+        when(podcastServerParameters.getMaxDownloadByHost()).thenReturn(1);
+        itemDownloadManager = new ItemDownloadManager(template, itemRepository, waitingItemRepository, podcastServerParameters, downloaderSelector, downloaderExecutor, downloadMetrics, bandwidthService, downloadStateStore);
+        Item item1 = Item.builder().id(UUID.randomUUID()).url("http://host.a/1").status(Status.NOT_DOWNLOADED).pubDate(ZonedDateTime.now()).build();
+        Item item2 = Item.builder().id(UUID.randomUUID()).url("http://host.a/2").status(Status.NOT_DOWNLOADED).pubDate(ZonedDateTime.now().minusDays(1)).build();
+        Item item3 = Item.builder().id(UUID.randomUUID()).url("http://host.b/3").status(Status.NOT_DOWNLOADED).pubDate(ZonedDateTime.now().minusDays(2)).build();
+        when(itemRepository.findAllToDownload(any())).thenReturn(Sets.newHashSet(item1, item2, item3));
+        Downloader downloader = mock(Downloader.class);
+        when(downloaderSelector.of(anyString())).thenReturn(downloader);
+        when(downloader.setItem(any())).thenReturn(downloader);
+        when(downloader.setItemDownloadManager(any())).thenReturn(downloader);
+        when(downloaderExecutor.getCorePoolSize()).thenReturn(3);
+
+        /* When */
+        itemDownloadManager.launchDownload();
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        verify(downloaderSelector, times(2)).of(itemUrlArgumentCaptor.capture());
+        assertThat(itemUrlArgumentCaptor.getAllValues()).containsExactly(item1.getUrl(), item3.getUrl());
+        assertThat(itemDownloadManager.getWaitingQueue()).containsExactly(item2);
+        verify(podcastServerParameters, times(1)).limitDownloadDate();
+        verify(itemRepository, times(1)).findAllToDownload(any());
+        verifyConvertAndSave(times(1));
+    }
+
+    @Test
+    public void should_prefetch_url_of_next_items_in_waiting_queue() {
+        /* Given */
+        when(podcastServerParameters.getNumberOfUrlToPrefetch()).thenReturn(2);
+        itemDownloadManager = new ItemDownloadManager(template, itemRepository, waitingItemRepository, podcastServerParameters, downloaderSelector, downloaderExecutor, downloadMetrics, bandwidthService, downloadStateStore);
+        Downloader downloader = mock(Downloader.class);
+        when(downloaderSelector.of(anyString())).thenReturn(downloader);
+        when(downloader.setItem(any())).thenReturn(downloader);
+        when(downloaderExecutor.getCorePoolSize()).thenReturn(0);
+
+        /* When */
+        itemDownloadManager.addItemToQueue(ITEM_1);
+        itemDownloadManager.addItemToQueue(ITEM_2);
+        itemDownloadManager.addItemToQueue(ITEM_3);
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        verify(downloader, timeout(1000)).getItemUrl(ITEM_1);
+        verify(downloader, timeout(1000)).getItemUrl(ITEM_2);
+        verify(downloader, never()).getItemUrl(ITEM_3);
+        verify(downloader, never()).setItemDownloadManager(any());
+        verify(downloaderSelector, times(2)).of(anyString());
+        assertThat(itemDownloadManager.getWaitingQueue()).containsExactly(ITEM_1, ITEM_2, ITEM_3);
+        verifyConvertAndSave(times(3));
+    }
+
+    @Test
+    public void should_defer_items_kept_by_bandwidth_schedule() {
+        /* Given */
+        Item bigItem = Item.builder().id(UUID.randomUUID()).url("http://host.a/1").status(Status.NOT_DOWNLOADED).length(1_000_000_000L).pubDate(ZonedDateTime.now()).build();
+        Item smallItem = Item.builder().id(UUID.randomUUID()).url("http://host.a/2").status(Status.NOT_DOWNLOADED).length(1_000L).pubDate(ZonedDateTime.now().minusDays(1)).build();
+        when(itemRepository.findAllToDownload(any())).thenReturn(Sets.newHashSet(bigItem, smallItem));
+        AtomicBoolean limited = new AtomicBoolean(true);
+        when(bandwidthService.shouldDefer(bigItem)).then(i -> limited.get());
+        Downloader downloader = mock(Downloader.class);
+        when(downloaderSelector.of(anyString())).thenReturn(downloader);
+        when(downloader.setItem(any())).thenReturn(downloader);
+        when(downloader.setItemDownloadManager(any())).thenReturn(downloader);
+        when(downloaderExecutor.getCorePoolSize()).thenReturn(3);
+        itemDownloadManager.launchDownload();
+        itemDownloadManager.awaitCommands();
+        assertThat(itemDownloadManager.getWaitingQueue()).containsExactly(bigItem);
+
+        /* When */
+        limited.set(false);
+        itemDownloadManager.launchDeferredDownload();
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        verify(downloaderSelector, times(2)).of(itemUrlArgumentCaptor.capture());
+        assertThat(itemUrlArgumentCaptor.getAllValues()).containsExactly(smallItem.getUrl(), bigItem.getUrl());
+        assertThat(itemDownloadManager.getWaitingQueue()).isEmpty();
+        verify(podcastServerParameters, times(1)).limitDownloadDate();
+        verify(itemRepository, times(1)).findAllToDownload(any());
+        verifyConvertAndSave(times(2));
+    }
+
+    @Test
+    public void should_serialize_concurrent_additions_to_queue() {
+        /* Given */
+        List<Item> items = IntStream.range(0, 100)
+                .mapToObj(i -> Item.builder().id(UUID.randomUUID()).url("http://now.where/" + i).status(Status.NOT_DOWNLOADED).build())
+                .collect(toList());
+
+        /* When */
+        items.parallelStream().forEach(itemDownloadManager::addItemToQueue);
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        assertThat(itemDownloadManager.getWaitingQueue()).hasSize(100).containsAll(items);
+        assertThat(itemDownloadManager.getNumberOfCommands()).isEqualTo(100);
+        verifyConvertAndSave(times(100));
+    }
+
+    @Test
+    public void should_not_wait_for_the_end_of_a_command() {
+        /* Given */
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean released = new AtomicBoolean(false);
+        when(downloaderExecutor.getCorePoolSize()).thenReturn(1);
+        when(downloaderSelector.of(anyString())).then(i -> {
+            released.set(release.await(1, TimeUnit.SECONDS));
+            return new NoOpDownloader();
+        });
+
+        /* When */
+        itemDownloadManager.addItemToQueue(ITEM_1);
+        release.countDown();
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        assertThat(released.get()).isTrue();
+        assertThat(itemDownloadManager.getItemsInDownloadingQueue()).containsOnly(ITEM_1);
+        verify(downloaderSelector, times(1)).of(eq(ITEM_1.getUrl()));
+    }
+
+    @Test
+    public void should_restore_waiting_queue() {
+        /* Given */
+        when(waitingItemRepository.findAllItemsInOrder()).thenReturn(Arrays.asList(ITEM_3, ITEM_1, ITEM_2));
+
+        /* When */
+        itemDownloadManager.restoreWaitingQueue();
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        assertThat(itemDownloadManager.getWaitingQueue()).containsExactly(ITEM_3, ITEM_1, ITEM_2);
+        verifyConvertAndSave(times(1));
+    }
+
+    @Test
+    public void should_persist_movement_in_queue() {
+        /* Given */
+        itemDownloadManager.addItemToQueue(ITEM_1);
+        itemDownloadManager.addItemToQueue(ITEM_2);
+        itemDownloadManager.addItemToQueue(ITEM_3);
+
+        /* When */
+        itemDownloadManager.moveItemInQueue(ITEM_3.getId(), 1);
+        itemDownloadManager.awaitCommands();
+
+        /* Then */
+        verify(waitingItemRepository, times(3)).enqueue(anyListOf(UUID.class));
+        verify(waitingItemRepository, times(1)).move(eq(ITEM_3.getId()), eq(ITEM_1.getId()), eq(ITEM_2.getId()), eq(Arrays.asList(ITEM_1.getId(), ITEM_3.getId(), ITEM_2.getId())));
+        verifyConvertAndSave(times(4));
     }
 
     @After
     public void afterEach() {
         verify(podcastServerParameters, atLeast(1)).getRootfolder();
+        verify(podcastServerParameters, atLeast(1)).getMaxDownloadByHost();
+        verify(podcastServerParameters, atLeast(1)).getNumberOfUrlToPrefetch();
+        verify(podcastServerParameters, atLeast(1)).getRetryDelay();
+        verify(podcastServerParameters, atLeast(1)).getMaxRetryDelay();
+        verify(podcastServerParameters, atLeast(1)).getHostFailureThreshold();
+        verify(podcastServerParameters, atLeast(1)).getHostBreakDelay();
         verifyNoMoreInteractions(template, itemRepository, podcastServerParameters, downloaderSelector);
     }
 
@@ -0,0 +1,113 @@
+package lan.dk.podcastserver.manager;
+
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetryPolicyTest {
+
+    private static final String HOST = "www.foo.bar";
+
+    private PodcastServerParameters podcastServerParameters;
+
+    @Before
+    public void beforeEach() {
+        podcastServerParameters = new PodcastServerParameters()
+                .setRetryDelay(1000L)
+                .setMaxRetryDelay(10_000L)
+                .setHostFailureThreshold(2)
+                .setHostBreakDelay(60_000L);
+    }
+
+    @Test
+    public void should_double_the_delay_at_each_try() {
+        /* Given */
+        RetryPolicy retryPolicy = new RetryPolicy(podcastServerParameters);
+
+        /* When */
+        Long first = retryPolicy.delayOf(new Item().setNumberOfTry(1));
+        Long third = retryPolicy.delayOf(new Item().setNumberOfTry(3));
+        Long tenth = retryPolicy.delayOf(new Item().setNumberOfTry(10));
+
+        /* Then */
+        assertThat(first).isBetween(500L, 1000L);
+        assertThat(third).isBetween(2000L, 4000L);
+        assertThat(tenth).isBetween(5000L, 10_000L);
+    }
+
+    @Test
+    public void should_retry_immediately_without_delay() {
+        /* Given */
+        RetryPolicy retryPolicy = new RetryPolicy(podcastServerParameters.setRetryDelay(0L));
+
+        /* When */
+        Long delay = retryPolicy.delayOf(new Item().setNumberOfTry(5));
+
+        /* Then */
+        assertThat(delay).isEqualTo(0L);
+    }
+
+    @Test
+    public void should_open_breaker_after_failures_in_a_row() {
+        /* Given */
+        RetryPolicy retryPolicy = new RetryPolicy(podcastServerParameters);
+        retryPolicy.failure(HOST);
+        assertThat(retryPolicy.isOpen(HOST)).isFalse();
+
+        /* When */
+        retryPolicy.failure(HOST);
+
+        /* Then */
+        assertThat(retryPolicy.isOpen(HOST)).isTrue();
+        assertThat(retryPolicy.isHalfOpen(HOST)).isFalse();
+        assertThat(retryPolicy.closingTimeOf(HOST)).isGreaterThan(System.currentTimeMillis());
+        assertThat(retryPolicy.isOpen("other.host")).isFalse();
+    }
+
+    @Test
+    public void should_be_half_open_after_the_break() {
+        /* Given */
+        RetryPolicy retryPolicy = new RetryPolicy(podcastServerParameters.setHostBreakDelay(0L));
+
+        /* When */
+        retryPolicy.failure(HOST);
+        retryPolicy.failure(HOST);
+
+        /* Then */
+        assertThat(retryPolicy.isOpen(HOST)).isFalse();
+        assertThat(retryPolicy.isHalfOpen(HOST)).isTrue();
+    }
+
+    @Test
+    public void should_close_breaker_after_a_success() {
+        /* Given */
+        RetryPolicy retryPolicy = new RetryPolicy(podcastServerParameters);
+        retryPolicy.failure(HOST);
+        retryPolicy.failure(HOST);
+
+        /* When */
+        retryPolicy.success(HOST);
+
+        /* Then */
+        assertThat(retryPolicy.isOpen(HOST)).isFalse();
+        assertThat(retryPolicy.isHalfOpen(HOST)).isFalse();
+        assertThat(retryPolicy.closingTimeOf(HOST)).isEqualTo(0L);
+    }
+
+    @Test
+    public void should_never_open_breaker_if_disabled() {
+        /* Given */
+        RetryPolicy retryPolicy = new RetryPolicy(podcastServerParameters.setHostFailureThreshold(0));
+
+        /* When */
+        retryPolicy.failure(HOST);
+        retryPolicy.failure(HOST);
+        retryPolicy.failure(HOST);
+
+        /* Then */
+        assertThat(retryPolicy.isOpen(HOST)).isFalse();
+    }
+}
@@ -2,9 +2,8 @@ package lan.dk.podcastserver.manager.worker.downloader;
 
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Podcast;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.manager.ItemDownloadManager;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
 import lan.dk.podcastserver.service.*;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import org.junit.Before;
@@ -27,17 +26,17 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class CanalPlusDownloaderTest {
 
-    @Mock PodcastRepository podcastRepository;
-    @Mock ItemRepository itemRepository;
+    @Mock DownloadStateStore downloadStateStore;
     @Mock PodcastServerParameters podcastServerParameters;
     @Mock SimpMessagingTemplate template;
     @Mock MimeTypeService mimeTypeService;
+    @Mock BandwidthService bandwidthService;
     @Mock ItemDownloadManager itemDownloadManager;
 
     @Mock UrlService urlService;
     @Mock M3U8Service m3U8Service;
     @Mock FfmpegService ffmpegService;
-    @Mock ProcessService processService;
+    @Mock ProcessSupervisor processSupervisor;
 
     @InjectMocks CanalPlusDownloader canalPlusDownloader;
 
@@ -0,0 +1,65 @@
+package lan.dk.podcastserver.manager.worker.downloader;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ContentDigestTest {
+
+    private Path file;
+
+    @Before
+    public void beforeEach() throws IOException {
+        file = Files.createTempFile("content-digest", ".mp4");
+    }
+
+    @After
+    public void afterEach() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void should_digest_bytes_given_and_caught_up_from_the_file() throws IOException {
+        /* Given */
+        Files.write(file, "0123456789abcdef".getBytes());
+        ContentDigest digest = new ContentDigest();
+
+        /* When */
+        digest.catchUp(file, 4L);
+        digest.update(ByteBuffer.wrap("456789".getBytes()));
+        digest.catchUp(file, 16L);
+
+        /* Then */
+        assertThat(digest.getPosition()).isEqualTo(16L);
+        assertThat(digest.hex()).isEqualTo(DigestUtils.sha256Hex("0123456789abcdef"));
+    }
+
+    @Test(expected = IOException.class)
+    public void should_fail_if_the_file_is_shorter_than_the_length_to_digest() throws IOException {
+        /* Given */
+        Files.write(file, "0123".getBytes());
+
+        /* When */
+        new ContentDigest().catchUp(file, 10L);
+    }
+
+    @Test
+    public void should_digest_a_whole_file() throws IOException {
+        /* Given */
+        Files.write(file, "0123456789abcdef".getBytes());
+
+        /* When */
+        String digest = ContentDigest.of(file);
+
+        /* Then */
+        assertThat(digest).isEqualTo(DigestUtils.sha256Hex("0123456789abcdef"));
+    }
+}
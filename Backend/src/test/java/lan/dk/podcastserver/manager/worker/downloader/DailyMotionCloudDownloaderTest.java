@@ -1,11 +1,12 @@
 package lan.dk.podcastserver.manager.worker.downloader;
 
 import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.manager.ItemDownloadManager;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
 import lan.dk.podcastserver.service.M3U8Service;
+import lan.dk.podcastserver.service.BandwidthService;
 import lan.dk.podcastserver.service.MimeTypeService;
+import lan.dk.podcastserver.service.ResolvedUrlCache;
 import lan.dk.podcastserver.service.UrlService;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lan.dk.utils.IOUtils;
@@ -14,6 +15,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 
@@ -32,15 +34,16 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class DailyMotionCloudDownloaderTest {
 
-    @Mock PodcastRepository podcastRepository;
-    @Mock ItemRepository itemRepository;
+    @Mock DownloadStateStore downloadStateStore;
     @Mock PodcastServerParameters podcastServerParameters;
     @Mock SimpMessagingTemplate template;
     @Mock MimeTypeService mimeTypeService;
+    @Mock BandwidthService bandwidthService;
 
     @Mock
     UrlService urlService;
     @Mock M3U8Service m3U8Service;
+    @Spy ResolvedUrlCache resolvedUrlCache = new ResolvedUrlCache(new PodcastServerParameters());
 
     @Mock ItemDownloadManager itemDownloadManager;
     @InjectMocks DailyMotionCloudDownloader dailyMotionCloudDownloader;
@@ -58,7 +61,7 @@ public class DailyMotionCloudDownloaderTest {
         when(urlService.getRealURL(eq(item.getUrl()))).thenReturn(item.getUrl());
         when(urlService.asStream(eq(item.getUrl()))).then(i -> IOUtils.fileAsStream("/remote/downloader/dailymotion/dailymotion.m3u8"));
         when(urlService.addDomainIfRelative(eq(item.getUrl()), eq(realUrl))).thenCallRealMethod();
-        when(m3U8Service.findBestQuality(any())).thenCallRealMethod();
+        when(m3U8Service.findBestQuality(any(), eq(false))).thenCallRealMethod();
         dailyMotionCloudDownloader.item = item;
 
         /* When */
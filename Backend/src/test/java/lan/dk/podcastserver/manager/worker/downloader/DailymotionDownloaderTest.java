@@ -10,12 +10,13 @@ import com.mashape.unirest.request.GetRequest;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Podcast;
 import lan.dk.podcastserver.entity.Status;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.manager.ItemDownloadManager;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
 import lan.dk.podcastserver.service.JsonService;
 import lan.dk.podcastserver.service.M3U8Service;
+import lan.dk.podcastserver.service.BandwidthService;
 import lan.dk.podcastserver.service.MimeTypeService;
+import lan.dk.podcastserver.service.ResolvedUrlCache;
 import lan.dk.podcastserver.service.UrlService;
 import lan.dk.podcastserver.service.factory.WGetFactory;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
@@ -25,6 +26,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 
@@ -44,16 +46,17 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class DailymotionDownloaderTest {
 
-    @Mock PodcastRepository podcastRepository;
-    @Mock ItemRepository itemRepository;
+    @Mock DownloadStateStore downloadStateStore;
     @Mock PodcastServerParameters podcastServerParameters;
     @Mock ItemDownloadManager itemDownloadManager;
     @Mock SimpMessagingTemplate template;
     @Mock MimeTypeService mimeTypeService;
+    @Mock BandwidthService bandwidthService;
     @Mock UrlService urlService;
     @Mock WGetFactory wGetFactory;
     @Mock JsonService jsonService;
     @Mock M3U8Service m3U8Service;
+    @Spy ResolvedUrlCache resolvedUrlCache = new ResolvedUrlCache(new PodcastServerParameters());
     @InjectMocks DailymotionDownloader dailymotionDownloader;
 
     Item item;
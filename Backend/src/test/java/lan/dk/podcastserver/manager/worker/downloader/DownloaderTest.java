@@ -1,14 +1,16 @@
 package lan.dk.podcastserver.manager.worker.downloader;
 
 import com.google.common.collect.Sets;
+import javaslang.control.Option;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Podcast;
 import lan.dk.podcastserver.entity.Status;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.manager.ItemDownloadManager;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.service.BandwidthService;
 import lan.dk.podcastserver.service.MimeTypeService;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -40,11 +42,11 @@ public class DownloaderTest {
     static final String ROOT_FOLDER = "/tmp/";
     static final String TEMPORARY_EXTENSION = ".psdownload";
 
-    @Mock PodcastRepository podcastRepository;
-    @Mock ItemRepository itemRepository;
+    @Mock DownloadStateStore downloadStateStore;
     @Mock PodcastServerParameters podcastServerParameters;
     @Mock SimpMessagingTemplate template;
     @Mock MimeTypeService mimeTypeService;
+    @Mock BandwidthService bandwidthService;
     @Mock ItemDownloadManager itemDownloadManager;
     @InjectMocks SimpleDownloader simpleDownloader;
 
@@ -78,17 +80,13 @@ public class DownloaderTest {
         /* Given */
         simpleDownloader.setItem(item);
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
-
         /* When */
         simpleDownloader.run();
         simpleDownloader.stopDownload();
 
         /* Then */
         assertThat(item.getStatus()).isEqualTo(Status.STOPPED);
-        verify(podcastRepository, atLeast(1)).findOne(eq(podcast.getId()));
-        verify(itemRepository, atLeast(1)).save(eq(item));
+        verify(downloadStateStore, atLeast(1)).save(eq(item));
         verify(template, atLeast(1)).convertAndSend(eq(WS_TOPIC_DOWNLOAD), same(item));
         assertThat(simpleDownloader.target.toString()).isEqualTo(String.format("/tmp/A Fake Podcast/file.mp4%s", TEMPORARY_EXTENSION));
     }
@@ -98,16 +96,12 @@ public class DownloaderTest {
         /* Given */
         simpleDownloader.setItem(item);
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
-
         /* When */
         simpleDownloader.finishDownload();
 
         /* Then */
         assertThat(item.getStatus()).isEqualTo(Status.STOPPED);
-        verify(podcastRepository, atLeast(1)).findOne(eq(podcast.getId()));
-        verify(itemRepository, atLeast(1)).save(eq(item));
+        verify(downloadStateStore, atLeast(1)).save(eq(item));
         verify(template, atLeast(1)).convertAndSend(eq(WS_TOPIC_DOWNLOAD), same(item));
         assertThat(simpleDownloader.target).isNull();
     }
@@ -117,16 +111,12 @@ public class DownloaderTest {
         /* Given */
         simpleDownloader.setItem(item);
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
-
         /* When */
         simpleDownloader.pauseDownload();
 
         /* Then */
         assertThat(item.getStatus()).isEqualTo(Status.PAUSED);
-        verify(podcastRepository, atLeast(1)).findOne(eq(podcast.getId()));
-        verify(itemRepository, atLeast(1)).save(eq(item));
+        verify(downloadStateStore, atLeast(1)).save(eq(item));
         verify(template, atLeast(1)).convertAndSend(eq(WS_TOPIC_DOWNLOAD), same(item));
     }
 
@@ -135,9 +125,6 @@ public class DownloaderTest {
         /* Given */
         simpleDownloader.setItem(item);
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
-
         /* When */
         simpleDownloader.run();
         simpleDownloader.finishDownload();
@@ -153,9 +140,6 @@ public class DownloaderTest {
         /* Given */
         simpleDownloader.setItem(item);
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
-
         /* When */
         simpleDownloader.run();
         simpleDownloader.target = Paths.get("/tmp", podcast.getTitle(), "fake_file" + TEMPORARY_EXTENSION);
@@ -165,6 +149,91 @@ public class DownloaderTest {
         assertThat(item.getStatus()).isEqualTo(Status.FINISH);
     }
 
+    @Test
+    public void should_retry_a_truncated_download() {
+        /* Given */
+        simpleDownloader.setItem(item);
+        when(itemDownloadManager.isInDownloadingQueue(item)).thenReturn(true);
+        when(itemDownloadManager.canBeReset(item)).thenReturn(true);
+
+        /* When */
+        simpleDownloader.run();
+        simpleDownloader.expectedLength = 1000L;
+        simpleDownloader.finishDownload();
+
+        /* Then */
+        assertThat(item.getStatus()).isNotEqualTo(Status.FINISH);
+        verify(itemDownloadManager, times(1)).resetDownload(eq(item));
+        verify(itemDownloadManager, never()).removeACurrentDownload(any(Item.class));
+    }
+
+    @Test
+    public void should_stop_a_truncated_download_which_has_left_the_downloading_queue() {
+        /* Given */
+        simpleDownloader.setItem(item);
+        when(itemDownloadManager.isInDownloadingQueue(item)).thenReturn(false);
+        when(itemDownloadManager.canBeReset(item)).thenReturn(true);
+
+        /* When */
+        simpleDownloader.run();
+        simpleDownloader.expectedLength = 1000L;
+        simpleDownloader.finishDownload();
+
+        /* Then */
+        assertThat(item.getStatus()).isEqualTo(Status.STOPPED);
+        verify(itemDownloadManager, never()).resetDownload(any(Item.class));
+    }
+
+    @Test
+    public void should_stop_a_truncated_download_which_can_not_be_reset() {
+        /* Given */
+        simpleDownloader.setItem(item);
+        when(itemDownloadManager.canBeReset(item)).thenReturn(false);
+
+        /* When */
+        simpleDownloader.run();
+        simpleDownloader.expectedLength = 1000L;
+        simpleDownloader.finishDownload();
+
+        /* Then */
+        assertThat(item.getStatus()).isEqualTo(Status.STOPPED);
+        verify(itemDownloadManager, never()).resetDownload(any(Item.class));
+    }
+
+    @Test
+    public void should_replace_file_with_same_content_by_a_link() throws IOException {
+        /* Given */
+        simpleDownloader.setItem(item.setDigest("a1b2c3"));
+        Path other = Paths.get(ROOT_FOLDER, podcast.getTitle(), "other.mp4");
+        when(downloadStateStore.findFileWithSameContent(item)).thenReturn(Option.of(other));
+
+        /* When */
+        simpleDownloader.run();
+        Files.write(other, "content".getBytes());
+        Files.write(simpleDownloader.target, "content".getBytes());
+        simpleDownloader.finishDownload();
+
+        /* Then */
+        assertThat(item.getStatus()).isEqualTo(Status.FINISH);
+        assertThat(Files.isSameFile(simpleDownloader.target, other)).isTrue();
+        assertThat(Paths.get(ROOT_FOLDER, podcast.getTitle(), "file.mp4.link")).doesNotExist();
+    }
+
+    @Test
+    public void should_digest_a_file_written_by_a_library() throws IOException {
+        /* Given */
+        simpleDownloader.setItem(item);
+        simpleDownloader.run();
+        Files.write(simpleDownloader.target, "content".getBytes());
+
+        /* When */
+        simpleDownloader.digestWritten(simpleDownloader.target, 3L);
+        simpleDownloader.completeDigest(simpleDownloader.target, 7L);
+
+        /* Then */
+        assertThat(item.getDigest()).isEqualTo(DigestUtils.sha256Hex("content"));
+    }
+
     @Test
     public void should_get_the_same_target_file_each_call() throws MalformedURLException {
         /* Given */
@@ -200,8 +269,6 @@ public class DownloaderTest {
         simpleDownloader.setItem(item.setUrl("http://foo.bar.com/bash"));
 
         when(podcastServerParameters.getRootfolder()).thenReturn(Paths.get("/"));
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
 
         /* When */
         simpleDownloader.getTargetFile(item);
@@ -211,18 +278,18 @@ public class DownloaderTest {
     }
 
     @Test
-    public void should_save_sync_with_podcast() {
+    public void should_handle_error_during_save_of_state() {
         /* Given */
         simpleDownloader.setItem(item);
 
-        doThrow(RuntimeException.class).when(podcastRepository).findOne(any(UUID.class));
+        doThrow(RuntimeException.class).when(downloadStateStore).save(any(Item.class));
 
         /* When */
-        simpleDownloader.saveSyncWithPodcast();
+        simpleDownloader.saveState();
 
         /* Then */
         assertThat(simpleDownloader.getItem()).isSameAs(item);
-        verify(itemRepository, never()).save(any(Item.class));
+        verify(downloadStateStore, times(1)).save(same(item));
     }
 
     @Test
@@ -239,8 +306,8 @@ public class DownloaderTest {
 
     static class SimpleDownloader extends AbstractDownloader {
 
-        SimpleDownloader(ItemRepository itemRepository, PodcastRepository podcastRepository, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService) {
-            super(itemRepository, podcastRepository, podcastServerParameters, template, mimeTypeService);
+        SimpleDownloader(DownloadStateStore downloadStateStore, PodcastServerParameters podcastServerParameters, SimpMessagingTemplate template, MimeTypeService mimeTypeService, BandwidthService bandwidthService) {
+            super(downloadStateStore, podcastServerParameters, template, mimeTypeService, bandwidthService);
         }
 
         @Override
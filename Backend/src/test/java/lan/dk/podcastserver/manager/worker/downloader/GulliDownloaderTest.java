@@ -1,10 +1,13 @@
 package lan.dk.podcastserver.manager.worker.downloader;
 
 import lan.dk.podcastserver.entity.Item;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.manager.DownloadStateStore;
+import lan.dk.podcastserver.manager.ItemDownloadManager;
+import lan.dk.podcastserver.repository.DownloadJournalRepository;
+import lan.dk.podcastserver.service.AsyncHttpService;
 import lan.dk.podcastserver.service.HtmlService;
 import lan.dk.podcastserver.service.JsonService;
+import lan.dk.podcastserver.service.ResolvedUrlCache;
 import lan.dk.podcastserver.service.UrlService;
 import lan.dk.podcastserver.service.factory.WGetFactory;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
@@ -14,6 +17,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 
@@ -22,6 +26,7 @@ import java.net.URISyntaxException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -34,10 +39,13 @@ public class GulliDownloaderTest {
     @Mock JsonService jsonService;
     @Mock UrlService urlService;
     @Mock WGetFactory wGetFactory;
-    @Mock ItemRepository itemRepository;
-    @Mock PodcastRepository podcastRepository;
+    @Mock DownloadJournalRepository downloadJournalRepository;
+    @Mock AsyncHttpService asyncHttpService;
+    @Mock DownloadStateStore downloadStateStore;
     @Mock PodcastServerParameters podcastServerParameters;
     @Mock SimpMessagingTemplate template;
+    @Mock ItemDownloadManager itemDownloadManager;
+    @Spy ResolvedUrlCache resolvedUrlCache = new ResolvedUrlCache(new PodcastServerParameters());
     @InjectMocks GulliDownloader gulliDownloader;
 
     @Before
@@ -84,6 +92,22 @@ public class GulliDownloaderTest {
         verify(jsonService, times(1)).parse(anyString());
     }
 
+    @Test
+    public void should_resolve_the_url_again_after_a_failure() throws IOException, URISyntaxException {
+        /* Given */
+        when(htmlService.get(anyString())).thenReturn(IOUtils.fileAsHtml("/remote/podcast/gulli/embed.VOD68526621555000.html"));
+        when(jsonService.parse(anyString())).then(i -> IOUtils.parseJson(i.getArgumentAt(0, String.class)));
+        gulliDownloader.setItemDownloadManager(itemDownloadManager);
+        gulliDownloader.getItemUrl(gulliDownloader.getItem());
+
+        /* When */
+        gulliDownloader.failDownload();
+
+        /* Then */
+        verify(resolvedUrlCache, times(1)).invalidate(eq("http://replay.gulli.fr/"));
+        assertThat(resolvedUrlCache.resolve("http://replay.gulli.fr/", () -> "http://a.new.url/video.mp4")).isEqualTo("http://a.new.url/video.mp4");
+    }
+
     @Test
     public void should_not_find_element_if_playlist_item_not_set() throws IOException, URISyntaxException {
         /* Given */
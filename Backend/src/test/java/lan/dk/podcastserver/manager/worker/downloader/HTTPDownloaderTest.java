@@ -6,12 +6,15 @@ import com.github.axet.wget.info.ex.DownloadInterruptedError;
 import com.github.axet.wget.info.ex.DownloadMultipartError;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import lan.dk.podcastserver.entity.DownloadJournal;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Podcast;
 import lan.dk.podcastserver.entity.Status;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.manager.ItemDownloadManager;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.repository.DownloadJournalRepository;
+import lan.dk.podcastserver.service.AsyncHttpService;
+import lan.dk.podcastserver.service.BandwidthService;
 import lan.dk.podcastserver.service.MimeTypeService;
 import lan.dk.podcastserver.service.UrlService;
 import lan.dk.podcastserver.service.factory.WGetFactory;
@@ -23,20 +26,24 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.FileSystemUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static lan.dk.podcastserver.manager.worker.downloader.HTTPDownloader.HTTPWatcher;
 import static lan.dk.podcastserver.manager.worker.downloader.HTTPDownloader.WS_TOPIC_DOWNLOAD;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
@@ -50,16 +57,20 @@ public class HTTPDownloaderTest {
 
     private static final String ROOT_FOLDER = "/tmp/";
     private static final String TEMPORARY_EXTENSION = ".psdownload";
+    private static final String EMPTY_DIGEST = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
 
-    @Mock ItemRepository itemRepository;
-    @Mock PodcastRepository podcastRepository;
+    @Mock DownloadStateStore downloadStateStore;
     @Mock PodcastServerParameters podcastServerParameters;
     @Mock SimpMessagingTemplate template;
     @Mock MimeTypeService mimeTypeService;
+    @Mock BandwidthService bandwidthService;
 
     @Mock WGetFactory wGetFactory;
+    @Mock DownloadJournalRepository downloadJournalRepository;
+    @Mock AsyncHttpService asyncHttpService;
     @Mock
     UrlService urlService;
+    @Mock ThreadPoolTaskExecutor downloadExecutor;
 
     @Mock ItemDownloadManager itemDownloadManager;
 
@@ -82,6 +93,7 @@ public class HTTPDownloaderTest {
                 .add(item);
 
         httpDownloader.setItemDownloadManager(itemDownloadManager);
+        doAnswer(i -> { ((Runnable) i.getArguments()[0]).run(); return null; }).when(downloadExecutor).execute(any(Runnable.class));
         when(podcastServerParameters.getDownloadExtension()).thenReturn(TEMPORARY_EXTENSION);
         httpDownloader.postConstruct();
         when(podcastServerParameters.getRootfolder()).thenReturn(Paths.get(ROOT_FOLDER));
@@ -96,8 +108,6 @@ public class HTTPDownloaderTest {
         DownloadInfo downloadInfo = mock(DownloadInfo.class);
         WGet wGet = mock(WGet.class);
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
         when(urlService.getRealURL(anyString())).then(i -> i.getArguments()[0]);
         when(wGetFactory.newDownloadInfo(anyString())).thenReturn(downloadInfo);
         when(wGetFactory.newWGet(any(DownloadInfo.class), any(File.class))).thenReturn(wGet);
@@ -113,8 +123,7 @@ public class HTTPDownloaderTest {
 
         /* Then */
         assertThat(item.getStatus()).isEqualTo(Status.FINISH);
-        verify(podcastRepository, atLeast(1)).findOne(eq(podcast.getId()));
-        verify(itemRepository, atLeast(1)).save(eq(item));
+        verify(downloadStateStore, atLeast(1)).save(eq(item));
         verify(template, atLeast(1)).convertAndSend(eq(WS_TOPIC_DOWNLOAD), same(item));
         assertThat(httpDownloader.target.toString()).isEqualTo("/tmp/A Fake Podcast/file.mp4");
     }
@@ -127,8 +136,6 @@ public class HTTPDownloaderTest {
         DownloadInfo downloadInfo = mock(DownloadInfo.class);
         WGet wGet = mock(WGet.class);
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
         when(urlService.getRealURL(anyString())).then(i -> i.getArguments()[0]);
         when(wGetFactory.newDownloadInfo(anyString())).thenReturn(downloadInfo);
         when(wGetFactory.newWGet(any(DownloadInfo.class), any(File.class))).thenReturn(wGet);
@@ -141,8 +148,7 @@ public class HTTPDownloaderTest {
 
         /* Then */
         assertThat(item.getStatus()).isEqualTo(Status.STOPPED);
-        verify(podcastRepository, atLeast(1)).findOne(eq(podcast.getId()));
-        verify(itemRepository, atLeast(1)).save(eq(item));
+        verify(downloadStateStore, atLeast(1)).save(eq(item));
         verify(template, atLeast(1)).convertAndSend(eq(WS_TOPIC_DOWNLOAD), same(item));
         assertThat(httpDownloader.target.toString()).isEqualTo(String.format("/tmp/A Fake Podcast/file.mp4%s", TEMPORARY_EXTENSION));
     }
@@ -156,8 +162,6 @@ public class HTTPDownloaderTest {
         WGet wGet = mock(WGet.class);
         DownloadMultipartError error = mock(DownloadMultipartError.class);
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
         when(urlService.getRealURL(anyString())).then(i -> i.getArguments()[0]);
         when(wGetFactory.newDownloadInfo(anyString())).thenReturn(downloadInfo);
         when(wGetFactory.newWGet(any(DownloadInfo.class), any(File.class))).thenReturn(wGet);
@@ -170,8 +174,7 @@ public class HTTPDownloaderTest {
 
         /* Then */
         assertThat(item.getStatus()).isEqualTo(Status.STOPPED);
-        verify(podcastRepository, atLeast(2)).findOne(eq(podcast.getId()));
-        verify(itemRepository, atLeast(2)).save(eq(item));
+        verify(downloadStateStore, atLeast(2)).save(eq(item));
         verify(template, atLeast(1)).convertAndSend(eq(WS_TOPIC_DOWNLOAD), same(item));
     }
 
@@ -183,8 +186,6 @@ public class HTTPDownloaderTest {
         DownloadInfo downloadInfo = mock(DownloadInfo.class);
         WGet wGet = mock(WGet.class);
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
         when(urlService.getRealURL(anyString())).then(i -> i.getArguments()[0]);
         when(wGetFactory.newDownloadInfo(anyString())).thenReturn(downloadInfo);
         when(wGetFactory.newWGet(any(DownloadInfo.class), any(File.class))).thenReturn(wGet);
@@ -195,8 +196,7 @@ public class HTTPDownloaderTest {
 
         /* Then */
         assertThat(item.getStatus()).isEqualTo(Status.STARTED);
-        verify(podcastRepository, atLeast(1)).findOne(eq(podcast.getId()));
-        verify(itemRepository, atLeast(1)).save(eq(item));
+        verify(downloadStateStore, atLeast(1)).save(eq(item));
         verify(template, atLeast(1)).convertAndSend(eq(WS_TOPIC_DOWNLOAD), same(item));
     }
 
@@ -208,8 +208,6 @@ public class HTTPDownloaderTest {
         DownloadInfo downloadInfo = mock(DownloadInfo.class);
         WGet wGet = mock(WGet.class);
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
         when(urlService.getRealURL(anyString())).then(i -> i.getArguments()[0]);
         when(wGetFactory.newDownloadInfo(anyString())).thenReturn(downloadInfo);
         when(wGetFactory.newWGet(any(DownloadInfo.class), any(File.class))).thenReturn(wGet);
@@ -220,9 +218,148 @@ public class HTTPDownloaderTest {
 
         /* Then */
         assertThat(item.getStatus()).isEqualTo(Status.STOPPED);
-        verify(podcastRepository, atLeast(2)).findOne(eq(podcast.getId()));
-        verify(itemRepository, atLeast(2)).save(eq(item));
+        verify(downloadStateStore, atLeast(2)).save(eq(item));
         verify(template, atLeast(1)).convertAndSend(eq(WS_TOPIC_DOWNLOAD), same(item));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void should_resume_download_from_journal() throws IOException {
+        /* Given */
+        item.setId(UUID.randomUUID());
+        httpDownloader.setItem(item);
+        Files.createDirectories(Paths.get(ROOT_FOLDER, podcast.getTitle()));
+        Path partialFile = Files.write(Paths.get(ROOT_FOLDER, podcast.getTitle(), "file-1.mp4" + TEMPORARY_EXTENSION), new byte[]{1, 2, 3});
+        DownloadJournal journal = DownloadJournal.builder().id(item.getId()).url(item.getUrl()).target(partialFile.toString()).bytesWritten(3L).build();
+
+        DownloadInfo downloadInfo = mock(DownloadInfo.class);
+        WGet wGet = mock(WGet.class);
+
+        when(urlService.getRealURL(anyString())).then(i -> i.getArguments()[0]);
+        when(downloadJournalRepository.findOne(eq(item.getId()))).thenReturn(journal);
+        when(downloadInfo.getRange()).thenReturn(true);
+        when(wGetFactory.newDownloadInfo(anyString())).thenReturn(downloadInfo);
+        when(wGetFactory.newWGet(any(DownloadInfo.class), any(File.class))).thenReturn(wGet);
+
+        /* When */
+        httpDownloader.run();
+
+        /* Then */
+        assertThat(httpDownloader.target).isEqualTo(partialFile);
+        assertThat(partialFile).exists();
+        verify(wGetFactory, times(1)).newWGet(same(downloadInfo), eq(partialFile.toFile()));
+        verify(downloadJournalRepository, times(1)).save(any(DownloadJournal.class));
+    }
+
+    @Test
+    public void should_release_thread_and_finish_when_async_transfer_completes() throws IOException {
+        /* Given */
+        httpDownloader.setItem(item);
+        CompletableFuture<AsyncHttpService.DownloadedFile> transfer = new CompletableFuture<>();
+
+        when(urlService.getRealURL(anyString())).then(i -> i.getArguments()[0]);
+        when(wGetFactory.newDownloadInfo(anyString())).thenReturn(mock(DownloadInfo.class));
+        when(podcastServerParameters.getAsyncDownload()).thenReturn(true);
+        when(asyncHttpService.download(anyString(), any(Path.class), anyLong(), any())).thenReturn(transfer);
+
+        /* When */
+        httpDownloader.run();
+
+        /* Then */
+        assertThat(item.getStatus()).isEqualTo(Status.STARTED);
+        verify(wGetFactory, never()).newWGet(any(DownloadInfo.class), any(File.class));
+
+        /* When */
+        Files.createFile(httpDownloader.target);
+        transfer.complete(new AsyncHttpService.DownloadedFile(0L, EMPTY_DIGEST));
+
+        /* Then */
+        assertThat(item.getStatus()).isEqualTo(Status.FINISH);
+        assertThat(item.getDigest()).isEqualTo(EMPTY_DIGEST);
+        verify(downloadExecutor, times(1)).execute(any(Runnable.class));
+        verify(itemDownloadManager, atLeast(1)).removeACurrentDownload(eq(item));
+    }
+
+    @Test
+    public void should_keep_segmented_transfer_for_large_files_with_default_parameters() throws MalformedURLException {
+        /* Given */
+        PodcastServerParameters defaults = new PodcastServerParameters();
+        httpDownloader.setItem(item);
+        DownloadInfo downloadInfo = mock(DownloadInfo.class);
+
+        when(urlService.getRealURL(anyString())).thenReturn("http://localhost:1/file.mp4");
+        when(wGetFactory.newDownloadInfo(anyString())).thenReturn(downloadInfo);
+        when(downloadInfo.getRange()).thenReturn(true);
+        when(downloadInfo.getLength()).thenReturn(10 * SegmentedDownload.CHUNK_SIZE);
+        when(podcastServerParameters.getMaxSegmentByDownload()).thenReturn(defaults.getMaxSegmentByDownload());
+        when(podcastServerParameters.getAsyncDownload()).thenReturn(defaults.getAsyncDownload());
+
+        /* When */
+        httpDownloader.run();
+
+        /* Then */
+        verify(asyncHttpService, never()).download(anyString(), any(Path.class), anyLong(), any());
+        verify(wGetFactory, never()).newWGet(any(DownloadInfo.class), any(File.class));
+    }
+
+    @Test
+    public void should_stop_when_async_transfer_fails() throws MalformedURLException {
+        /* Given */
+        httpDownloader.setItem(item);
+        CompletableFuture<AsyncHttpService.DownloadedFile> transfer = new CompletableFuture<>();
+
+        when(urlService.getRealURL(anyString())).then(i -> i.getArguments()[0]);
+        when(wGetFactory.newDownloadInfo(anyString())).thenReturn(mock(DownloadInfo.class));
+        when(podcastServerParameters.getAsyncDownload()).thenReturn(true);
+        when(asyncHttpService.download(anyString(), any(Path.class), anyLong(), any())).thenReturn(transfer);
+        httpDownloader.run();
+
+        /* When */
+        transfer.completeExceptionally(new IOException("Connection reset"));
+
+        /* Then */
+        assertThat(item.getStatus()).isEqualTo(Status.STOPPED);
+    }
+
+    @Test
+    public void should_retry_when_async_transfer_fails() throws MalformedURLException {
+        /* Given */
+        httpDownloader.setItem(item);
+        CompletableFuture<AsyncHttpService.DownloadedFile> transfer = new CompletableFuture<>();
+
+        when(urlService.getRealURL(anyString())).then(i -> i.getArguments()[0]);
+        when(wGetFactory.newDownloadInfo(anyString())).thenReturn(mock(DownloadInfo.class));
+        when(podcastServerParameters.getAsyncDownload()).thenReturn(true);
+        when(asyncHttpService.download(anyString(), any(Path.class), anyLong(), any())).thenReturn(transfer);
+        when(itemDownloadManager.isInDownloadingQueue(item)).thenReturn(true);
+        when(itemDownloadManager.canBeReset(item)).thenReturn(true);
+        httpDownloader.run();
+
+        /* When */
+        transfer.completeExceptionally(new IOException("Connection reset"));
+
+        /* Then */
+        assertThat(item.getStatus()).isEqualTo(Status.STARTED);
+        verify(itemDownloadManager, times(1)).resetDownload(eq(item));
+        verify(urlService, times(1)).invalidateRealURL(eq(item.getUrl()));
+    }
+
+    @Test
+    public void should_cancel_async_transfer_on_pause() throws MalformedURLException {
+        /* Given */
+        httpDownloader.setItem(item);
+        CompletableFuture<AsyncHttpService.DownloadedFile> transfer = new CompletableFuture<>();
+
+        when(urlService.getRealURL(anyString())).then(i -> i.getArguments()[0]);
+        when(wGetFactory.newDownloadInfo(anyString())).thenReturn(mock(DownloadInfo.class));
+        when(podcastServerParameters.getAsyncDownload()).thenReturn(true);
+        when(asyncHttpService.download(anyString(), any(Path.class), anyLong(), any())).thenReturn(transfer);
+        httpDownloader.run();
+
+        /* When */
+        httpDownloader.pauseDownload();
+
+        /* Then */
+        assertThat(transfer.isCancelled()).isTrue();
+        assertThat(item.getStatus()).isEqualTo(Status.PAUSED);
+    }
+}
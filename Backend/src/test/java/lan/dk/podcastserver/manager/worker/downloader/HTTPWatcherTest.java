@@ -6,6 +6,7 @@ import lan.dk.podcastserver.manager.ItemDownloadManager;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -76,7 +77,7 @@ public class HTTPWatcherTest {
         httpWatcher.run();
 
         /* Then */
-        verify(downloader, times(1)).stopDownload();
+        verify(downloader, times(1)).failDownload();
         verify(downloader, never()).convertAndSaveBroadcast();
         verify(downloader, never()).finishDownload();
         verify(itemDownloadManager, never()).removeACurrentDownload(any());
@@ -86,11 +87,15 @@ public class HTTPWatcherTest {
     public void should_do_done() {
         /* Given */
         when(info.getState()).thenReturn(DONE);
+        when(info.getCount()).thenReturn(10L);
 
         /* When */
         httpWatcher.run();
 
         /* Then */
+        InOrder order = inOrder(downloader);
+        order.verify(downloader).completeDigest(downloader.target, 10L);
+        order.verify(downloader).finishDownload();
         verify(downloader, times(1)).finishDownload();
         verify(itemDownloadManager, times(1)).removeACurrentDownload(any());
         verify(downloader, never()).stopDownload();
@@ -154,10 +159,11 @@ public class HTTPWatcherTest {
 
         /* Then */
         assertThat(downloader.item.getProgression()).isEqualTo(50);
+        verify(downloader, times(1)).digestWritten(downloader.target, 5L);
         verify(downloader, never()).finishDownload();
         verify(downloader, never()).stopDownload();
         verify(itemDownloadManager, never()).removeACurrentDownload(any());
-        verify(downloader, times(1)).convertAndSaveBroadcast();
+        verify(downloader, never()).convertAndSaveBroadcast();
     }
 
 }
\ No newline at end of file
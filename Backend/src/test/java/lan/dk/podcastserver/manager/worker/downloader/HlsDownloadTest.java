@@ -0,0 +1,185 @@
+package lan.dk.podcastserver.manager.worker.downloader;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import javaslang.collection.List;
+import lan.dk.podcastserver.service.M3U8Service;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HlsDownloadTest {
+
+    private static final int PORT = 8089;
+    private static final String BASE_URL = "http://localhost:" + PORT + "/";
+    private static final M3U8Service.MediaPlaylist PLAYLIST = new M3U8Service.MediaPlaylist(List.of(
+            new M3U8Service.Segment(BASE_URL + "segment1.ts", 10D),
+            new M3U8Service.Segment(BASE_URL + "segment2.ts", 10D),
+            new M3U8Service.Segment(BASE_URL + "segment3.ts", 5D)
+    ));
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool();
+
+    @Rule public WireMockRule wireMockRule = new WireMockRule(PORT);
+
+    private Path target;
+
+    @Before
+    public void beforeEach() throws IOException {
+        target = Files.createTempFile("hls-download", ".ts");
+    }
+
+    @After
+    public void afterEach() throws IOException {
+        Files.deleteIfExists(target);
+        Files.deleteIfExists(HlsDownload.progressFileOf(target));
+    }
+
+    @Test
+    public void should_download_segments_in_order() throws IOException {
+        /* Given */
+        stubSegment("segment1.ts", "0123456789");
+        stubSegment("segment2.ts", "abcdefghij");
+        stubSegment("segment3.ts", "klmno");
+        AtomicLong bytes = new AtomicLong();
+        AtomicReference<Double> duration = new AtomicReference<>();
+
+        HlsDownload download = HlsDownload.builder()
+                .playlist(PLAYLIST)
+                .target(target)
+                .maxSegments(2)
+                .userAgent("Podcast-Server")
+                .executor(EXECUTOR)
+                .stopDownloading(new AtomicBoolean(false))
+                .onProgression((b, d) -> { bytes.set(b); duration.set(d); })
+            .build();
+
+        /* When */
+        Boolean complete = download.download();
+
+        /* Then */
+        assertThat(complete).isTrue();
+        assertThat(new String(Files.readAllBytes(target))).isEqualTo("0123456789abcdefghijklmno");
+        assertThat(download.getDigest()).isEqualTo(DigestUtils.sha256Hex("0123456789abcdefghijklmno"));
+        assertThat(bytes.get()).isEqualTo(25L);
+        assertThat(duration.get()).isEqualTo(25D);
+        verify(getRequestedFor(urlEqualTo("/segment1.ts")).withHeader("User-Agent", equalTo("Podcast-Server")));
+    }
+
+    @Test
+    public void should_resume_after_written_segments() throws IOException {
+        /* Given */
+        Files.write(target, "0123456789abcdefghij-partial".getBytes());
+        Files.write(HlsDownload.progressFileOf(target), List.of("2", "20"));
+        stubSegment("segment3.ts", "klmno");
+
+        HlsDownload download = HlsDownload.builder()
+                .playlist(PLAYLIST)
+                .target(target)
+                .maxSegments(2)
+                .userAgent("Podcast-Server")
+                .executor(EXECUTOR)
+                .stopDownloading(new AtomicBoolean(false))
+                .onProgression((b, d) -> {})
+            .build();
+
+        /* When */
+        Boolean complete = download.download();
+
+        /* Then */
+        assertThat(complete).isTrue();
+        assertThat(new String(Files.readAllBytes(target))).isEqualTo("0123456789abcdefghijklmno");
+        assertThat(download.getDigest()).isEqualTo(DigestUtils.sha256Hex("0123456789abcdefghijklmno"));
+        verify(0, getRequestedFor(urlEqualTo("/segment1.ts")));
+    }
+
+    @Test
+    public void should_not_be_complete_if_stopped() throws IOException {
+        /* Given */
+        stubSegment("segment1.ts", "0123456789");
+        AtomicBoolean stopDownloading = new AtomicBoolean(false);
+
+        /* When */
+        Boolean complete = HlsDownload.builder()
+                .playlist(PLAYLIST)
+                .target(target)
+                .maxSegments(1)
+                .userAgent("Podcast-Server")
+                .executor(EXECUTOR)
+                .stopDownloading(stopDownloading)
+                .onProgression((b, d) -> stopDownloading.set(true))
+            .build()
+            .download();
+
+        /* Then */
+        assertThat(complete).isFalse();
+        assertThat(Files.readAllLines(HlsDownload.progressFileOf(target))).containsExactly("1", "10");
+    }
+
+    @Test(expected = IOException.class)
+    public void should_fail_if_segment_is_missing() throws IOException {
+        /* Given */
+        stubSegment("segment1.ts", "0123456789");
+        stubFor(get(urlEqualTo("/segment2.ts")).willReturn(aResponse().withStatus(404)));
+
+        /* When */
+        HlsDownload.builder()
+                .playlist(PLAYLIST)
+                .target(target)
+                .maxSegments(2)
+                .userAgent("Podcast-Server")
+                .executor(EXECUTOR)
+                .stopDownloading(new AtomicBoolean(false))
+                .onProgression((b, d) -> {})
+            .build()
+            .download();
+    }
+
+    @Test(timeout = 5000)
+    public void should_fail_if_a_segment_stalls() throws IOException {
+        /* Given */
+        stubSegment("segment1.ts", "0123456789");
+        stubFor(get(urlEqualTo("/segment2.ts")).willReturn(aResponse().withStatus(200).withFixedDelay(10_000).withBody("abcdefghij")));
+        Throwable error = null;
+
+        /* When */
+        try {
+            HlsDownload.builder()
+                    .playlist(PLAYLIST)
+                    .target(target)
+                    .maxSegments(2)
+                    .userAgent("Podcast-Server")
+                    .timeout(200)
+                    .executor(EXECUTOR)
+                    .stopDownloading(new AtomicBoolean(false))
+                    .onProgression((b, d) -> {})
+                .build()
+                .download();
+        } catch (IOException e) {
+            error = e;
+        }
+
+        /* Then */
+        assertThat(error).isInstanceOf(IOException.class);
+        assertThat(error.getCause()).isInstanceOf(SocketTimeoutException.class);
+        assertThat(Files.readAllLines(HlsDownload.progressFileOf(target))).containsExactly("1", "10");
+    }
+
+    private void stubSegment(String name, String content) {
+        stubFor(get(urlEqualTo("/" + name)).willReturn(aResponse().withStatus(200).withBody(content)));
+    }
+}
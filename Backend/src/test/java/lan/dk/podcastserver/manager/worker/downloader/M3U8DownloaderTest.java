@@ -4,9 +4,8 @@ import javaslang.control.Try;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Podcast;
 import lan.dk.podcastserver.entity.Status;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.manager.ItemDownloadManager;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
 import lan.dk.podcastserver.service.*;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import net.bramp.ffmpeg.builder.FFmpegBuilder;
@@ -15,10 +14,11 @@ import net.bramp.ffmpeg.progress.ProgressListener;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -44,19 +44,21 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class M3U8DownloaderTest {
 
-    @Mock PodcastRepository podcastRepository;
-    @Mock ItemRepository itemRepository;
+    @Mock DownloadStateStore downloadStateStore;
     @Mock PodcastServerParameters podcastServerParameters;
     @Mock SimpMessagingTemplate template;
     @Mock MimeTypeService mimeTypeService;
+    @Mock BandwidthService bandwidthService;
     @Mock ItemDownloadManager itemDownloadManager;
 
     @Mock UrlService urlService;
     @Mock M3U8Service m3U8Service;
     @Mock FfmpegService ffmpegService;
     @Mock ProcessService processService;
+    @Mock ThreadPoolTaskExecutor postProcessingExecutor;
+    @Mock ThreadPoolTaskExecutor segmentExecutor;
 
-    @InjectMocks M3U8Downloader m3U8Downloader;
+    M3U8Downloader m3U8Downloader;
 
     Podcast podcast;
     Item item;
@@ -73,12 +75,15 @@ public class M3U8DownloaderTest {
                 .status(Status.STARTED)
                 .build();
 
-        m3U8Downloader.setItemDownloadManager(itemDownloadManager);
-        m3U8Downloader.setItem(item);
         when(podcastServerParameters.getRootfolder()).thenReturn(Paths.get("/tmp"));
         when(podcastServerParameters.getDownloadExtension()).thenReturn(".psdownload");
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
+        when(podcastServerParameters.getMaxConcurrentProcess()).thenReturn(1);
+        when(processService.pidOf(any())).thenReturn(1234);
+
+        ProcessSupervisor processSupervisor = new ProcessSupervisor(processService, podcastServerParameters);
+        m3U8Downloader = new M3U8Downloader(downloadStateStore, podcastServerParameters, template, mimeTypeService, bandwidthService, urlService, m3U8Service, ffmpegService, processSupervisor, postProcessingExecutor, segmentExecutor);
+        m3U8Downloader.setItemDownloadManager(itemDownloadManager);
+        m3U8Downloader.setItem(item);
         m3U8Downloader.postConstruct();
     }
 
@@ -106,6 +111,23 @@ public class M3U8DownloaderTest {
         assertThat(item).hasProgression(9);
     }
 
+    @Test
+    public void should_download_only_audio_if_podcast_is_audio_only() {
+        /* Given */
+        podcast.setAudioOnly(true);
+        when(ffmpegService.getDurationOf(anyString(), anyString())).thenReturn(1_000_000D);
+        when(ffmpegService.download(anyString(), any(FFmpegBuilder.class), any(ProgressListener.class))).then(i -> mock(Process.class));
+
+        /* When */
+        m3U8Downloader.download();
+
+        /* Then */
+        ArgumentCaptor<FFmpegBuilder> command = ArgumentCaptor.forClass(FFmpegBuilder.class);
+        verify(ffmpegService).download(anyString(), command.capture(), any(ProgressListener.class));
+        assertThat(command.getValue().build()).contains("-vn");
+        assertThat(m3U8Downloader.target.toString()).endsWith(".m4a" + ".psdownload");
+    }
+
     @Test
     public void should_be_compatible() {
         assertThat(m3U8Downloader.compatibility(item.getUrl())).isLessThan(Integer.MAX_VALUE/2);
@@ -127,7 +149,7 @@ public class M3U8DownloaderTest {
             TimeUnit.SECONDS.sleep(10L);
             return 1;
         });
-        when(processService.start(any())).then(i -> Try.run(() -> {}));
+        when(processService.signal(anyInt(), any())).thenReturn(true);
 
         /* When */
         runAsync(() -> m3U8Downloader.download());
@@ -146,8 +168,11 @@ public class M3U8DownloaderTest {
         Process downloadProcess = mock(Process.class);
         item.setStatus(Status.PAUSED);
         when(ffmpegService.download(anyString(), any(), any())).thenReturn(downloadProcess);
-        when(downloadProcess.waitFor()).then(i -> Try.run(() -> TimeUnit.SECONDS.sleep(10L)));
-        when(processService.start(any())).then(i -> Try.failure(new IOException("Unable to restart download")));
+        when(downloadProcess.waitFor()).then(i -> {
+            TimeUnit.SECONDS.sleep(10L);
+            return 1;
+        });
+        when(processService.signal(anyInt(), any())).thenReturn(false);
 
         /* When */
         runAsync(() -> m3U8Downloader.download());
@@ -161,12 +186,15 @@ public class M3U8DownloaderTest {
     }
 
     @Test
-    public void should_paused_a_download() {
+    public void should_paused_a_download() throws InterruptedException {
         /* Given */
         Process process = mock(Process.class);
         when(ffmpegService.download(anyString(), any(), any())).thenReturn(process);
-        when(processService.waitFor(any())).then(i -> Try.run(() -> TimeUnit.SECONDS.sleep(20L)));
-        when(processService.start(any())).then(i -> Try.run(() -> {}));
+        when(process.waitFor()).then(i -> {
+            TimeUnit.SECONDS.sleep(20L);
+            return 0;
+        });
+        when(processService.signal(anyInt(), any())).thenReturn(true);
 
         /* When */
         CompletableFuture<Void> future = runAsync(() -> m3U8Downloader.download());
@@ -177,16 +205,20 @@ public class M3U8DownloaderTest {
         await().atMost(5, TimeUnit.SECONDS).until(() -> {
             assertThat(item).hasStatus(Status.PAUSED);
         });
+        verify(processService).signal(1234, ProcessService.Signal.STOP);
         future.cancel(true);
     }
     
     @Test
-    public void should_failed_to_pause() {
+    public void should_failed_to_pause() throws InterruptedException {
         /* Given */
         Process process = mock(Process.class);
         when(ffmpegService.download(anyString(), any(), any())).thenReturn(process);
-        when(processService.waitFor(any())).then(i -> Try.run(() -> TimeUnit.SECONDS.sleep(20L)));
-        when(processService.start(any())).then(i -> Try.failure(new IOException("Error during process")));
+        when(process.waitFor()).then(i -> {
+            TimeUnit.SECONDS.sleep(20L);
+            return 0;
+        });
+        when(processService.signal(anyInt(), any())).thenReturn(false);
 
         /* When */
         CompletableFuture<Void> future = runAsync(() -> m3U8Downloader.download());
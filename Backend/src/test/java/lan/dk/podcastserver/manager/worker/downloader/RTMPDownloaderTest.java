@@ -3,12 +3,12 @@ package lan.dk.podcastserver.manager.worker.downloader;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Podcast;
 import lan.dk.podcastserver.entity.Status;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.manager.ItemDownloadManager;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.service.BandwidthService;
 import lan.dk.podcastserver.service.MimeTypeService;
-import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lan.dk.podcastserver.service.ProcessService;
+import lan.dk.podcastserver.service.ProcessSupervisor;
 import lan.dk.podcastserver.service.properties.ExternalTools;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import org.junit.Before;
@@ -16,7 +16,6 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -27,9 +26,13 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+import static com.jayway.awaitility.Awaitility.await;
+import static java.util.concurrent.CompletableFuture.runAsync;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyVararg;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -41,14 +44,15 @@ import static org.mockito.Mockito.*;
 public class RTMPDownloaderTest {
 
     @Mock ExternalTools externalTools;
-    @Mock PodcastRepository podcastRepository;
-    @Mock ItemRepository itemRepository;
+    @Mock DownloadStateStore downloadStateStore;
     @Mock ItemDownloadManager itemDownloadManager;
     @Mock PodcastServerParameters podcastServerParameters;
     @Mock SimpMessagingTemplate template;
     @Mock MimeTypeService mimeTypeService;
+    @Mock BandwidthService bandwidthService;
     @Mock ProcessService processService;
-    @InjectMocks RTMPDownloader rtmpDownloader;
+    ProcessSupervisor processSupervisor;
+    RTMPDownloader rtmpDownloader;
 
     @Captor ArgumentCaptor<String> processParameters;
 
@@ -70,8 +74,10 @@ public class RTMPDownloaderTest {
         when(podcastServerParameters.getDownloadExtension()).thenReturn(".psdownload");
         when(externalTools.getRtmpdump()).thenReturn("/usr/local/bin/rtmpdump");
         when(podcastServerParameters.getRootfolder()).thenReturn(Paths.get("/tmp"));
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
+        when(podcastServerParameters.getMaxConcurrentProcess()).thenReturn(1);
 
+        processSupervisor = new ProcessSupervisor(processService, podcastServerParameters);
+        rtmpDownloader = new RTMPDownloader(downloadStateStore, podcastServerParameters, template, mimeTypeService, bandwidthService, processService, processSupervisor, externalTools);
         rtmpDownloader.setItem(item);
         rtmpDownloader.setItemDownloadManager(itemDownloadManager);
 
@@ -99,7 +105,7 @@ public class RTMPDownloaderTest {
         rtmpDownloader.download();
 
         /* Then */
-        assertThat(rtmpDownloader.pid).isEqualTo(0);
+        assertThat(item.getStatus()).isEqualTo(Status.FINISH);
         assertThat(Paths.get("/tmp", "RTMP Podcast", "bar.mp4")).exists();
         verify(processService, times(1)).newProcessBuilder(processParameters.capture());
         assertThat(processParameters.getAllValues())
@@ -114,6 +120,27 @@ public class RTMPDownloaderTest {
 
     }
 
+    @Test
+    public void should_hold_the_process_for_the_bandwidth() throws URISyntaxException {
+        /* Given */
+        ProcessBuilder processBuilder = new ProcessBuilder("/bin/cat", fileUri("/remote/downloader/rtmpdump/rtmpdump.txt"));
+        when(processService.newProcessBuilder((String[]) anyVararg())).then(i -> {
+            Files.write(Paths.get("/tmp", "RTMP Podcast", "bar.mp4.psdownload"), "content".getBytes());
+            return processBuilder;
+        });
+        when(processService.pidOf(any())).thenReturn(1234);
+        when(processService.signal(anyInt(), any())).thenReturn(true);
+        when(bandwidthService.reserve(anyLong())).thenReturn(60_000L);
+
+        /* When */
+        rtmpDownloader.download();
+
+        /* Then */
+        verify(bandwidthService, times(1)).reserve(eq(7L));
+        verify(bandwidthService, never()).acquire(anyLong());
+        verify(processService, times(1)).signal(eq(1234), eq(ProcessService.Signal.STOP));
+    }
+
     @Test
     public void should_stop_download_if_ioexception() throws URISyntaxException {
         /* Given */
@@ -133,7 +160,7 @@ public class RTMPDownloaderTest {
     public void should_destroy_previous_process_at_start() throws URISyntaxException {
         /* Given */
         Process process = mock(Process.class);
-        rtmpDownloader.pid = 123;
+        when(process.isAlive()).thenReturn(true);
         rtmpDownloader.p = process;
 
         ProcessBuilder processBuilder = new ProcessBuilder("/bin/cat", fileUri("/remote/downloader/rtmpdump/rtmpdump.txt"));
@@ -151,32 +178,40 @@ public class RTMPDownloaderTest {
     }
 
     @Test
-    public void should_pause_process_on_pause_of_download() {
+    public void should_pause_process_on_pause_of_download() throws URISyntaxException {
         /* Given */
-        rtmpDownloader.pid = 123;
-        when(processService.newProcessBuilder((String[]) anyVararg())).thenReturn(new ProcessBuilder("/bin/ls"));
+        startLongProcess();
+        when(processService.signal(anyInt(), any())).thenReturn(true);
 
         /* When */
         rtmpDownloader.pauseDownload();
 
         /* Then */
-        verify(processService, times(1)).newProcessBuilder(processParameters.capture());
-        assertThat(processParameters.getAllValues())
-                .hasSize(3)
-                .containsExactly(
-                        "kill",
-                        "-STOP",
-                        "123"
-                );
+        verify(processService, times(1)).signal(eq(1234), eq(ProcessService.Signal.STOP));
+        verify(processService, never()).newProcessBuilder("kill", "-STOP", "1234");
+        assertThat(item.getStatus()).isEqualTo(Status.PAUSED);
+    }
+
+    @Test
+    public void should_resume_process_on_restart_of_download() throws URISyntaxException {
+        /* Given */
+        startLongProcess();
+        when(processService.signal(anyInt(), any())).thenReturn(true);
+        item.setStatus(Status.PAUSED);
+
+        /* When */
+        rtmpDownloader.restartDownload();
+
+        /* Then */
+        verify(processService, times(1)).signal(eq(1234), eq(ProcessService.Signal.CONT));
+        assertThat(item.getStatus()).isEqualTo(Status.STARTED);
     }
 
     @Test
     public void should_stop_if_pause_not_working() {
         /* Given */
         Process process = mock(Process.class);
-        rtmpDownloader.pid = 123;
         rtmpDownloader.p = process;
-        when(processService.newProcessBuilder((String[]) anyVararg())).thenReturn(new ProcessBuilder("/bin"));
 
         /* When */
         rtmpDownloader.pauseDownload();
@@ -192,6 +227,14 @@ public class RTMPDownloaderTest {
         assertThat(rtmpDownloader.compatibility("rtmp://foo.bar.com/video")).isEqualTo(1);
     }
 
+    private void startLongProcess() throws URISyntaxException {
+        ProcessBuilder processBuilder = new ProcessBuilder("/bin/sleep", "5");
+        when(processService.newProcessBuilder((String[]) anyVararg())).thenReturn(processBuilder);
+        when(processService.pidOf(any())).thenReturn(1234);
+        runAsync(() -> rtmpDownloader.download());
+        await().atMost(5, TimeUnit.SECONDS).until(() -> processSupervisor.isSupervised(item));
+    }
+
     private String fileUri(String relativePath) throws URISyntaxException {
         return Paths.get(RTMPDownloaderTest.class.getResource(relativePath).toURI()).toString();
     }
@@ -8,9 +8,6 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static lan.dk.podcastserver.assertion.Assertions.assertThat;
@@ -23,23 +20,6 @@ import static org.mockito.Mockito.*;
 @RunWith(MockitoJUnitRunner.class)
 public class RTMPWatcherTest {
 
-    private static final InputStream LOG = new ByteArrayInputStream(new StringBuilder()
-            .append("Progression : (1%)\n")
-            .append("Progression : (2%)\n")
-            .append("Progression : (3%)\n")
-            .append("Download Complete\n")
-            .toString()
-            .getBytes()
-    );
-
-    private static final InputStream ERROR_LOG = new ByteArrayInputStream(new StringBuilder()
-            .append("Error...\n")
-            .append("Error...\n")
-            .append("Error...\n")
-            .toString()
-            .getBytes()
-    );
-
     @Mock Process process;
     @Mock RTMPDownloader rtmpDownloader;
     private RTMPWatcher rtmpWatcher;
@@ -53,38 +33,41 @@ public class RTMPWatcherTest {
                     .progression(0)
                 .build();
 
-        rtmpDownloader.pid = 1234;
         rtmpDownloader.stopDownloading = new AtomicBoolean(true);
 
         rtmpWatcher = new RTMPWatcher(rtmpDownloader);
+        rtmpWatcher.onStart(process);
     }
 
     @Test
     public void should_extract_progression_from_log() {
         /* Given */
-        when(process.getInputStream()).thenReturn(LOG);
         doAnswer( i -> rtmpDownloader.item.setStatus(Status.FINISH)).when(rtmpDownloader).finishDownload();
 
         /* When */
-        rtmpWatcher.run();
+        rtmpWatcher.onOutput("Progression : (1%)");
+        rtmpWatcher.onOutput("Progression : (2%)");
+        rtmpWatcher.onOutput("Progression : (3%)");
+        rtmpWatcher.onOutput("Download Complete");
+        rtmpWatcher.onExit(0);
 
         /* Then */
-        verify(rtmpDownloader, times(3)).convertAndSaveBroadcast();
+        verify(rtmpDownloader, never()).convertAndSaveBroadcast();
         verify(rtmpDownloader, times(1)).finishDownload();
+        verify(rtmpDownloader, never()).resetDownload();
         assertThat(rtmpDownloader.item)
                 .hasProgression(3)
                 .hasStatus(Status.FINISH);
     }
-    
+
     @Test
-    public void should_exit_if_no_pid() {
+    public void should_reset_on_unexpected_exit() {
         /* Given */
-        when(process.getInputStream()).thenReturn(ERROR_LOG);
-        rtmpDownloader.pid = 0;
         rtmpDownloader.stopDownloading = new AtomicBoolean(false);
 
         /* When */
-        rtmpWatcher.run();
+        rtmpWatcher.onOutput("Error...");
+        rtmpWatcher.onExit(1);
 
         /* Then */
         verify(rtmpDownloader, never()).convertAndSaveBroadcast();
@@ -94,26 +77,26 @@ public class RTMPWatcherTest {
                 .hasProgression(0)
                 .hasStatus(Status.STARTED);
     }
-    
+
     @Test
-    public void should_reset_if_error_in_log() throws IOException {
-        /* Given */
-        InputStream errorStream = mock(InputStream.class);
-        when(process.getInputStream()).thenReturn(errorStream);
-        doThrow(IOException.class).when(errorStream).read();
+    public void should_not_reset_if_stopped() {
+        /* When */
+        rtmpWatcher.onExit(1);
+
+        /* Then */
+        verify(rtmpDownloader, never()).resetDownload();
+    }
 
-        rtmpDownloader.pid = 1234;
+    @Test
+    public void should_ignore_exit_of_a_replaced_process() {
+        /* Given */
         rtmpDownloader.stopDownloading = new AtomicBoolean(false);
+        rtmpDownloader.p = mock(Process.class);
 
         /* When */
-        rtmpWatcher.run();
+        rtmpWatcher.onExit(1);
 
         /* Then */
-        verify(rtmpDownloader, never()).convertAndSaveBroadcast();
-        verify(rtmpDownloader, never()).finishDownload();
-        verify(rtmpDownloader, times(1)).resetDownload();
-        assertThat(rtmpDownloader.item)
-                .hasProgression(0)
-                .hasStatus(Status.STARTED);
+        verify(rtmpDownloader, never()).resetDownload();
     }
-}
\ No newline at end of file
+}
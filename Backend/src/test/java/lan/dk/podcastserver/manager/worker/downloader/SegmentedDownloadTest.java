@@ -0,0 +1,246 @@
+package lan.dk.podcastserver.manager.worker.downloader;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import javaslang.control.Try;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created by kevin on 18/10/2016 for Podcast Server
+ */
+public class SegmentedDownloadTest {
+
+    private static final int PORT = 8089;
+    private static final String URL = "http://localhost:" + PORT + "/file.mp4";
+    private static final byte[] CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool();
+
+    @Rule public WireMockRule wireMockRule = new WireMockRule(PORT);
+
+    private Path target;
+
+    @Before
+    public void beforeEach() throws IOException {
+        target = Files.createTempFile("segmented-download", ".psdownload");
+    }
+
+    @After
+    public void afterEach() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @Test
+    public void should_download_file_by_range() throws IOException {
+        /* Given */
+        stubRange(0, 9);
+        stubRange(10, 19);
+        stubRange(20, 29);
+        stubRange(30, 35);
+        AtomicLong progression = new AtomicLong();
+
+        SegmentedDownload download = SegmentedDownload.builder()
+                .url(URL)
+                .target(target)
+                .length((long) CONTENT.length)
+                .offset(0L)
+                .maxSegments(2)
+                .chunkSize(10L)
+                .executor(EXECUTOR)
+                .stopDownloading(new AtomicBoolean(false))
+                .onProgression(progression::set)
+            .build();
+
+        /* When */
+        download.download();
+
+        /* Then */
+        assertThat(Files.readAllBytes(target)).isEqualTo(CONTENT);
+        assertThat(progression.get()).isEqualTo(CONTENT.length);
+        assertThat(download.getDigest()).isEqualTo(DigestUtils.sha256Hex(CONTENT));
+    }
+
+    @Test
+    public void should_resume_from_offset() throws IOException {
+        /* Given */
+        Files.write(target, Arrays.copyOfRange(CONTENT, 0, 20));
+        stubRange(20, 29);
+        stubRange(30, 35);
+
+        SegmentedDownload download = SegmentedDownload.builder()
+                .url(URL)
+                .target(target)
+                .length((long) CONTENT.length)
+                .offset(20L)
+                .maxSegments(2)
+                .chunkSize(10L)
+                .executor(EXECUTOR)
+                .stopDownloading(new AtomicBoolean(false))
+                .onProgression(c -> {})
+            .build();
+
+        /* When */
+        download.download();
+
+        /* Then */
+        assertThat(Files.readAllBytes(target)).isEqualTo(CONTENT);
+        assertThat(download.getDigest()).isEqualTo(DigestUtils.sha256Hex(CONTENT));
+    }
+
+    @Test
+    public void should_resume_from_checkpoint_after_a_crash() throws IOException {
+        /* Given */
+        stubRange(0, 9);
+        stubRange(10, 19);
+        stubRange(20, 29);
+        stubRange(30, 35);
+        Path crashed = Files.createTempFile("segmented-download-crashed", ".psdownload");
+        AtomicLong checkpoint = new AtomicLong();
+        AtomicBoolean stopDownloading = new AtomicBoolean(false);
+
+        /* The application is killed right after the first chunk, the file on disk is the one copied at this moment */
+        SegmentedDownload.builder()
+                .url(URL)
+                .target(target)
+                .length((long) CONTENT.length)
+                .offset(0L)
+                .maxSegments(1)
+                .chunkSize(10L)
+                .executor(EXECUTOR)
+                .stopDownloading(stopDownloading)
+                .onProgression(c -> {})
+                .onCheckpoint(length -> {
+                    if (checkpoint.get() > 0) return;
+                    checkpoint.set(length);
+                    Try.run(() -> Files.copy(target, crashed, StandardCopyOption.REPLACE_EXISTING));
+                    stopDownloading.set(true);
+                })
+            .build()
+            .download();
+        Long sizeAfterCrash = Files.size(crashed);
+
+        /* When */
+        SegmentedDownload.builder()
+                .url(URL)
+                .target(crashed)
+                .length((long) CONTENT.length)
+                .offset(checkpoint.get())
+                .maxSegments(2)
+                .chunkSize(10L)
+                .executor(EXECUTOR)
+                .stopDownloading(new AtomicBoolean(false))
+                .onProgression(c -> {})
+            .build()
+            .download();
+
+        /* Then */
+        assertThat(sizeAfterCrash).isEqualTo(CONTENT.length);
+        assertThat(checkpoint.get()).isEqualTo(10L);
+        assertThat(Files.readAllBytes(crashed)).isEqualTo(CONTENT);
+        Files.deleteIfExists(crashed);
+    }
+
+    @Test
+    public void should_send_the_user_agent() throws IOException {
+        /* Given */
+        stubRange(0, 9);
+        stubRange(10, 19);
+        stubRange(20, 29);
+        stubRange(30, 35);
+
+        /* When */
+        SegmentedDownload.builder()
+                .url(URL)
+                .target(target)
+                .length((long) CONTENT.length)
+                .offset(0L)
+                .maxSegments(2)
+                .chunkSize(10L)
+                .userAgent("Podcast-Server")
+                .executor(EXECUTOR)
+                .stopDownloading(new AtomicBoolean(false))
+                .onProgression(c -> {})
+            .build()
+            .download();
+
+        /* Then */
+        verify(4, getRequestedFor(urlEqualTo("/file.mp4")).withHeader("User-Agent", equalTo("Podcast-Server")));
+    }
+
+    @Test(timeout = 5000)
+    public void should_fail_if_the_server_stalls() throws IOException {
+        /* Given */
+        stubFor(get(urlEqualTo("/file.mp4")).willReturn(aResponse().withStatus(206).withFixedDelay(10_000).withBody(CONTENT)));
+        Files.write(target, Arrays.copyOfRange(CONTENT, 0, 10));
+        Throwable error = null;
+
+        /* When */
+        try {
+            SegmentedDownload.builder()
+                    .url(URL)
+                    .target(target)
+                    .length((long) CONTENT.length)
+                    .offset(10L)
+                    .maxSegments(1)
+                    .chunkSize(100L)
+                    .timeout(200)
+                    .executor(EXECUTOR)
+                    .stopDownloading(new AtomicBoolean(false))
+                    .onProgression(c -> {})
+                .build()
+                .download();
+        } catch (IOException e) {
+            error = e;
+        }
+
+        /* Then */
+        assertThat(error).isInstanceOf(IOException.class);
+        assertThat(error.getCause()).isInstanceOf(SocketTimeoutException.class);
+        assertThat(Files.size(target)).isEqualTo(10L);
+    }
+
+    @Test(expected = IOException.class)
+    public void should_fail_if_range_is_not_supported() throws IOException {
+        /* Given */
+        stubFor(get(urlEqualTo("/file.mp4")).willReturn(aResponse().withStatus(200).withBody(CONTENT)));
+
+        /* When */
+        SegmentedDownload.builder()
+                .url(URL)
+                .target(target)
+                .length((long) CONTENT.length)
+                .offset(0L)
+                .maxSegments(2)
+                .chunkSize(10L)
+                .executor(EXECUTOR)
+                .stopDownloading(new AtomicBoolean(false))
+                .onProgression(c -> {})
+            .build()
+            .download();
+    }
+
+    private void stubRange(int start, int end) {
+        stubFor(get(urlEqualTo("/file.mp4"))
+                .withHeader("Range", equalTo("bytes=" + start + "-" + end))
+                .willReturn(aResponse()
+                        .withStatus(206)
+                        .withHeader("Content-Range", "bytes " + start + "-" + end + "/" + CONTENT.length)
+                        .withBody(Arrays.copyOfRange(CONTENT, start, end + 1))));
+    }
+}
@@ -8,12 +8,14 @@ import com.mashape.unirest.request.body.MultipartBody;
 import javaslang.control.Option;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.service.*;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lan.dk.utils.IOUtils;
 import org.apache.commons.io.input.NullInputStream;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
@@ -36,6 +38,7 @@ public class TF1ReplayDownloaderTest {
     @Mock JsonService jsonService;
     @Mock SignatureService signatureService;
     @Mock UrlService urlService;
+    @Spy ResolvedUrlCache resolvedUrlCache = new ResolvedUrlCache(new PodcastServerParameters());
     @InjectMocks TF1ReplayDownloader downloader;
 
     @Test
@@ -80,7 +83,7 @@ public class TF1ReplayDownloaderTest {
 
         when(jsonService.parse(anyString())).then(i -> IOUtils.stringAsJson(i.getArgumentAt(0, String.class)));
         when(urlService.getRealURL(anyString(), any(Consumer.class))).thenReturn("http://ios.tf1.fr/");
-        when(m3U8Service.findBestQuality(any())).thenReturn(Option.of("foo/bar/video.mp4"));
+        when(m3U8Service.findBestQuality(any(), eq(false))).thenReturn(Option.of("foo/bar/video.mp4"));
         when(urlService.addDomainIfRelative(anyString(), anyString())).thenCallRealMethod();
 
         /* When */
@@ -130,7 +133,7 @@ public class TF1ReplayDownloaderTest {
 
         when(jsonService.parse(anyString())).then(i -> IOUtils.stringAsJson(i.getArgumentAt(0, String.class)));
         when(urlService.getRealURL(anyString(), any(Consumer.class))).thenReturn("http://ios.tf1.fr/");
-        when(m3U8Service.findBestQuality(any())).thenReturn(Option.of("/foo/bar/video.mp4"));
+        when(m3U8Service.findBestQuality(any(), eq(false))).thenReturn(Option.of("/foo/bar/video.mp4"));
         when(urlService.addDomainIfRelative(anyString(), anyString())).thenReturn("http://ios.tf1.fr/foo/bar/video.mp4");
 
         /* When */
@@ -140,6 +143,20 @@ public class TF1ReplayDownloaderTest {
         assertThat(itemUrl).isEqualTo("http://ios.tf1.fr/foo/bar/video.mp4");
     }
 
+    @Test
+    public void should_get_url_resolved_by_another_downloader() {
+        /* Given */
+        Item item = Item.builder().url("http://www.tf1.fr/tf1/19h-live/videos/19h-live-20-juillet-2016.html").build();
+        resolvedUrlCache.resolve(item.getUrl(), () -> "http://ios.tf1.fr/foo/bar/video.mp4");
+
+        /* When */
+        String itemUrl = downloader.getItemUrl(item);
+
+        /* Then */
+        assertThat(itemUrl).isEqualTo("http://ios.tf1.fr/foo/bar/video.mp4");
+        verify(htmlService, never()).get(anyString());
+    }
+
     @Test
     public void should_return_given_item_if_not_the_same() {
         /* Given */
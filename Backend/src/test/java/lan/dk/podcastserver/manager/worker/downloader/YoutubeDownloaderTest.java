@@ -8,26 +8,32 @@ import com.github.axet.wget.info.DownloadInfo;
 import com.github.axet.wget.info.ex.DownloadInterruptedError;
 import com.github.axet.wget.info.ex.DownloadMultipartError;
 import com.google.common.collect.Sets;
+import javaslang.control.Option;
 import javaslang.control.Try;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Podcast;
 import lan.dk.podcastserver.entity.Status;
+import lan.dk.podcastserver.manager.DownloadStateStore;
 import lan.dk.podcastserver.manager.ItemDownloadManager;
-import lan.dk.podcastserver.repository.ItemRepository;
-import lan.dk.podcastserver.repository.PodcastRepository;
+import lan.dk.podcastserver.service.AsyncHttpService;
+import lan.dk.podcastserver.service.BandwidthService;
 import lan.dk.podcastserver.service.FfmpegService;
 import lan.dk.podcastserver.service.MimeTypeService;
+import lan.dk.podcastserver.service.ProcessSupervisor;
 import lan.dk.podcastserver.service.factory.WGetFactory;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.FileSystemUtils;
 
 import java.net.MalformedURLException;
@@ -35,10 +41,14 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -61,13 +71,16 @@ import static org.mockito.Mockito.*;
 public class YoutubeDownloaderTest {
 
     @Mock FfmpegService ffmpegService;
-    @Mock PodcastRepository podcastRepository;
-    @Mock ItemRepository itemRepository;
+    @Mock DownloadStateStore downloadStateStore;
     @Mock ItemDownloadManager itemDownloadManager;
     @Mock PodcastServerParameters podcastServerParameters;
     @Mock SimpMessagingTemplate template;
     @Mock MimeTypeService mimeTypeService;
+    @Mock BandwidthService bandwidthService;
     @Mock WGetFactory wGetFactory;
+    @Mock AsyncHttpService asyncHttpService;
+    @Mock ThreadPoolTaskExecutor postProcessingExecutor;
+    @Mock ProcessSupervisor processSupervisor;
     @InjectMocks YoutubeDownloader youtubeDownloader;
 
     @Mock VideoInfo videoInfo;
@@ -95,6 +108,7 @@ public class YoutubeDownloaderTest {
         when(podcastServerParameters.getRootfolder()).thenReturn(Paths.get(ROOT_FOLDER));
         vGet = mock(VGet.class, RETURNS_SMART_NULLS);
         when(vGet.getVideo()).thenReturn(videoInfo);
+        when(processSupervisor.withSlot(any(Item.class), any())).then(i -> i.getArgumentAt(1, Callable.class).call());
 
         youtubeDownloader.postConstruct();
         youtubeDownloader.setItemDownloadManager(itemDownloadManager);
@@ -109,8 +123,6 @@ public class YoutubeDownloaderTest {
         youtubeDownloader.setItem(item);
 
         when(vGet.getContentExt(any())).thenCallRealMethod();
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
         when(wGetFactory.parser(eq(item.getUrl()))).thenReturn(vGetParser);
         when(vGetParser.info(eq(new URL(item.getUrl())))).thenReturn(videoInfo);
         when(wGetFactory.newVGet(eq(videoInfo))).thenReturn(vGet);
@@ -139,28 +151,149 @@ public class YoutubeDownloaderTest {
         /* Given */
         youtubeDownloader.setItem(item.setStatus(Status.STARTED));
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
         when(wGetFactory.parser(eq(item.getUrl()))).thenReturn(vGetParser);
         when(vGetParser.info(eq(new URL(item.getUrl())))).thenReturn(videoInfo);
         when(wGetFactory.newVGet(eq(videoInfo))).thenReturn(vGet);
         when(videoInfo.getTitle()).thenReturn("A super Name of Youtube-Video");
         when(ffmpegService.mergeAudioAndVideo(any(), any(), any())).then(i -> {
-            Try.of(() -> Files.createFile(i.getArgumentAt(2, Path.class)));
+            Try.of(() -> Files.write(i.getArgumentAt(2, Path.class), "merged".getBytes()));
             return i.getArgumentAt(2, Path.class);
         });
         List<VideoFileInfo> videoList = generate(2);
         when(videoInfo.getInfo()).thenReturn(videoList);
-        doAnswer(simulateDownload(videoInfo, videoList)).when(vGet).download(eq(vGetParser), any(AtomicBoolean.class), any(Runnable.class));
+        List<CompletableFuture<AsyncHttpService.DownloadedFile>> transfers = new ArrayList<>();
+        List<LongConsumer> progressions = new ArrayList<>();
+        when(asyncHttpService.download(anyString(), any(Path.class), anyLong(), any(LongConsumer.class))).then(i -> {
+            Files.createFile(i.getArgumentAt(1, Path.class));
+            progressions.add(i.getArgumentAt(3, LongConsumer.class));
+            CompletableFuture<AsyncHttpService.DownloadedFile> transfer = new CompletableFuture<>();
+            transfers.add(transfer);
+            return transfer;
+        });
+        doAnswer(i -> { i.getArgumentAt(0, Runnable.class).run(); return null; }).when(postProcessingExecutor).execute(any(Runnable.class));
+        when(downloadStateStore.findFileWithSameContent(item)).thenReturn(Option.none());
 
         /* When */
         youtubeDownloader.download();
+        progressions.get(1).accept(500L);
+        Integer progressionOfOneStream = item.getProgression();
+        transfers.get(0).complete(new AsyncHttpService.DownloadedFile(0L, "video-digest"));
+        transfers.get(1).complete(new AsyncHttpService.DownloadedFile(0L, "audio-digest"));
 
         /* Then */
+        assertThat(transfers).hasSize(2);
+        assertThat(progressionOfOneStream).isEqualTo(50);
+        InOrder order = inOrder(itemDownloadManager, ffmpegService);
+        order.verify(itemDownloadManager).startPostProcessing(eq(item));
+        order.verify(ffmpegService).mergeAudioAndVideo(any(), any(), any());
+        order.verify(itemDownloadManager).removeACurrentDownload(eq(item));
         assertThat(item.getStatus()).isEqualTo(Status.FINISH);
         assertThat(youtubeDownloader.target.toString()).isEqualTo("/tmp/A Fake Podcast/A_super_Name_of_Youtube-Video.mp4");
         assertThat(Files.exists(youtubeDownloader.target)).isTrue();
         assertThat(Files.exists(youtubeDownloader.target.resolveSibling("A_super_Name_of_Youtube-Video" + TEMPORARY_EXTENSION))).isFalse();
+        assertThat(item.getDigest()).isEqualTo(DigestUtils.sha256Hex("merged"));
+    }
+
+    @Test
+    public void should_retry_the_download_if_the_merge_fails() throws MalformedURLException {
+        /* Given */
+        youtubeDownloader.setItem(item.setStatus(Status.STARTED));
+        List<CompletableFuture<AsyncHttpService.DownloadedFile>> transfers = downloadTwoStreams();
+        when(ffmpegService.mergeAudioAndVideo(any(), any(), any())).thenThrow(new RuntimeException("ffmpeg error"));
+        when(itemDownloadManager.isInDownloadingQueue(eq(item))).thenReturn(true);
+        when(itemDownloadManager.canBeReset(eq(item))).thenReturn(true);
+
+        /* When */
+        youtubeDownloader.download();
+        transfers.forEach(t -> t.complete(new AsyncHttpService.DownloadedFile(0L, null)));
+
+        /* Then */
+        verify(itemDownloadManager, times(1)).startPostProcessing(eq(item));
+        verify(itemDownloadManager, times(1)).resetDownload(eq(item));
+        verify(itemDownloadManager, never()).removeACurrentDownload(eq(item));
+        assertThat(item.getStatus()).isEqualTo(Status.STARTED);
+    }
+
+    @Test
+    public void should_not_finish_a_download_stopped_during_the_merge() throws MalformedURLException {
+        /* Given */
+        youtubeDownloader.setItem(item.setStatus(Status.STARTED));
+        List<CompletableFuture<AsyncHttpService.DownloadedFile>> transfers = downloadTwoStreams();
+        when(ffmpegService.mergeAudioAndVideo(any(), any(), any())).then(i -> {
+            youtubeDownloader.stopDownload();
+            Try.of(() -> Files.createFile(i.getArgumentAt(2, Path.class)));
+            return i.getArgumentAt(2, Path.class);
+        });
+
+        /* When */
+        youtubeDownloader.download();
+        transfers.forEach(t -> t.complete(new AsyncHttpService.DownloadedFile(0L, null)));
+
+        /* Then */
+        assertThat(item.getStatus()).isEqualTo(Status.STOPPED);
+        assertThat(Paths.get("/tmp/A Fake Podcast/A_super_Name_of_Youtube-Video.mp4")).doesNotExist();
+    }
+
+    @Test
+    public void should_fail_the_download_if_the_end_of_the_streams_fails() throws MalformedURLException {
+        /* Given */
+        youtubeDownloader.setItem(item.setStatus(Status.STARTED));
+        List<CompletableFuture<AsyncHttpService.DownloadedFile>> transfers = downloadTwoStreams();
+        youtubeDownloader.download();
+        /* Without an audio stream, the merge can't be prepared */
+        videoInfo.getInfo().forEach(vi -> vi.setContentType("video/mp4"));
+
+        /* When */
+        transfers.forEach(t -> t.complete(new AsyncHttpService.DownloadedFile(0L, null)));
+
+        /* Then */
+        verify(postProcessingExecutor, atLeast(1)).execute(any(Runnable.class));
+        verify(itemDownloadManager, never()).startPostProcessing(eq(item));
+        assertThat(youtubeDownloader.isFailed()).isTrue();
+        assertThat(item.getStatus()).isEqualTo(Status.STOPPED);
+    }
+
+    private List<CompletableFuture<AsyncHttpService.DownloadedFile>> downloadTwoStreams() throws MalformedURLException {
+        when(wGetFactory.parser(eq(item.getUrl()))).thenReturn(vGetParser);
+        when(vGetParser.info(eq(new URL(item.getUrl())))).thenReturn(videoInfo);
+        when(wGetFactory.newVGet(eq(videoInfo))).thenReturn(vGet);
+        when(videoInfo.getTitle()).thenReturn("A super Name of Youtube-Video");
+        when(videoInfo.getInfo()).thenReturn(generate(2));
+        List<CompletableFuture<AsyncHttpService.DownloadedFile>> transfers = new ArrayList<>();
+        when(asyncHttpService.download(anyString(), any(Path.class), anyLong(), any(LongConsumer.class))).then(i -> {
+            Files.createFile(i.getArgumentAt(1, Path.class));
+            CompletableFuture<AsyncHttpService.DownloadedFile> transfer = new CompletableFuture<>();
+            transfers.add(transfer);
+            return transfer;
+        });
+        doAnswer(i -> { i.getArgumentAt(0, Runnable.class).run(); return null; }).when(postProcessingExecutor).execute(any(Runnable.class));
+        return transfers;
+    }
+
+    @Test
+    public void should_download_only_audio_stream_if_podcast_is_audio_only() throws MalformedURLException {
+        /* Given */
+        podcast.setAudioOnly(true);
+        youtubeDownloader.setItem(item.setStatus(Status.STARTED));
+
+        when(wGetFactory.parser(eq(item.getUrl()))).thenReturn(vGetParser);
+        when(vGetParser.info(eq(new URL(item.getUrl())))).thenReturn(videoInfo);
+        when(wGetFactory.newVGet(eq(videoInfo))).thenReturn(vGet);
+        when(videoInfo.getTitle()).thenReturn("A super Name of Youtube-Video");
+        List<VideoFileInfo> videoList = generate(2);
+        when(videoInfo.getInfo()).thenReturn(videoList);
+        doAnswer(simulateDownload(videoInfo, videoList)).when(vGet).download(eq(vGetParser), any(AtomicBoolean.class), any(Runnable.class));
+
+        /* When */
+        youtubeDownloader.download();
+
+        /* Then */
+        assertThat(videoList).hasSize(1);
+        assertThat(videoList.get(0).getContentType()).isEqualTo("audio/webm");
+        assertThat(item.getStatus()).isEqualTo(Status.FINISH);
+        assertThat(youtubeDownloader.target.toString()).isEqualTo("/tmp/A Fake Podcast/A_super_Name_of_Youtube-Video.webm");
+        assertThat(Files.exists(youtubeDownloader.target)).isTrue();
+        verify(asyncHttpService, never()).download(anyString(), any(Path.class), anyLong(), any(LongConsumer.class));
     }
 
     @Test(expected = RuntimeException.class)
@@ -201,8 +334,6 @@ public class YoutubeDownloaderTest {
 
         DownloadInfo info = mock(DownloadInfo.class);
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
         when(wGetFactory.parser(eq(item.getUrl()))).thenReturn(vGetParser);
         when(vGetParser.info(eq(new URL(item.getUrl())))).thenReturn(videoInfo);
         when(wGetFactory.newVGet(eq(videoInfo))).thenReturn(vGet);
@@ -223,9 +354,8 @@ public class YoutubeDownloaderTest {
     public void should_handle_error_during_merging_of_video_and_audio() throws MalformedURLException {
         /* Given */
         youtubeDownloader.setItem(item.setStatus(Status.STARTED));
+        podcast.setTitle("bin");
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast.setTitle("bin"));
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
         when(podcastServerParameters.getRootfolder()).thenReturn(Paths.get("/"));
         when(wGetFactory.parser(eq(item.getUrl()))).thenReturn(vGetParser);
         when(vGetParser.info(eq(new URL(item.getUrl())))).thenReturn(videoInfo);
@@ -247,8 +377,6 @@ public class YoutubeDownloaderTest {
         /* Given */
         youtubeDownloader.setItem(item.setStatus(Status.STARTED));
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
         when(wGetFactory.parser(eq(item.getUrl()))).thenReturn(vGetParser);
         when(vGetParser.info(eq(new URL(item.getUrl())))).thenReturn(videoInfo);
         when(wGetFactory.newVGet(eq(videoInfo))).thenReturn(vGet);
@@ -288,6 +416,7 @@ public class YoutubeDownloaderTest {
         /* Given */
         youtubeDownloader.setItem(item.setStatus(Status.STARTED));
 
+        when(itemDownloadManager.isInDownloadingQueue(eq(item))).thenReturn(true);
         when(itemDownloadManager.canBeReset(eq(item))).thenReturn(true);
         when(wGetFactory.parser(eq(item.getUrl()))).thenReturn(vGetParser);
         when(vGetParser.info(eq(new URL(item.getUrl())))).thenReturn(videoInfo);
@@ -307,8 +436,6 @@ public class YoutubeDownloaderTest {
         /* Given */
         youtubeDownloader.setItem(item.setStatus(Status.STARTED));
 
-        when(podcastRepository.findOne(eq(podcast.getId()))).thenReturn(podcast);
-        when(itemRepository.save(any(Item.class))).then(i -> i.getArguments()[0]);
         when(itemDownloadManager.canBeReset(eq(item))).thenReturn(false);
         when(wGetFactory.parser(eq(item.getUrl()))).thenReturn(vGetParser);
         when(vGetParser.info(eq(new URL(item.getUrl())))).thenReturn(videoInfo);
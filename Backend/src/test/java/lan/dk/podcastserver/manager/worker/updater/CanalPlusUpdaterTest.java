@@ -33,6 +33,8 @@ import static org.mockito.Mockito.*;
 @RunWith(MockitoJUnitRunner.class)
 public class CanalPlusUpdaterTest {
 
+    private static final String FRONT_TOOLS_IDS = String.join("\n", "1351482", "1351047", "1350642", "1350194", "1349772", "1348993", "1348841", "1348490", "1348127", "1347728", "1347250", "1345867", "1345857", "1345804", "1345586", "1344688");
+
     @Mock PodcastServerParameters podcastServerParameters;
     @Mock SignatureService signatureService;
     @Mock Validator validator;
@@ -57,55 +59,57 @@ public class CanalPlusUpdaterTest {
     @Test
     public void should_sign_with_podcast_as_front_tools() throws URISyntaxException, IOException {
         /* Given */
-        podcast.setUrl("http://a.fake.url/front_tools/foo.html");
-        when(signatureService.generateSignatureFromURL(anyString())).thenReturn("aSignature");
+        podcast.setUrl("http://www.canalplus.fr/lib/front_tools/ajax/wwwplus_live_onglet.php?pid=6515&ztid=6112&nbPlusVideos0=1");
+        when(htmlService.get(eq(podcast.getUrl()))).then(i -> IOUtils.fileAsHtml("/remote/podcast/canalplus/lepetitjournal.front_tools.html"));
+        when(signatureService.generateMD5Signature(anyString())).thenReturn("aSignature");
 
         /* When */
         String signature = canalPlusUpdater.signatureOf(podcast);
 
         /* Then */
         assertThat(signature).isEqualTo("aSignature");
-        verify(signatureService, only()).generateSignatureFromURL(eq(podcast.getUrl()));
+        verify(signatureService, only()).generateMD5Signature(eq(FRONT_TOOLS_IDS));
     }
 
     @Test
     public void should_sign_the_podcast() throws URISyntaxException, IOException {
         /* Given */
         when(htmlService.get(eq(podcast.getUrl()))).thenReturn(IOUtils.fileAsHtml("/remote/podcast/canalplus/lepetitjournal.html"));
-        when(signatureService.generateSignatureFromURL(anyString())).thenReturn("aSignature");
+        when(htmlService.get(eq("http://www.canalplus.fr/lib/front_tools/ajax/wwwplus_live_onglet.php?pid=6515&ztid=6112&nbPlusVideos0=1"))).then(i -> IOUtils.fileAsHtml("/remote/podcast/canalplus/lepetitjournal.front_tools.html"));
+        when(signatureService.generateMD5Signature(anyString())).thenReturn("aSignature");
 
         /* When */
         String signature = canalPlusUpdater.signatureOf(podcast);
 
         /* Then */
         assertThat(signature).isEqualTo("aSignature");
-        verify(signatureService, only()).generateSignatureFromURL(eq("http://www.canalplus.fr/lib/front_tools/ajax/wwwplus_live_onglet.php?pid=6515&ztid=6112&nbPlusVideos0=1"));
+        verify(signatureService, only()).generateMD5Signature(eq(FRONT_TOOLS_IDS));
     }
 
     @Test
     public void should_reject_signature_with_empty() throws URISyntaxException, IOException {
         /* Given */
         when(htmlService.get(eq(podcast.getUrl()))).thenReturn(Option.none());
-        when(signatureService.generateSignatureFromURL(eq(""))).thenReturn("aSignature");
 
         /* When */
         String signature = canalPlusUpdater.signatureOf(podcast);
 
         /* Then */
-        assertThat(signature).isEqualTo("aSignature");
+        assertThat(signature).isEmpty();
+        verify(signatureService, never()).generateMD5Signature(anyString());
     }
 
     @Test
     public void should_not_find_front_tools_elements_in_page() throws URISyntaxException, IOException {
         /* Given */
         when(htmlService.get(eq(podcast.getUrl()))).thenReturn(IOUtils.fileAsHtml("/remote/podcast/canalplus/lepetitjournal_without_loadVideoHistory.html"));
-        when(signatureService.generateSignatureFromURL(eq(""))).thenReturn("aSignature");
 
         /* When */
         String signature = canalPlusUpdater.signatureOf(podcast);
 
         /* Then */
-        assertThat(signature).isEqualTo("aSignature");
+        assertThat(signature).isEmpty();
+        verify(signatureService, never()).generateMD5Signature(anyString());
     }
 
     @Test
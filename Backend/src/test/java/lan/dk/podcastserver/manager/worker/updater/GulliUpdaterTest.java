@@ -10,6 +10,7 @@ import lan.dk.podcastserver.service.ImageService;
 import lan.dk.podcastserver.service.SignatureService;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lan.dk.utils.IOUtils;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -55,13 +56,13 @@ public class GulliUpdaterTest {
     public void should_get_signature() throws IOException, URISyntaxException {
         /* Given */
         when(htmlService.get(podcast.getUrl())).thenReturn(IOUtils.fileAsHtml("/remote/podcast/gulli/pokemon.html"));
-        when(signatureService.generateMD5Signature(anyString())).thenCallRealMethod();
+        when(signatureService.generateMD5Signature(anyString())).then(i -> DigestUtils.md5Hex(i.getArgumentAt(0, String.class)));
 
         /* When */
         String signature = gulliUpdater.signatureOf(podcast);
 
         /* Then */
-        assertThat(signature).isEqualTo("4d0bb11a29d851eabf10245b00d4cabe");
+        assertThat(signature).isEqualTo("2e014d511891e6d63ab06356b23bf6b0");
     }
 
     @Test
@@ -22,6 +22,7 @@ import java.util.UUID;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -55,6 +56,7 @@ public class PluzzUpdaterTest {
         assertThat(signature)
                 .isNotEmpty()
                 .isEqualTo("1234567889azerty");
+        verify(signatureService).generateMD5Signature(eq("129003962\n129003961\n129003924\n129003923\n129003887"));
     }
 
     @Test
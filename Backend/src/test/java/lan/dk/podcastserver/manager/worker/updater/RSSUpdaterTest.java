@@ -1,13 +1,11 @@
 package lan.dk.podcastserver.manager.worker.updater;
 
-import javaslang.control.Option;
+import com.google.common.collect.Sets;
 import lan.dk.podcastserver.entity.Item;
 import lan.dk.podcastserver.entity.Podcast;
 import lan.dk.podcastserver.service.ImageService;
 import lan.dk.podcastserver.service.JdomService;
 import lan.dk.podcastserver.service.SignatureService;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -15,12 +13,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
-import java.io.IOException;
-import java.net.URISyntaxException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.Set;
 
+import static lan.dk.utils.IOUtils.fileAsXmlElements;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.AdditionalMatchers.not;
 import static org.mockito.Mockito.*;
@@ -41,22 +36,40 @@ public class RSSUpdaterTest {
     @InjectMocks RSSUpdater rssUpdater;
 
     @Before
-    public void beforeEach() throws JDOMException, IOException, URISyntaxException {
+    public void beforeEach() {
         rssAppload = Podcast.builder().url(MOCK_URL).build();
-        Path xmlFile = Paths.get(RSSUpdaterTest.class.getResource(PODCAST_APPLOAD_URL).toURI());
 
-        when(jdomService.parse(eq(MOCK_URL))).thenReturn(Option.of(new SAXBuilder().build(xmlFile.toFile())));
-        when(jdomService.parse(not(eq(MOCK_URL)))).thenReturn(Option.none());
+        when(jdomService.parseEach(eq(MOCK_URL), anyString(), any())).then(fileAsXmlElements(PODCAST_APPLOAD_URL));
+        when(jdomService.parseEach(not(eq(MOCK_URL)), anyString(), any())).thenReturn(false);
     }
 
     @Test
-    public void should_get_items() throws JDOMException, IOException {
+    public void should_get_items() {
         /* When */ Set<Item> items = rssUpdater.getItems(rssAppload);
         /* Then */
-        verify(jdomService, times(1)).parse(eq(MOCK_URL));
+        verify(jdomService, times(1)).parseEach(eq(MOCK_URL), eq("item"), any());
         assertThat(items).hasSize(217);
     }
 
+    @Test
+    public void should_stop_at_items_already_in_podcast() {
+        /* Given */
+        Podcast podcast = Podcast.builder()
+                .url(MOCK_URL)
+                .items(Sets.newHashSet(
+                        Item.builder().url("http://www.podtrac.com/pts/redirect.mp3/frenchspin.com/sites/appload/audio/appload_213.mp3").build(),
+                        Item.builder().url("http://www.podtrac.com/pts/redirect.mp3/frenchspin.com/sites/appload/audio/appload_212.mp3").build()
+                ))
+                .build();
+
+        /* When */
+        Set<Item> items = rssUpdater.getItems(podcast);
+
+        /* Then */
+        assertThat(items).hasSize(4);
+        assertThat(items.stream().filter(i -> !podcast.contains(i)).count()).isEqualTo(2L);
+    }
+
     @Test
     public void should_return_null_if_not_updatable_podcast() {
         /* Given */ Podcast podcastNotUpdatable = new Podcast().setUrl("http://notUpdatable.com");
@@ -12,6 +12,7 @@ import lan.dk.utils.IOUtils;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
@@ -25,6 +26,7 @@ import java.util.Optional;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
@@ -49,7 +51,7 @@ public class TF1ReplayUpdaterTest {
         Podcast podcast = Podcast.builder().url("http://www.tf1.fr/tf1/19h-live/videos").build();
         when(jsonService.parseUrl(eq("http://www.tf1.fr/ajax/tf1/19h-live/videos?filter=replay"))).then(i -> IOUtils.fileAsJson("/remote/podcast/tf1replay/19h-live.ajax.replay.json"));
         when(htmlService.parse(anyString())).then(i -> parseHtml(i.getArgumentAt(0, String.class)));
-        when(signatureService.generateMD5Signature(anyString())).then(i -> digest(i.getArgumentAt(0, String.class)));
+        when(signatureService.generateMD5Signature(any(Elements.class))).then(i -> digest(i.getArgumentAt(0, Elements.class).html()));
 
         /* When */
         String signature = updater.signatureOf(podcast);
@@ -65,7 +67,7 @@ public class TF1ReplayUpdaterTest {
         when(jsonService.parseUrl(eq("http://www.tf1.fr/ajax/xtra/olive-et-tom/videos?filter=replay"))).then(i -> IOUtils.fileAsJson("/remote/podcast/tf1replay/olive-et-tom.ajax.replay.json"));
         when(jsonService.parseUrl(eq("http://www.tf1.fr/ajax/xtra/olive-et-tom/videos?filter=all"))).then(i -> IOUtils.fileAsJson("/remote/podcast/tf1replay/olive-et-tom.ajax.json"));
         when(htmlService.parse(anyString())).then(i -> parseHtml(i.getArgumentAt(0, String.class)));
-        when(signatureService.generateMD5Signature(anyString())).then(i -> digest(i.getArgumentAt(0, String.class)));
+        when(signatureService.generateMD5Signature(any(Elements.class))).then(i -> digest(i.getArgumentAt(0, Elements.class).html()));
 
         /* When */
         String signature = updater.signatureOf(podcast);
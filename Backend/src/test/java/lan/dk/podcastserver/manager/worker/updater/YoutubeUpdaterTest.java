@@ -13,6 +13,7 @@ import lan.dk.podcastserver.service.HtmlService;
 import lan.dk.podcastserver.service.JdomService;
 import lan.dk.podcastserver.service.JsonService;
 import lan.dk.podcastserver.service.SignatureService;
+import lan.dk.podcastserver.service.UpdateCycleCache;
 import lan.dk.podcastserver.service.properties.Api;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lan.dk.utils.IOUtils;
@@ -22,6 +23,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import javax.validation.Validator;
@@ -31,7 +33,7 @@ import java.util.List;
 import java.util.Set;
 
 import static java.util.stream.Collectors.toSet;
-import static lan.dk.utils.IOUtils.fileAsXml;
+import static lan.dk.utils.IOUtils.fileAsXmlElements;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.AdditionalMatchers.and;
 import static org.mockito.AdditionalMatchers.not;
@@ -55,6 +57,7 @@ public class YoutubeUpdaterTest {
     @Mock JdomService jdomService;
     @Mock JsonService jsonService;
     @Mock HtmlService htmlService;
+    @Spy UpdateCycleCache updateCycleCache = new UpdateCycleCache();
     @InjectMocks YoutubeUpdater youtubeUpdater;
 
     @Before
@@ -80,14 +83,14 @@ public class YoutubeUpdaterTest {
                 .url("https://www.youtube.com/user/androiddevelopers")
                 .build();
         when(htmlService.get(anyString())).thenReturn(IOUtils.fileAsHtml("/remote/podcast/youtube/androiddevelopers.html"));
-        when(jdomService.parse(anyString())).then(i -> fileAsXml("/remote/podcast/youtube.androiddevelopers.xml"));
+        when(jdomService.parseEach(anyString(), anyString(), any())).then(fileAsXmlElements("/remote/podcast/youtube.androiddevelopers.xml"));
 
         /* When */
         Set<Item> items = youtubeUpdater.getItems(podcast);
 
         /* Then */
         assertThat(items).hasSize(15);
-        verify(jdomService, only()).parse(eq("https://www.youtube.com/feeds/videos.xml?channel_id=UCVHFbqXqoYvEWM1Ddxl0QDg"));
+        verify(jdomService, only()).parseEach(eq("https://www.youtube.com/feeds/videos.xml?channel_id=UCVHFbqXqoYvEWM1Ddxl0QDg"), eq("entry"), any());
         verify(htmlService, only()).get(eq("https://www.youtube.com/user/androiddevelopers"));
     }
 
@@ -99,14 +102,14 @@ public class YoutubeUpdaterTest {
                 .url("https://www.youtube.com/playlist?list=PLAD454F0807B6CB80")
                 .build();
 
-        when(jdomService.parse(anyString())).thenReturn(fileAsXml("/remote/podcast/youtube/joueurdugrenier.playlist.xml"));
+        when(jdomService.parseEach(anyString(), anyString(), any())).then(fileAsXmlElements("/remote/podcast/youtube/joueurdugrenier.playlist.xml"));
 
         /* When */
         Set<Item> items = youtubeUpdater.getItems(podcast);
 
         /* Then */
         assertThat(items).hasSize(15);
-        verify(jdomService, only()).parse(eq("https://www.youtube.com/feeds/videos.xml?playlist_id=PLAD454F0807B6CB80"));
+        verify(jdomService, only()).parseEach(eq("https://www.youtube.com/feeds/videos.xml?playlist_id=PLAD454F0807B6CB80"), eq("entry"), any());
     }
 
     @Test
@@ -117,7 +120,7 @@ public class YoutubeUpdaterTest {
                 .build();
 
         when(htmlService.get(any(String.class))).thenReturn(IOUtils.fileAsHtml("/remote/podcast/youtube/androiddevelopers.html"));
-        when(jdomService.parse(anyString())).thenReturn(fileAsXml("/remote/podcast/youtube.androiddevelopers.xml"));
+        when(jdomService.parseEach(anyString(), anyString(), any())).then(fileAsXmlElements("/remote/podcast/youtube.androiddevelopers.xml"));
         when(signatureService.generateMD5Signature(anyString())).thenReturn("Signature");
 
         /* When */
@@ -125,10 +128,33 @@ public class YoutubeUpdaterTest {
 
         /* Then */
         assertThat(signature).isEqualTo("Signature");
-        verify(jdomService, only()).parse(eq("https://www.youtube.com/feeds/videos.xml?channel_id=UCVHFbqXqoYvEWM1Ddxl0QDg"));
+        verify(jdomService, only()).parseEach(eq("https://www.youtube.com/feeds/videos.xml?channel_id=UCVHFbqXqoYvEWM1Ddxl0QDg"), eq("entry"), any());
         verify(htmlService, only()).get(eq("https://www.youtube.com/user/androiddevelopers"));
     }
 
+    @Test
+    public void should_fetch_the_feed_once_for_the_signature_and_the_items() throws IOException, URISyntaxException {
+        /* Given */
+        Podcast podcast = Podcast.builder()
+                .url("https://www.youtube.com/user/androiddevelopers")
+                .build();
+
+        when(htmlService.get(any(String.class))).thenReturn(IOUtils.fileAsHtml("/remote/podcast/youtube/androiddevelopers.html"));
+        when(jdomService.parseEach(anyString(), anyString(), any())).then(fileAsXmlElements("/remote/podcast/youtube.androiddevelopers.xml"));
+        when(signatureService.generateMD5Signature(anyString())).thenReturn("Signature");
+        updateCycleCache.open();
+
+        /* When */
+        String signature = youtubeUpdater.signatureOf(podcast);
+        Set<Item> items = youtubeUpdater.getItems(podcast);
+        updateCycleCache.close();
+
+        /* Then */
+        assertThat(signature).isEqualTo("Signature");
+        assertThat(items).hasSize(15);
+        verify(jdomService, times(1)).parseEach(eq("https://www.youtube.com/feeds/videos.xml?channel_id=UCVHFbqXqoYvEWM1Ddxl0QDg"), eq("entry"), any());
+    }
+
     @Test
     public void should_handle_error_during_signature() throws IOException, JDOMException, URISyntaxException {
         Podcast podcast = Podcast.builder()
@@ -136,7 +162,7 @@ public class YoutubeUpdaterTest {
                 .build();
 
         when(htmlService.get(any(String.class))).thenReturn(IOUtils.fileAsHtml("/remote/podcast/youtube/androiddevelopers.html"));
-        when(jdomService.parse(anyString())).thenReturn(Option.none());
+        when(jdomService.parseEach(anyString(), anyString(), any())).thenReturn(false);
 
 
         /* When */
@@ -154,7 +180,7 @@ public class YoutubeUpdaterTest {
                 .build();
 
         when(htmlService.get(anyString())).thenReturn(Option.none());
-        when(jdomService.parse(anyString())).thenReturn(Option.none());
+        when(jdomService.parseEach(anyString(), anyString(), any())).thenReturn(false);
 
         /* When */
         Set<Item> items = youtubeUpdater.getItems(podcast);
@@ -171,7 +197,7 @@ public class YoutubeUpdaterTest {
                 .build();
 
         when(htmlService.get(any(String.class))).thenReturn(Option.none());
-        when(jdomService.parse(eq("https://www.youtube.com/feeds/videos.xml?channel_id="))).thenReturn(Option.none());
+        when(jdomService.parseEach(eq("https://www.youtube.com/feeds/videos.xml?channel_id="), anyString(), any())).thenReturn(false);
 
         /* When */
         Set<Item> items = youtubeUpdater.getItems(podcast);
@@ -188,14 +214,14 @@ public class YoutubeUpdaterTest {
                 .build();
 
         when(htmlService.get(any(String.class))).thenReturn(Option.none());
-        when(jdomService.parse(eq("https://www.youtube.com/feeds/videos.xml?channel_id="))).thenReturn(Option.none());
+        when(jdomService.parseEach(eq("https://www.youtube.com/feeds/videos.xml?channel_id="), anyString(), any())).thenReturn(false);
 
         /* When */
         Set<Item> items = youtubeUpdater.getItems(podcast);
 
         /* Then */
         assertThat(items).hasSize(0);
-        verify(jdomService, only()).parse(eq("https://www.youtube.com/feeds/videos.xml?channel_id="));
+        verify(jdomService, only()).parseEach(eq("https://www.youtube.com/feeds/videos.xml?channel_id="), eq("entry"), any());
         verify(htmlService, only()).get(eq("https://www.youtube.com/user/androiddevelopers"));
     }
 
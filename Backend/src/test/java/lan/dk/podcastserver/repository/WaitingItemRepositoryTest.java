@@ -0,0 +1,169 @@
+package lan.dk.podcastserver.repository;
+
+import com.ninja_squad.dbsetup.DbSetup;
+import com.ninja_squad.dbsetup.DbSetupTracker;
+import com.ninja_squad.dbsetup.destination.DataSourceDestination;
+import com.ninja_squad.dbsetup.operation.Operation;
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.entity.Status;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static com.ninja_squad.dbsetup.Operations.insertInto;
+import static com.ninja_squad.dbsetup.operation.CompositeOperation.sequenceOf;
+import static java.time.ZonedDateTime.now;
+import static lan.dk.podcastserver.repository.DatabaseConfigurationTest.DELETE_ALL;
+import static lan.dk.podcastserver.repository.DatabaseConfigurationTest.formatter;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created by kevin on 18/10/2016 for Podcast Server
+ */
+@DataJpaTest
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {DatabaseConfigurationTest.class})
+public class WaitingItemRepositoryTest {
+
+    private static final UUID PODCAST_ID = UUID.fromString("e9c89e7f-7a8a-43ad-8425-ba2dbad2c561");
+    private static final UUID ITEM_1 = UUID.fromString("e3d41c71-37fb-4c23-a207-5fb362fa15bb");
+    private static final UUID ITEM_2 = UUID.fromString("817a4626-6fd2-457e-8d27-69ea5acdc828");
+    private static final UUID ITEM_3 = UUID.fromString("43fb990f-0b5e-413f-920c-6de217f9ecdd");
+
+    @Autowired DataSource dataSource;
+    @Autowired WaitingItemRepository waitingItemRepository;
+
+    private final static DbSetupTracker dbSetupTracker = new DbSetupTracker();
+    public static final Operation INSERT_ITEM_DATA = sequenceOf(
+            insertInto("PODCAST")
+                    .columns("ID", "TITLE", "URL", "TYPE", "HAS_TO_BE_DELETED")
+                    .values(PODCAST_ID, "AppLoad", null, "RSS", false)
+                    .build(),
+            insertInto("ITEM")
+                    .columns("ID", "TITLE", "URL", "PODCAST_ID", "STATUS", "PUB_DATE")
+                    .values(ITEM_1, "Appload 1", "http://fakeurl.com/appload.1.mp3", PODCAST_ID, Status.NOT_DOWNLOADED, now().minusDays(2).format(formatter))
+                    .values(ITEM_2, "Appload 2", "http://fakeurl.com/appload.2.mp3", PODCAST_ID, Status.NOT_DOWNLOADED, now().minusDays(1).format(formatter))
+                    .values(ITEM_3, "Appload 3", "http://fakeurl.com/appload.3.mp3", PODCAST_ID, Status.NOT_DOWNLOADED, now().format(formatter))
+                    .build()
+    );
+
+    @Before
+    public void prepare() throws Exception {
+        Operation operation = sequenceOf(DELETE_ALL, INSERT_ITEM_DATA);
+        DbSetup dbSetup = new DbSetup(new DataSourceDestination(dataSource), operation);
+
+        dbSetupTracker.launchIfNecessary(dbSetup);
+    }
+
+    @Test
+    public void should_find_items_in_the_order_of_the_queue() {
+        /* Given */
+        waitingItemRepository.enqueue(Arrays.asList(ITEM_2, ITEM_3, ITEM_1));
+
+        /* When */
+        List<Item> items = waitingItemRepository.findAllItemsInOrder();
+
+        /* Then */
+        assertThat(items).extracting(Item::getId).containsExactly(ITEM_2, ITEM_3, ITEM_1);
+    }
+
+    @Test
+    public void should_enqueue_after_the_last_item() {
+        /* Given */
+        waitingItemRepository.enqueue(Collections.singletonList(ITEM_1));
+
+        /* When */
+        waitingItemRepository.enqueue(Arrays.asList(ITEM_2, ITEM_3));
+
+        /* Then */
+        assertThat(waitingItemRepository.positionOf(ITEM_1)).isEqualTo(1024D);
+        assertThat(waitingItemRepository.positionOf(ITEM_2)).isEqualTo(2048D);
+        assertThat(waitingItemRepository.positionOf(ITEM_3)).isEqualTo(3072D);
+        assertThat(waitingItemRepository.findAllItemsInOrder()).extracting(Item::getId).containsExactly(ITEM_1, ITEM_2, ITEM_3);
+    }
+
+    @Test
+    public void should_move_an_item_between_two_others() {
+        /* Given */
+        waitingItemRepository.enqueue(Arrays.asList(ITEM_1, ITEM_2, ITEM_3));
+
+        /* When */
+        waitingItemRepository.move(ITEM_3, ITEM_1, ITEM_2, Arrays.asList(ITEM_1, ITEM_3, ITEM_2));
+
+        /* Then */
+        assertThat(waitingItemRepository.positionOf(ITEM_1)).isEqualTo(1024D);
+        assertThat(waitingItemRepository.positionOf(ITEM_3)).isEqualTo(1536D);
+        assertThat(waitingItemRepository.positionOf(ITEM_2)).isEqualTo(2048D);
+        assertThat(waitingItemRepository.findAllItemsInOrder()).extracting(Item::getId).containsExactly(ITEM_1, ITEM_3, ITEM_2);
+    }
+
+    @Test
+    public void should_move_an_item_at_the_head_of_the_queue() {
+        /* Given */
+        waitingItemRepository.enqueue(Arrays.asList(ITEM_1, ITEM_2, ITEM_3));
+
+        /* When */
+        waitingItemRepository.move(ITEM_3, null, ITEM_1, Arrays.asList(ITEM_3, ITEM_1, ITEM_2));
+
+        /* Then */
+        assertThat(waitingItemRepository.positionOf(ITEM_3)).isEqualTo(0D);
+        assertThat(waitingItemRepository.findAllItemsInOrder()).extracting(Item::getId).containsExactly(ITEM_3, ITEM_1, ITEM_2);
+    }
+
+    @Test
+    public void should_move_an_item_at_the_tail_of_the_queue() {
+        /* Given */
+        waitingItemRepository.enqueue(Arrays.asList(ITEM_1, ITEM_2, ITEM_3));
+
+        /* When */
+        waitingItemRepository.move(ITEM_1, ITEM_3, null, Arrays.asList(ITEM_2, ITEM_3, ITEM_1));
+
+        /* Then */
+        assertThat(waitingItemRepository.positionOf(ITEM_1)).isEqualTo(4096D);
+        assertThat(waitingItemRepository.findAllItemsInOrder()).extracting(Item::getId).containsExactly(ITEM_2, ITEM_3, ITEM_1);
+    }
+
+    @Test
+    public void should_renumber_the_queue_once_the_gap_is_exhausted() throws Exception {
+        /* Given */
+        new DbSetup(new DataSourceDestination(dataSource), insertInto("WAITING_ITEM")
+                .columns("ID", "QUEUE_POSITION")
+                .values(ITEM_1, 1D)
+                .values(ITEM_2, Math.nextUp(1D))
+                .values(ITEM_3, 2D)
+                .build()
+        ).launch();
+
+        /* When */
+        waitingItemRepository.move(ITEM_3, ITEM_1, ITEM_2, Arrays.asList(ITEM_1, ITEM_3, ITEM_2));
+
+        /* Then */
+        assertThat(waitingItemRepository.positionOf(ITEM_1)).isEqualTo(1024D);
+        assertThat(waitingItemRepository.positionOf(ITEM_3)).isEqualTo(2048D);
+        assertThat(waitingItemRepository.positionOf(ITEM_2)).isEqualTo(3072D);
+        assertThat(waitingItemRepository.findAllItemsInOrder()).extracting(Item::getId).containsExactly(ITEM_1, ITEM_3, ITEM_2);
+    }
+
+    @Test
+    public void should_remove_an_item_of_the_queue() {
+        /* Given */
+        waitingItemRepository.enqueue(Arrays.asList(ITEM_1, ITEM_2));
+
+        /* When */
+        waitingItemRepository.remove(ITEM_1);
+        waitingItemRepository.remove(ITEM_3);
+
+        /* Then */
+        assertThat(waitingItemRepository.findAllItemsInOrder()).extracting(Item::getId).containsExactly(ITEM_2);
+    }
+}
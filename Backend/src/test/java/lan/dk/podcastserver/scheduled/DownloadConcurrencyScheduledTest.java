@@ -0,0 +1,166 @@
+package lan.dk.podcastserver.scheduled;
+
+import javaslang.collection.HashMap;
+import javaslang.collection.Queue;
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.manager.DownloadMetrics;
+import lan.dk.podcastserver.manager.ItemDownloadManager;
+import lan.dk.podcastserver.manager.worker.downloader.Downloader;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.UUID;
+
+import static lan.dk.podcastserver.scheduled.DownloadConcurrencyScheduled.HOLD_TICKS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DownloadConcurrencyScheduledTest {
+
+    @Mock ItemDownloadManager IDM;
+    @Mock DownloadMetrics downloadMetrics;
+    @Mock PodcastServerParameters podcastServerParameters;
+    @InjectMocks DownloadConcurrencyScheduled downloadConcurrencyScheduled;
+
+    @Before
+    public void beforeEach() {
+        when(podcastServerParameters.getAdaptiveConcurrentDownload()).thenReturn(true);
+        when(podcastServerParameters.getMinConcurrentDownload()).thenReturn(1);
+        when(podcastServerParameters.getMaxConcurrentDownload()).thenReturn(8);
+        when(IDM.getWaitingQueue()).thenReturn(Queue.of(Item.builder().id(UUID.randomUUID()).build()));
+        when(IDM.getDownloadingQueue()).thenReturn(HashMap.empty());
+    }
+
+    @Test
+    public void should_do_nothing_if_disabled() {
+        /* Given */
+        when(podcastServerParameters.getAdaptiveConcurrentDownload()).thenReturn(false);
+
+        /* When */
+        downloadConcurrencyScheduled.adjustConcurrency();
+        downloadConcurrencyScheduled.adjustConcurrency();
+
+        /* Then */
+        verifyZeroInteractions(IDM, downloadMetrics);
+    }
+
+    @Test
+    public void should_add_a_slot_while_saturated_and_throughput_grows() {
+        /* Given */
+        limitIs(3);
+        when(IDM.getNumberOfCurrentDownload()).thenReturn(3);
+
+        /* When */
+        downloadConcurrencyScheduled.adjust(1000L, 0L);
+
+        /* Then */
+        verify(IDM, times(1)).setLimitParallelDownload(4);
+    }
+
+    @Test
+    public void should_not_add_a_slot_if_not_saturated() {
+        /* Given */
+        limitIs(3);
+        when(IDM.getNumberOfCurrentDownload()).thenReturn(2);
+
+        /* When */
+        downloadConcurrencyScheduled.adjust(1000L, 0L);
+
+        /* Then */
+        verify(IDM, never()).setLimitParallelDownload(anyInt());
+    }
+
+    @Test
+    public void should_remove_the_last_slot_if_throughput_plateaus() {
+        /* Given */
+        when(IDM.getNumberOfCurrentDownload()).thenReturn(3, 4);
+        limitIs(3);
+        downloadConcurrencyScheduled.adjust(1000L, 0L);
+        limitIs(4);
+
+        /* When */
+        downloadConcurrencyScheduled.adjust(1020L, 0L);
+
+        /* Then */
+        verify(IDM, times(1)).setLimitParallelDownload(4);
+        verify(IDM, times(1)).setLimitParallelDownload(3);
+    }
+
+    @Test
+    public void should_halve_slots_on_failures_and_hold() {
+        /* Given */
+        limitIs(8);
+        when(IDM.getNumberOfCurrentDownload()).thenReturn(8, 4);
+        downloadConcurrencyScheduled.adjust(1000L, 2L);
+        limitIs(4);
+
+        /* When */
+        for (int i = 0; i < HOLD_TICKS; i++) {
+            downloadConcurrencyScheduled.adjust(1000L, 0L);
+        }
+
+        /* Then */
+        verify(IDM, times(1)).setLimitParallelDownload(4);
+        verify(IDM, never()).setLimitParallelDownload(5);
+    }
+
+    @Test
+    public void should_stay_in_operator_bounds() {
+        /* Given */
+        limitIs(1);
+        when(podcastServerParameters.getMaxConcurrentDownload()).thenReturn(1);
+        when(IDM.getNumberOfCurrentDownload()).thenReturn(1);
+
+        /* When */
+        downloadConcurrencyScheduled.adjust(1000L, 0L);
+        downloadConcurrencyScheduled.adjust(1000L, 3L);
+
+        /* Then */
+        verify(IDM, never()).setLimitParallelDownload(anyInt());
+    }
+
+    @Test
+    public void should_measure_throughput_between_ticks() throws InterruptedException {
+        /* Given */
+        limitIs(3);
+        when(IDM.getNumberOfCurrentDownload()).thenReturn(3);
+
+        /* When */
+        downloadConcurrencyScheduled.adjustConcurrency();
+        Thread.sleep(5);
+        downloadConcurrencyScheduled.adjustConcurrency();
+
+        /* Then */
+        verify(downloadMetrics, times(2)).getNumberOfFailures();
+        verify(IDM, times(1)).setLimitParallelDownload(4);
+    }
+
+    @Test
+    public void should_keep_slots_when_a_download_is_stopped_by_the_user() throws InterruptedException {
+        /* Given */
+        DownloadMetrics metrics = new DownloadMetrics();
+        DownloadConcurrencyScheduled scheduled = new DownloadConcurrencyScheduled(IDM, metrics, podcastServerParameters);
+        limitIs(4);
+        when(IDM.getNumberOfCurrentDownload()).thenReturn(2);
+        scheduled.adjustConcurrency();
+
+        /* When */
+        metrics.finished(mock(Downloader.class), "", true, false);
+        Thread.sleep(5);
+        scheduled.adjustConcurrency();
+
+        /* Then */
+        assertThat(metrics.getNumberOfFailures()).isEqualTo(0L);
+        verify(IDM, never()).setLimitParallelDownload(anyInt());
+    }
+
+    private void limitIs(int limit) {
+        when(IDM.getLimitParallelDownload()).thenReturn(limit);
+    }
+}
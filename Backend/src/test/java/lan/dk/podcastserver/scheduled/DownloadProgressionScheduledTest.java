@@ -0,0 +1,80 @@
+package lan.dk.podcastserver.scheduled;
+
+import javaslang.collection.HashMap;
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.manager.ItemDownloadManager;
+import lan.dk.podcastserver.manager.worker.downloader.Downloader;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static lan.dk.podcastserver.scheduled.DownloadProgressionScheduled.Progression;
+import static lan.dk.podcastserver.scheduled.DownloadProgressionScheduled.WS_TOPIC_PROGRESSION;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DownloadProgressionScheduledTest {
+
+    @Mock ItemDownloadManager IDM;
+    @Mock SimpMessagingTemplate template;
+    @Mock Downloader downloader;
+    @InjectMocks DownloadProgressionScheduled downloadProgressionScheduled;
+
+    @Test
+    public void should_not_broadcast_if_no_download() {
+        /* Given */
+        when(IDM.getDownloadingQueue()).thenReturn(HashMap.empty());
+
+        /* When */
+        downloadProgressionScheduled.broadcastProgression();
+
+        /* Then */
+        verify(template, never()).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_broadcast_progression_of_downloads_in_one_message() {
+        /* Given */
+        Item item = Item.builder().id(UUID.randomUUID()).progression(25).build();
+        when(downloader.getItem()).thenReturn(item);
+        when(downloader.getDownloadedBytes()).thenReturn(1000L);
+        when(IDM.getDownloadingQueue()).thenReturn(HashMap.of(item, downloader));
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+
+        /* When */
+        downloadProgressionScheduled.broadcastProgression();
+
+        /* Then */
+        verify(template, times(1)).convertAndSend(eq(WS_TOPIC_PROGRESSION), captor.capture());
+        List<Progression> progressions = captor.getValue();
+        assertThat(progressions).hasSize(1);
+        assertThat(progressions.get(0).getId()).isEqualTo(item.getId());
+        assertThat(progressions.get(0).getProgression()).isEqualTo(25);
+        assertThat(progressions.get(0).getBytes()).isEqualTo(1000L);
+    }
+
+    @Test
+    public void should_not_broadcast_download_without_change() {
+        /* Given */
+        Item item = Item.builder().id(UUID.randomUUID()).progression(25).build();
+        when(downloader.getItem()).thenReturn(item);
+        when(downloader.getDownloadedBytes()).thenReturn(1000L);
+        when(IDM.getDownloadingQueue()).thenReturn(HashMap.of(item, downloader));
+
+        /* When */
+        downloadProgressionScheduled.broadcastProgression();
+        downloadProgressionScheduled.broadcastProgression();
+
+        /* Then */
+        verify(template, times(1)).convertAndSend(eq(WS_TOPIC_PROGRESSION), any(Object.class));
+    }
+}
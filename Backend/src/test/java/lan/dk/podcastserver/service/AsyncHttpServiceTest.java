@@ -0,0 +1,171 @@
+package lan.dk.podcastserver.service;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import javaslang.control.Try;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.HttpException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Created by kevin on 18/10/2016 for Podcast Server
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncHttpServiceTest {
+
+    private static final int PORT = 8089;
+    private static final String URL = "http://localhost:" + PORT + "/file.mp4";
+    private static final byte[] CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes();
+
+    @Rule public WireMockRule wireMockRule = new WireMockRule(PORT);
+
+    @Mock BandwidthService bandwidthService;
+    PodcastServerParameters podcastServerParameters;
+    AsyncHttpService asyncHttpService;
+    Path target;
+
+    @Before
+    public void beforeEach() throws IOException {
+        podcastServerParameters = new PodcastServerParameters();
+        asyncHttpService = new AsyncHttpService(bandwidthService, podcastServerParameters);
+        target = Files.createTempFile("async-download", ".psdownload");
+    }
+
+    @After
+    public void afterEach() throws IOException {
+        asyncHttpService.close();
+        Files.deleteIfExists(target);
+    }
+
+    @Test
+    public void should_download_file() throws Exception {
+        /* Given */
+        stubFor(get(urlEqualTo("/file.mp4")).willReturn(aResponse().withStatus(200).withBody(CONTENT)));
+
+        /* When */
+        AsyncHttpService.DownloadedFile file = asyncHttpService.download(URL, target, 0L, c -> {}).get(5, TimeUnit.SECONDS);
+
+        /* Then */
+        assertThat(Files.readAllBytes(target)).isEqualTo(CONTENT);
+        assertThat(file.getLength()).isEqualTo(CONTENT.length);
+        assertThat(file.getDigest()).isEqualTo(DigestUtils.sha256Hex(CONTENT));
+    }
+
+    @Test
+    public void should_resume_from_offset_when_range_is_served() throws Exception {
+        /* Given */
+        Files.write(target, Arrays.copyOfRange(CONTENT, 0, 10));
+        stubFor(get(urlEqualTo("/file.mp4"))
+                .withHeader("Range", equalTo("bytes=10-"))
+                .willReturn(aResponse()
+                        .withStatus(206)
+                        .withHeader("Content-Range", "bytes 10-35/" + CONTENT.length)
+                        .withBody(Arrays.copyOfRange(CONTENT, 10, CONTENT.length))));
+
+        /* When */
+        AsyncHttpService.DownloadedFile file = asyncHttpService.download(URL, target, 10L, c -> {}).get(5, TimeUnit.SECONDS);
+
+        /* Then */
+        assertThat(Files.readAllBytes(target)).isEqualTo(CONTENT);
+        assertThat(file.getLength()).isEqualTo(CONTENT.length);
+        assertThat(file.getDigest()).isEqualTo(DigestUtils.sha256Hex(CONTENT));
+    }
+
+    @Test
+    public void should_restart_from_the_beginning_when_range_is_not_served() throws Exception {
+        /* Given */
+        Files.write(target, "a stale partial content".getBytes());
+        stubFor(get(urlEqualTo("/file.mp4")).willReturn(aResponse().withStatus(200).withBody(CONTENT)));
+
+        /* When */
+        AsyncHttpService.DownloadedFile file = asyncHttpService.download(URL, target, Files.size(target), c -> {}).get(5, TimeUnit.SECONDS);
+
+        /* Then */
+        assertThat(Files.readAllBytes(target)).isEqualTo(CONTENT);
+        assertThat(file.getLength()).isEqualTo(CONTENT.length);
+        assertThat(file.getDigest()).isEqualTo(DigestUtils.sha256Hex(CONTENT));
+    }
+
+    @Test
+    public void should_fail_on_unexpected_status() {
+        /* Given */
+        stubFor(get(urlEqualTo("/file.mp4")).willReturn(aResponse().withStatus(404)));
+
+        /* When */
+        Try<AsyncHttpService.DownloadedFile> result = Try.of(() -> asyncHttpService.download(URL, target, 0L, c -> {}).get(5, TimeUnit.SECONDS));
+
+        /* Then */
+        assertThat(result.isFailure()).isTrue();
+        assertThat(result.getCause().getCause()).isInstanceOf(HttpException.class);
+    }
+
+    @Test
+    public void should_fail_if_the_server_stalls() throws IOException {
+        /* Given */
+        asyncHttpService.close();
+        asyncHttpService = new AsyncHttpService(bandwidthService, podcastServerParameters.setDownloadTimeout(200));
+        stubFor(get(urlEqualTo("/file.mp4")).willReturn(aResponse().withStatus(200).withBody(CONTENT).withFixedDelay(5000)));
+
+        /* When */
+        Try<AsyncHttpService.DownloadedFile> result = Try.of(() -> asyncHttpService.download(URL, target, 0L, c -> {}).get(5, TimeUnit.SECONDS));
+
+        /* Then */
+        assertThat(result.isFailure()).isTrue();
+        assertThat(result.getCause().getCause()).isInstanceOf(SocketTimeoutException.class);
+    }
+
+    @Test
+    public void should_stop_transfer_when_cancelled() throws Exception {
+        /* Given */
+        stubFor(get(urlEqualTo("/file.mp4")).willReturn(aResponse().withStatus(200).withBody(CONTENT).withFixedDelay(5000)));
+        CompletableFuture<AsyncHttpService.DownloadedFile> transfer = asyncHttpService.download(URL, target, 0L, c -> {});
+
+        /* When */
+        transfer.cancel(true);
+
+        /* Then */
+        assertThat(transfer.isCancelled()).isTrue();
+        assertThat(Files.size(target)).isEqualTo(0L);
+    }
+
+    @Test
+    public void should_resume_reading_after_the_wait_of_the_bandwidth_limit() throws Exception {
+        /* Given */
+        /* Bigger than the buffer of the consumer, the end of the body is only read once the input is requested again */
+        byte[] content = new byte[256 * 1024];
+        Arrays.fill(content, (byte) 'a');
+        when(bandwidthService.reserve(anyLong())).thenReturn(300L, 0L);
+        stubFor(get(urlEqualTo("/file.mp4")).willReturn(aResponse().withStatus(200).withBody(content)));
+        long start = System.currentTimeMillis();
+
+        /* When */
+        AsyncHttpService.DownloadedFile file = asyncHttpService.download(URL, target, 0L, c -> {}).get(5, TimeUnit.SECONDS);
+
+        /* Then */
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(300L);
+        assertThat(Files.readAllBytes(target)).isEqualTo(content);
+        assertThat(file.getDigest()).isEqualTo(DigestUtils.sha256Hex(content));
+        verify(bandwidthService, atLeast(1)).reserve(anyLong());
+    }
+}
@@ -0,0 +1,103 @@
+package lan.dk.podcastserver.service;
+
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.service.properties.Bandwidth;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BandwidthServiceTest {
+
+    private Bandwidth bandwidth;
+    private BandwidthService bandwidthService;
+
+    @Before
+    public void beforeEach() {
+        bandwidth = new Bandwidth();
+        bandwidthService = new BandwidthService(bandwidth);
+    }
+
+    @Test
+    public void should_not_wait_without_limit() {
+        /* When */
+        long wait = bandwidthService.reserve(100_000_000L);
+
+        /* Then */
+        assertThat(wait).isEqualTo(0L);
+        assertThat(bandwidthService.currentRate()).isEqualTo(0L);
+    }
+
+    @Test
+    public void should_use_rate_of_the_first_matching_period() {
+        /* Given */
+        bandwidth
+                .setDefaultRate(10L)
+                .setSchedule(singletonList(new Bandwidth.Period().setFrom(LocalTime.of(9, 0)).setTo(LocalTime.of(18, 0)).setRate(2_000_000L)));
+
+        /* Then */
+        assertThat(bandwidthService.rateAt(LocalDateTime.of(2016, 10, 17, 12, 0))).isEqualTo(2_000_000L);
+        assertThat(bandwidthService.rateAt(LocalDateTime.of(2016, 10, 17, 20, 0))).isEqualTo(10L);
+    }
+
+    @Test
+    public void should_make_wait_when_bucket_is_empty() {
+        /* Given */
+        bandwidth.setDefaultRate(1000L);
+
+        /* When */
+        long wait = bandwidthService.reserve(2000L);
+
+        /* Then */
+        assertThat(wait).isBetween(1900L, 2000L);
+    }
+
+    @Test
+    public void should_share_the_bucket_between_callers() {
+        /* Given */
+        bandwidth.setDefaultRate(1000L);
+
+        /* When */
+        bandwidthService.reserve(1000L);
+        long wait = bandwidthService.reserve(1000L);
+
+        /* Then */
+        assertThat(wait).isBetween(1900L, 2000L);
+    }
+
+    @Test
+    public void should_acquire_by_waiting_for_tokens() {
+        /* Given */
+        bandwidth.setDefaultRate(10_000L);
+        long start = System.currentTimeMillis();
+
+        /* When */
+        bandwidthService.acquire(1_000L);
+
+        /* Then */
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(90L);
+    }
+
+    @Test
+    public void should_defer_big_items_only_while_a_limit_applies() {
+        /* Given */
+        Item bigItem = Item.builder().length(500_000_000L).build();
+        Item smallItem = Item.builder().length(1_000L).build();
+        bandwidth.setDeferLargerThan(100_000_000L);
+
+        /* Then */
+        assertThat(bandwidthService.shouldDefer(bigItem)).isFalse();
+
+        /* When */
+        bandwidth.setDefaultRate(1_000_000L);
+
+        /* Then */
+        assertThat(bandwidthService.shouldDefer(bigItem)).isTrue();
+        assertThat(bandwidthService.shouldDefer(smallItem)).isFalse();
+        assertThat(bandwidthService.shouldDefer(Item.builder().build())).isFalse();
+    }
+}
@@ -67,6 +67,27 @@ public class FfmpegServiceTest {
         ).isTrue();
     }
 
+    @Test
+    public void should_remux_segments() {
+        /* Given */
+        FFmpegJob job = mock(FFmpegJob.class);
+        when(ffmpegExecutor.createJob(any())).thenReturn(job);
+
+        /* When */
+        ffmpegService.remux(Paths.get("/tmp/input.mp4.ts"), Paths.get("/tmp/output.mp4"));
+
+        /* Then */
+        verify(ffmpegExecutor, times(1)).createJob(executorBuilderCaptor.capture());
+        verify(job, times(1)).run();
+        assertThat(executorBuilderCaptor.getValue().build()).containsSequence("-i", "/tmp/input.mp4.ts");
+        assertThat(executorBuilderCaptor.getValue().build()).contains(
+                "-f", "mp4",
+                "-vcodec", "copy",
+                "-acodec", "copy",
+                "/tmp/output.mp4"
+        );
+    }
+
     @Test
     public void should_catch_error_if_problem() {
         /* Given */
@@ -97,6 +118,53 @@ public class FfmpegServiceTest {
         assertThat(generatedFile).isEqualTo(dest);
     }
 
+    @Test
+    public void should_encode_audio_in_the_same_pass_if_container_does_not_accept_it() {
+        /* Given */
+        FFmpegJob job = mock(FFmpegJob.class);
+        when(ffmpegExecutor.createJob(any())).thenReturn(job);
+
+        /* When */
+        ffmpegService.mergeAudioAndVideo(Paths.get("/tmp/bar.mp4"), Paths.get("/tmp/bar.webm"), Paths.get("/tmp/foo.mp4"));
+
+        /* Then */
+        verify(ffmpegExecutor, times(1)).createJob(executorBuilderCaptor.capture());
+        assertThat(executorBuilderCaptor.getValue().build()).containsSequence("-acodec", "aac");
+        assertThat(executorBuilderCaptor.getValue().build()).containsSequence("-vcodec", "copy");
+        assertThat(executorBuilderCaptor.getValue().build()).contains("/tmp/bar.webm", "/tmp/bar.mp4");
+    }
+
+    @Test
+    public void should_copy_audio_if_container_accepts_it() {
+        /* Given */
+        FFmpegJob job = mock(FFmpegJob.class);
+        when(ffmpegExecutor.createJob(any())).thenReturn(job);
+
+        /* When */
+        ffmpegService.mergeAudioAndVideo(Paths.get("/tmp/bar.mp4"), Paths.get("/tmp/bar.m4a"), Paths.get("/tmp/foo.mp4"));
+
+        /* Then */
+        verify(ffmpegExecutor, times(1)).createJob(executorBuilderCaptor.capture());
+        assertThat(executorBuilderCaptor.getValue().build()).containsSequence("-acodec", "copy");
+        assertThat(executorBuilderCaptor.getValue().build()).containsSequence("-vcodec", "copy");
+    }
+
+    @Test
+    public void should_extract_audio_without_encoding() {
+        /* Given */
+        FFmpegJob job = mock(FFmpegJob.class);
+        when(ffmpegExecutor.createJob(any())).thenReturn(job);
+
+        /* When */
+        ffmpegService.extractAudio(Paths.get("/tmp/input.ts"), Paths.get("/tmp/output.m4a"));
+
+        /* Then */
+        verify(ffmpegExecutor, times(1)).createJob(executorBuilderCaptor.capture());
+        verify(job, times(1)).run();
+        assertThat(executorBuilderCaptor.getValue().build()).contains("-vn", "/tmp/output.m4a");
+        assertThat(executorBuilderCaptor.getValue().build()).containsSequence("-acodec", "copy");
+    }
+
     @Test(expected = RuntimeException.class)
     public void should_not_merge_if_folder_is_read_only() {
           /* Given */
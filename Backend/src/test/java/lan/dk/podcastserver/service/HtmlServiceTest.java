@@ -2,6 +2,7 @@ package lan.dk.podcastserver.service;
 
 import com.github.tomakehurst.wiremock.junit.WireMockClassRule;
 import javaslang.control.Option;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.parser.Tag;
@@ -25,7 +26,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 @RunWith(MockitoJUnitRunner.class)
 public class HtmlServiceTest {
 
-    @Spy UrlService urlService;
+    @Spy UrlService urlService = new UrlService(new ResolvedUrlCache(new PodcastServerParameters()));
+    @Spy UpdateCycleCache updateCycleCache;
     @InjectMocks HtmlService htmlService;
 
     @ClassRule
@@ -3,25 +3,36 @@ package lan.dk.podcastserver.service;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.google.common.collect.Lists;
 import javaslang.control.Option;
+import javaslang.control.Try;
 import lan.dk.podcastserver.entity.*;
 import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import lan.dk.utils.IOUtils;
 import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
@@ -41,6 +52,7 @@ public class JdomServiceTest {
     @Mock PodcastServerParameters podcastServerParameters;
     @Mock MimeTypeService mimeTypeService;
     @Mock UrlService urlService;
+    @Spy UpdateCycleCache updateCycleCache;
     @InjectMocks JdomService jdomService;
 
     private List<String> itemId = Lists.newArrayList(
@@ -167,6 +179,93 @@ public class JdomServiceTest {
         verify(urlService, only()).asStream(eq(url));
     }
 
+    @Test
+    public void should_parse_each_element() throws IOException {
+        /* Given */
+        String url = "http://localhost:8181/a/valid.xml";
+        when(urlService.asStream(anyString())).then(i -> IOUtils.urlAsStream(i.getArgumentAt(0, String.class)));
+        stubFor(get(urlEqualTo("/a/valid.xml"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBodyFile("service/jdomService/valid.xml")));
+        List<String> texts = Lists.newArrayList();
+
+        /* When */
+        Boolean isParsed = jdomService.parseEach(url, "to", e -> texts.add(e.getText()));
+
+        /* Then */
+        assertThat(isParsed).isTrue();
+        assertThat(texts).containsExactly("Tove");
+    }
+
+    @Test
+    public void should_read_each_element_with_its_namespaces() throws IOException, URISyntaxException, XMLStreamException {
+        /* Given */
+        List<Element> entries = Lists.newArrayList();
+        Namespace media = Namespace.getNamespace("media", "http://search.yahoo.com/mrss/");
+
+        /* When */
+        try (InputStream stream = Files.newInputStream(Paths.get(JdomServiceTest.class.getResource("/remote/podcast/youtube.androiddevelopers.xml").toURI()))) {
+            JdomService.readEach(stream, "entry", entries::add);
+        }
+
+        /* Then */
+        assertThat(entries).hasSize(15);
+        assertThat(entries.get(0).getChildText("title", entries.get(0).getNamespace())).isNotEmpty();
+        assertThat(entries.get(0).getChild("group", media).getChild("content", media).getAttributeValue("url")).isNotEmpty();
+    }
+
+    @Test
+    public void should_stop_reading_when_asked() throws IOException, URISyntaxException, XMLStreamException {
+        /* Given */
+        AtomicInteger visits = new AtomicInteger();
+
+        /* When */
+        try (InputStream stream = Files.newInputStream(Paths.get(JdomServiceTest.class.getResource("/remote/podcast/rss.appload.xml").toURI()))) {
+            JdomService.readEach(stream, "item", e -> visits.incrementAndGet() < 3);
+        }
+
+        /* Then */
+        assertThat(visits.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void should_not_resolve_external_entities() throws IOException {
+        /* Given */
+        Path secret = Files.write(Files.createTempFile("jdom-service", ".txt"), "secret".getBytes());
+        String xml = "<?xml version=\"1.0\"?><!DOCTYPE rss [<!ENTITY xxe SYSTEM \"" + secret.toUri() + "\">]><rss><item><title>&xxe;</title></item></rss>";
+        List<String> titles = Lists.newArrayList();
+
+        /* When */
+        Try.run(() -> JdomService.readEach(new ByteArrayInputStream(xml.getBytes()), "item", e -> titles.add(e.getChildText("title"))));
+        Files.deleteIfExists(secret);
+
+        /* Then */
+        assertThat(titles).doesNotContain("secret");
+    }
+
+    @Test
+    public void should_parse_only_once_during_an_update_cycle() throws IOException {
+        /* Given */
+        String url = "http://localhost:8181/a/valid.xml";
+        when(urlService.asStream(anyString())).then(i -> IOUtils.urlAsStream(i.getArgumentAt(0, String.class)));
+        stubFor(get(urlEqualTo("/a/valid.xml"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBodyFile("service/jdomService/valid.xml")));
+        updateCycleCache.open();
+
+        /* When */
+        Option<Document> document = jdomService.parse(url);
+        Option<Document> sameDocument = jdomService.parse(url);
+        updateCycleCache.close();
+
+        /* Then */
+        assertThat(document.isDefined()).isTrue();
+        assertThat(sameDocument.get()).isSameAs(document.get());
+        verify(urlService, only()).asStream(eq(url));
+    }
+
     @Test
     public void should_generate_xml_from_podcast_with_only_50_items() throws URISyntaxException, IOException {
         /* Given */
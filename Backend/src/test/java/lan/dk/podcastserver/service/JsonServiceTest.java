@@ -29,13 +29,13 @@ public class JsonServiceTest {
     @Before
     public void beforeEach() {
         urlService = mock(UrlService.class);
-        jsonService = new JsonService(urlService, mapper);
+        jsonService = new JsonService(urlService, new UpdateCycleCache(), mapper);
     }
 
     @Test
     public void should_read_json_from_files() throws URISyntaxException, IOException {
         /* Given */
-        when(urlService.asReader(anyString())).thenReturn(Files.newBufferedReader(Paths.get(DailymotionUpdaterTest.class.getResource("/remote/downloader/dailymotion/user.karimdebbache.json").toURI())));
+        when(urlService.asStream(anyString())).thenReturn(Files.newInputStream(Paths.get(DailymotionUpdaterTest.class.getResource("/remote/downloader/dailymotion/user.karimdebbache.json").toURI())));
 
         /* When */
         Option<DocumentContext> aFakeUrl = jsonService.parseUrl("http://foo.com/");
@@ -47,7 +47,7 @@ public class JsonServiceTest {
     @Test
     public void should_return_empty_if_error_during_parsing() throws IOException {
         /* Given */
-        doThrow(IOException.class).when(urlService).asReader(anyString());
+        doThrow(IOException.class).when(urlService).asStream(anyString());
 
         /* When */
         Option<DocumentContext> aFakeUrl = jsonService.parseUrl("http://foo.com/");
@@ -8,10 +8,13 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -38,6 +41,18 @@ public class M3U8ServiceTest {
         assertThat(bestQuality.toJavaOptional()).hasValue("13184238-audio%3D64000-video%3D2500299.m3u8?vk=MTMxODQyMzgubTN1OA==&st=D79oBJFWiP__EA4uMJAejg&e=1469146222&t=1469135422&min_bitrate=");
     }
 
+    @Test
+    public void should_select_audio_only_url() {
+        /* Given */
+        InputStream m3u8FileStream = M3U8ServiceTest.class.getResourceAsStream("/remote/podcast/tf1replay/13184238.m3u8");
+
+        /* When */
+        Option<String> audio = m3U8Service.findBestQuality(m3u8FileStream, true);
+
+        /* Then */
+        assertThat(audio.toJavaOptional()).hasValue("13184238-audio%3D64000.m3u8?vk=MTMxODQyMzgubTN1OA==&st=D79oBJFWiP__EA4uMJAejg&e=1469146222&t=1469135422&min_bitrate=");
+    }
+
     @Test
     public void should_not_select_video_url() throws IOException {
         /* Given */
@@ -97,4 +112,105 @@ public class M3U8ServiceTest {
         /* Then */
         assertThat(lastUrl).isNull();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void should_find_segments_of_media_playlist() throws IOException {
+        /* Given */
+        String url = "http://a.custom.dom/playlist.m3u8";
+        when(urlService.asReader(eq(url))).then(i -> IOUtils.fileAsReader("/__files/service/urlService/canalplus.lepetitjournal.20150707.m3u8"));
+
+        /* When */
+        Option<M3U8Service.MediaPlaylist> playlist = m3U8Service.findMediaPlaylist(url);
+
+        /* Then */
+        assertThat(playlist.isDefined()).isTrue();
+        assertThat(playlist.get().getSegments()).hasSize(146);
+        assertThat(playlist.get().getSegments().head().getUrl()).isEqualTo("http://us-cplus-aka.canal-plus.com/i/1507/02/nip_NIP_59957_,200k,400k,800k,1500k,.mp4.csmil/segment1_3_av.ts");
+        assertThat(playlist.get().getDuration()).isEqualTo(1451.36, offset(0.001));
+    }
+
+    @Test
+    public void should_follow_variant_with_highest_bandwidth() throws IOException {
+        /* Given */
+        String master = "http://a.custom.dom/__files/service/urlService/relative.m3u8";
+        String best = "http://a.custom.dom/__files/service/urlService/9dce76b19072beda39720aa04aa2e47a-video=1404000-audio_AACL_fra_70000_315=70000.m3u8";
+        when(urlService.asReader(eq(master))).then(i -> IOUtils.fileAsReader("/__files/service/urlService/relative.m3u8"));
+        when(urlService.asReader(eq(best))).then(i -> asReader("#EXTM3U\n#EXTINF:4.5,\nsegment1.ts\n#EXTINF:2,\nsegment2.ts\n#EXT-X-ENDLIST\n"));
+
+        /* When */
+        Option<M3U8Service.MediaPlaylist> playlist = m3U8Service.findMediaPlaylist(master);
+
+        /* Then */
+        assertThat(playlist.isDefined()).isTrue();
+        assertThat(playlist.get().getSegments().map(M3U8Service.Segment::getUrl)).containsExactly(
+                "http://a.custom.dom/__files/service/urlService/segment1.ts",
+                "http://a.custom.dom/__files/service/urlService/segment2.ts"
+        );
+        assertThat(playlist.get().getDuration()).isEqualTo(6.5);
+    }
+
+    @Test
+    public void should_not_find_segments_of_live_playlist() throws IOException {
+        /* Given */
+        String url = "http://a.custom.dom/live.m3u8";
+        when(urlService.asReader(eq(url))).then(i -> asReader("#EXTM3U\n#EXTINF:10,\nsegment1.ts\n"));
+
+        /* When */
+        Option<M3U8Service.MediaPlaylist> playlist = m3U8Service.findMediaPlaylist(url);
+
+        /* Then */
+        assertThat(playlist.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void should_not_find_segments_of_encrypted_playlist() throws IOException {
+        /* Given */
+        String url = "http://a.custom.dom/encrypted.m3u8";
+        when(urlService.asReader(eq(url))).then(i -> asReader("#EXTM3U\n#EXT-X-KEY:METHOD=AES-128,URI=\"key\"\n#EXTINF:10,\nsegment1.ts\n#EXT-X-ENDLIST\n"));
+
+        /* When */
+        Option<M3U8Service.MediaPlaylist> playlist = m3U8Service.findMediaPlaylist(url);
+
+        /* Then */
+        assertThat(playlist.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void should_follow_variant_with_only_audio() throws IOException {
+        /* Given */
+        String master = "http://a.custom.dom/master.m3u8";
+        when(urlService.asReader(eq(master))).then(i -> asReader("#EXTM3U\n" +
+                "#EXT-X-STREAM-INF:BANDWIDTH=64000,CODECS=\"mp4a.40.2\"\naudio.m3u8\n" +
+                "#EXT-X-STREAM-INF:BANDWIDTH=2000000,CODECS=\"avc1.77.31,mp4a.40.2\",RESOLUTION=1280x720\nvideo.m3u8\n"));
+        when(urlService.asReader(eq("http://a.custom.dom/audio.m3u8"))).then(i -> asReader("#EXTM3U\n#EXTINF:10,\naudio1.ts\n#EXT-X-ENDLIST\n"));
+
+        /* When */
+        Option<M3U8Service.MediaPlaylist> playlist = m3U8Service.findMediaPlaylist(master, true);
+
+        /* Then */
+        assertThat(playlist.get().getSegments().map(M3U8Service.Segment::getUrl)).containsExactly("http://a.custom.dom/audio1.ts");
+    }
+
+    @Test
+    public void should_follow_audio_rendition() throws IOException {
+        /* Given */
+        String master = "http://a.custom.dom/master.m3u8";
+        when(urlService.asReader(eq(master))).then(i -> asReader("#EXTM3U\n" +
+                "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",NAME=\"en\",DEFAULT=NO,URI=\"audio/en.m3u8\"\n" +
+                "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",NAME=\"fr\",DEFAULT=YES,URI=\"audio/fr.m3u8\"\n" +
+                "#EXT-X-STREAM-INF:BANDWIDTH=2000000,CODECS=\"avc1.77.31,mp4a.40.2\",AUDIO=\"aac\"\nvideo.m3u8\n"));
+        when(urlService.asReader(eq("http://a.custom.dom/audio/fr.m3u8"))).then(i -> asReader("#EXTM3U\n#EXTINF:10,\nfr1.aac\n#EXT-X-ENDLIST\n"));
+
+        /* When */
+        Option<M3U8Service.MediaPlaylist> audio = m3U8Service.findMediaPlaylist(master, true);
+        Option<M3U8Service.MediaPlaylist> video = m3U8Service.findMediaPlaylist(master, false);
+
+        /* Then */
+        assertThat(audio.get().getSegments().map(M3U8Service.Segment::getUrl)).containsExactly("http://a.custom.dom/audio/fr1.aac");
+        assertThat(video.isEmpty()).isTrue();
+    }
+
+    private static BufferedReader asReader(String content) {
+        return new BufferedReader(new StringReader(content));
+    }
+}
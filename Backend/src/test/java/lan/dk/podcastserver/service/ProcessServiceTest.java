@@ -82,4 +82,29 @@ public class ProcessServiceTest {
         assertThat(tryProcess.get()).isEqualTo(10);
         verify(process).waitFor();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void should_pause_and_resume_a_process_with_signals() throws IOException, InterruptedException {
+        /* Given */
+        Process sleep = processService.newProcessBuilder("sleep", "5").start();
+        int pid = processService.pidOf(sleep);
+
+        /* When */
+        Boolean paused = processService.signal(pid, ProcessService.Signal.STOP);
+        Boolean resumed = processService.signal(pid, ProcessService.Signal.CONT);
+
+        /* Then */
+        assertThat(paused).isTrue();
+        assertThat(resumed).isTrue();
+        sleep.destroy();
+    }
+
+    @Test
+    public void should_not_signal_an_invalid_pid() {
+        /* When */
+        Boolean signaled = processService.signal(-1, ProcessService.Signal.STOP);
+
+        /* Then */
+        assertThat(signaled).isFalse();
+    }
+}
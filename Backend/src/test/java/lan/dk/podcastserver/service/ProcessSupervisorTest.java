@@ -0,0 +1,217 @@
+package lan.dk.podcastserver.service;
+
+import javaslang.control.Try;
+import lan.dk.podcastserver.entity.Item;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProcessSupervisorTest {
+
+    @Mock ProcessService processService;
+    @Mock PodcastServerParameters podcastServerParameters;
+    @Mock Process process;
+
+    private ProcessSupervisor processSupervisor;
+    private Item item;
+    private CountDownLatch end;
+
+    @Before
+    public void beforeEach() throws InterruptedException {
+        item = Item.builder().url("http://foo.bar/video.m3u8").title("Video").build();
+        end = new CountDownLatch(1);
+
+        when(podcastServerParameters.getMaxConcurrentProcess()).thenReturn(1);
+        when(processService.pidOf(any())).thenReturn(1234);
+        when(process.waitFor()).then(i -> {
+            end.await();
+            return 0;
+        });
+
+        processSupervisor = new ProcessSupervisor(processService, podcastServerParameters);
+    }
+
+    @After
+    public void afterEach() {
+        end.countDown();
+        processSupervisor.close();
+    }
+
+    @Test
+    public void should_deliver_events_of_the_process() throws Exception {
+        /* Given */
+        List<String> lines = new ArrayList<>();
+        AtomicReference<Process> started = new AtomicReference<>();
+        AtomicReference<Integer> exitCode = new AtomicReference<>();
+        when(process.getInputStream()).thenReturn(new ByteArrayInputStream("first\nsecond\n".getBytes()));
+
+        /* When */
+        CompletableFuture<Integer> exit = processSupervisor.register(item, process, new ProcessSupervisor.Events() {
+            @Override public void onStart(Process p) { started.set(p); }
+            @Override public void onOutput(String line) { lines.add(line); }
+            @Override public void onExit(Integer code) { exitCode.set(code); }
+            @Override public Boolean consumeOutput() { return Boolean.TRUE; }
+        });
+        end.countDown();
+
+        /* Then */
+        assertThat(exit.get(5, TimeUnit.SECONDS)).isEqualTo(0);
+        assertThat(started.get()).isSameAs(process);
+        assertThat(lines).containsExactly("first", "second");
+        assertThat(exitCode.get()).isEqualTo(0);
+        assertThat(processSupervisor.isSupervised(item)).isFalse();
+    }
+
+    @Test
+    public void should_not_read_output_if_not_asked() throws Exception {
+        /* When */
+        CompletableFuture<Integer> exit = processSupervisor.register(item, process, ProcessSupervisor.Events.NONE);
+        end.countDown();
+
+        /* Then */
+        assertThat(exit.get(5, TimeUnit.SECONDS)).isEqualTo(0);
+        verify(process, never()).getInputStream();
+    }
+
+    @Test
+    public void should_pause_and_resume_with_signals() {
+        /* Given */
+        when(processService.signal(anyInt(), any())).thenReturn(true);
+        processSupervisor.register(item, process, ProcessSupervisor.Events.NONE);
+
+        /* When */
+        Boolean paused = processSupervisor.pause(item);
+        Boolean resumed = processSupervisor.resume(item);
+
+        /* Then */
+        assertThat(paused).isTrue();
+        assertThat(resumed).isTrue();
+        verify(processService, times(1)).signal(1234, ProcessService.Signal.STOP);
+        verify(processService, times(1)).signal(1234, ProcessService.Signal.CONT);
+        verify(processService, never()).newProcessBuilder((String[]) anyVararg());
+    }
+
+    @Test
+    public void should_hold_a_process_and_continue_it_after_the_delay() {
+        /* Given */
+        when(processService.signal(anyInt(), any())).thenReturn(true);
+        processSupervisor.register(item, process, ProcessSupervisor.Events.NONE);
+
+        /* When */
+        Boolean held = processSupervisor.hold(item, 100L);
+
+        /* Then */
+        assertThat(held).isTrue();
+        verify(processService, times(1)).signal(1234, ProcessService.Signal.STOP);
+        verify(processService, timeout(2000).times(1)).signal(1234, ProcessService.Signal.CONT);
+    }
+
+    @Test
+    public void should_not_continue_a_process_paused_during_its_hold() throws InterruptedException {
+        /* Given */
+        when(processService.signal(anyInt(), any())).thenReturn(true);
+        processSupervisor.register(item, process, ProcessSupervisor.Events.NONE);
+
+        /* When */
+        processSupervisor.hold(item, 100L);
+        processSupervisor.pause(item);
+        TimeUnit.MILLISECONDS.sleep(300);
+
+        /* Then */
+        verify(processService, times(2)).signal(1234, ProcessService.Signal.STOP);
+        verify(processService, never()).signal(1234, ProcessService.Signal.CONT);
+    }
+
+    @Test
+    public void should_not_hold_an_unknown_item() {
+        /* When */
+        Boolean held = processSupervisor.hold(item, 100L);
+
+        /* Then */
+        assertThat(held).isFalse();
+        verify(processService, never()).signal(anyInt(), any());
+    }
+
+    @Test
+    public void should_not_pause_an_unknown_item() {
+        /* When */
+        Boolean paused = processSupervisor.pause(item);
+
+        /* Then */
+        assertThat(paused).isFalse();
+        verify(processService, never()).signal(anyInt(), any());
+    }
+
+    @Test
+    public void should_wait_for_a_free_slot() throws Exception {
+        /* Given */
+        Item other = Item.builder().url("http://foo.bar/other.m3u8").title("Other").build();
+        processSupervisor.acquireSlot(item);
+        processSupervisor.register(item, process, ProcessSupervisor.Events.NONE);
+
+        /* When */
+        CompletableFuture<Void> waiting = runAsync(() -> {
+            try { processSupervisor.acquireSlot(other); } catch (InterruptedException ignored) {}
+        });
+
+        /* Then */
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertThat(waiting.isDone()).isFalse();
+        end.countDown();
+        waiting.get(5, TimeUnit.SECONDS);
+        assertThat(waiting.isDone()).isTrue();
+    }
+
+    @Test
+    public void should_release_the_slot_at_the_end_of_a_task() throws Exception {
+        /* Given */
+        Item other = Item.builder().url("http://foo.bar/other.m3u8").title("Other").build();
+        Try.of(() -> processSupervisor.withSlot(item, () -> { throw new IllegalStateException("ffmpeg error"); }));
+
+        /* When */
+        CompletableFuture<String> result = supplyAsync(() -> Try.of(() -> processSupervisor.withSlot(other, () -> "remuxed")).get());
+
+        /* Then */
+        assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("remuxed");
+    }
+
+    @Test
+    public void should_release_slot_only_once() throws InterruptedException {
+        /* Given */
+        Item other = Item.builder().url("http://foo.bar/other.m3u8").title("Other").build();
+        processSupervisor.acquireSlot(item);
+
+        /* When */
+        processSupervisor.releaseSlot(item);
+        processSupervisor.releaseSlot(item);
+        processSupervisor.acquireSlot(other);
+        CompletableFuture<Void> waiting = runAsync(() -> {
+            try { processSupervisor.acquireSlot(item); } catch (InterruptedException ignored) {}
+        });
+
+        /* Then */
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertThat(waiting.isDone()).isFalse();
+        processSupervisor.releaseSlot(other);
+    }
+}
@@ -0,0 +1,91 @@
+package lan.dk.podcastserver.service;
+
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResolvedUrlCacheTest {
+
+    private static final String PAGE_URL = "http://www.foo.bar/video/1234.html";
+
+    private ResolvedUrlCache resolvedUrlCache;
+    private AtomicInteger resolutions;
+
+    @Before
+    public void beforeEach() {
+        resolvedUrlCache = new ResolvedUrlCache(new PodcastServerParameters().setResolvedUrlTtl(30L));
+        resolutions = new AtomicInteger();
+    }
+
+    @Test
+    public void should_resolve_url_only_once() {
+        /* Given */
+        resolvedUrlCache.resolve(PAGE_URL, () -> resolve("http://cdn.foo.bar/1234.m3u8"));
+
+        /* When */
+        String url = resolvedUrlCache.resolve(PAGE_URL, () -> resolve("http://cdn.foo.bar/other.m3u8"));
+
+        /* Then */
+        assertThat(url).isEqualTo("http://cdn.foo.bar/1234.m3u8");
+        assertThat(resolutions.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_resolve_again_url_with_expired_token() {
+        /* Given */
+        String expiredUrl = "http://cdn.foo.bar/1234.m3u8?e=" + TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() + 30_000) + "&st=abcd";
+        resolvedUrlCache.resolve(PAGE_URL, () -> resolve(expiredUrl));
+
+        /* When */
+        String url = resolvedUrlCache.resolve(PAGE_URL, () -> resolve("http://cdn.foo.bar/1234.m3u8"));
+
+        /* Then */
+        assertThat(url).isEqualTo("http://cdn.foo.bar/1234.m3u8");
+        assertThat(resolutions.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_not_cache_empty_url() {
+        /* Given */
+        resolvedUrlCache.resolve(PAGE_URL, () -> resolve(""));
+
+        /* When */
+        String url = resolvedUrlCache.resolve(PAGE_URL, () -> resolve("http://cdn.foo.bar/1234.m3u8"));
+
+        /* Then */
+        assertThat(url).isEqualTo("http://cdn.foo.bar/1234.m3u8");
+        assertThat(resolutions.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_resolve_again_after_invalidation() {
+        /* Given */
+        resolvedUrlCache.resolve(PAGE_URL, () -> resolve("http://cdn.foo.bar/1234.m3u8"));
+
+        /* When */
+        resolvedUrlCache.invalidate(PAGE_URL);
+        resolvedUrlCache.resolve(PAGE_URL, () -> resolve("http://cdn.foo.bar/1234.m3u8"));
+
+        /* Then */
+        assertThat(resolutions.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_find_expiry_of_tokens() {
+        assertThat(ResolvedUrlCache.expiryOf("http://cdn.foo.bar/1234.m3u8?e=1476800000&st=abcd")).contains(1476800000000L);
+        assertThat(ResolvedUrlCache.expiryOf("http://cdn.foo.bar/1234.m3u8?hdnts=exp=1476800000~acl=/*~hmac=ab12")).contains(1476800000000L);
+        assertThat(ResolvedUrlCache.expiryOf("http://cdn.foo.bar/1234.m3u8?Expires=1476800000123")).contains(1476800000123L);
+        assertThat(ResolvedUrlCache.expiryOf("http://cdn.foo.bar/1234.m3u8?bwmin=400000&bwmax=4900000")).isEmpty();
+        assertThat(ResolvedUrlCache.expiryOf("http://cdn.foo.bar/e=1476800000/1234.m3u8")).isEmpty();
+    }
+
+    private String resolve(String url) {
+        resolutions.incrementAndGet();
+        return url;
+    }
+}
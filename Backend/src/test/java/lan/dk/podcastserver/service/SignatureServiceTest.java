@@ -1,20 +1,30 @@
 package lan.dk.podcastserver.service;
 
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.exceptions.UnirestException;
+import com.mashape.unirest.request.GetRequest;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
-import static org.mockito.Mockito.doThrow;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 /**
  * Created by kevin on 04/09/15 for Podcast Server
@@ -24,13 +34,23 @@ public class SignatureServiceTest {
 
     @Mock
     UrlService urlService;
+    @Spy UpdateCycleCache updateCycleCache;
     @InjectMocks SignatureService signatureService;
 
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8181);
+
     @Test
-    public void should_generate_md5_from_stream() throws IOException {
+    @SuppressWarnings("unchecked")
+    public void should_generate_md5_from_stream() throws IOException, UnirestException {
         /* Given */
         String stringStream = "azertyuiopqsdfghjklmwxcvbn";
-        when(urlService.asReader(anyString())).thenReturn(new BufferedReader(new StringReader(stringStream)));
+        GetRequest request = mock(GetRequest.class);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(urlService.get(anyString())).thenReturn(request);
+        when(request.asBinary()).thenReturn(response);
+        when(response.getStatus()).thenReturn(200);
+        when(response.getBody()).thenReturn(new ByteArrayInputStream(stringStream.getBytes()));
 
         /* When */
         String s = signatureService.generateSignatureFromURL("");
@@ -40,9 +60,33 @@ public class SignatureServiceTest {
     }
     
     @Test
-    public void should_return_empty_string_if_error_during_connection() throws IOException {
+    @SuppressWarnings("unchecked")
+    public void should_not_keep_the_body_during_an_update_cycle() throws IOException, UnirestException {
         /* Given */
-        doThrow(IOException.class).when(urlService).asReader(anyString());
+        String stringStream = "<rss><channel/></rss>";
+        GetRequest request = mock(GetRequest.class);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(urlService.get(anyString())).thenReturn(request);
+        when(request.asBinary()).thenReturn(response);
+        when(response.getStatus()).thenReturn(200);
+        when(response.getBody()).thenReturn(new ByteArrayInputStream(stringStream.getBytes()));
+        updateCycleCache.open();
+
+        /* When */
+        String s = signatureService.generateSignatureFromURL("http://foo.bar/feed.xml");
+        updateCycleCache.close();
+
+        /* Then */
+        assertThat(s).isEqualTo(DigestUtils.md5Hex(stringStream));
+        verify(updateCycleCache, never()).body(anyString(), any());
+    }
+
+    @Test
+    public void should_return_empty_string_if_error_during_connection() throws IOException, UnirestException {
+        /* Given */
+        GetRequest request = mock(GetRequest.class);
+        when(urlService.get(anyString())).thenReturn(request);
+        doThrow(UnirestException.class).when(request).asBinary();
 
         /* When */
         String s = signatureService.generateSignatureFromURL("");
@@ -51,6 +95,42 @@ public class SignatureServiceTest {
         assertThat(s).isEqualTo("");
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_keep_line_endings_in_signature_of_stream() throws UnirestException {
+        /* Given */
+        String stringStream = "<rss>\r\n<channel/>\n</rss>";
+        GetRequest request = mock(GetRequest.class);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(urlService.get(anyString())).thenReturn(request);
+        when(request.asBinary()).thenReturn(response);
+        when(response.getStatus()).thenReturn(200);
+        when(response.getBody()).thenReturn(new ByteArrayInputStream(stringStream.getBytes()));
+
+        /* When */
+        String s = signatureService.generateSignatureFromURL("");
+
+        /* Then */
+        assertThat(s).isEqualTo(DigestUtils.md5Hex(stringStream));
+    }
+
+    @Test
+    public void should_generate_md5_from_fragments() {
+        /* Given */
+        Document page = Jsoup.parse("<div><ul class=\"videos\"><li><a href=\"/1\">One</a></li></ul></div>");
+        Document samePage = Jsoup.parse("<div>\n  <ul class=\"videos\"><li><a href=\"/1\">One</a></li></ul>\n</div>");
+        Document otherPage = Jsoup.parse("<div><ul class=\"videos\"><li><a href=\"/2\">One</a></li></ul></div>");
+
+        /* When */
+        String signature = signatureService.generateMD5Signature(page.select("ul.videos"));
+
+        /* Then */
+        assertThat(signature)
+                .hasSize(32)
+                .isEqualTo(signatureService.generateMD5Signature(samePage.select("ul.videos")))
+                .isNotEqualTo(signatureService.generateMD5Signature(otherPage.select("ul.videos")));
+    }
+
     @Test
     public void should_generate_md5_from_text() {
         /* Given */
@@ -60,4 +140,39 @@ public class SignatureServiceTest {
         /* Then */
         assertThat(s).isEqualTo(DigestUtils.md5Hex(stringStream));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void should_give_previous_signature_if_feed_not_modified() {
+        /* Given */
+        SignatureService service = new SignatureService(new UrlService(new ResolvedUrlCache(new PodcastServerParameters())), new UpdateCycleCache());
+        stubFor(get(urlEqualTo("/feed.xml"))
+                .willReturn(aResponse().withStatus(200).withHeader("ETag", "\"abcd\"").withBody("<rss/>")));
+        stubFor(get(urlEqualTo("/feed.xml")).withHeader("If-None-Match", equalTo("\"abcd\""))
+                .willReturn(aResponse().withStatus(304)));
+        String signature = service.generateSignatureFromURL("http://localhost:8181/feed.xml");
+
+        /* When */
+        String sameSignature = service.generateSignatureFromURL("http://localhost:8181/feed.xml");
+
+        /* Then */
+        assertThat(signature).isEqualTo(DigestUtils.md5Hex("<rss/>"));
+        assertThat(sameSignature).isEqualTo(signature);
+        verify(1, getRequestedFor(urlEqualTo("/feed.xml")).withHeader("If-None-Match", equalTo("\"abcd\"")));
+    }
+
+    @Test
+    public void should_fetch_again_feed_without_validators() {
+        /* Given */
+        SignatureService service = new SignatureService(new UrlService(new ResolvedUrlCache(new PodcastServerParameters())), new UpdateCycleCache());
+        stubFor(get(urlEqualTo("/feed.xml")).willReturn(aResponse().withStatus(200).withBody("<rss/>")));
+        service.generateSignatureFromURL("http://localhost:8181/feed.xml");
+
+        /* When */
+        String signature = service.generateSignatureFromURL("http://localhost:8181/feed.xml");
+
+        /* Then */
+        assertThat(signature).isEqualTo(DigestUtils.md5Hex("<rss/>"));
+        verify(2, getRequestedFor(urlEqualTo("/feed.xml")));
+        verify(0, getRequestedFor(urlEqualTo("/feed.xml")).withHeader("If-None-Match", matching(".*")));
+    }
+}
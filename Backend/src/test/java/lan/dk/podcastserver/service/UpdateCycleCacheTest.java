@@ -0,0 +1,179 @@
+package lan.dk.podcastserver.service;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpdateCycleCacheTest {
+
+    private static final String URL = "http://www.foo.bar/rss.xml";
+    private static final String OTHER_URL = "http://www.foo.bar/other.xml";
+
+    private UpdateCycleCache updateCycleCache;
+    private AtomicInteger fetches;
+
+    @Before
+    public void beforeEach() {
+        updateCycleCache = new UpdateCycleCache();
+        fetches = new AtomicInteger();
+    }
+
+    @Test
+    public void should_not_cache_outside_of_a_cycle() {
+        /* Given */
+        updateCycleCache.get(UpdateCycleCache.XML, URL, this::fetch);
+
+        /* When */
+        updateCycleCache.get(UpdateCycleCache.XML, URL, this::fetch);
+
+        /* Then */
+        assertThat(updateCycleCache.isOpen()).isFalse();
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_compute_each_form_of_an_url_once_during_a_cycle() {
+        /* Given */
+        updateCycleCache.open();
+
+        /* When */
+        updateCycleCache.get(UpdateCycleCache.XML, URL, this::fetch);
+        updateCycleCache.get(UpdateCycleCache.XML, URL, this::fetch);
+        updateCycleCache.get(UpdateCycleCache.JSON, URL, this::fetch);
+
+        /* Then */
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_keep_entries_until_the_last_cycle_is_closed() {
+        /* Given */
+        updateCycleCache.open();
+        updateCycleCache.open();
+        updateCycleCache.get(UpdateCycleCache.XML, URL, this::fetch);
+
+        /* When */
+        updateCycleCache.close();
+        updateCycleCache.get(UpdateCycleCache.XML, URL, this::fetch);
+        updateCycleCache.close();
+        updateCycleCache.open();
+        updateCycleCache.get(UpdateCycleCache.XML, URL, this::fetch);
+
+        /* Then */
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_read_the_body_once_during_a_cycle() throws IOException {
+        /* Given */
+        updateCycleCache.open();
+
+        /* When */
+        InputStream first = updateCycleCache.body(URL, this::stream);
+        InputStream second = updateCycleCache.body(URL, this::stream);
+
+        /* Then */
+        assertThat(IOUtils.toString(first)).isEqualTo("<rss/>");
+        assertThat(IOUtils.toString(second)).isEqualTo("<rss/>");
+        assertThat(fetches.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_release_the_entries_of_a_podcast_at_the_end_of_its_update() {
+        /* Given */
+        updateCycleCache.open();
+        updateCycleCache.register(URL);
+
+        /* When */
+        updateCycleCache.update(URL, () -> updateCycleCache.get(UpdateCycleCache.XML, OTHER_URL, this::fetch));
+        updateCycleCache.get(UpdateCycleCache.XML, OTHER_URL, this::fetch);
+
+        /* Then */
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_keep_the_entries_of_an_url_shared_by_podcasts_until_their_last_update() {
+        /* Given */
+        updateCycleCache.open();
+        updateCycleCache.register(URL);
+        updateCycleCache.register(URL);
+
+        /* When */
+        updateCycleCache.update(URL, () -> updateCycleCache.get(UpdateCycleCache.XML, URL, this::fetch));
+        updateCycleCache.update(URL, () -> updateCycleCache.get(UpdateCycleCache.XML, URL, this::fetch));
+        updateCycleCache.get(UpdateCycleCache.XML, URL, this::fetch);
+
+        /* Then */
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_keep_an_entry_used_by_the_update_of_another_podcast() {
+        /* Given */
+        updateCycleCache.open();
+        updateCycleCache.register(URL);
+        updateCycleCache.register(OTHER_URL);
+
+        /* When */
+        updateCycleCache.update(URL, () -> updateCycleCache.get(UpdateCycleCache.XML, OTHER_URL, this::fetch));
+        updateCycleCache.update(OTHER_URL, () -> updateCycleCache.get(UpdateCycleCache.XML, OTHER_URL, this::fetch));
+
+        /* Then */
+        assertThat(fetches.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_stream_a_body_not_read_during_the_cycle_without_keeping_it() throws IOException {
+        /* Given */
+        updateCycleCache.open();
+
+        /* When */
+        InputStream first = updateCycleCache.stream(URL, this::stream);
+        InputStream second = updateCycleCache.stream(URL, this::stream);
+
+        /* Then */
+        assertThat(IOUtils.toString(first)).isEqualTo("<rss/>");
+        assertThat(IOUtils.toString(second)).isEqualTo("<rss/>");
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_stream_the_body_already_read_during_the_cycle() throws IOException {
+        /* Given */
+        updateCycleCache.open();
+        updateCycleCache.body(URL, this::stream).close();
+
+        /* When */
+        InputStream stream = updateCycleCache.stream(URL, this::stream);
+
+        /* Then */
+        assertThat(IOUtils.toString(stream)).isEqualTo("<rss/>");
+        assertThat(fetches.get()).isEqualTo(1);
+    }
+
+    @Test(expected = IOException.class)
+    public void should_throw_the_error_of_the_fetch() throws IOException {
+        /* Given */
+        updateCycleCache.open();
+
+        /* When */
+        updateCycleCache.body(URL, () -> { throw new IOException("Connection refused"); });
+    }
+
+    private String fetch() {
+        fetches.incrementAndGet();
+        return "<rss/>";
+    }
+
+    private InputStream stream() {
+        return new ByteArrayInputStream(fetch().getBytes());
+    }
+}
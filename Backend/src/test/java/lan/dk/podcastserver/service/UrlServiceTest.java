@@ -3,6 +3,7 @@ package lan.dk.podcastserver.service;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.mashape.unirest.request.GetRequest;
 import com.mashape.unirest.request.HttpRequestWithBody;
+import lan.dk.podcastserver.service.properties.PodcastServerParameters;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -29,7 +30,7 @@ public class UrlServiceTest {
 
     @Before
     public void beforeEach() {
-        urlService = new UrlService();
+        urlService = new UrlService(new ResolvedUrlCache(new PodcastServerParameters()));
     }
 
     @Test
@@ -75,6 +76,21 @@ public class UrlServiceTest {
         assertThat(lastUrl).isEqualTo(host("/my/ressources3.m3u8"));
     }
 
+    @Test
+    public void should_not_follow_again_a_cached_redirection() {
+        /* Given */
+        doRedirection("/my/ressources1.m3u8", host("/my/ressources2.m3u8"));
+        stubFor(get(urlEqualTo("/my/ressources2.m3u8")).willReturn(aResponse().withStatus(200)));
+        urlService.getRealURL(host("/my/ressources1.m3u8"));
+
+        /* When */
+        String lastUrl = urlService.getRealURL(host("/my/ressources1.m3u8"));
+
+        /* Then */
+        assertThat(lastUrl).isEqualTo(host("/my/ressources2.m3u8"));
+        verify(1, getRequestedFor(urlEqualTo("/my/ressources1.m3u8")));
+    }
+
     @Test
     public void should_get_real_url_after_redirection_with_user_agent() {
         /* Given */
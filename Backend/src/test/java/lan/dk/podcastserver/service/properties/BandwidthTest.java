@@ -0,0 +1,68 @@
+package lan.dk.podcastserver.service.properties;
+
+import org.junit.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BandwidthTest {
+
+    /* 2016-10-17 is a monday */
+    private static final LocalDateTime MONDAY_NOON = LocalDateTime.of(2016, 10, 17, 12, 0);
+
+    @Test
+    public void should_have_default_value() {
+        /* When */
+        Bandwidth bandwidth = new Bandwidth();
+
+        /* Then */
+        assertThat(bandwidth.getDefaultRate()).isEqualTo(0L);
+        assertThat(bandwidth.getDeferLargerThan()).isEqualTo(0L);
+        assertThat(bandwidth.getSchedule()).isEmpty();
+    }
+
+    @Test
+    public void should_cover_the_whole_week_by_default() {
+        /* When */
+        Bandwidth.Period period = new Bandwidth.Period();
+
+        /* Then */
+        assertThat(period.contains(MONDAY_NOON)).isTrue();
+        assertThat(period.contains(MONDAY_NOON.plusDays(3).withHour(0))).isTrue();
+    }
+
+    @Test
+    public void should_contain_only_working_hours() {
+        /* Given */
+        Bandwidth.Period period = new Bandwidth.Period()
+                .setDays(asList(DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY, DayOfWeek.FRIDAY))
+                .setFrom(LocalTime.of(9, 0))
+                .setTo(LocalTime.of(18, 0));
+
+        /* Then */
+        assertThat(period.contains(MONDAY_NOON)).isTrue();
+        assertThat(period.contains(MONDAY_NOON.withHour(9))).isTrue();
+        assertThat(period.contains(MONDAY_NOON.withHour(18))).isFalse();
+        assertThat(period.contains(MONDAY_NOON.withHour(8))).isFalse();
+        assertThat(period.contains(MONDAY_NOON.minusDays(1))).isFalse();
+    }
+
+    @Test
+    public void should_contain_night_over_two_days() {
+        /* Given */
+        Bandwidth.Period period = new Bandwidth.Period()
+                .setDays(asList(DayOfWeek.FRIDAY))
+                .setFrom(LocalTime.of(22, 0))
+                .setTo(LocalTime.of(6, 0));
+
+        /* Then */
+        assertThat(period.contains(MONDAY_NOON.plusDays(4).withHour(23))).isTrue();
+        assertThat(period.contains(MONDAY_NOON.plusDays(5).withHour(5))).isTrue();
+        assertThat(period.contains(MONDAY_NOON.plusDays(5).withHour(6))).isFalse();
+        assertThat(period.contains(MONDAY_NOON.plusDays(4).withHour(5))).isFalse();
+    }
+}
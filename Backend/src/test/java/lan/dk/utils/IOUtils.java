@@ -12,9 +12,11 @@ import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
 import javaslang.control.Option;
 import javaslang.control.Try;
 import javaslang.jackson.datatype.JavaslangModule;
+import lan.dk.podcastserver.service.JdomService;
 import org.jdom2.JDOMException;
 import org.jdom2.input.SAXBuilder;
 import org.jsoup.Jsoup;
+import org.mockito.stubbing.Answer;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -26,6 +28,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Created by kevin on 23/07/2016.
@@ -47,6 +50,14 @@ public class IOUtils {
     public static Option<org.jdom2.Document> fileAsXml(String path) throws JDOMException, IOException, URISyntaxException {
         return Option.of(new SAXBuilder().build(Paths.get(IOUtils.class.getResource(path).toURI()).toFile()));
     }
+    @SuppressWarnings("unchecked")
+    public static Answer<Boolean> fileAsXmlElements(String path) {
+        return i -> {
+            try (InputStream stream = Files.newInputStream(Paths.get(IOUtils.class.getResource(path).toURI()))) {
+                return JdomService.readEach(stream, i.getArgumentAt(1, String.class), i.getArgumentAt(2, Predicate.class));
+            }
+        };
+    }
     public static Option<org.jsoup.nodes.Document> fileAsHtml(String path) throws URISyntaxException, IOException {
         return Option.of(Jsoup.parse(Paths.get(IOUtils.class.getResource(path).toURI()).toFile(), "UTF-8", ""));
     }
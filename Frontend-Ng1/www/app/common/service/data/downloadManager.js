@@ -10,9 +10,14 @@ import Rx from 'rx';
 export default class DownloadManager {
 
     WS_DOWNLOAD_BASE = '/app/download';
+    WS_WAITING_SNAPSHOT = '/app/waiting';
     download$ = new Rx.ReplaySubject(0);
+    progression$ = new Rx.ReplaySubject(0);
     waiting$ = new Rx.ReplaySubject(0);
     updating$ = new Rx.BehaviorSubject(null);
+    waitingSequence = null;
+    waitingItems = [];
+    waitingSnapshotSubscription = null;
     
     constructor(ngstomp, $http) {
         "ngInject";
@@ -21,13 +26,52 @@ export default class DownloadManager {
 
         this.ngstomp.subscribeTo('/topic/download').withBodyInJson().withDigest(false)
                 .callback(m => this.download$.onNext(m.body))
+            .and()
+                .subscribeTo('/topic/download/progression').withBodyInJson().withDigest(false)
+                .callback(m => m.body.forEach(p => this.progression$.onNext(p)))
             .and()
                 .subscribeTo('/topic/waiting').withBodyInJson().withDigest(false)
-                .callback(m => this.waiting$.onNext(m.body))
+                .callback(m => this.onWaitingDelta(m.body))
             .and()
                 .subscribeTo('/topic/updating').withBodyInJson().withDigest(false)
                 .callback(m => this.updating$.onNext(m.body))
             .connect();
+
+        this.resyncWaiting();
+    }
+
+    resyncWaiting() {
+        if (this.waitingSnapshotSubscription !== null) this.waitingSnapshotSubscription.unSubscribeAll();
+
+        this.waitingSnapshotSubscription = this.ngstomp.subscribeTo(this.WS_WAITING_SNAPSHOT).withBodyInJson().withDigest(false)
+            .callback(m => this.onWaitingSnapshot(m.body))
+            .connect();
+    }
+
+    onWaitingSnapshot(snapshot) {
+        if (this.waitingSequence !== null && snapshot.sequence < this.waitingSequence) return;
+
+        this.waitingSequence = snapshot.sequence;
+        this.waitingItems = snapshot.items;
+        this.waiting$.onNext(this.waitingItems);
+    }
+
+    onWaitingDelta(delta) {
+        if (this.waitingSequence === null || delta.sequence <= this.waitingSequence) return;
+        if (delta.sequence !== this.waitingSequence + 1) return this.resyncWaiting();
+
+        this.waitingSequence = delta.sequence;
+        this.waitingItems = delta.operations.reduce((items, op) => DownloadManager.applyWaitingOperation(items, op), this.waitingItems);
+        this.waiting$.onNext(this.waitingItems);
+    }
+
+    static applyWaitingOperation(items, op) {
+        let others = items.filter(i => i.id !== op.id);
+        switch (op.type) {
+            case 'INSERT' : return [...others.slice(0, op.position), op.item, ...others.slice(op.position)];
+            case 'MOVE' : return [...others.slice(0, op.position), items.find(i => i.id === op.id), ...others.slice(op.position)];
+            case 'REMOVE' : return others;
+        }
     }
 
     downloading() {
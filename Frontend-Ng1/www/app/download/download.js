@@ -48,6 +48,11 @@ export default class DownloadCtrl {
             .download$
             .subscribe(m => this.$scope.$evalAsync(() => this.onDownloadUpdate(m)));
 
+        this.progressionSub = this.DonwloadManager
+            .progression$
+            .filter(p => this.items.some(i => i.id === p.id))
+            .subscribe(p => this.$scope.$evalAsync(() => Object.assign(this.items.find(i => i.id === p.id), { progression : p.progression, speed : p.speed })));
+
         this.waitingSub = this.DonwloadManager
             .waiting$
             .filter(v => v)
@@ -56,6 +61,7 @@ export default class DownloadCtrl {
 
     $onDestroy() {
         this.downloadSub.dispose();
+        this.progressionSub.dispose();
         this.waitingSub.dispose();
     }
 
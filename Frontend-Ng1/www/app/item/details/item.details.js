@@ -48,10 +48,16 @@ export default class ItemDetailCtrl {
             .download$
             .filter(item => item.id === this.item.id)
             .subscribe(item => this.$scope.$evalAsync(() => Object.assign(this.item, item)));
+
+        this.progressionSub = this.DonwloadManager
+            .progression$
+            .filter(p => p.id === this.item.id)
+            .subscribe(p => this.$scope.$evalAsync(() => this.item.progression = p.progression));
     }
     
     $onDestroy() {
         this.subscription.dispose();
+        this.progressionSub.dispose();
     }
 
     download() {